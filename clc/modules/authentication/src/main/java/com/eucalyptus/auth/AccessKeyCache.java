@@ -0,0 +1,157 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.eucalyptus.auth.principal.AccessKey;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Read-through cache of access keys for request authentication.
+ *
+ * <p>Cached keys are loaded with their user, account and groups so that
+ * authenticating a request does not need any database transactions. All
+ * entries are invalidated on local euare changes, changes made on other
+ * hosts are visible after authentication.access_key_cache_expiry.</p>
+ */
+public class AccessKeyCache {
+
+  private static final Logger LOG = Logger.getLogger( AccessKeyCache.class );
+
+  private static final AccessKeyCache instance = new AccessKeyCache( );
+
+  private final Cache<String,CachedAccessKey> cache = CacheBuilder.newBuilder( ).maximumSize( 50000 ).build( );
+  private final AtomicLong generation = new AtomicLong( );
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+  private final AtomicLong invalidations = new AtomicLong( );
+
+  interface AccessKeyLoader {
+    AccessKey load( String keyId ) throws AuthException;
+  }
+
+  static AccessKeyCache getInstance( ) {
+    return instance;
+  }
+
+  /**
+   * Invalidate all cached access keys.
+   *
+   * <p>Call after committing any change to an access key, user, group
+   * membership or account.</p>
+   */
+  public static void invalidate( ) {
+    instance.generation.incrementAndGet( );
+    instance.invalidations.incrementAndGet( );
+  }
+
+  AccessKey lookup( final String keyId, final AccessKeyLoader loader ) throws AuthException {
+    final long expiryMillis = AuthenticationProperties.getAccessKeyCacheExpiryMillis( );
+    if ( expiryMillis <= 0 ) {
+      return loader.load( keyId );
+    }
+    final CachedAccessKey cached = cache.getIfPresent( keyId );
+    if ( cached != null && cached.isValid( generation.get( ), expiryMillis ) ) {
+      hits.incrementAndGet( );
+      return cached.accessKey;
+    }
+    misses.incrementAndGet( );
+    final long loadGeneration = generation.get( );
+    final AccessKey accessKey = loader.load( keyId );
+    cache.put( keyId, new CachedAccessKey( accessKey, loadGeneration ) );
+    return accessKey;
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public long getInvalidations( ) {
+    return invalidations.get( );
+  }
+
+  public long getSize( ) {
+    return cache.size( );
+  }
+
+  public double getHitRatio( ) {
+    final long hitCount = hits.get( );
+    final long total = hitCount + misses.get( );
+    return total == 0 ? 0d : (double) hitCount / total;
+  }
+
+  @Override
+  public String toString( ) {
+    return String.format( "AccessKeyCache hits=%d misses=%d ratio=%.3f size=%d invalidations=%d",
+        getHits( ), getMisses( ), getHitRatio( ), getSize( ), getInvalidations( ) );
+  }
+
+  private static final class CachedAccessKey {
+    private final AccessKey accessKey;
+    private final long generation;
+    private final long timestamp = System.currentTimeMillis( );
+
+    private CachedAccessKey( final AccessKey accessKey, final long generation ) {
+      this.accessKey = accessKey;
+      this.generation = generation;
+    }
+
+    boolean isValid( final long currentGeneration, final long expiryMillis ) {
+      return generation == currentGeneration &&
+          ( System.currentTimeMillis( ) - timestamp ) < expiryMillis;
+    }
+  }
+
+  public static class AccessKeyCacheEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new AccessKeyCacheEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && event.isAsserted( 300 ) ) {
+        try {
+          if ( registered.compareAndSet( false, true ) ) {
+            Mbeans.register( instance );
+          }
+          LOG.debug( instance );
+        } catch ( final Exception ex ) {
+          LOG.error( "Error reporting access key cache statistics: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
+    }
+  }
+}
@@ -113,6 +113,33 @@ public class AuthenticationProperties {
 
   private static AtomicLong DEFAULT_PASSWORD_EXPIRY_MILLIS = new AtomicLong( TimeUnit.DAYS.toMillis( 60 ) );
 
+  @ConfigurableField( description = "Time to cache compiled authorizations for a user or role", initial = "15s", changeListener = AuthenticationIntervalPropertyChangeListener.class )
+  public static String AUTHORIZATION_EXPIRY = "15s";
+
+  private static AtomicLong AUTHORIZATION_EXPIRY_MILLIS = new AtomicLong( TimeUnit.SECONDS.toMillis( 15 ) );
+
+  @ConfigurableField( description = "Time to cache unconditional authorization decisions, zero to disable", initial = "1s", changeListener = AuthenticationIntervalPropertyChangeListener.class )
+  public static String AUTHORIZATION_DECISION_EXPIRY = "1s";
+
+  private static AtomicLong AUTHORIZATION_DECISION_EXPIRY_MILLIS = new AtomicLong( TimeUnit.SECONDS.toMillis( 1 ) );
+
+  @ConfigurableField( description = "Time to cache access keys for request authentication, zero to disable", initial = "15s", changeListener = AuthenticationIntervalPropertyChangeListener.class )
+  public static String ACCESS_KEY_CACHE_EXPIRY = "15s";
+
+  private static AtomicLong ACCESS_KEY_CACHE_EXPIRY_MILLIS = new AtomicLong( TimeUnit.SECONDS.toMillis( 15 ) );
+
+  public static long getAccessKeyCacheExpiryMillis( ) {
+    return ACCESS_KEY_CACHE_EXPIRY_MILLIS.get( );
+  }
+
+  public static long getAuthorizationExpiryMillis( ) {
+    return AUTHORIZATION_EXPIRY_MILLIS.get( );
+  }
+
+  public static long getAuthorizationDecisionExpiryMillis( ) {
+    return AUTHORIZATION_DECISION_EXPIRY_MILLIS.get( );
+  }
+
   public static class LicChangeListener implements PropertyChangeListener {
     @Override
     public void fireChange( ConfigurableProperty t, Object newValue ) throws ConfigurablePropertyException {
@@ -80,10 +80,19 @@ public class DatabaseAccessKeyProxy implements AccessKey {
   private static final Logger LOG = Logger.getLogger( DatabaseAccessKeyProxy.class );
   
   private AccessKeyEntity delegate;
+  private transient User user;
   
   public DatabaseAccessKeyProxy( AccessKeyEntity delegate ) {
     this.delegate = delegate;
   }
+
+  /**
+   * Create a proxy with a preloaded user.
+   */
+  public DatabaseAccessKeyProxy( AccessKeyEntity delegate, User user ) {
+    this.delegate = delegate;
+    this.user = user;
+  }
   
   @Override
   public Boolean isActive( ) {
@@ -98,6 +107,7 @@ public class DatabaseAccessKeyProxy implements AccessKey {
           t.setActive( active );
         }
       } );
+      AccessKeyCache.invalidate( );
     } catch ( ExecutionException e ) {
       Debugging.logError( LOG, e, "Failed to setActive for " + this.delegate );
       throw new AuthException( e );
@@ -117,6 +127,7 @@ public class DatabaseAccessKeyProxy implements AccessKey {
           t.setSecretKey( key );
         }
       } );
+      AccessKeyCache.invalidate( );
     } catch ( ExecutionException e ) {
       Debugging.logError( LOG, e, "Failed to setKey for " + this.delegate );
       throw new AuthException( e );
@@ -130,6 +141,9 @@ public class DatabaseAccessKeyProxy implements AccessKey {
   
   @Override
   public User getUser( ) throws AuthException {
+    if ( user != null ) {
+      return user;
+    }
     final List<User> results = Lists.newArrayList( );
     try {
       DatabaseAuthUtils.invokeUnique( AccessKeyEntity.class, "accessKey", this.delegate.getAccessKey( ), new Tx<AccessKeyEntity>( ) {
@@ -90,6 +90,7 @@ import com.eucalyptus.auth.entities.PolicyEntity;
 import com.eucalyptus.auth.entities.RoleEntity;
 import com.eucalyptus.auth.entities.ServerCertificateEntity;
 import com.eucalyptus.auth.entities.UserEntity;
+import com.eucalyptus.auth.policy.PolicyEngineImpl;
 import com.eucalyptus.auth.policy.PolicyParser;
 import com.eucalyptus.auth.principal.Account;
 import com.eucalyptus.auth.principal.AccountFullName;
@@ -185,6 +186,7 @@ public class DatabaseAccountProxy implements Account {
             t.setName( name );
           }
         } );
+        AccessKeyCache.invalidate( );
       } catch ( Exception e ) {
         Debugging.logError( LOG, e, "Failed to setName for " + this.delegate );
         throw new AuthException( e );
@@ -381,6 +383,8 @@ public class DatabaseAccountProxy implements Account {
       }
       Entities.delete( user );
       db.commit( );
+      AccessKeyCache.invalidate( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to delete user: " + userName + " in " + accountName );
       throw new AuthException( AuthException.NO_SUCH_USER, e );
@@ -435,6 +439,7 @@ public class DatabaseAccountProxy implements Account {
       final RoleEntity role = DatabaseAuthUtils.getUniqueRole( roleName, accountName );
       Entities.delete( role );
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to delete role: " + roleName + " in " + accountName );
       throw new AuthException( AuthException.NO_SUCH_ROLE, e );
@@ -502,6 +507,8 @@ public class DatabaseAccountProxy implements Account {
       GroupEntity group = DatabaseAuthUtils.getUniqueGroup( groupName, accountName );
       Entities.delete( group );
       db.commit( );
+      AccessKeyCache.invalidate( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to delete group " + groupName + " in " + accountName );
       throw new AuthException( AuthException.NO_SUCH_GROUP, e );
@@ -95,6 +95,16 @@ public class DatabaseAuthBootstrapper extends Bootstrapper {
       public Boolean get( ) {
         return AuthenticationProperties.SYSTEM_ACCOUNT_QUOTA_ENABLED;
       }
+    }, new Supplier<Long>( ){
+      @Override
+      public Long get( ) {
+        return AuthenticationProperties.getAuthorizationExpiryMillis( );
+      }
+    }, new Supplier<Long>( ){
+      @Override
+      public Long get( ) {
+        return AuthenticationProperties.getAuthorizationDecisionExpiryMillis( );
+      }
     } ) );
     return true;
   }
@@ -349,6 +349,7 @@ public class DatabaseAuthProvider implements AccountProvider {
       }
       Entities.delete( account );
       db.commit( );
+      AccessKeyCache.invalidate( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to delete account " + accountName );
       throw new AuthException( AuthException.NO_SUCH_ACCOUNT, e );
@@ -507,10 +508,33 @@ public class DatabaseAuthProvider implements AccountProvider {
     if ( keyId == null ) {
       throw new AuthException( "Empty access key ID" );
     }
+    return AccessKeyCache.getInstance( ).lookup( keyId, new AccessKeyCache.AccessKeyLoader( ) {
+      @Override
+      public AccessKey load( final String keyId ) throws AuthException {
+        return loadAccessKeyById( keyId );
+      }
+    } );
+  }
+
+  /**
+   * Load an access key with its user, account and groups in one transaction.
+   */
+  private AccessKey loadAccessKeyById( final String keyId ) throws AuthException {
     try ( final TransactionResource db = Entities.transactionFor( AccessKeyEntity.class ) ) {
-      AccessKeyEntity keyEntity = DatabaseAuthUtils.getUnique( AccessKeyEntity.class, "accessKey", keyId );
+      final AccessKeyEntity keyEntity = DatabaseAuthUtils.getUnique( AccessKeyEntity.class, "accessKey", keyId );
+      final UserEntity userEntity = keyEntity.getUser( );
+      if ( userEntity.getGroups( ).isEmpty( ) ) {
+        throw new AuthException( "Unexpected group number of the user" );
+      }
+      final List<Group> groups = Lists.newArrayList( );
+      for ( final GroupEntity groupEntity : userEntity.getGroups( ) ) {
+        groups.add( new DatabaseGroupProxy( groupEntity ) );
+      }
+      final AccountEntity accountEntity = userEntity.getGroups( ).get( 0 ).getAccount( );
+      Entities.initialize( accountEntity );
+      final User user = new DatabaseUserProxy( userEntity, new DatabaseAccountProxy( accountEntity ), groups );
       db.commit( );
-      return new DatabaseAccessKeyProxy( keyEntity );
+      return new DatabaseAccessKeyProxy( keyEntity, user );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to find access key with ID " + keyId );
       throw new InvalidAccessKeyAuthException( "Failed to find access key", e );
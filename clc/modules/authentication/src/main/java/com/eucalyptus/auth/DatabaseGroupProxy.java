@@ -77,6 +77,7 @@ import com.eucalyptus.auth.entities.GroupEntity;
 import com.eucalyptus.auth.entities.PolicyEntity;
 import com.eucalyptus.auth.entities.StatementEntity;
 import com.eucalyptus.auth.entities.UserEntity;
+import com.eucalyptus.auth.policy.PolicyEngineImpl;
 import com.eucalyptus.auth.policy.PolicyParser;
 import com.eucalyptus.auth.principal.Account;
 import com.eucalyptus.auth.principal.Group;
@@ -220,6 +221,8 @@ public class DatabaseGroupProxy implements Group {
       groupEntity.getUsers( ).add( userEntity );
       userEntity.getGroups( ).add( groupEntity );
       db.commit( );
+      AccessKeyCache.invalidate( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to add user " + userName + " to group " + this.delegate );
       throw new AuthException( e );
@@ -234,6 +237,8 @@ public class DatabaseGroupProxy implements Group {
       groupEntity.getUsers( ).remove( userEntity );
       userEntity.getGroups( ).remove( groupEntity );
       db.commit( );
+      AccessKeyCache.invalidate( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to remove user " + userName + " from group " + this.delegate );
       throw new AuthException( e );
@@ -318,6 +323,7 @@ public class DatabaseGroupProxy implements Group {
       }
       groupEntity.getPolicies( ).add( parsedPolicy );
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
       return new DatabasePolicyProxy( parsedPolicy );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to attach policy for " + this.delegate.getName( ) );
@@ -337,6 +343,7 @@ public class DatabaseGroupProxy implements Group {
         Entities.delete( policy );
       }
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to remove policy " + name + " in " + this.delegate );
       throw new AuthException( "Failed to remove policy", e );
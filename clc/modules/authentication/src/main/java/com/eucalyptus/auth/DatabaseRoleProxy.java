@@ -34,6 +34,7 @@ import com.eucalyptus.auth.entities.AuthorizationEntity;
 import com.eucalyptus.auth.entities.InstanceProfileEntity;
 import com.eucalyptus.auth.entities.PolicyEntity;
 import com.eucalyptus.auth.entities.RoleEntity;
+import com.eucalyptus.auth.policy.PolicyEngineImpl;
 import com.eucalyptus.auth.policy.PolicyParser;
 import com.eucalyptus.auth.principal.Account;
 import com.eucalyptus.auth.principal.AccountFullName;
@@ -225,6 +226,7 @@ public class DatabaseRoleProxy implements Role {
       roleEntity.getPolicies( ).add( parsedPolicy );
       final PolicyEntity persistedPolicyEntity = Entities.persist( parsedPolicy );
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
       return new DatabasePolicyProxy( persistedPolicyEntity );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to attach policy for " + this.delegate.getName( ) );
@@ -242,6 +244,7 @@ public class DatabaseRoleProxy implements Role {
       final PolicyEntity policy = DatabaseAuthUtils.removeNamedPolicy( roleEntity.getPolicies(), name );
       if ( policy != null ) Entities.delete( policy );
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to remove policy " + name + " in " + this.delegate );
       throw new AuthException( "Failed to remove policy", e );
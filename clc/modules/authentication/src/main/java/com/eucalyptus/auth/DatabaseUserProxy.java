@@ -82,6 +82,7 @@ import com.eucalyptus.auth.entities.GroupEntity;
 import com.eucalyptus.auth.entities.PolicyEntity;
 import com.eucalyptus.auth.entities.StatementEntity;
 import com.eucalyptus.auth.entities.UserEntity;
+import com.eucalyptus.auth.policy.PolicyEngineImpl;
 import com.eucalyptus.auth.policy.PolicyParser;
 import com.eucalyptus.auth.principal.AccessKey;
 import com.eucalyptus.auth.principal.Account;
@@ -100,6 +101,7 @@ import com.eucalyptus.util.Tx;
 import com.google.common.base.Strings;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
@@ -119,6 +121,8 @@ public class DatabaseUserProxy implements User {
   private transient Supplier<Map<String,String>> userInfoSupplier =
       getUserInfoSupplier();
   private transient Boolean isSystemAdmin = null;
+  private transient Supplier<Account> accountSupplier = null;
+  private transient Supplier<List<Group>> groupsSupplier = null;
 
   public DatabaseUserProxy( UserEntity delegate ) {
     this.delegate = delegate;
@@ -138,6 +142,18 @@ public class DatabaseUserProxy implements User {
     userInfoSupplier = Suppliers.ofInstance( info );
   }
 
+  /**
+   * Create a proxy with a preloaded account and groups.
+   */
+  public DatabaseUserProxy( UserEntity delegate,
+                            Account account,
+                            List<Group> groups ) {
+    this.delegate = delegate;
+    accountNumberSupplier = Suppliers.ofInstance( account.getAccountNumber( ) );
+    accountSupplier = Suppliers.ofInstance( account );
+    groupsSupplier = Suppliers.<List<Group>>ofInstance( ImmutableList.copyOf( groups ) );
+  }
+
   @Override
   public String toString( ) {
     final StringBuilder sb = new StringBuilder( );
@@ -186,6 +202,7 @@ public class DatabaseUserProxy implements User {
           }
         }
         db.commit( );
+        AccessKeyCache.invalidate( );
       } catch ( Exception t ) {
         Debugging.logError( LOG, t, "Failed to setName for " + this.delegate );
         throw new AuthException( t );
@@ -215,6 +232,7 @@ public class DatabaseUserProxy implements User {
           t.setPath( path );
         }
       } );
+      AccessKeyCache.invalidate( );
     } catch ( ExecutionException e ) {
       Debugging.logError( LOG, e, "Failed to setPath for " + this.delegate );
       throw new AuthException( e );
@@ -239,6 +257,7 @@ public class DatabaseUserProxy implements User {
           t.setRegistrationStatus( stat );
         }
       } );
+      AccessKeyCache.invalidate( );
     } catch ( ExecutionException e ) {
       Debugging.logError( LOG, e, "Failed to setRegistrationStatus for " + this.delegate );
       throw new AuthException( e );
@@ -258,6 +277,7 @@ public class DatabaseUserProxy implements User {
           t.setEnabled( enabled );
         }
       } );
+      AccessKeyCache.invalidate( );
     } catch ( ExecutionException e ) {
       Debugging.logError( LOG, e, "Failed to setEnabled for " + this.delegate );
       throw new AuthException( e );
@@ -457,6 +477,7 @@ public class DatabaseUserProxy implements User {
       user.getKeys( ).remove( keyEntity );
       Entities.delete( keyEntity );
       db.commit( );
+      AccessKeyCache.invalidate( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to get delete key " + keyId );
       throw new AuthException( e );
@@ -545,6 +566,9 @@ public class DatabaseUserProxy implements User {
   
   @Override
   public List<Group> getGroups( ) throws AuthException {
+    if ( groupsSupplier != null ) {
+      return groupsSupplier.get( );
+    }
     final List<Group> results = Lists.newArrayList( );
     try {
       DatabaseAuthUtils.invokeUnique( UserEntity.class, "userId", this.delegate.getUserId( ), new Tx<UserEntity>( ) {
@@ -568,6 +592,9 @@ public class DatabaseUserProxy implements User {
 
   @Override
   public Account getAccount( ) throws AuthException {
+    if ( accountSupplier != null ) {
+      return accountSupplier.get( );
+    }
     final List<Account> results = Lists.newArrayList( );
     try {
       DatabaseAuthUtils.invokeUnique( UserEntity.class, "userId", this.delegate.getUserId( ), new Tx<UserEntity>( ) {
@@ -697,6 +724,7 @@ public class DatabaseUserProxy implements User {
       }
       groupEntity.getPolicies( ).add( parsedPolicy );
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
       return new DatabasePolicyProxy( parsedPolicy );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to attach policy for " + this.delegate.getName( ) );
@@ -720,6 +748,7 @@ public class DatabaseUserProxy implements User {
         Entities.delete( policy );
       }
       db.commit( );
+      PolicyEngineImpl.policiesChanged( );
     } catch ( Exception e ) {
       Debugging.logError( LOG, e, "Failed to remove policy " + name + " in " + this.delegate );
       throw new AuthException( "Failed to remove policy", e );
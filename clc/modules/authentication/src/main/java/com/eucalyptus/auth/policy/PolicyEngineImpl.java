@@ -70,6 +70,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 import javax.annotation.Nonnull;
@@ -97,6 +98,7 @@ import com.eucalyptus.auth.principal.Authorization;
 import com.eucalyptus.auth.principal.Condition;
 import com.eucalyptus.auth.principal.Policy;
 import com.eucalyptus.auth.principal.Principal;
+import com.eucalyptus.auth.principal.RoleUser;
 import com.eucalyptus.auth.principal.User;
 import com.eucalyptus.auth.principal.Authorization.EffectType;
 import com.eucalyptus.auth.principal.User.RegistrationStatus;
@@ -104,6 +106,8 @@ import com.eucalyptus.util.Exceptions;
 import com.google.common.base.Function;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
@@ -121,6 +125,18 @@ public class PolicyEngineImpl implements PolicyEngine {
   private final Function<String,String> accountResolver;
   @Nonnull
   private final Supplier<Boolean> enableSystemQuotas;
+  @Nonnull
+  private final Supplier<Long> decisionCacheExpiry;
+  @Nonnull
+  private final AuthorizationCache authorizationCache;
+  private final Cache<String,CachedValue<Decision>> decisionCache =
+      CacheBuilder.newBuilder( ).maximumSize( 50000 ).build( );
+
+  /**
+   * Incremented when policies, groups or users change to invalidate cached
+   * authorizations and decisions.
+   */
+  private static final AtomicLong policyGeneration = new AtomicLong( );
 
   private enum Decision {
     DEFAULT, // no match
@@ -132,6 +148,10 @@ public class PolicyEngineImpl implements PolicyEngine {
     boolean match( String pattern, String instance );
   }
   
+  private static interface AuthorizationLoader {
+    List<Authorization> load( ) throws AuthException;
+  }
+
   private static final Matcher PATTERN_MATCHER = new Matcher( ) {
     @Override
     public boolean match( String pattern, String instance ) {
@@ -153,6 +173,9 @@ public class PolicyEngineImpl implements PolicyEngine {
     }
   };
   
+  private static final String SERVER_CERTIFICATE_RESOURCE_TYPE =
+      String.format( "%s:%s", PolicySpec.VENDOR_IAM, PolicySpec.IAM_RESOURCE_SERVER_CERTIFICATE );
+
   private static final Matcher SERVER_CERTIFICATE_MATCHER = new Matcher( ) {
     @Override
     public boolean match( String pattern, String instance ) {
@@ -178,12 +201,47 @@ public class PolicyEngineImpl implements PolicyEngine {
     this( DefaultAccountResolver.INSTANCE, enableSystemQuotas );
   }
 
+  /**
+   * Create a policy engine that caches authorizations and decisions.
+   *
+   * @param enableSystemQuotas Supplier for quota enablement for system accounts
+   * @param authorizationCacheExpiry Supplier for the expiry of compiled authorizations in milliseconds (0 to disable)
+   * @param decisionCacheExpiry Supplier for the expiry of unconditional decisions in milliseconds (0 to disable)
+   */
+  public PolicyEngineImpl( @Nonnull final Supplier<Boolean> enableSystemQuotas,
+                           @Nonnull final Supplier<Long> authorizationCacheExpiry,
+                           @Nonnull final Supplier<Long> decisionCacheExpiry ) {
+    this( DefaultAccountResolver.INSTANCE, enableSystemQuotas, authorizationCacheExpiry, decisionCacheExpiry );
+  }
+
   public PolicyEngineImpl(
       @Nonnull final Function<String,String> accountResolver,
       @Nonnull final Supplier<Boolean> enableSystemQuotas
+  ) {
+    this( accountResolver, enableSystemQuotas, Suppliers.ofInstance( 0L ), Suppliers.ofInstance( 0L ) );
+  }
+
+  public PolicyEngineImpl(
+      @Nonnull final Function<String,String> accountResolver,
+      @Nonnull final Supplier<Boolean> enableSystemQuotas,
+      @Nonnull final Supplier<Long> authorizationCacheExpiry,
+      @Nonnull final Supplier<Long> decisionCacheExpiry
   ) {
     this.accountResolver = checkParam( "accountResolver", accountResolver, notNullValue( ) );
     this.enableSystemQuotas = checkParam( "enableSystemQuotas", enableSystemQuotas, notNullValue( ) );
+    this.decisionCacheExpiry = checkParam( "decisionCacheExpiry", decisionCacheExpiry, notNullValue( ) );
+    this.authorizationCache = new AuthorizationCache(
+        checkParam( "authorizationCacheExpiry", authorizationCacheExpiry, notNullValue( ) ) );
+  }
+
+  /**
+   * Invalidate cached authorizations and decisions.
+   *
+   * <p>Must be called when policies, group membership, users or roles are
+   * changed.</p>
+   */
+  public static void policiesChanged( ) {
+    policyGeneration.incrementAndGet( );
   }
 
   /*
@@ -312,7 +370,7 @@ public class PolicyEngineImpl implements PolicyEngine {
                                                     final String action,
                                                     final User requestUser,
                                                     final Map<String,String> evaluatedKeys ) {
-    return new AuthEvaluationContextImpl( resourceType, action, requestUser, evaluatedKeys );
+    return new AuthEvaluationContextImpl( resourceType, action, requestUser, evaluatedKeys, null, null, authorizationCache );
   }
 
   @Override
@@ -322,15 +380,46 @@ public class PolicyEngineImpl implements PolicyEngine {
                                                     final Map<String,String> evaluatedKeys,
                                                     final PrincipalType principalType,
                                                     final String principalName ) {
-    return new AuthEvaluationContextImpl( resourceType, action, requestUser, evaluatedKeys, principalType, principalName );
+    return new AuthEvaluationContextImpl( resourceType, action, requestUser, evaluatedKeys, principalType, principalName, authorizationCache );
   }
 
+  /**
+   * Evaluate resource authorization, using a recent decision when there are
+   * no conditions for the principal (so the decision depends only on the
+   * principal, action and resource)
+   */
   private Decision evaluateResourceAuthorization( @Nonnull  final AuthEvaluationContext context,
                                                   @Nonnull  final AuthorizationMatch authorizationMatch,
                                                   @Nullable final String resourceAccountNumber,
-                                                  @Nonnull  String resourceName,
+                                                  @Nonnull  final String resourceName,
                                                   @Nonnull  final Map<Contract.Type, Contract> contracts ) throws AuthException {
     final AuthEvaluationContextImpl evaluationContext = (AuthEvaluationContextImpl)context;
+    final long expiryMillis = decisionCacheExpiry.get( );
+    final String decisionKey = expiryMillis > 0 && !evaluationContext.isSystemAdmin( ) ?
+        evaluationContext.decisionKey( authorizationMatch, resourceAccountNumber, resourceName ) :
+        null;
+    if ( decisionKey != null ) {
+      final CachedValue<Decision> cached = decisionCache.getIfPresent( decisionKey );
+      if ( cached != null && cached.isValid( expiryMillis ) ) {
+        verifyUser( evaluationContext.getRequestUser( ) );
+        return cached.get( );
+      }
+    }
+    final long generation = policyGeneration.get( );
+    final Decision decision =
+        evaluateResourceAuthorizationUncached( evaluationContext, authorizationMatch, resourceAccountNumber, resourceName, contracts );
+    if ( decisionKey != null && !evaluationContext.isConditional( ) ) {
+      decisionCache.put( decisionKey, new CachedValue<>( decision, generation ) );
+    }
+    return decision;
+  }
+
+  private Decision evaluateResourceAuthorizationUncached( @Nonnull  final AuthEvaluationContextImpl evaluationContext,
+                                                          @Nonnull  final AuthorizationMatch authorizationMatch,
+                                                          @Nullable final String resourceAccountNumber,
+                                                          @Nonnull  String resourceName,
+                                                          @Nonnull  final Map<Contract.Type, Contract> contracts ) throws AuthException {
+    final AuthEvaluationContext context = evaluationContext;
     final ContractKeyEvaluator contractEval = new ContractKeyEvaluator( contracts );
     final CachedKeyEvaluator keyEval = new CachedKeyEvaluator( context.getEvaluatedKeys( ) );
     final String action = evaluationContext.getAction( );
@@ -412,7 +501,7 @@ public class PolicyEngineImpl implements PolicyEngine {
                                           @Nonnull  final CachedKeyEvaluator keyEval,
                                           @Nonnull  final ContractKeyEvaluator contractEval ) throws AuthException {
     Decision result = Decision.DEFAULT;
-    for ( Authorization auth : authorizations ) {
+    for ( CompiledAuthorization auth : compile( authorizations ) ) {
       if ( !matchActions( auth, action ) ) {
         continue;
       }
@@ -425,7 +514,7 @@ public class PolicyEngineImpl implements PolicyEngine {
       if ( !matchResources( auth, resourceAccountNumber, resource ) ) {
         continue;
       }
-      if ( !evaluateConditions( auth.getConditions( ), action, auth.getType( ), keyEval, contractEval ) ) {
+      if ( !evaluateConditions( auth.getCompiledConditions( ), action, auth.getType( ), keyEval, contractEval ) ) {
         continue;
       }
       if ( auth.getEffect( ) == EffectType.Deny ) {
@@ -438,8 +527,8 @@ public class PolicyEngineImpl implements PolicyEngine {
     return result;
   }
   
-  private boolean matchActions( Authorization auth, String action ) throws AuthException {
-    return evaluateElement( matchOne( auth.getActions( ), action, PATTERN_MATCHER ), auth.isNotAction( ) );
+  private boolean matchActions( CompiledAuthorization auth, String action ) throws AuthException {
+    return evaluateElement( matchOne( auth.getActionPatterns( ), action ), auth.isNotAction( ) );
   }
 
   private boolean matchPrincipal( Principal principal, PrincipalType principalType, String principalName ) throws AuthException {
@@ -449,11 +538,11 @@ public class PolicyEngineImpl implements PolicyEngine {
         evaluateElement( matchOne( principalType.convertForUserMatching( principal.getValues() ), principalName, PATTERN_MATCHER ), principal.isNotPrincipal() ) );
   }
 
-  private boolean matchResources( Authorization auth, String resource ) throws AuthException {
+  private boolean matchResources( CompiledAuthorization auth, String resource ) throws AuthException {
     return matchResources( auth, null, resource );
   }
 
-  private boolean matchResources( @Nonnull  Authorization auth,
+  private boolean matchResources( @Nonnull  CompiledAuthorization auth,
                                   @Nullable String resourceAccountNumber,
                                   @Nullable String resource ) throws AuthException {
     
@@ -463,10 +552,10 @@ public class PolicyEngineImpl implements PolicyEngine {
       return auth.isNotResource( );
     } else  if ( PolicySpec.EC2_RESOURCE_ADDRESS.equals( auth.getType( ) ) ) {
       return evaluateElement( matchOne( auth.getResources( ), resource, ADDRESS_MATCHER ), auth.isNotResource( ) );
-    } else if ( String.format("%s:%s", PolicySpec.VENDOR_IAM, PolicySpec.IAM_RESOURCE_SERVER_CERTIFICATE).equals ( auth.getType( ))){
+    } else if ( SERVER_CERTIFICATE_RESOURCE_TYPE.equals ( auth.getType( ))){
       return evaluateElement( matchOne( auth.getResources( ), resource, SERVER_CERTIFICATE_MATCHER), auth.isNotResource() );
     }else {
-      return evaluateElement( matchOne( auth.getResources( ), resource, PATTERN_MATCHER ), auth.isNotResource( ) );
+      return evaluateElement( matchOne( auth.getResourcePatterns( ), resource ), auth.isNotResource( ) );
     }
   }
   
@@ -479,6 +568,15 @@ public class PolicyEngineImpl implements PolicyEngine {
     return false;
   }
 
+  private static boolean matchOne( List<Pattern> patterns, String instance ) {
+    for ( Pattern pattern : patterns ) {
+      if ( pattern.matcher( instance ).matches( ) ) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   private String resolveAccount( final String accountNumberOrAlias ) {
     return accountResolver.apply( accountNumberOrAlias );
   }
@@ -490,10 +588,10 @@ public class PolicyEngineImpl implements PolicyEngine {
   /**
    * Evaluate conditions for an authorization.
    */
-  private boolean evaluateConditions( List<? extends Condition> conditions, String action, String resourceType, CachedKeyEvaluator keyEval, ContractKeyEvaluator contractEval ) throws AuthException {
-    for ( Condition cond : conditions ) {
-      ConditionOp op = Conditions.getOpInstance( cond.getType( ) );
-      Key key = Keys.getKeyInstance( Keys.getKeyClass( cond.getKey( ) ) );
+  private boolean evaluateConditions( List<CompiledCondition> conditions, String action, String resourceType, CachedKeyEvaluator keyEval, ContractKeyEvaluator contractEval ) throws AuthException {
+    for ( CompiledCondition cond : conditions ) {
+      ConditionOp op = cond.getOp( );
+      Key key = cond.getKeyInstance( );
       final boolean applies = key.canApply( action, resourceType );
       if ( key instanceof ContractKey ) {
         if ( applies ) contractEval.addContract( ( ContractKey ) key, cond.getValues( ) );
@@ -575,7 +673,7 @@ public class PolicyEngineImpl implements PolicyEngine {
    */
   private void processQuotas( List<Authorization> quotas, String action, String resourceType, String resourceName, Long quantity ) throws AuthException {
     NumericGreaterThan ngt = new NumericGreaterThan( );
-    for ( Authorization auth : quotas ) {
+    for ( CompiledAuthorization auth : compile( quotas ) ) {
       if ( !matchActions( auth, action ) ) {
         LOG.debug( "Action " + action + " not matching" );
         continue;
@@ -648,6 +746,8 @@ public class PolicyEngineImpl implements PolicyEngine {
     private Map<String,String> evaluatedKeys;
     private List<Authorization> globalAuthorizations;
     private List<Authorization> localAuthorizations;
+    @Nullable
+    private final AuthorizationCache authorizationCache;
 
     AuthEvaluationContextImpl( @Nullable final String resourceType,
                                final String action,
@@ -662,12 +762,23 @@ public class PolicyEngineImpl implements PolicyEngine {
                                final Map<String, String> evaluatedKeys,
                                @Nullable final PrincipalType principalType,
                                @Nullable final String principalName ) {
+      this( resourceType, action, requestUser, evaluatedKeys, principalType, principalName, null );
+    }
+
+    AuthEvaluationContextImpl( @Nullable final String resourceType,
+                               final String action,
+                               final User requestUser,
+                               final Map<String, String> evaluatedKeys,
+                               @Nullable final PrincipalType principalType,
+                               @Nullable final String principalName,
+                               @Nullable final AuthorizationCache authorizationCache ) {
       this.resourceType = resourceType;
       this.action = action.toLowerCase();
       this.evaluatedKeys = ImmutableMap.copyOf( evaluatedKeys );
       this.requestUser = requestUser;
       this.principalType = principalType;
       this.principalName = principalName;
+      this.authorizationCache = authorizationCache;
     }
 
     @Nullable
@@ -742,7 +853,13 @@ public class PolicyEngineImpl implements PolicyEngine {
     public List<Authorization> lookupGlobalAuthorizations( ) throws AuthException {
       if ( globalAuthorizations == null ) {
         if ( resourceType != null ) {
-          globalAuthorizations = cached( PolicyEngineImpl.lookupGlobalAuthorizations( resourceType, getRequestAccount() ) );
+          final Account account = getRequestAccount( );
+          globalAuthorizations = cached( "global\n" + account.getAccountNumber( ) + "\n" + resourceType, new AuthorizationLoader( ) {
+            @Override
+            public List<Authorization> load( ) throws AuthException {
+              return PolicyEngineImpl.lookupGlobalAuthorizations( resourceType, account );
+            }
+          } );
         } else {
           globalAuthorizations = Collections.emptyList();
         }
@@ -752,79 +869,228 @@ public class PolicyEngineImpl implements PolicyEngine {
 
     public List<Authorization> lookupLocalAuthorizations( ) throws AuthException {
       if ( localAuthorizations == null ) {
-        localAuthorizations = cached( PolicyEngineImpl.lookupLocalAuthorizations( resourceType, getRequestUser( ) ) );
+        final String principalKey = principalKey( );
+        localAuthorizations = cached( principalKey == null ? null : "local\n" + principalKey + "\n" + resourceType, new AuthorizationLoader( ) {
+          @Override
+          public List<Authorization> load( ) throws AuthException {
+            return PolicyEngineImpl.lookupLocalAuthorizations( resourceType, getRequestUser( ) );
+          }
+        } );
       }
       return localAuthorizations;
     }
 
-    private List<Authorization> cached( final List<Authorization> authorizations ) {
-      return ImmutableList.copyOf( Iterables.transform( authorizations, CachedAuthorizationTransform.INSTANCE ) );
+    /**
+     * Are there any conditions in the authorizations for this context.
+     */
+    boolean isConditional( ) throws AuthException {
+      for ( final CompiledAuthorization authorization :
+          Iterables.concat( compile( lookupGlobalAuthorizations( ) ), compile( lookupLocalAuthorizations( ) ) ) ) {
+        if ( !authorization.getConditions( ).isEmpty( ) ) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    /**
+     * Key for a decision in this context, null if decisions should not be cached.
+     */
+    @Nullable
+    String decisionKey( final AuthorizationMatch authorizationMatch,
+                        @Nullable final String resourceAccountNumber,
+                        final String resourceName ) throws AuthException {
+      final String principalKey = principalKey( );
+      return principalKey == null ? null :
+          principalKey + "\n" + getRequestAccount( ).getAccountNumber( ) + "\n" + principalType + "\n" + principalName + "\n" +
+          authorizationMatch + "\n" + resourceType + "\n" + action + "\n" + resourceAccountNumber + "\n" + resourceName;
+    }
+
+    @Nullable
+    private String principalKey( ) {
+      if ( requestUser instanceof RoleUser ) {
+        final String roleId = ( (RoleUser) requestUser ).getRoleId( );
+        return roleId == null ? null : "role:" + roleId;
+      } else {
+        final String userId = requestUser.getUserId( );
+        return userId == null ? null : "user:" + userId;
+      }
+    }
+
+    private List<Authorization> cached( @Nullable final String key,
+                                        final AuthorizationLoader loader ) throws AuthException {
+      return authorizationCache == null ?
+          ImmutableList.<Authorization>copyOf( compile( loader.load( ) ) ) :
+          authorizationCache.lookup( key, loader );
     }
   }
 
-  private static final class CachedDelegatingAuthorization implements Authorization {
+  /**
+   * Compiled authorizations by principal (or account) and resource type.
+   */
+  private static final class AuthorizationCache {
+    private final Supplier<Long> expiry;
+    private final Cache<String,CachedValue<List<Authorization>>> cache =
+        CacheBuilder.newBuilder( ).maximumSize( 10000 ).build( );
+
+    private AuthorizationCache( final Supplier<Long> expiry ) {
+      this.expiry = expiry;
+    }
+
+    List<Authorization> lookup( @Nullable final String key,
+                                final AuthorizationLoader loader ) throws AuthException {
+      final long expiryMillis = expiry.get( );
+      if ( key != null && expiryMillis > 0 ) {
+        final CachedValue<List<Authorization>> cached = cache.getIfPresent( key );
+        if ( cached != null && cached.isValid( expiryMillis ) ) {
+          return cached.get( );
+        }
+      }
+      final long generation = policyGeneration.get( );
+      final List<Authorization> authorizations = ImmutableList.<Authorization>copyOf( compile( loader.load( ) ) );
+      if ( key != null && expiryMillis > 0 ) {
+        cache.put( key, new CachedValue<>( authorizations, generation ) );
+      }
+      return authorizations;
+    }
+  }
+
+  private static final class CachedValue<T> {
+    private final T value;
+    private final long generation;
+    private final long timestamp = System.currentTimeMillis( );
+
+    private CachedValue( final T value, final long generation ) {
+      this.value = value;
+      this.generation = generation;
+    }
+
+    T get( ) {
+      return value;
+    }
+
+    boolean isValid( final long expiryMillis ) {
+      return generation == policyGeneration.get( ) &&
+          ( System.currentTimeMillis( ) - timestamp ) < expiryMillis;
+    }
+  }
+
+  private static List<CompiledAuthorization> compile( final List<Authorization> authorizations ) throws AuthException {
+    final List<CompiledAuthorization> compiled = Lists.newArrayListWithCapacity( authorizations.size( ) );
+    for ( final Authorization authorization : authorizations ) {
+      compiled.add( authorization instanceof CompiledAuthorization ?
+          (CompiledAuthorization) authorization :
+          new CompiledAuthorization( authorization ) );
+    }
+    return compiled;
+  }
+
+  /**
+   * Immutable authorization with pre-compiled action and resource patterns.
+   *
+   * <p>Conditions are copied eagerly but their operators and keys are only
+   * resolved on first evaluation.</p>
+   */
+  private static final class CompiledAuthorization implements Authorization {
     private static final long serialVersionUID = 1L;
     private final Authorization delegate;
-    private Set<String> actions;
-    private List<Condition> conditions;
-    private Set<String> resource;
-    private Principal principal;
-
-    private CachedDelegatingAuthorization( final Authorization delegate ) {
+    private final Set<String> actions;
+    private final List<Pattern> actionPatterns;
+    private final Set<String> resources;
+    private final List<Pattern> resourcePatterns;
+    private final List<Condition> conditions;
+    private final Principal principal;
+    private final String account;
+    private final String type;
+    private final Boolean notAction;
+    private final Boolean notResource;
+    private final EffectType effect;
+    private volatile List<CompiledCondition> compiledConditions;
+
+    private CompiledAuthorization( final Authorization delegate ) throws AuthException {
       this.delegate = delegate;
+      this.actions = ImmutableSet.copyOf( delegate.getActions( ) );
+      this.actionPatterns = compilePatterns( actions );
+      this.resources = ImmutableSet.copyOf( delegate.getResources( ) );
+      this.resourcePatterns = compilePatterns( resources );
+      this.conditions = ImmutableList.copyOf( Iterables.transform( delegate.getConditions( ), CachedConditionTransform.INSTANCE ) );
+      this.principal = delegate.getPrincipal( );
+      this.account = delegate.getAccount( );
+      this.type = delegate.getType( );
+      this.notAction = delegate.isNotAction( );
+      this.notResource = delegate.isNotResource( );
+      this.effect = delegate.getEffect( );
     }
 
-    @Override
-    public Set<String> getActions( ) throws AuthException {
-      if ( actions == null ) {
-        actions = ImmutableSet.copyOf( delegate.getActions() );
+    private static List<Pattern> compilePatterns( final Set<String> patterns ) {
+      final ImmutableList.Builder<Pattern> compiled = ImmutableList.builder( );
+      for ( final String pattern : patterns ) {
+        final String javaPattern = PatternUtils.toJavaPattern( pattern );
+        if ( javaPattern != null ) {
+          compiled.add( Pattern.compile( javaPattern ) );
+        }
       }
+      return compiled.build( );
+    }
+
+    List<Pattern> getActionPatterns( ) {
+      return actionPatterns;
+    }
+
+    List<Pattern> getResourcePatterns( ) {
+      return resourcePatterns;
+    }
+
+    List<CompiledCondition> getCompiledConditions( ) throws AuthException {
+      List<CompiledCondition> compiled = compiledConditions;
+      if ( compiled == null ) {
+        final ImmutableList.Builder<CompiledCondition> builder = ImmutableList.builder( );
+        for ( final Condition condition : conditions ) {
+          builder.add( new CompiledCondition( condition ) );
+        }
+        compiled = compiledConditions = builder.build( );
+      }
+      return compiled;
+    }
+
+    @Override
+    public Set<String> getActions( ) {
       return actions;
     }
 
     @Override
-    public List<Condition> getConditions( ) throws AuthException {
-      if ( conditions == null ) {
-        conditions = ImmutableList.copyOf(
-            Iterables.transform( delegate.getConditions( ), CachedConditionTransform.INSTANCE ) );
-      }
+    public List<Condition> getConditions( ) {
       return conditions;
     }
 
     @Override
-    public Set<String> getResources( ) throws AuthException {
-      if ( resource == null ) {
-        resource = ImmutableSet.copyOf( delegate.getResources() );
-      }
-      return resource;
+    public Set<String> getResources( ) {
+      return resources;
     }
 
     @Override
     public String getAccount() {
-      return delegate.getAccount( );
+      return account;
     }
 
     @Override
     public String getType( ) {
-      return delegate.getType( );
+      return type;
     }
 
     @Override
-    public Principal getPrincipal() throws AuthException {
-      if ( principal == null ) {
-        principal = delegate.getPrincipal( );
-      }
+    public Principal getPrincipal() {
       return principal;
     }
 
     @Override
     public Boolean isNotResource() {
-      return delegate.isNotResource();
+      return notResource;
     }
 
     @Override
     public Boolean isNotAction() {
-      return delegate.isNotAction();
+      return notAction;
     }
 
     @Override
@@ -839,44 +1105,62 @@ public class PolicyEngineImpl implements PolicyEngine {
 
     @Override
     public EffectType getEffect() {
-      return delegate.getEffect();
+      return effect;
     }
   }
 
   private static class CachedDelegatingCondition implements Condition {
     private static final long serialVersionUID = 1L;
-    private final Condition delegate;
-    private Set<String> values;
-
-    private CachedDelegatingCondition( final Condition delegate ) {
-      this.delegate = delegate;
+    private final String key;
+    private final String type;
+    private final Set<String> values;
+
+    private CachedDelegatingCondition( final Condition delegate ) throws AuthException {
+      this.key = delegate.getKey( );
+      this.type = delegate.getType( );
+      this.values = ImmutableSet.copyOf( delegate.getValues( ) );
     }
 
     @Override
     public String getKey() {
-      return delegate.getKey();
+      return key;
     }
 
     @Override
     public String getType() {
-      return delegate.getType();
+      return type;
     }
 
     @Override
-    public Set<String> getValues() throws AuthException {
-      if ( values == null ) {
-        values = delegate.getValues();
-      }
+    public Set<String> getValues() {
       return values;
     }
   }
 
-  private enum CachedAuthorizationTransform implements Function<Authorization,Authorization> {
-    INSTANCE;
+  /**
+   * Condition with resolved operator and key.
+   */
+  private static final class CompiledCondition {
+    private final ConditionOp op;
+    private final Key key;
+    private final Set<String> values;
+
+    private CompiledCondition( final Condition condition ) throws AuthException {
+      this.op = Conditions.getOpInstance( condition.getType( ) );
+      this.key = Keys.getKeyInstance( Keys.getKeyClass( condition.getKey( ) ) );
+      this.values = condition.getValues( );
+    }
 
-    @Override
-    public Authorization apply( final Authorization authorization ) {
-      return new CachedDelegatingAuthorization( authorization );
+    ConditionOp getOp( ) {
+      return op;
+    }
+
+    Key getKeyInstance( ) {
+      return key;
+    }
+
+    Set<String> getValues( ) {
+      return values;
     }
   }
 
@@ -885,7 +1169,11 @@ public class PolicyEngineImpl implements PolicyEngine {
 
     @Override
     public Condition apply( final Condition condition ) {
-      return new CachedDelegatingCondition( condition );
+      try {
+        return new CachedDelegatingCondition( condition );
+      } catch ( final AuthException e ) {
+        throw Exceptions.toUndeclared( e );
+      }
     }
   }
 
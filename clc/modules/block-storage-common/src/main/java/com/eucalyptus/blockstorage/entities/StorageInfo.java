@@ -107,6 +107,9 @@ public class StorageInfo extends AbstractPersistent {
 	private static final Integer DEFAULT_SNAPSHOT_TRANSFER_TIMEOUT = 48;
 	private static final Integer DEFAULT_READ_BUFFER_SIZE_IN_MB = 1;
 	private static final Integer DEFAULT_WRITE_BUFFER_SIZE_IN_MB = 100;
+	private static final Integer DEFAULT_SNAPSHOT_COMPRESSION_THREADS = 1;
+	private static final Boolean DEFAULT_SNAPSHOT_PARTS_IN_MEMORY = Boolean.FALSE;
+	private static final Integer DEFAULT_SNAPSHOT_DOWNLOAD_THREADS = 1;
 
 	@Transient
 	private static Logger LOG = Logger.getLogger(StorageInfo.class);
@@ -159,6 +162,18 @@ public class StorageInfo extends AbstractPersistent {
 	@Column(name = "write_buffer_size_mb")
 	private Integer writeBufferSizeInMB;
 
+	@ConfigurableField(description = "Number of threads for compressing snapshots when uploading to objectstorage gateway. Snapshots are compressed in parallel blocks when greater than 1", displayName = "Snapshot Compression Threads", initial = "1", changeListener = PositiveIntegerChangeListener.class)
+	@Column(name = "snapshot_compression_threads")
+	private Integer snapshotCompressionThreads;
+
+	@ConfigurableField(description = "Hold compressed snapshot parts in memory instead of on disk when compressing snapshots in parallel. Uses up to (queue size + 2) x part size of memory per snapshot upload", displayName = "Snapshot Parts In Memory", initial = "false", type = ConfigurableFieldType.BOOLEAN)
+	@Column(name = "snapshot_parts_in_memory")
+	private Boolean snapshotPartsInMemory;
+
+	@ConfigurableField(description = "Number of threads for downloading snapshots from objectstorage gateway. Snapshot parts are downloaded and decompressed in parallel when greater than 1", displayName = "Snapshot Download Threads", initial = "1", changeListener = PositiveIntegerChangeListener.class)
+	@Column(name = "snapshot_download_threads")
+	private Integer snapshotDownloadThreads;
+
 	public StorageInfo() {
 		this.name = StorageProperties.NAME;
 	}
@@ -271,6 +286,30 @@ public class StorageInfo extends AbstractPersistent {
 		this.writeBufferSizeInMB = writeBufferSizeInMB;
 	}
 
+	public Integer getSnapshotCompressionThreads() {
+		return snapshotCompressionThreads;
+	}
+
+	public void setSnapshotCompressionThreads(Integer snapshotCompressionThreads) {
+		this.snapshotCompressionThreads = snapshotCompressionThreads;
+	}
+
+	public Boolean getSnapshotPartsInMemory() {
+		return snapshotPartsInMemory;
+	}
+
+	public void setSnapshotPartsInMemory(Boolean snapshotPartsInMemory) {
+		this.snapshotPartsInMemory = snapshotPartsInMemory;
+	}
+
+	public Integer getSnapshotDownloadThreads() {
+		return snapshotDownloadThreads;
+	}
+
+	public void setSnapshotDownloadThreads(Integer snapshotDownloadThreads) {
+		this.snapshotDownloadThreads = snapshotDownloadThreads;
+	}
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj)
@@ -337,6 +376,15 @@ public class StorageInfo extends AbstractPersistent {
 		if (writeBufferSizeInMB == null) {
 			writeBufferSizeInMB = DEFAULT_WRITE_BUFFER_SIZE_IN_MB;
 		}
+		if (snapshotCompressionThreads == null) {
+			snapshotCompressionThreads = DEFAULT_SNAPSHOT_COMPRESSION_THREADS;
+		}
+		if (snapshotPartsInMemory == null) {
+			snapshotPartsInMemory = DEFAULT_SNAPSHOT_PARTS_IN_MEMORY;
+		}
+		if (snapshotDownloadThreads == null) {
+			snapshotDownloadThreads = DEFAULT_SNAPSHOT_DOWNLOAD_THREADS;
+		}
 	}
 
 	private static StorageInfo getDefaultInstance() {
@@ -352,6 +400,9 @@ public class StorageInfo extends AbstractPersistent {
 		info.setSnapshotTransferTimeoutInHours(DEFAULT_SNAPSHOT_TRANSFER_TIMEOUT);
 		info.setReadBuffferSizeInMB(DEFAULT_READ_BUFFER_SIZE_IN_MB);
 		info.setWriteBufferSizeInMB(DEFAULT_WRITE_BUFFER_SIZE_IN_MB);
+		info.setSnapshotCompressionThreads(DEFAULT_SNAPSHOT_COMPRESSION_THREADS);
+		info.setSnapshotPartsInMemory(DEFAULT_SNAPSHOT_PARTS_IN_MEMORY);
+		info.setSnapshotDownloadThreads(DEFAULT_SNAPSHOT_DOWNLOAD_THREADS);
 		return info;
 	}
 
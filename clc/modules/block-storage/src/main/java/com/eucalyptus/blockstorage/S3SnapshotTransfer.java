@@ -70,10 +70,15 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -81,16 +86,21 @@ import java.util.NoSuchElementException;
 import java.util.UUID;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 
 import javax.annotation.Nullable;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBufferInputStream;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.jboss.netty.handler.codec.http.HttpResponseStatus;
 
 import com.amazonaws.AmazonServiceException;
@@ -168,8 +178,15 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 	private Integer poolSize;
 	private Integer readBufferSize;
 	private Integer writeBufferSize;
+	private Integer compressionThreads;
+	private Boolean partsInMemory;
+	private Integer downloadThreads;
 	private ServiceConfiguration serviceConfig;
 
+	// Compressed parts held in memory, by part number
+	private final ConcurrentMap<Integer, ByteBuffer> partBuffers = new ConcurrentHashMap<Integer, ByteBuffer>();
+	private final SnapshotCompressor.Throughput uploadThroughput = new SnapshotCompressor.Throughput("upload");
+
 	// Static parameters
 	private static Role role;
 
@@ -257,6 +274,10 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 	public void upload(StorageResource storageResource) throws SnapshotTransferException {
 		validateInput(); // Validate input
 		loadTransferConfig(); // Load the transfer configuration parameters from database
+		if (compressionThreads > 1) {
+			uploadCompressedInParallel(storageResource);
+			return;
+		}
 		SnapshotProgressCallback progressCallback = new SnapshotProgressCallback(snapshotId); // Setup the progress callback
 
 		Boolean error = Boolean.FALSE;
@@ -434,6 +455,47 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		}
 	}
 
+	/**
+	 * Compresses the snapshot in parallel blocks and uploads it. Reading, compression and upload of parts are pipelined, parts are uploaded as they are
+	 * compressed with at most the configured queue size of parts waiting for upload. As for {@link #upload(StorageResource)} the multipart upload is completed
+	 * asynchronously.
+	 */
+	private void uploadCompressedInParallel(StorageResource storageResource) throws SnapshotTransferException {
+		ParallelUploadHandler handler = null;
+		InputStream inputStream = null;
+		Boolean error = Boolean.FALSE;
+		long start = System.nanoTime();
+
+		try {
+			handler = new ParallelUploadHandler(storageResource.getSize());
+			SnapshotCompressor compressor = new SnapshotCompressor(keyName, compressionThreads, readBufferSize, partSize, partsInMemory);
+			inputStream = storageResource.getInputStream();
+			LOG.debug("Reading snapshot " + snapshotId + " and compressing it using " + compressionThreads + " threads in parts of size " + partSize
+					+ " bytes or greater");
+			compressor.compress(inputStream, handler);
+			LOG.info("Compressed snapshot " + snapshotId + " in " + TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) + " seconds: "
+					+ compressor.getRead() + ", " + compressor.getCompress() + " over " + compressionThreads + " threads");
+		} catch (SnapshotTransferException e) {
+			error = Boolean.TRUE;
+			throw e;
+		} catch (Exception e) {
+			error = Boolean.TRUE;
+			LOG.error("Failed to upload snapshot " + snapshotId + " due to: ", e);
+			throw new SnapshotTransferException("Failed to upload snapshot " + snapshotId + " due to: ", e);
+		} finally {
+			if (inputStream != null) {
+				try {
+					inputStream.close();
+				} catch (Exception e) {
+
+				}
+			}
+			if (error && handler != null) {
+				handler.abort();
+			}
+		}
+	}
+
 	/**
 	 * Cancel the snapshot upload. Checks if a multipart upload is in progress and aborts the upload. Marks the upload as aborted for
 	 * {@link SnapshotUploadCheckerTask} to clean up on its duty cycles
@@ -468,15 +530,28 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		validateInput();
 		loadTransferConfig();
 
+		if (downloadThreads > 1
+				&& (StorageResource.Type.FILE.equals(storageResource.getType()) || StorageResource.Type.BLOCK.equals(storageResource.getType()))) {
+			List<SnapshotPart> parts = lookupDownloadableParts();
+			if (parts != null) {
+				downloadInParallel(storageResource, parts);
+				return;
+			}
+			LOG.debug("Part information not available for snapshot " + snapshotId + ", downloading it as a single stream");
+		}
+
 		S3Object snapObj = download();
 
 		if (snapObj != null && snapObj.getObjectContent() != null) {
 			byte[] buffer = new byte[10 * readBufferSize];
 			int len;
-			GZIPInputStream gzipInputStream = null;
+			long totalBytesWritten = 0;
+			Long expectedSize = getUncompressedSize(snapObj.getObjectMetadata());
+			InputStream gzipInputStream = null;
 
 			try {
-				gzipInputStream = new GZIPInputStream(new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3), buffer.length * 2);
+				// Snapshots compressed in parts are multi-member gzip streams
+				gzipInputStream = SnapshotCompressor.decompress(new BufferedInputStream(snapObj.getObjectContent(), buffer.length * 3), buffer.length * 2);
 
 				if (storageResource.isDownloadSynchronous()) { // Download and unzip snapshot to the storage device directly
 					OutputStream outputStream = null;
@@ -485,7 +560,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 						while ((len = gzipInputStream.read(buffer)) > 0) {
 							// Write to the output stream
 							outputStream.write(buffer, 0, len);
+							totalBytesWritten += len;
 						}
+						checkUncompressedSize(expectedSize, totalBytesWritten);
 
 						// Close the streams and free the resources
 						gzipInputStream.close();
@@ -517,6 +594,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 						part.setIsLast(Boolean.FALSE);
 
 						while ((len = gzipInputStream.read(buffer)) > 0) {
+							totalBytesWritten += len;
 							if ((bytesWritten + len) < writeBufferSize) {
 								fileOutputStream.write(buffer, 0, len);
 								bytesWritten += len;
@@ -550,6 +628,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 						gzipInputStream.close();
 						fileOutputStream.close();
 						buffer = null;
+						checkUncompressedSize(expectedSize, totalBytesWritten);
 
 						// Add the last part to the queue
 						part.setSize(bytesWritten);
@@ -608,6 +687,139 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		}
 	}
 
+	/**
+	 * Looks up the parts the snapshot was uploaded in. Every part is compressed independently during upload, so the parts can be fetched using ranged GETs
+	 * and decompressed in parallel as long as the part information is complete and matches the object in objectstorage.
+	 * 
+	 * @return parts ordered by part number, or null if the snapshot cannot be downloaded in parts
+	 */
+	private List<SnapshotPart> lookupDownloadableParts() {
+		try {
+			List<SnapshotPart> uploadedParts;
+			try (TransactionResource db = Entities.transactionFor(SnapshotPart.class)) {
+				SnapshotPart example = new SnapshotPart(snapshotId, bucketName, keyName, null);
+				example.setScName(null); // Snapshot may have been uploaded by a storage controller in another partition
+				example.setState(SnapshotPartState.uploaded);
+				uploadedParts = Entities.query(example, Boolean.TRUE);
+			}
+
+			Map<String, List<SnapshotPart>> partsByUploadId = new HashMap<String, List<SnapshotPart>>();
+			for (SnapshotPart part : uploadedParts) {
+				if (part.getUploadId() != null) {
+					if (!partsByUploadId.containsKey(part.getUploadId())) {
+						partsByUploadId.put(part.getUploadId(), new ArrayList<SnapshotPart>());
+					}
+					partsByUploadId.get(part.getUploadId()).add(part);
+				}
+			}
+			if (partsByUploadId.isEmpty()) {
+				return null;
+			}
+
+			long contentLength = getObjectMetadata().getContentLength();
+			for (List<SnapshotPart> parts : partsByUploadId.values()) {
+				Collections.sort(parts, new Comparator<SnapshotPart>() {
+					@Override
+					public int compare(SnapshotPart p1, SnapshotPart p2) {
+						return p1.getPartNumber().compareTo(p2.getPartNumber());
+					}
+				});
+				if (isComplete(parts, contentLength)) {
+					return parts;
+				}
+			}
+		} catch (Exception e) {
+			LOG.debug("Unable to look up parts for snapshot " + snapshotId + " due to " + e.getMessage());
+		}
+		return null;
+	}
+
+	private static boolean isComplete(List<SnapshotPart> parts, long contentLength) {
+		if (parts.size() < 2) {
+			return false;
+		}
+		long compressedSize = 0;
+		long readOffset = 0;
+		for (int i = 0; i < parts.size(); i++) {
+			SnapshotPart part = parts.get(i);
+			if (part.getPartNumber() == null || part.getPartNumber() != i + 1 || part.getSize() == null || part.getInputFileReadOffset() == null
+					|| part.getInputFileReadOffset() != readOffset || part.getInputFileBytesRead() == null) {
+				return false;
+			}
+			compressedSize += part.getSize();
+			readOffset += part.getInputFileBytesRead();
+		}
+		return compressedSize == contentLength && Boolean.TRUE.equals(parts.get(parts.size() - 1).getIsLast());
+	}
+
+	/**
+	 * Downloads the parts of the snapshot using concurrent ranged GETs and decompresses them in parallel, writing every part at its offset in the storage
+	 * resource. Failed parts are fetched again individually so the parts that were written already are not downloaded again during this download. Completed
+	 * parts are not recorded, a download that fails or is interrupted is restarted from the first part.
+	 */
+	private void downloadInParallel(StorageResource storageResource, List<SnapshotPart> parts) throws SnapshotTransferException {
+		long uncompressedSize = 0;
+		for (SnapshotPart part : parts) {
+			uncompressedSize += part.getInputFileBytesRead();
+		}
+
+		LOG.info("Downloading snapshot " + snapshotId + " from objectstorage in " + parts.size() + " parts using " + downloadThreads + " threads");
+		SnapshotProgressCallback progressCallback = new SnapshotProgressCallback(snapshotId);
+		progressCallback.setUploadSize(uncompressedSize);
+		SnapshotCompressor.Throughput downloadThroughput = new SnapshotCompressor.Throughput("download");
+		ConcurrentLinkedQueue<EucaS3Client> clients = new ConcurrentLinkedQueue<EucaS3Client>();
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		FileChannel channel = null;
+		long start = System.nanoTime();
+
+		try {
+			if (StorageResource.Type.FILE.equals(storageResource.getType())) {
+				channel = FileChannel.open(Paths.get(storageResource.getPath()), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+						StandardOpenOption.TRUNCATE_EXISTING);
+			} else {
+				channel = FileChannel.open(Paths.get(storageResource.getPath()), StandardOpenOption.WRITE);
+			}
+
+			ExecutorService executor = Threads.lookup(Storage.class, DownloadPartTask.class).limitTo(downloadThreads);
+			long rangeStart = 0;
+			for (SnapshotPart part : parts) {
+				futures.add(executor.submit(new DownloadPartTask(part, rangeStart, channel, clients, progressCallback, downloadThroughput)));
+				rangeStart += part.getSize();
+			}
+
+			long bytesWritten = 0;
+			for (Future<Long> future : futures) {
+				bytesWritten += future.get(transferTimeout, TimeUnit.HOURS);
+			}
+			channel.close();
+
+			LOG.info("Downloaded snapshot " + snapshotId + " to storage backend: " + bytesWritten + " bytes in "
+					+ TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms, " + downloadThroughput + " over " + downloadThreads + " threads");
+		} catch (Exception e) {
+			for (Future<Long> future : futures) {
+				future.cancel(true);
+			}
+			LOG.warn("Failed to download snapshot " + snapshotId + " in parts", e);
+			throw new SnapshotTransferException("Failed to download snapshot " + snapshotId + " to storage backend", e);
+		} finally {
+			if (channel != null) {
+				try {
+					channel.close();
+				} catch (Exception e) {
+
+				}
+			}
+			EucaS3Client client;
+			while ((client = clients.poll()) != null) {
+				try {
+					client.close();
+				} catch (Exception e) {
+
+				}
+			}
+		}
+	}
+
 	/**
 	 * Delete the snapshot from objectstorage gateway
 	 */
@@ -631,6 +843,18 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 			throw new SnapshotTransferException("Failed to delete snapshot from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key="
 					+ keyName, e);
 		}
+
+		// Part information is retained after upload for downloading the snapshot in parts
+		try (TransactionResource db = Entities.transactionFor(SnapshotPart.class)) {
+			Map<String, String> parameters = new HashMap<String, String>();
+			parameters.put("snapshotId", snapshotId);
+			parameters.put("bucketName", bucketName);
+			parameters.put("keyName", keyName);
+			Entities.deleteAllMatching(SnapshotPart.class, "WHERE snapshot_id = :snapshotId AND bucket_name = :bucketName AND key_name = :keyName", parameters);
+			db.commit();
+		} catch (Exception e) {
+			LOG.debug("Failed to delete part information for snapshot " + snapshotId + " due to " + e.getMessage());
+		}
 	}
 
 	@Override
@@ -641,16 +865,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		ObjectMetadata metadata = null;
 		Map<String, String> userMetadata = null;
 		try {
-			metadata = retryAfterRefresh(new Function<GetObjectMetadataRequest, ObjectMetadata>() {
-
-				@Override
-				@Nullable
-				public ObjectMetadata apply(@Nullable GetObjectMetadataRequest arg0) {
-					eucaS3Client.refreshEndpoint();
-					return eucaS3Client.getObjectMetadata(arg0);
-				}
-
-			}, new GetObjectMetadataRequest(bucketName, keyName), REFRESH_TOKEN_RETRIES);
+			metadata = getObjectMetadata();
 		} catch (Exception e) {
 			LOG.warn("Failed to get snapshot metadata from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName + ", key=" + keyName);
 			throw new SnapshotTransferException("Failed to get snapshot metadata from objectstorage: snapshotId=" + snapshotId + ", bucket=" + bucketName
@@ -670,6 +885,41 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		}
 	}
 
+	/**
+	 * @return the uncompressed size from the object metadata, or null if not available
+	 */
+	@Nullable
+	private static Long getUncompressedSize(@Nullable ObjectMetadata metadata) {
+		Map<String, String> userMetadata;
+		if (metadata != null && (userMetadata = metadata.getUserMetadata()) != null && userMetadata.containsKey(UNCOMPRESSED_SIZE_KEY)) {
+			try {
+				return Long.parseLong(userMetadata.get(UNCOMPRESSED_SIZE_KEY));
+			} catch (NumberFormatException e) {
+				LOG.debug("Unable to parse uncompressed size from snapshot metadata: " + userMetadata.get(UNCOMPRESSED_SIZE_KEY));
+			}
+		}
+		return null;
+	}
+
+	private void checkUncompressedSize(@Nullable Long expectedSize, long bytesWritten) throws SnapshotTransferException {
+		if (expectedSize != null && expectedSize != bytesWritten) {
+			throw new SnapshotTransferException("Snapshot " + snapshotId + " decompressed to " + bytesWritten + " bytes, expected " + expectedSize + " bytes");
+		}
+	}
+
+	private ObjectMetadata getObjectMetadata() throws SnapshotTransferException {
+		return retryAfterRefresh(new Function<GetObjectMetadataRequest, ObjectMetadata>() {
+
+			@Override
+			@Nullable
+			public ObjectMetadata apply(@Nullable GetObjectMetadataRequest arg0) {
+				eucaS3Client.refreshEndpoint();
+				return eucaS3Client.getObjectMetadata(arg0);
+			}
+
+		}, new GetObjectMetadataRequest(bucketName, keyName), REFRESH_TOKEN_RETRIES);
+	}
+
 	private void initializeEucaS3Client() throws SnapshotTransferException {
 		if (role == null) {
 			try {
@@ -698,6 +948,9 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		this.poolSize = info.getMaxConcurrentSnapshotTransfers();
 		this.readBufferSize = info.getReadBuffferSizeInMB() * 1024 * 1024;
 		this.writeBufferSize = info.getWriteBufferSizeInMB() * 1024 * 1024;
+		this.compressionThreads = info.getSnapshotCompressionThreads();
+		this.partsInMemory = info.getSnapshotPartsInMemory();
+		this.downloadThreads = info.getSnapshotDownloadThreads();
 	}
 
 	private void validateInput() throws SnapshotTransferException {
@@ -795,6 +1048,10 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 			SnapshotProgressCallback callback) throws Exception {
 		callback.setUploadSize(actualSize);
 		FileInputStreamWithCallback snapInputStream = new FileInputStreamWithCallback(new File(compressedSnapFileName), callback);
+		return uploadSnapshotAsSingleObject(snapInputStream, actualSize, uncompressedSize);
+	}
+
+	private PutObjectResult uploadSnapshotAsSingleObject(InputStream snapInputStream, Long actualSize, Long uncompressedSize) throws Exception {
 		ObjectMetadata objectMetadata = new ObjectMetadata();
 		Map<String, String> userMetadataMap = new HashMap<String, String>();
 		userMetadataMap.put(UNCOMPRESSED_SIZE_KEY, String.valueOf(uncompressedSize)); // Send the uncompressed length as the metadata
@@ -853,20 +1110,28 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 			LOG.debug("Failed to update part status in DB. Moving on. " + part);
 		}
 
+		final ByteBuffer partBuffer = partBuffers.get(part.getPartNumber());
 		try {
 			LOG.debug("Uploading " + part);
-			UploadPartResult uploadPartResult = retryAfterRefresh(
-					new Function<UploadPartRequest, UploadPartResult>() {
-
-						@Override
-						@Nullable
-						public UploadPartResult apply(@Nullable UploadPartRequest arg0) {
-							eucaS3Client.refreshEndpoint();
-							return eucaS3Client.uploadPart(arg0);
-						}
-					},
-					new UploadPartRequest().withBucketName(part.getBucketName()).withKey(part.getKeyName()).withUploadId(part.getUploadId())
-							.withPartNumber(part.getPartNumber()).withPartSize(part.getSize()).withFile(new File(part.getFileName())), REFRESH_TOKEN_RETRIES);
+			UploadPartRequest uploadPartRequest = new UploadPartRequest().withBucketName(part.getBucketName()).withKey(part.getKeyName())
+					.withUploadId(part.getUploadId()).withPartNumber(part.getPartNumber()).withPartSize(part.getSize());
+			if (partBuffer == null) {
+				uploadPartRequest.setFile(new File(part.getFileName()));
+			}
+			long start = System.nanoTime();
+			UploadPartResult uploadPartResult = retryAfterRefresh(new Function<UploadPartRequest, UploadPartResult>() {
+
+				@Override
+				@Nullable
+				public UploadPartResult apply(@Nullable UploadPartRequest arg0) {
+					if (partBuffer != null) { // Fresh stream for each attempt
+						arg0.setInputStream(new ChannelBufferInputStream(ChannelBuffers.wrappedBuffer(partBuffer.duplicate())));
+					}
+					eucaS3Client.refreshEndpoint();
+					return eucaS3Client.uploadPart(arg0);
+				}
+			}, uploadPartRequest, REFRESH_TOKEN_RETRIES);
+			uploadThroughput.add(part.getSize(), System.nanoTime() - start);
 
 			progressCallback.update(part.getInputFileBytesRead());
 
@@ -887,6 +1152,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 			throw new SnapshotUploadPartException("Failed to upload part " + part, e);
 		} finally {
 			deleteFile(part.getFileName());
+			SnapshotCompressor.release(partBuffers.remove(part.getPartNumber()));
 		}
 	}
 
@@ -1027,6 +1293,117 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 		return output;
 	}
 
+	/**
+	 * Creates the snapshot and part entities for parts compressed by a {@link SnapshotCompressor} and queues them for upload. Multipart upload is initiated
+	 * once the first part is complete if there is more than one part, otherwise the snapshot is uploaded as a single object.
+	 */
+	class ParallelUploadHandler implements SnapshotCompressor.PartHandler {
+
+		private final Long uncompressedSize;
+		private final SnapshotProgressCallback progressCallback;
+		private final ArrayBlockingQueue<SnapshotPart> partQueue;
+		private SnapshotUploadInfo snapUploadInfo;
+		private SnapshotPart part;
+		private Future<List<PartETag>> uploadPartsFuture;
+		private Future<String> completeUploadFuture;
+
+		ParallelUploadHandler(Long uncompressedSize) throws Exception {
+			this.uncompressedSize = uncompressedSize;
+			this.progressCallback = new SnapshotProgressCallback(snapshotId);
+			this.partQueue = new ArrayBlockingQueue<SnapshotPart>(queueSize);
+			this.snapUploadInfo = SnapshotUploadInfo.create(snapshotId, bucketName, keyName);
+		}
+
+		@Override
+		public void partStarted(int partNumber, long readOffset, @Nullable String fileName) throws Exception {
+			part = SnapshotPart.createPart(snapUploadInfo, fileName, partNumber, readOffset);
+		}
+
+		@Override
+		public void partCompleted(SnapshotCompressor.CompressedPart compressedPart) throws Exception {
+			if (compressedPart.getPartNumber() == 1 && compressedPart.isLast()) {
+				uploadSingleObject(compressedPart);
+				return;
+			}
+
+			if (compressedPart.getPartNumber() > 1) {
+				part = part.updateStateCreated(compressedPart.getSize(), compressedPart.getBytesRead(), compressedPart.isLast());
+			} else {
+				LOG.info("Uploading snapshot " + snapshotId + " to objectstorage using multipart upload");
+				progressCallback.setUploadSize(uncompressedSize);
+				uploadId = initiateMulitpartUpload(uncompressedSize);
+				snapUploadInfo = snapUploadInfo.updateUploadId(uploadId);
+				part = part.updateStateCreated(uploadId, compressedPart.getSize(), compressedPart.getBytesRead(), Boolean.FALSE);
+				uploadPartsFuture = Threads.enqueue(serviceConfig, UploadPartTask.class, poolSize, new UploadPartTask(partQueue, progressCallback));
+			}
+
+			if (uploadPartsFuture.isDone()) {
+				// This task shouldn't be done until the last part is added. If it is done at this point, then something might have gone wrong
+				release(compressedPart);
+				throw new SnapshotUploadPartException("Error uploading parts, aborting part creation process. Check previous log messages for the exact error");
+			}
+
+			if (compressedPart.getBuffer() != null) {
+				partBuffers.put(compressedPart.getPartNumber(), compressedPart.getBuffer());
+			}
+			partQueue.put(part);
+
+			if (compressedPart.isLast()) {
+				snapUploadInfo = snapUploadInfo.updateStateCreatedParts(compressedPart.getPartNumber());
+				completeUploadFuture = Threads.enqueue(serviceConfig, CompleteMpuTask.class, poolSize, new CompleteMpuTask(uploadPartsFuture, snapUploadInfo,
+						compressedPart.getPartNumber()));
+			}
+		}
+
+		private void uploadSingleObject(SnapshotCompressor.CompressedPart compressedPart) throws Exception {
+			try {
+				part = part.updateStateCreated(compressedPart.getSize(), compressedPart.getBytesRead(), Boolean.TRUE);
+				snapUploadInfo = snapUploadInfo.updateStateCreatedParts(1);
+				LOG.info("Uploading snapshot " + snapshotId + " to objectstorage as a single object. Compressed size of snapshot (" + compressedPart.getSize()
+						+ " bytes) is less than minimum part size (" + partSize + " bytes) for multipart upload");
+				long start = System.nanoTime();
+				PutObjectResult putResult;
+				if (compressedPart.getBuffer() != null) {
+					putResult = uploadSnapshotAsSingleObject(new ChannelBufferInputStream(ChannelBuffers.wrappedBuffer(compressedPart.getBuffer())),
+							compressedPart.getSize(), uncompressedSize);
+				} else {
+					putResult = uploadSnapshotAsSingleObject(compressedPart.getFileName(), compressedPart.getSize(), uncompressedSize, progressCallback);
+				}
+				uploadThroughput.add(compressedPart.getSize(), System.nanoTime() - start);
+				markSnapshotAvailable();
+				try {
+					part = part.updateStateUploaded(putResult.getETag());
+					snapUploadInfo = snapUploadInfo.updateStateUploaded(putResult.getETag());
+				} catch (Exception e) {
+					LOG.debug("Failed to update status in DB for " + snapUploadInfo);
+				}
+			} finally {
+				release(compressedPart);
+			}
+		}
+
+		private void release(SnapshotCompressor.CompressedPart compressedPart) {
+			deleteFile(compressedPart.getFileName());
+			SnapshotCompressor.release(compressedPart.getBuffer());
+		}
+
+		void abort() {
+			abortUpload(snapUploadInfo);
+			if (uploadPartsFuture != null && !uploadPartsFuture.isDone()) {
+				uploadPartsFuture.cancel(true);
+			}
+			if (completeUploadFuture != null && !completeUploadFuture.isDone()) {
+				completeUploadFuture.cancel(true);
+			}
+			List<SnapshotPart> remainingParts = new ArrayList<SnapshotPart>();
+			partQueue.drainTo(remainingParts);
+			for (SnapshotPart remainingPart : remainingParts) {
+				deleteFile(remainingPart.getFileName());
+			}
+			partBuffers.clear();
+		}
+	}
+
 	class UploadPartTask implements Callable<List<PartETag>> {
 
 		private ArrayBlockingQueue<SnapshotPart> partQueue;
@@ -1101,7 +1478,7 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 						} catch (Exception e) {
 							LOG.debug("Failed to update status in DB for " + snapUploadInfo);
 						}
-						LOG.info("Uploaded snapshot " + snapUploadInfo.getSnapshotId() + " to objectstorage");
+						LOG.info("Uploaded snapshot " + snapUploadInfo.getSnapshotId() + " to objectstorage: " + uploadThroughput);
 					} catch (Exception e) {
 						error = Boolean.TRUE;
 						LOG.error("Failed to upload " + snapshotId + " due to an error completing the upload", e);
@@ -1187,4 +1564,90 @@ public class S3SnapshotTransfer implements SnapshotTransfer {
 			return returnValue;
 		}
 	}
+
+	/**
+	 * Fetches a part of the snapshot using a ranged GET, decompresses it and writes it at the part's offset in the storage resource. EucaS3Client is not
+	 * thread safe, so clients are taken from and returned to a queue shared by the tasks of a download. The part is fetched again on failure using a new
+	 * client.
+	 */
+	class DownloadPartTask implements Callable<Long> {
+
+		private SnapshotPart part;
+		private long rangeStart;
+		private FileChannel channel;
+		private ConcurrentLinkedQueue<EucaS3Client> clients;
+		private SnapshotProgressCallback progressCallback;
+		private SnapshotCompressor.Throughput throughput;
+
+		public DownloadPartTask(SnapshotPart part, long rangeStart, FileChannel channel, ConcurrentLinkedQueue<EucaS3Client> clients,
+				SnapshotProgressCallback progressCallback, SnapshotCompressor.Throughput throughput) {
+			this.part = part;
+			this.rangeStart = rangeStart;
+			this.channel = channel;
+			this.clients = clients;
+			this.progressCallback = progressCallback;
+			this.throughput = throughput;
+		}
+
+		@Override
+		public Long call() throws Exception {
+			int failedAttempts = 0;
+			while (true) {
+				EucaS3Client client = clients.poll();
+				boolean reusable = false;
+				long start = System.nanoTime();
+				try {
+					if (client == null) {
+						client = EucaS3ClientFactory.getEucaS3ClientByRole(role, (int) TimeUnit.HOURS.toSeconds(1));
+					}
+					long bytesWritten = downloadPart(client);
+					reusable = true;
+					throughput.add(part.getSize(), System.nanoTime() - start);
+					progressCallback.update(bytesWritten);
+					return bytesWritten;
+				} catch (Exception e) {
+					if (!channel.isOpen() || Thread.currentThread().isInterrupted() || ++failedAttempts >= Math.max(1, transferRetries)) {
+						throw new SnapshotTransferException("Failed to download part " + part.getPartNumber() + " of snapshot " + snapshotId, e);
+					}
+					LOG.debug("Failed to download part " + part.getPartNumber() + " of snapshot " + snapshotId + " due to " + e.getMessage() + ". Will retry");
+				} finally {
+					if (client != null) {
+						if (reusable) {
+							clients.offer(client);
+						} else {
+							try {
+								client.close();
+							} catch (Exception e) {
+
+							}
+						}
+					}
+				}
+			}
+		}
+
+		private long downloadPart(EucaS3Client client) throws Exception {
+			client.refreshEndpoint();
+			S3Object object = client.getObject(new GetObjectRequest(bucketName, keyName).withRange(rangeStart, rangeStart + part.getSize() - 1));
+			long position = part.getInputFileReadOffset();
+			long bytesWritten = 0;
+			byte[] buffer = new byte[readBufferSize];
+			int len;
+
+			try (InputStream inputStream = SnapshotCompressor.decompress(object.getObjectContent(), readBufferSize)) {
+				while ((len = inputStream.read(buffer)) > 0) {
+					ByteBuffer src = ByteBuffer.wrap(buffer, 0, len);
+					while (src.hasRemaining()) {
+						bytesWritten += channel.write(src, position + bytesWritten);
+					}
+				}
+			}
+
+			if (bytesWritten != part.getInputFileBytesRead()) {
+				throw new SnapshotTransferException("Part " + part.getPartNumber() + " of snapshot " + snapshotId + " decompressed to " + bytesWritten
+						+ " bytes, expected " + part.getInputFileBytesRead() + " bytes");
+			}
+			return bytesWritten;
+		}
+	}
 }
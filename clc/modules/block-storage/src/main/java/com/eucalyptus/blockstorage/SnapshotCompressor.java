@@ -0,0 +1,494 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import javax.annotation.Nullable;
+
+import org.apache.log4j.Logger;
+
+import com.eucalyptus.system.Threads;
+import com.google.common.io.ByteStreams;
+
+/**
+ * Reads and compresses a snapshot in blocks using a pool of compression threads.
+ *
+ * Each block is compressed independently as raw deflate data ending with a sync flush, so blocks can be appended to the current part in order until the part
+ * reaches the part size. A part is a single gzip member, the gzip header is written when the part is started and the checksum is calculated as blocks are
+ * appended. Parts can be decompressed independently of the other parts and the concatenated parts are a valid multi-member gzip stream, which should be
+ * read using {@link #decompress(InputStream, int)}.
+ *
+ * Memory use is bounded by the number of blocks in flight (two per compression thread) and the part being assembled. Parts are spooled to temporary files or
+ * to pooled direct buffers.
+ */
+public class SnapshotCompressor {
+
+	private static Logger LOG = Logger.getLogger(SnapshotCompressor.class);
+
+	private static final int MAX_IDLE_BUFFERS = 8;
+	private static final byte[] GZIP_HEADER = { (byte) 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0 };
+	private static final byte[] FINAL_BLOCK = { 0x03, 0x00 }; // empty final block with fixed codes
+	private static final BlockingQueue<ByteBuffer> idleBuffers = new ArrayBlockingQueue<ByteBuffer>(MAX_IDLE_BUFFERS);
+
+	private final String name;
+	private final int threads;
+	private final int blockSize;
+	private final long partSize;
+	private final boolean inMemory;
+	private final Throughput read = new Throughput("read");
+	private final Throughput compress = new Throughput("compress");
+
+	/**
+	 * @param name
+	 *            prefix for temporary part files
+	 * @param threads
+	 *            number of compression threads
+	 * @param blockSize
+	 *            uncompressed size of each compressed block
+	 * @param partSize
+	 *            minimum compressed size of each part other than the last
+	 * @param inMemory
+	 *            true to spool parts to direct buffers rather than temporary files
+	 */
+	public SnapshotCompressor(String name, int threads, int blockSize, long partSize, boolean inMemory) {
+		this.name = name;
+		this.threads = threads;
+		this.blockSize = blockSize;
+		this.partSize = partSize;
+		this.inMemory = inMemory;
+	}
+
+	/**
+	 * Receives parts in order as they are compressed. Invoked on the thread calling {@link SnapshotCompressor#compress(InputStream, PartHandler)}, blocking in
+	 * the handler stops reading and compression.
+	 */
+	public interface PartHandler {
+		/**
+		 * Called before any data is written for the part
+		 *
+		 * @param fileName
+		 *            the temporary file for the part, null if the part is in memory
+		 */
+		void partStarted(int partNumber, long readOffset, @Nullable String fileName) throws Exception;
+
+		/**
+		 * Called when the part is complete, the handler is responsible for deleting the file or releasing the buffer for the part.
+		 */
+		void partCompleted(CompressedPart part) throws Exception;
+	}
+
+	public static class CompressedPart {
+		private final int partNumber;
+		private final long readOffset;
+		private final long bytesRead;
+		private final long size;
+		private final boolean last;
+		private final String fileName;
+		private final ByteBuffer buffer;
+
+		CompressedPart(int partNumber, long readOffset, long bytesRead, long size, boolean last, @Nullable String fileName, @Nullable ByteBuffer buffer) {
+			this.partNumber = partNumber;
+			this.readOffset = readOffset;
+			this.bytesRead = bytesRead;
+			this.size = size;
+			this.last = last;
+			this.fileName = fileName;
+			this.buffer = buffer;
+		}
+
+		public int getPartNumber() {
+			return partNumber;
+		}
+
+		public long getReadOffset() {
+			return readOffset;
+		}
+
+		public long getBytesRead() {
+			return bytesRead;
+		}
+
+		public long getSize() {
+			return size;
+		}
+
+		public boolean isLast() {
+			return last;
+		}
+
+		@Nullable
+		public String getFileName() {
+			return fileName;
+		}
+
+		/**
+		 * The compressed data for an in memory part, positioned for reading.
+		 */
+		@Nullable
+		public ByteBuffer getBuffer() {
+			return buffer;
+		}
+	}
+
+	/**
+	 * Read and compress the input stream, the stream is not closed.
+	 *
+	 * @return the total compressed size
+	 */
+	public long compress(InputStream inputStream, PartHandler handler) throws Exception {
+		final ExecutorService executor = Threads.lookup(Storage.class, SnapshotCompressor.class).limitTo(threads);
+		final int maxBlocksInFlight = 2 * threads;
+		final BlockingQueue<byte[]> freeBlocks = new ArrayBlockingQueue<byte[]>(maxBlocksInFlight);
+		final Deque<Future<CompressedBlock>> pending = new ArrayDeque<Future<CompressedBlock>>();
+		PartSpool spool = null;
+		long readOffset = 0L;
+		long totalSize = 0L;
+		int partNumber = 0;
+		boolean eof = false;
+
+		try {
+			while (!eof || !pending.isEmpty()) {
+				if (!eof && pending.size() < maxBlocksInFlight) {
+					byte[] block = freeBlocks.poll();
+					if (block == null) {
+						block = new byte[blockSize];
+					}
+					long start = System.nanoTime();
+					int len = ByteStreams.read(inputStream, block, 0, blockSize);
+					read.add(len, System.nanoTime() - start);
+					eof = len < blockSize;
+					if (len > 0) {
+						pending.add(executor.submit(new CompressTask(block, len)));
+					}
+					if (pending.isEmpty() || !pending.peekFirst().isDone()) {
+						continue;
+					}
+				}
+
+				CompressedBlock compressed = pending.removeFirst().get();
+				if (spool != null && spool.size() >= partSize) {
+					CompressedPart part = spool.complete(false);
+					spool = null;
+					totalSize += part.getSize();
+					handler.partCompleted(part);
+				}
+				if (spool == null) {
+					spool = new PartSpool(++partNumber, readOffset);
+					handler.partStarted(spool.partNumber, readOffset, spool.fileName);
+				}
+				spool.append(compressed);
+				readOffset += compressed.uncompressedLength;
+				freeBlocks.offer(compressed.block);
+			}
+
+			if (spool == null) { // empty input, write an empty gzip member
+				spool = new PartSpool(++partNumber, readOffset);
+				handler.partStarted(spool.partNumber, readOffset, spool.fileName);
+			}
+			CompressedPart part = spool.complete(true);
+			spool = null;
+			totalSize += part.getSize();
+			handler.partCompleted(part);
+
+			LOG.debug("Compressed " + name + " using " + threads + " threads. " + read + ", " + compress);
+			return totalSize;
+		} finally {
+			for (Future<CompressedBlock> future : pending) {
+				future.cancel(true);
+			}
+			if (spool != null) {
+				spool.discard();
+			}
+		}
+	}
+
+	/**
+	 * Decompress a gzip stream that may contain multiple members, such as the concatenated parts of a snapshot.
+	 *
+	 * GZIPInputStream only continues with the next member if the underlying stream reports available data when a member ends (JDK-7036144), for a network
+	 * stream that is often not the case and the output would be silently truncated. The underlying stream is wrapped to report available data until it is at
+	 * end of stream.
+	 */
+	public static InputStream decompress(InputStream inputStream, int bufferSize) throws IOException {
+		return new GZIPInputStream(new MemberBoundaryInputStream(inputStream), bufferSize);
+	}
+
+	public Throughput getRead() {
+		return read;
+	}
+
+	public Throughput getCompress() {
+		return compress;
+	}
+
+	/**
+	 * Release the buffer for an in memory part once it is no longer needed.
+	 */
+	public static void release(@Nullable ByteBuffer buffer) {
+		if (buffer != null && buffer.isDirect()) {
+			buffer.clear();
+			idleBuffers.offer(buffer);
+		}
+	}
+
+	private static ByteBuffer acquire(int capacity) {
+		ByteBuffer buffer;
+		while ((buffer = idleBuffers.poll()) != null) {
+			if (buffer.capacity() >= capacity) {
+				return buffer;
+			}
+		}
+		return ByteBuffer.allocateDirect(capacity);
+	}
+
+	/**
+	 * Bytes processed and time taken for a stage of a transfer. For a stage run by multiple threads the time is the total across threads.
+	 */
+	public static class Throughput {
+		private final String stage;
+		private final AtomicLong bytes = new AtomicLong();
+		private final AtomicLong nanos = new AtomicLong();
+
+		public Throughput(String stage) {
+			this.stage = stage;
+		}
+
+		public void add(long bytes, long nanos) {
+			this.bytes.addAndGet(Math.max(0, bytes));
+			this.nanos.addAndGet(nanos);
+		}
+
+		public long getBytes() {
+			return bytes.get();
+		}
+
+		public long getNanos() {
+			return nanos.get();
+		}
+
+		/**
+		 * @return MB/s or 0 if nothing was processed
+		 */
+		public double getMegabytesPerSecond() {
+			long elapsed = nanos.get();
+			return elapsed > 0 ? (bytes.get() / (1024d * 1024d)) / (elapsed / (double) TimeUnit.SECONDS.toNanos(1)) : 0d;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %d bytes in %d ms (%.1f MB/s)", stage, bytes.get(), TimeUnit.NANOSECONDS.toMillis(nanos.get()), getMegabytesPerSecond());
+		}
+	}
+
+	private static class CompressedBlock {
+		private final byte[] block;
+		private final int uncompressedLength;
+		private final BlockOutputStream data;
+
+		CompressedBlock(byte[] block, int uncompressedLength, BlockOutputStream data) {
+			this.block = block;
+			this.uncompressedLength = uncompressedLength;
+			this.data = data;
+		}
+	}
+
+	/**
+	 * Reports available data until end of stream is reached
+	 */
+	private static class MemberBoundaryInputStream extends FilterInputStream {
+		private boolean eof;
+
+		MemberBoundaryInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			eof = b < 0;
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			eof = read < 0;
+			return read;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return eof ? 0 : Math.max(1, super.available());
+		}
+	}
+
+	/**
+	 * Exposes the internal buffer to avoid copying compressed data
+	 */
+	private static class BlockOutputStream extends ByteArrayOutputStream {
+		BlockOutputStream(int size) {
+			super(size);
+		}
+
+		void writeTo(ByteBuffer buffer) {
+			buffer.put(buf, 0, count);
+		}
+	}
+
+	/**
+	 * Compresses a block without a preset dictionary, so the block does not depend on data in previous blocks. The block is retained for calculating the part
+	 * checksum.
+	 */
+	private class CompressTask implements Callable<CompressedBlock> {
+		private final byte[] block;
+		private final int length;
+
+		CompressTask(byte[] block, int length) {
+			this.block = block;
+			this.length = length;
+		}
+
+		@Override
+		public CompressedBlock call() throws IOException {
+			long start = System.nanoTime();
+			Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				BlockOutputStream out = new BlockOutputStream(Math.max(64, length / 2));
+				byte[] buffer = new byte[64 * 1024];
+				int len;
+				deflater.setInput(block, 0, length);
+				do {
+					len = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+					out.write(buffer, 0, len);
+				} while (len == buffer.length);
+				return new CompressedBlock(block, length, out);
+			} finally {
+				deflater.end();
+				compress.add(length, System.nanoTime() - start);
+			}
+		}
+	}
+
+	private class PartSpool {
+		private final int partNumber;
+		private final long readOffset;
+		private final String fileName;
+		private final OutputStream outputStream;
+		private final ByteBuffer buffer;
+		private final CRC32 crc = new CRC32();
+		private long bytesRead;
+		private long size;
+
+		PartSpool(int partNumber, long readOffset) throws IOException {
+			this.partNumber = partNumber;
+			this.readOffset = readOffset;
+			if (inMemory) {
+				// Parts are completed on the first block after reaching the part size
+				this.buffer = acquire((int) Math.min(Integer.MAX_VALUE, partSize + 2L * blockSize + 1024));
+				this.fileName = null;
+				this.outputStream = null;
+			} else {
+				Path filePath = Files.createTempFile(name + '-', '-' + String.valueOf(partNumber));
+				this.buffer = null;
+				this.fileName = filePath.toString();
+				this.outputStream = new FileOutputStream(fileName);
+			}
+			write(GZIP_HEADER);
+		}
+
+		long size() {
+			return size;
+		}
+
+		void append(CompressedBlock block) throws IOException {
+			if (buffer != null) {
+				block.data.writeTo(buffer);
+			} else {
+				block.data.writeTo(outputStream);
+			}
+			crc.update(block.block, 0, block.uncompressedLength);
+			bytesRead += block.uncompressedLength;
+			size += block.data.size();
+		}
+
+		CompressedPart complete(boolean last) throws IOException {
+			write(FINAL_BLOCK);
+			ByteBuffer trailer = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN);
+			trailer.putInt((int) crc.getValue());
+			trailer.putInt((int) bytesRead);
+			write(trailer.array());
+			if (buffer != null) {
+				buffer.flip();
+			} else {
+				outputStream.close();
+			}
+			return new CompressedPart(partNumber, readOffset, bytesRead, size, last, fileName, buffer);
+		}
+
+		private void write(byte[] data) throws IOException {
+			if (buffer != null) {
+				buffer.put(data);
+			} else {
+				outputStream.write(data);
+			}
+			size += data.length;
+		}
+
+		void discard() {
+			if (buffer != null) {
+				release(buffer);
+			} else {
+				try {
+					outputStream.close();
+				} catch (Exception e) {
+
+				}
+				try {
+					Files.deleteIfExists(Paths.get(fileName));
+				} catch (IOException e) {
+					LOG.debug("Failed to delete file: " + fileName);
+				}
+			}
+		}
+	}
+}
@@ -109,12 +109,12 @@ public class SnapshotProgressCallback implements CallBack {
 	}
 	
 	// Set the size before calling update()
-	public void setUploadSize(long uploadSize) {
+	public synchronized void setUploadSize(long uploadSize) {
 		this.uploadSize = uploadSize;
 	}
 
 	@Override
-	public void update(final long bytesTransferred) {
+	public synchronized void update(final long bytesTransferred) {
 		if (this.uploadSize > 0) {
 			this.bytesTransferred += bytesTransferred;
 			int progress = (int) ((this.bytesTransferred * 100) / uploadSize);
@@ -140,6 +140,11 @@ public class SnapshotUploadCheckerTask extends CheckerTask {
 			List<SnapshotUploadInfo> snapshotUploadInfoList = Entities.query(new SnapshotUploadInfo(), Boolean.FALSE, criterion, Collections.EMPTY_MAP);
 			for (SnapshotUploadInfo snapUploadInfo : snapshotUploadInfoList) {
 				LOG.debug("Deleting expired entity from DB " + snapUploadInfo);
+				if (SnapshotUploadState.uploaded.equals(snapUploadInfo.getState())) {
+					// Parts of uploaded snapshots are retained for downloading in parts and deleted along with the snapshot
+					Entities.delete(snapUploadInfo);
+					continue;
+				}
 				Map<String, String> parameters = Maps.newHashMap();
 				parameters.put("snapshotId", snapUploadInfo.getSnapshotId());
 				parameters.put("bucketName", snapUploadInfo.getBucketName());
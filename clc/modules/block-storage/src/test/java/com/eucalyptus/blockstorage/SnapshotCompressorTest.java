@@ -0,0 +1,158 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.blockstorage;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import com.google.common.io.ByteStreams;
+
+public class SnapshotCompressorTest {
+
+	private static final int BLOCK_SIZE = 64 * 1024;
+	private static final long PART_SIZE = 100 * 1024;
+
+	@Test
+	public void testPartsOnDisk() throws Exception {
+		byte[] input = input(2 * 1024 * 1024 + 17);
+		List<byte[]> parts = compress(input, false);
+		assertParts(input, parts);
+	}
+
+	@Test
+	public void testPartsInMemory() throws Exception {
+		byte[] input = input(2 * 1024 * 1024 + 17);
+		List<byte[]> parts = compress(input, true);
+		assertParts(input, parts);
+	}
+
+	@Test
+	public void testInputMultipleOfBlockSize() throws Exception {
+		byte[] input = input(16 * BLOCK_SIZE);
+		assertParts(input, compress(input, false));
+	}
+
+	@Test
+	public void testEmptyInput() throws Exception {
+		List<byte[]> parts = compress(new byte[0], false);
+		Assert.assertEquals("Parts", 1, parts.size());
+		Assert.assertEquals("Decompressed", 0, decompress(parts.get(0)).length);
+	}
+
+	private static void assertParts(byte[] input, List<byte[]> parts) throws Exception {
+		Assert.assertTrue("Expected multiple parts", parts.size() > 1);
+		ByteArrayOutputStream all = new ByteArrayOutputStream();
+		ByteArrayOutputStream concatenated = new ByteArrayOutputStream();
+		for (int i = 0; i < parts.size(); i++) {
+			if (i < parts.size() - 1) {
+				Assert.assertTrue("Part " + (i + 1) + " smaller than part size", parts.get(i).length >= PART_SIZE);
+			}
+			all.write(decompress(parts.get(i))); // each part is independently decompressible
+			concatenated.write(parts.get(i));
+		}
+		Assert.assertArrayEquals("Parts decompressed", input, all.toByteArray());
+		try (InputStream in = SnapshotCompressor.decompress(new UnavailableInputStream(concatenated.toByteArray()), 512)) {
+			Assert.assertArrayEquals("Concatenated parts decompressed from network stream", input, ByteStreams.toByteArray(in));
+		}
+	}
+
+	private static List<byte[]> compress(byte[] input, boolean inMemory) throws Exception {
+		final List<byte[]> parts = new ArrayList<byte[]>();
+		final long[] expectedOffset = { 0L };
+		SnapshotCompressor compressor = new SnapshotCompressor("snap-test", 4, BLOCK_SIZE, PART_SIZE, inMemory);
+		compressor.compress(new ByteArrayInputStream(input), new SnapshotCompressor.PartHandler() {
+			@Override
+			public void partStarted(int partNumber, long readOffset, String fileName) {
+				Assert.assertEquals("Part number", parts.size() + 1, partNumber);
+				Assert.assertEquals("Read offset", expectedOffset[0], readOffset);
+			}
+
+			@Override
+			public void partCompleted(SnapshotCompressor.CompressedPart part) throws Exception {
+				expectedOffset[0] += part.getBytesRead();
+				byte[] data;
+				if (part.getBuffer() != null) {
+					ByteBuffer buffer = part.getBuffer();
+					data = new byte[buffer.remaining()];
+					buffer.get(data);
+					SnapshotCompressor.release(buffer);
+				} else {
+					data = Files.readAllBytes(Paths.get(part.getFileName()));
+					Files.delete(Paths.get(part.getFileName()));
+				}
+				Assert.assertEquals("Part size", part.getSize(), data.length);
+				parts.add(data);
+			}
+		});
+		Assert.assertEquals("Bytes read", input.length, compressor.getRead().getBytes());
+		return parts;
+	}
+
+	/**
+	 * Each part is a single gzip member so must be fully decompressed even if no data is reported as available
+	 */
+	private static byte[] decompress(byte[] data) throws Exception {
+		try (InputStream in = new GZIPInputStream(new UnavailableInputStream(data), 512)) {
+			return ByteStreams.toByteArray(in);
+		}
+	}
+
+	/**
+	 * Reports no available data, as for a network stream
+	 */
+	private static class UnavailableInputStream extends FilterInputStream {
+		UnavailableInputStream(byte[] data) {
+			super(new ByteArrayInputStream(data));
+		}
+
+		@Override
+		public int available() {
+			return 0;
+		}
+	}
+
+	/**
+	 * Mix of random (incompressible) and repeated data
+	 */
+	private static byte[] input(int length) {
+		byte[] input = new byte[length];
+		Random random = new Random(42);
+		for (int i = 0; i < length; i += 4096) {
+			if ((i / 4096) % 2 == 0) {
+				byte[] chunk = new byte[Math.min(4096, length - i)];
+				random.nextBytes(chunk);
+				System.arraycopy(chunk, 0, input, i, chunk.length);
+			}
+		}
+		return input;
+	}
+}
@@ -119,6 +119,30 @@ public class CloudWatchBackendService {
   @ConfigurableField(initial = "false", description = "Set this to true to stop cloud watch alarm evaluation and new alarm/metric data entry")
   public static volatile Boolean DISABLE_CLOUDWATCH_SERVICE = false;
 
+  @ConfigurableField(initial = "100000", description = "Maximum number of absolute metric data points queued for processing before PutMetricData requests are throttled")
+  public static volatile Integer MAX_QUEUED_METRIC_DATA = 100000;
+
+  @ConfigurableField(initial = "100000", description = "Maximum number of aggregated metric data points held in memory before PutMetricData requests are throttled")
+  public static volatile Integer MAX_METRIC_DATA_ROLLUP_BUCKETS = 100000;
+
+  @ConfigurableField(initial = "4", description = "Number of metric tables written in parallel when flushing metric data")
+  public static volatile Integer METRIC_FLUSH_PARALLELISM = 4;
+
+  @ConfigurableField(initial = "1000", description = "Maximum number of metric data rows written per transaction when flushing metric data")
+  public static volatile Integer METRIC_FLUSH_BATCH_SIZE = 1000;
+
+  @ConfigurableField(initial = "3", description = "Number of hours of recent metric data cached in memory for GetMetricStatistics, 0 to disable")
+  public static volatile Integer METRIC_STATISTICS_CACHE_HOURS = 3;
+
+  @ConfigurableField(initial = "100000", description = "Maximum number of metric/dimension combinations cached in memory for GetMetricStatistics")
+  public static volatile Integer METRIC_STATISTICS_CACHE_MAX_SERIES = 100000;
+
+  @ConfigurableField(initial = "5", description = "Interval in minutes between evaluations of all alarms, other alarms are evaluated when metric data arrives")
+  public static volatile Integer ALARM_FULL_EVALUATION_INTERVAL_MINUTES = 5;
+
+  @ConfigurableField(initial = "500000", description = "Maximum number of list metrics indexed in memory, 0 to disable the index")
+  public static volatile Integer LIST_METRIC_INDEX_MAX_METRICS = 500000;
+
   static {
     // TODO: make this configurable
     ExecutorService fixedThreadPool = Executors.newFixedThreadPool(5);
@@ -213,7 +237,9 @@ public class CloudWatchBackendService {
       if (metricType == MetricType.System && !privileged) {
         throw new InvalidParameterValueException("The value AWS/ for parameter Namespace is invalid.");
       }
-      MetricDataQueue.getInstance().insertMetricData(ownerFullName.getAccountNumber(), namespace, metricData, metricType);
+      if (!MetricDataQueue.getInstance().insertMetricData(ownerFullName.getAccountNumber(), namespace, metricData, metricType)) {
+        throw new ThrottlingException("Rate exceeded");
+      }
     } catch (Exception ex) {
       handleException(ex);
     }
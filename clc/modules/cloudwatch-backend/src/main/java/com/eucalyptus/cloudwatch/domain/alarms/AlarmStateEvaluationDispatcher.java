@@ -37,8 +37,12 @@
 
 package com.eucalyptus.cloudwatch.domain.alarms;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 import javax.persistence.EntityTransaction;
 
@@ -48,32 +52,80 @@ import org.hibernate.Criteria;
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.cloudwatch.backend.CloudWatchBackendService;
 import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
+import com.eucalyptus.cloudwatch.domain.metricdata.SimpleMetricEntity;
 import com.eucalyptus.component.Topology;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
 
+/**
+ * Dispatches alarm state evaluation.
+ *
+ * Alarms are evaluated when data for their metric has been flushed, when
+ * they are created or updated and when a period has passed since they were
+ * last evaluated so that alarms without new data transition to
+ * INSUFFICIENT_DATA and repeat their actions. All alarms are also evaluated
+ * periodically.
+ */
 public class AlarmStateEvaluationDispatcher implements Runnable {
   private static final Logger LOG = Logger.getLogger(AlarmStateEvaluationDispatcher.class);
+  private static final Object changedMetricsLock = new Object();
+  private static ChangedMetrics changedMetrics = new ChangedMetrics();
   ExecutorService executorService;
+  private long lastFullEvaluation = 0L;
+  private Map<String, EvaluationState> evaluationStates = Maps.newHashMap();
 
   public AlarmStateEvaluationDispatcher(ExecutorService executorService) {
     super();
     this.executorService = executorService;
   }
 
+  /**
+   * Notification of metric data that has been flushed to the database.
+   */
+  public static void metricDataFlushed(Collection<SimpleMetricEntity> dataBatch) {
+    synchronized (changedMetricsLock) {
+      changedMetrics.addAll(dataBatch);
+    }
+  }
+
   @Override
   public void run() {
     if (!CloudWatchBackendService.DISABLE_CLOUDWATCH_SERVICE && Bootstrap.isOperational( ) && Topology.isEnabledLocally( CloudWatchBackend.class )) {
       LOG.debug("Kicking off AlarmStateEvaluationDispatcher");
+      final ChangedMetrics changes;
+      synchronized (changedMetricsLock) {
+        changes = changedMetrics;
+        changedMetrics = new ChangedMetrics();
+      }
+      final long now = System.currentTimeMillis();
+      final boolean fullEvaluation = now - lastFullEvaluation >=
+          TimeUnit.MINUTES.toMillis(CloudWatchBackendService.ALARM_FULL_EVALUATION_INTERVAL_MINUTES);
       EntityTransaction db = Entities.get(AlarmEntity.class);
       try {
         Criteria criteria = Entities.createCriteria(AlarmEntity.class);
         List<AlarmEntity> results = (List<AlarmEntity>) criteria.list();
+        final Map<String, EvaluationState> states = Maps.newHashMap();
+        int submitted = 0;
         for (AlarmEntity alarmEntity: results) {
-          LOG.debug("Submitting job for " + alarmEntity.getAlarmName());
-          executorService.submit(new AlarmStateEvaluationWorker(alarmEntity.getAccountId(), alarmEntity.getAlarmName()));
+          final String alarmKey = alarmEntity.getAccountId() + "/" + alarmEntity.getAlarmName();
+          EvaluationState state = evaluationStates.get(alarmKey);
+          if (fullEvaluation || state == null || state.isDue(alarmEntity, now) || changes.affects(alarmEntity)) {
+            LOG.debug("Submitting job for " + alarmEntity.getAlarmName());
+            executorService.submit(new AlarmStateEvaluationWorker(alarmEntity.getAccountId(), alarmEntity.getAlarmName()));
+            state = new EvaluationState(alarmEntity.getAlarmConfigurationUpdatedTimestamp(), now);
+            submitted++;
+          }
+          states.put(alarmKey, state);
         }
         db.commit();
+        evaluationStates = states;
+        if (fullEvaluation) {
+          lastFullEvaluation = now;
+        }
+        LOG.debug("Timing:alarms=" + results.size() + ",changedMetrics=" + changes.size() + ",submitted=" + submitted
+            + ",fullEvaluation=" + fullEvaluation);
       } catch (RuntimeException ex) {
         Logs.extreme().error(ex, ex); // TODO the exception will be swallowed...
         throw ex;
@@ -83,4 +135,26 @@ public class AlarmStateEvaluationDispatcher implements Runnable {
       }
     }
   }
+
+  private static final class EvaluationState {
+    private final Date configurationUpdated;
+    private final long lastSubmitted;
+
+    private EvaluationState(Date configurationUpdated, long lastSubmitted) {
+      this.configurationUpdated = configurationUpdated;
+      this.lastSubmitted = lastSubmitted;
+    }
+
+    /**
+     * Evaluation is due if the alarm was updated or a period boundary has
+     * passed since the last evaluation.
+     */
+    private boolean isDue(AlarmEntity alarmEntity, long now) {
+      if (!Objects.equal(configurationUpdated, alarmEntity.getAlarmConfigurationUpdatedTimestamp())) {
+        return true;
+      }
+      final long periodMillis = TimeUnit.SECONDS.toMillis(Math.max(1, alarmEntity.getPeriod() == null ? 60 : alarmEntity.getPeriod()));
+      return now >= (lastSubmitted / periodMillis + 1) * periodMillis;
+    }
+  }
 }
@@ -0,0 +1,110 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.alarms;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.domain.metricdata.SimpleMetricEntity;
+import com.google.common.base.Objects;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Metrics with data flushed since alarms were last evaluated.
+ *
+ * System metrics are stored for every subset of their dimensions so an
+ * alarm on a system metric is affected by data with a superset of the
+ * alarm dimensions, custom metrics must match exactly.
+ */
+public class ChangedMetrics {
+
+  private final Map<MetricKey, Set<Map<String, String>>> dimensionsByMetric = Maps.newHashMap( );
+
+  public void addAll( final Collection<SimpleMetricEntity> metrics ) {
+    for ( final SimpleMetricEntity metric : metrics ) {
+      final MetricKey key =
+          new MetricKey( metric.getAccountId( ), metric.getNamespace( ), metric.getMetricName( ), metric.getMetricType( ) );
+      Set<Map<String, String>> dimensions = dimensionsByMetric.get( key );
+      if ( dimensions == null ) {
+        dimensions = Sets.newHashSet( );
+        dimensionsByMetric.put( key, dimensions );
+      }
+      dimensions.add( metric.getDimensionMap( ) == null ?
+          Maps.<String, String>newHashMap( ) :
+          Maps.newHashMap( metric.getDimensionMap( ) ) );
+    }
+  }
+
+  public boolean affects( final AlarmEntity alarmEntity ) {
+    final Set<Map<String, String>> dimensions = dimensionsByMetric.get( new MetricKey(
+        alarmEntity.getAccountId( ), alarmEntity.getNamespace( ), alarmEntity.getMetricName( ), alarmEntity.getMetricType( ) ) );
+    if ( dimensions != null ) {
+      final Map<String, String> alarmDimensions = alarmEntity.getDimensionMap( );
+      for ( final Map<String, String> metricDimensions : dimensions ) {
+        if ( alarmEntity.getMetricType( ) == MetricType.System ?
+            metricDimensions.entrySet( ).containsAll( alarmDimensions.entrySet( ) ) :
+            metricDimensions.equals( alarmDimensions ) ) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public int size( ) {
+    return dimensionsByMetric.size( );
+  }
+
+  private static final class MetricKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+
+    private MetricKey( final String accountId,
+                       final String namespace,
+                       final String metricName,
+                       final MetricType metricType ) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final MetricKey that = (MetricKey) o;
+      return Objects.equal( accountId, that.accountId ) &&
+          Objects.equal( namespace, that.namespace ) &&
+          Objects.equal( metricName, that.metricName ) &&
+          metricType == that.metricType;
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hashCode( accountId, namespace, metricName, metricType );
+    }
+  }
+}
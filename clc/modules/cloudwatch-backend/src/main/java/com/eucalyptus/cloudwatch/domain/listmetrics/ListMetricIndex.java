@@ -0,0 +1,292 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.listmetrics;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory index of the list metrics known for each account.
+ *
+ * Accounts are loaded in full from the database on first use and then
+ * maintained as new metrics are written, so that metrics that were already
+ * seen can skip database work and ListMetrics can be served from memory.
+ *
+ * Accounts that did not fit in the index are remembered until metrics are
+ * expired or the index is cleared so they are not repeatedly loaded.
+ *
+ * Loading is not atomic with the database query, so loaded metrics are
+ * merged with any already indexed for the account and a load is rejected if
+ * metrics were expired or the index cleared after the query started.
+ */
+public class ListMetricIndex {
+
+  private final Map<String, Map<ListMetricKey, ListMetric>> metricsByAccount = Maps.newHashMap( );
+  private final Set<String> unindexedAccounts = Sets.newHashSet( );
+  private final int maxMetrics;
+  private int size;
+  private long generation;
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+
+  public ListMetricIndex( final int maxMetrics ) {
+    this.maxMetrics = maxMetrics;
+  }
+
+  public synchronized boolean isLoaded( final String accountId ) {
+    return metricsByAccount.containsKey( accountId );
+  }
+
+  /**
+   * Was the account previously too large to load?
+   */
+  public synchronized boolean isUnindexed( final String accountId ) {
+    return unindexedAccounts.contains( accountId );
+  }
+
+  /**
+   * The generation changes when metrics are expired or the index is cleared.
+   */
+  public synchronized long getGeneration( ) {
+    return generation;
+  }
+
+  /**
+   * Load all metrics for an account, merging with any existing entries.
+   *
+   * Metrics that are already indexed are only replaced by a loaded metric
+   * with a later update time, so metrics added while the load was queried
+   * are retained.
+   *
+   * @param generation The generation when the metrics were queried
+   * @return false if the index is full or the load is stale
+   */
+  public synchronized boolean load( final String accountId,
+                                    final Collection<ListMetric> metrics,
+                                    final long generation ) {
+    if ( generation != this.generation ) {
+      return false;
+    }
+    Map<ListMetricKey, ListMetric> accountMetrics = metricsByAccount.get( accountId );
+    if ( accountMetrics == null ) {
+      accountMetrics = Maps.newHashMap( );
+    }
+    final Map<ListMetricKey, ListMetric> loadedMetrics = Maps.newHashMap( );
+    for ( final ListMetric metric : metrics ) {
+      final ListMetricKey key = new ListMetricKey( metric );
+      final ListMetric existing = accountMetrics.get( key );
+      if ( existing == null || existing.getLastUpdateTimestamp( ).before( metric.getLastUpdateTimestamp( ) ) ) {
+        loadedMetrics.put( key, metric );
+      }
+    }
+    int added = 0;
+    for ( final ListMetricKey key : loadedMetrics.keySet( ) ) {
+      if ( !accountMetrics.containsKey( key ) ) added++;
+    }
+    if ( size + added > maxMetrics ) {
+      final Map<ListMetricKey, ListMetric> previous = metricsByAccount.remove( accountId );
+      if ( previous != null ) size -= previous.size( );
+      unindexedAccounts.add( accountId );
+      return false;
+    }
+    unindexedAccounts.remove( accountId );
+    accountMetrics.putAll( loadedMetrics );
+    metricsByAccount.put( accountId, accountMetrics );
+    size += added;
+    return true;
+  }
+
+  /**
+   * Lookup a metric, the account must be loaded.
+   */
+  public synchronized ListMetric lookup( final ListMetric metric ) {
+    final Map<ListMetricKey, ListMetric> accountMetrics = metricsByAccount.get( metric.getAccountId( ) );
+    final ListMetric found = accountMetrics == null ? null : accountMetrics.get( new ListMetricKey( metric ) );
+    if ( found == null ) {
+      misses.incrementAndGet( );
+    } else {
+      hits.incrementAndGet( );
+    }
+    return found;
+  }
+
+  /**
+   * Add or replace metrics for loaded accounts.
+   */
+  public synchronized void update( final Collection<ListMetric> metrics ) {
+    for ( final ListMetric metric : metrics ) {
+      final Map<ListMetricKey, ListMetric> accountMetrics = metricsByAccount.get( metric.getAccountId( ) );
+      if ( accountMetrics != null && accountMetrics.put( new ListMetricKey( metric ), metric ) == null ) {
+        size++;
+      }
+    }
+    if ( size > maxMetrics ) {
+      clear( );
+    }
+  }
+
+  /**
+   * Remove metrics last updated before the given date.
+   */
+  public synchronized void expire( final Date before ) {
+    for ( final Map<ListMetricKey, ListMetric> accountMetrics : metricsByAccount.values( ) ) {
+      for ( final Iterator<ListMetric> metricIterator = accountMetrics.values( ).iterator( ); metricIterator.hasNext( ); ) {
+        if ( metricIterator.next( ).getLastUpdateTimestamp( ).before( before ) ) {
+          metricIterator.remove( );
+          size--;
+        }
+      }
+    }
+    unindexedAccounts.clear( );
+    generation++;
+  }
+
+  public synchronized void clear( ) {
+    metricsByAccount.clear( );
+    unindexedAccounts.clear( );
+    size = 0;
+    generation++;
+  }
+
+  /**
+   * List metrics for a loaded account ordered by creation time and natural
+   * identifier as for NextTokenUtils pagination.
+   *
+   * @see ListMetricManager#listMetrics
+   */
+  public synchronized List<ListMetric> listMetrics( final String accountId,
+                                                    final String metricName,
+                                                    final String namespace,
+                                                    final Map<String, String> dimensionMap,
+                                                    final Date after,
+                                                    final Date before,
+                                                    final Integer maxRecords,
+                                                    final String nextToken,
+                                                    final Date nextTokenCreated ) {
+    final Map<ListMetricKey, ListMetric> accountMetrics = metricsByAccount.get( accountId );
+    if ( accountMetrics == null ) return Collections.emptyList( );
+    final List<ListMetric> results = Lists.newArrayList( );
+    for ( final ListMetric metric : accountMetrics.values( ) ) {
+      if ( metricName != null && !metricName.equals( metric.getMetricName( ) ) ) continue;
+      if ( namespace != null && !namespace.equals( metric.getNamespace( ) ) ) continue;
+      if ( before != null && metric.getLastUpdateTimestamp( ).after( before ) ) continue;
+      if ( after != null && metric.getLastUpdateTimestamp( ).before( after ) ) continue;
+      if ( dimensionMap != null && !metric.getDimensionMap( ).entrySet( ).containsAll( dimensionMap.entrySet( ) ) ) continue;
+      if ( nextTokenCreated != null ) {
+        final int createdComparison = metric.getCreationTimestamp( ).compareTo( nextTokenCreated );
+        if ( createdComparison < 0 || ( createdComparison == 0 && metric.getNaturalId( ).compareTo( nextToken ) <= 0 ) ) continue;
+      }
+      results.add( metric );
+    }
+    Collections.sort( results, CreationOrder.INSTANCE );
+    return maxRecords != null && results.size( ) > maxRecords ?
+        Lists.newArrayList( results.subList( 0, maxRecords ) ) :
+        results;
+  }
+
+  /**
+   * Find the creation timestamp for a metric by natural identifier.
+   */
+  public synchronized Date getCreationTimestamp( final String accountId, final String naturalId ) {
+    final Map<ListMetricKey, ListMetric> accountMetrics = metricsByAccount.get( accountId );
+    if ( accountMetrics != null ) for ( final ListMetric metric : accountMetrics.values( ) ) {
+      if ( naturalId.equals( metric.getNaturalId( ) ) ) {
+        return metric.getCreationTimestamp( );
+      }
+    }
+    return null;
+  }
+
+  public int getMaxMetrics( ) {
+    return maxMetrics;
+  }
+
+  public synchronized int size( ) {
+    return size;
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "ListMetricIndex:size=" + size( ) + ",hits=" + getHits( ) + ",misses=" + getMisses( );
+  }
+
+  private enum CreationOrder implements Comparator<ListMetric> {
+    INSTANCE;
+
+    @Override
+    public int compare( final ListMetric metric1, final ListMetric metric2 ) {
+      final int createdComparison = metric1.getCreationTimestamp( ).compareTo( metric2.getCreationTimestamp( ) );
+      return createdComparison != 0 ?
+          createdComparison :
+          metric1.getNaturalId( ).compareTo( metric2.getNaturalId( ) );
+    }
+  }
+
+  private static final class ListMetricKey {
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final Map<String, String> dimensionMap;
+
+    private ListMetricKey( final ListMetric metric ) {
+      this.namespace = metric.getNamespace( );
+      this.metricName = metric.getMetricName( );
+      this.metricType = metric.getMetricType( );
+      this.dimensionMap = metric.getDimensionMap( );
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final ListMetricKey that = (ListMetricKey) o;
+      return Objects.equal( namespace, that.namespace ) &&
+          Objects.equal( metricName, that.metricName ) &&
+          metricType == that.metricType &&
+          Objects.equal( dimensionMap, that.dimensionMap );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hashCode( namespace, metricName, metricType, dimensionMap );
+    }
+  }
+}
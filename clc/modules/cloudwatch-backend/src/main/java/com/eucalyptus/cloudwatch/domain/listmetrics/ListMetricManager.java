@@ -38,20 +38,67 @@ import org.hibernate.Criteria;
 import org.hibernate.criterion.Disjunction;
 import org.hibernate.criterion.Restrictions;
 
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.cloudwatch.backend.CloudWatchBackendService;
 import com.eucalyptus.cloudwatch.backend.CloudWatchException;
+import com.eucalyptus.cloudwatch.backend.InvalidParameterValueException;
+import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
 import com.eucalyptus.cloudwatch.domain.DimensionEntity;
 import com.eucalyptus.cloudwatch.domain.NextTokenUtils;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.domain.metricdata.SimpleMetricEntity;
+import com.eucalyptus.component.Topology;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
 import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 public class ListMetricManager {
   private static final Logger LOG = Logger.getLogger(ListMetricManager.class);
+  private static volatile ListMetricIndex listMetricIndex;
+
+  /**
+   * Create, replace or remove the index to match the current configuration.
+   * The index is discarded when this host is not the enabled cloudwatch
+   * backend as metrics could then be added elsewhere.
+   */
+  private static ListMetricIndex refreshIndex() {
+    final int maxMetrics = Math.max(0, CloudWatchBackendService.LIST_METRIC_INDEX_MAX_METRICS);
+    if (maxMetrics == 0 || !( Bootstrap.isFinished() && Topology.isEnabledLocally( CloudWatchBackend.class ) )) {
+      listMetricIndex = null;
+    } else if (listMetricIndex == null || listMetricIndex.getMaxMetrics() != maxMetrics) {
+      listMetricIndex = new ListMetricIndex(maxMetrics);
+    }
+    return listMetricIndex;
+  }
+
+  private static boolean loadIndex(ListMetricIndex index, String accountId) {
+    if (index.isLoaded(accountId)) {
+      return true;
+    } else if (index.isUnindexed(accountId)) {
+      return false;
+    }
+    // the load is merged with metrics indexed while querying and is rejected
+    // if metrics were expired meanwhile, the database is then used directly
+    final long generation = index.getGeneration();
+    EntityTransaction db = Entities.get(ListMetric.class);
+    try {
+      Criteria criteria = Entities.createCriteria(ListMetric.class)
+          .add( Restrictions.eq( "accountId" , accountId ) );
+      List<ListMetric> results = (List<ListMetric>) criteria.list();
+      db.commit();
+      return index.load(accountId, results, generation);
+    } catch (RuntimeException ex) {
+      Logs.extreme().error(ex, ex);
+      throw ex;
+    } finally {
+      if (db.isActive())
+        db.rollback();
+    }
+  }
   public static void addMetric(String accountId, String metricName, String namespace, Map<String, String> dimensionMap, MetricType metricType) {
     EntityTransaction db = Entities.get(ListMetric.class);
     try {
@@ -139,6 +186,10 @@ public class ListMetricManager {
   }
   
   public static void deleteAllMetrics() {
+    final ListMetricIndex index = listMetricIndex;
+    if (index != null) {
+      index.clear();
+    }
     EntityTransaction db = Entities.get(ListMetric.class);
     try {
       Entities.deleteAll(ListMetric.class);
@@ -163,6 +214,10 @@ public class ListMetricManager {
       criteria.put("before", before);
       Entities.deleteAllMatching(ListMetric.class, "WHERE lastUpdateTimestamp < :before", criteria);
       db.commit();
+      final ListMetricIndex index = listMetricIndex;
+      if (index != null) {
+        index.expire(before);
+      }
     } catch (RuntimeException ex) {
       Logs.extreme().error(ex, ex);
       throw ex;
@@ -188,6 +243,18 @@ public class ListMetricManager {
     if (dimensionMap != null && dimensionMap.size() > ListMetric.MAX_DIM_NUM) {
       throw new IllegalArgumentException("Too many dimensions " + dimensionMap.size());
     }
+    final ListMetricIndex index = listMetricIndex;
+    if (index != null && accountId != null && loadIndex(index, accountId)) {
+      Date nextTokenCreatedTime = null;
+      if (nextToken != null) {
+        nextTokenCreatedTime = index.getCreationTimestamp(accountId, nextToken);
+        if (nextTokenCreatedTime == null) {
+          throw new InvalidParameterValueException("Invalid nextToken");
+        }
+      }
+      return index.listMetrics(accountId, metricName, namespace, dimensionMap, after, before, maxRecords,
+          nextToken, nextTokenCreatedTime);
+    }
     EntityTransaction db = Entities.get(ListMetric.class);
     try {
       Date nextTokenCreatedTime = NextTokenUtils.getNextTokenCreatedTime(nextToken, ListMetric.class, false);
@@ -244,6 +311,103 @@ public class ListMetricManager {
   }
 
   public static void addMetricBatch(List<SimpleMetricEntity> dataBatch) {
+    final ListMetricIndex index = refreshIndex();
+    if (index == null) {
+      addMetricBatchToDatabase(dataBatch);
+    } else {
+      // metrics for accounts that do not fit in the index bypass it
+      Map<String, Boolean> indexedAccounts = Maps.newHashMap();
+      List<SimpleMetricEntity> indexedBatch = Lists.newArrayList();
+      List<SimpleMetricEntity> unindexedBatch = Lists.newArrayList();
+      for (SimpleMetricEntity entity: dataBatch) {
+        Boolean indexed = indexedAccounts.get(entity.getAccountId());
+        if (indexed == null) {
+          indexed = loadIndex(index, entity.getAccountId());
+          indexedAccounts.put(entity.getAccountId(), indexed);
+        }
+        (indexed ? indexedBatch : unindexedBatch).add(entity);
+      }
+      if (!indexedBatch.isEmpty()) {
+        addMetricBatch(index, indexedBatch);
+      }
+      if (!unindexedBatch.isEmpty()) {
+        addMetricBatchToDatabase(unindexedBatch);
+      }
+    }
+  }
+
+  /**
+   * Add metrics using the index, metrics that are not yet known are inserted
+   * and known metrics have their last update timestamp refreshed in batches
+   * by natural identifier.
+   *
+   * The accounts for the metrics must be loaded.
+   */
+  private static void addMetricBatch(ListMetricIndex index, List<SimpleMetricEntity> dataBatch) {
+    Map<ListMetricCacheKey, ListMetric> foldedMetrics = Maps.newLinkedHashMap();
+    for (ListMetricCacheKey cacheKey: prune(dataBatch)) {
+      for (ListMetric metric: foldMetric(cacheKey.getLoadKey().getAccountId(),
+          cacheKey.getMetricName(), cacheKey.getLoadKey().getNamespace(),
+          cacheKey.getDimensionMap(), cacheKey.getMetricType())) {
+        ListMetricCacheKey key = new ListMetricCacheKey();
+        key.setDimensionMap(metric.getDimensionMap());
+        key.setLoadKey(cacheKey.getLoadKey());
+        key.setMetricName(metric.getMetricName());
+        key.setMetricType(metric.getMetricType());
+        foldedMetrics.put(key, metric);
+      }
+    }
+    List<ListMetric> newMetrics = Lists.newArrayList();
+    List<String> refreshMetricIds = Lists.newArrayList();
+    for (ListMetric metric: foldedMetrics.values()) {
+      ListMetric indexedMetric = index.lookup(metric);
+      if (indexedMetric == null) {
+        newMetrics.add(metric);
+      } else {
+        refreshMetricIds.add(indexedMetric.getNaturalId());
+      }
+    }
+    final int batchSize = Math.max(1, CloudWatchBackendService.METRIC_FLUSH_BATCH_SIZE);
+    for (List<ListMetric> batch: Iterables.partition(newMetrics, batchSize)) {
+      EntityTransaction db = Entities.get(ListMetric.class);
+      try {
+        for (ListMetric metric: batch) {
+          Entities.persist(metric);
+        }
+        db.commit();
+        index.update(batch);
+      } catch (RuntimeException ex) {
+        Logs.extreme().error(ex, ex);
+        throw ex;
+      } finally {
+        if (db.isActive())
+          db.rollback();
+      }
+    }
+    for (List<String> batch: Iterables.partition(refreshMetricIds, batchSize)) {
+      EntityTransaction db = Entities.get(ListMetric.class);
+      try {
+        Criteria criteria = Entities.createCriteria(ListMetric.class)
+            .add( Restrictions.in( "naturalId" , batch ) );
+        List<ListMetric> results = (List<ListMetric>) criteria.list();
+        for (ListMetric result: results) {
+          result.setVersion(1 + result.getVersion());
+        }
+        db.commit();
+        index.update(results);
+      } catch (RuntimeException ex) {
+        Logs.extreme().error(ex, ex);
+        throw ex;
+      } finally {
+        if (db.isActive())
+          db.rollback();
+      }
+    }
+    LOG.debug("Timing:ListMetricManager.addMetricBatch:metrics=" + foldedMetrics.size() + ",new=" + newMetrics.size()
+        + ",refreshed=" + refreshMetricIds.size() + "," + index);
+  }
+
+  private static void addMetricBatchToDatabase(List<SimpleMetricEntity> dataBatch) {
     EntityTransaction db = Entities.get(ListMetric.class);
     try {
       HashSet<ListMetricCacheLoadKey> loadedKeys = Sets.newHashSet();
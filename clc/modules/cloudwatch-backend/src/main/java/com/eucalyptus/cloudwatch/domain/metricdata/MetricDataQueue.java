@@ -30,6 +30,8 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.persistence.EntityTransaction;
 
@@ -37,19 +39,22 @@ import org.apache.log4j.Logger;
 import org.hibernate.Criteria;
 import org.hibernate.criterion.Restrictions;
 
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.cloudwatch.backend.CloudWatchBackendService;
 import com.eucalyptus.cloudwatch.common.backend.msgs.Dimension;
 import com.eucalyptus.cloudwatch.common.backend.msgs.Dimensions;
 import com.eucalyptus.cloudwatch.common.backend.msgs.MetricDatum;
 import com.eucalyptus.cloudwatch.common.backend.msgs.StatisticSet;
 import com.eucalyptus.cloudwatch.domain.absolute.AbsoluteMetricHelper;
 import com.eucalyptus.cloudwatch.domain.absolute.AbsoluteMetricHistory;
+import com.eucalyptus.cloudwatch.domain.alarms.AlarmStateEvaluationDispatcher;
 import com.eucalyptus.cloudwatch.domain.absolute.AbsoluteMetricHelper.MetricDifferenceInfo;
 import com.eucalyptus.cloudwatch.domain.listmetrics.ListMetricManager;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
-import com.google.common.base.Supplier;
+import com.eucalyptus.util.Mbeans;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
@@ -58,10 +63,15 @@ import com.google.common.collect.Sets;
 public class MetricDataQueue {
   private static final Logger LOG = Logger.getLogger(MetricDataQueue.class);
   final static LinkedBlockingQueue<MetricQueueItem> dataQueue = new LinkedBlockingQueue<MetricQueueItem>();
+  // queued items plus capacity reserved for items about to be queued
+  private static final AtomicInteger dataQueueReserved = new AtomicInteger();
 
   private static final ScheduledExecutorService dataFlushTimer = Executors
       .newSingleThreadScheduledExecutor();
 
+  private static final MetricDataRollup dataRollup = new MetricDataRollup();
+  private static final AtomicBoolean dataRollupRegistered = new AtomicBoolean(false);
+
   private static MetricDataQueue singleton = getInstance();
 
   public static MetricDataQueue getInstance() {
@@ -72,9 +82,53 @@ public class MetricDataQueue {
     return singleton;
   }
 
-  private void queue(Supplier<MetricQueueItem> metriMetaDataSupplier) {
-    final MetricQueueItem metricData = metriMetaDataSupplier.get();
-    dataQueue.offer(metricData);
+  /**
+   * Queue or roll up all of the given items, or none of them if there is
+   * not capacity for all.
+   */
+  private boolean queue(List<MetricQueueItem> items) {
+    final List<MetricQueueItem> absoluteItems = Lists.newArrayList();
+    final List<SimpleMetricEntity> rollupItems = Lists.newArrayList();
+    for (MetricQueueItem item: items) {
+      if (requiresAbsoluteMetricProcessing(item)) {
+        // absolute metrics are processed in order against their history so can not be rolled up here
+        absoluteItems.add(item);
+      } else {
+        rollupItems.add(convertToSimpleMetricEntity(item));
+      }
+    }
+    if (!reserveQueueCapacity(absoluteItems.size())) {
+      return false;
+    }
+    if (!rollupItems.isEmpty() &&
+        !dataRollup.addAll(rollupItems, CloudWatchBackendService.MAX_METRIC_DATA_ROLLUP_BUCKETS)) {
+      dataQueueReserved.addAndGet(-absoluteItems.size());
+      return false;
+    }
+    dataQueue.addAll(absoluteItems);
+    return true;
+  }
+
+  private static boolean reserveQueueCapacity(int count) {
+    if (count > 0) {
+      int reserved;
+      do {
+        reserved = dataQueueReserved.get();
+        if (reserved + count > CloudWatchBackendService.MAX_QUEUED_METRIC_DATA) {
+          return false;
+        }
+      } while (!dataQueueReserved.compareAndSet(reserved, reserved + count));
+    }
+    return true;
+  }
+
+  private static boolean requiresAbsoluteMetricProcessing(MetricQueueItem item) {
+    return item.getMetricType() == MetricType.System &&
+        ("AWS/EBS".equals(item.getNamespace()) || "AWS/EC2".equals(item.getNamespace()));
+  }
+
+  public static MetricDataRollup getRollup() {
+    return dataRollup;
   }
 
   private static Runnable safeRunner = new Runnable() {
@@ -83,7 +137,7 @@ public class MetricDataQueue {
       long before = System.currentTimeMillis();
       try {
         List<MetricQueueItem> dataBatch = Lists.newArrayList();
-        dataQueue.drainTo(dataBatch, 15000);
+        dataQueueReserved.addAndGet(-dataQueue.drainTo(dataBatch, 15000));
         LOG.debug("Timing:dataBatch.size()="+dataBatch.size());
         long t1 = System.currentTimeMillis();
         dataBatch = dealWithAbsoluteMetrics(dataBatch);
@@ -92,10 +146,20 @@ public class MetricDataQueue {
         List<SimpleMetricEntity> simpleDataBatch = convertToSimpleDataBatch(dataBatch);
         long t3 = System.currentTimeMillis();
         LOG.debug("Timing:dataBatch.convertToSimpleDataBatch():time="+(t3-t2));
+        simpleDataBatch.addAll(dataRollup.drain());
         simpleDataBatch = aggregate(simpleDataBatch);
         long t4 = System.currentTimeMillis();
         LOG.debug("Timing:dataBatch.aggregate():time="+(t4-t3));
-        MetricManager.addMetricBatch(simpleDataBatch);
+        LOG.debug("Timing:dataBatch.rollup="+dataRollup);
+        if (Bootstrap.isOperational() && dataRollupRegistered.compareAndSet(false, true)) {
+          Mbeans.register(dataRollup);
+        }
+        try {
+          MetricManager.addMetricBatch(simpleDataBatch);
+        } finally {
+          // shards may have been written even if the batch failed
+          AlarmStateEvaluationDispatcher.metricDataFlushed(simpleDataBatch);
+        }
         long t5 = System.currentTimeMillis();
         LOG.debug("Timing:dataBatch.MetricManager.addMetricBatch():time="+(t5-t4));
         ListMetricManager.addMetricBatch(simpleDataBatch);
@@ -138,41 +202,45 @@ public class MetricDataQueue {
       List<MetricQueueItem> stupidDataBatch) {
     ArrayList<SimpleMetricEntity> returnValue = new ArrayList<SimpleMetricEntity>();
     for(MetricQueueItem item: stupidDataBatch) {
-      SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
-      metricMetadata.setAccountId(item.getAccountId());
-      MetricDatum datum = item.getMetricDatum();
-      
-      metricMetadata.setMetricName(datum.getMetricName());
-      metricMetadata.setNamespace(item.getNamespace());
-      final List<Dimension> dimensions = datum.getDimensions( ) == null ?
-          Collections.<Dimension>emptyList( ) :
-          datum.getDimensions( ).getMember( );
-      metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
-      metricMetadata.setMetricType(item.getMetricType());
-      metricMetadata.setUnits(Units.fromValue(datum.getUnit())); 
-      metricMetadata.setTimestamp(datum.getTimestamp());
-      if (datum.getValue() != null) { // Either or case taken care of in service
-        metricMetadata.setSampleMax(datum.getValue());
-        metricMetadata.setSampleMin(datum.getValue());
-        metricMetadata.setSampleSum(datum.getValue());
-        metricMetadata.setSampleSize(1.0);
-      } else if ((datum.getStatisticValues() != null) &&
-            (datum.getStatisticValues().getMaximum() != null) &&
-            (datum.getStatisticValues().getMinimum() != null) &&
-            (datum.getStatisticValues().getSum() != null) &&
-            (datum.getStatisticValues().getSampleCount() != null)) {
-          metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
-          metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
-          metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
-          metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
-      } else {
-        throw new RuntimeException("Statistics set (all values) or Value must be set"); 
-      }
-      returnValue.add(metricMetadata);
+      returnValue.add(convertToSimpleMetricEntity(item));
     }
     return returnValue;
   }
 
+  private static SimpleMetricEntity convertToSimpleMetricEntity(MetricQueueItem item) {
+    SimpleMetricEntity metricMetadata = new SimpleMetricEntity();
+    metricMetadata.setAccountId(item.getAccountId());
+    MetricDatum datum = item.getMetricDatum();
+    
+    metricMetadata.setMetricName(datum.getMetricName());
+    metricMetadata.setNamespace(item.getNamespace());
+    final List<Dimension> dimensions = datum.getDimensions( ) == null ?
+        Collections.<Dimension>emptyList( ) :
+        datum.getDimensions( ).getMember( );
+    metricMetadata.setDimensionMap(makeDimensionMap(dimensions));
+    metricMetadata.setMetricType(item.getMetricType());
+    metricMetadata.setUnits(Units.fromValue(datum.getUnit())); 
+    metricMetadata.setTimestamp(datum.getTimestamp());
+    if (datum.getValue() != null) { // Either or case taken care of in service
+      metricMetadata.setSampleMax(datum.getValue());
+      metricMetadata.setSampleMin(datum.getValue());
+      metricMetadata.setSampleSum(datum.getValue());
+      metricMetadata.setSampleSize(1.0);
+    } else if ((datum.getStatisticValues() != null) &&
+          (datum.getStatisticValues().getMaximum() != null) &&
+          (datum.getStatisticValues().getMinimum() != null) &&
+          (datum.getStatisticValues().getSum() != null) &&
+          (datum.getStatisticValues().getSampleCount() != null)) {
+        metricMetadata.setSampleMax(datum.getStatisticValues().getMaximum());
+        metricMetadata.setSampleMin(datum.getStatisticValues().getMinimum());
+        metricMetadata.setSampleSum(datum.getStatisticValues().getSum());
+        metricMetadata.setSampleSize(datum.getStatisticValues().getSampleCount());
+    } else {
+      throw new RuntimeException("Statistics set (all values) or Value must be set"); 
+    }
+    return metricMetadata;
+  }
+
   protected static List<MetricQueueItem> dealWithAbsoluteMetrics(
       List<MetricQueueItem> dataBatch) {
     List<MetricQueueItem> dataToInsert = new ArrayList<MetricQueueItem>(); 
@@ -289,26 +357,28 @@ public class MetricDataQueue {
       .put("NetworkOutAbsolute", "NetworkOut") 
       .build();
 
-  public void insertMetricData(final String ownerAccountId, final String nameSpace,
+  /**
+   * Queue metric data for insertion.
+   *
+   * @return false if the data points were dropped because the queue or rollup is full
+   */
+  public boolean insertMetricData(final String ownerAccountId, final String nameSpace,
       final List<MetricDatum> metricDatum, final MetricType metricType) {
     // Some points do not actually go in.  If a data point represents an absolute value, the first one does not go in.
     // Also, some data points are added while we go through the list (derived metrics)
     Date now = new Date();
 
+    List<MetricQueueItem> items = Lists.newArrayList();
     for (final MetricDatum datum : metricDatum) {
       scrub(datum, now);
-      queue(new Supplier<MetricQueueItem>() {
-        @Override
-        public MetricQueueItem get() {
-          MetricQueueItem metricMetadata = new MetricQueueItem();
-          metricMetadata.setAccountId(ownerAccountId);
-          metricMetadata.setMetricDatum(datum);
-          metricMetadata.setNamespace(nameSpace);
-          metricMetadata.setMetricType(metricType);
-          return metricMetadata;
-        }
-      });
-    }
+      MetricQueueItem metricMetadata = new MetricQueueItem();
+      metricMetadata.setAccountId(ownerAccountId);
+      metricMetadata.setMetricDatum(datum);
+      metricMetadata.setNamespace(nameSpace);
+      metricMetadata.setMetricType(metricType);
+      items.add(metricMetadata);
+    }
+    return queue(items);
   }
 
   private static boolean adjustAbsoluteVolumeQueueLengthStatisticSet(AbsoluteMetricCache cache,
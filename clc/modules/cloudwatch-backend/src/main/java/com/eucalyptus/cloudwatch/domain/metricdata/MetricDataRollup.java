@@ -0,0 +1,179 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+/**
+ * In-memory rollup of metric data points ahead of the database.
+ *
+ * Data points are merged per account/namespace/metric/dimension hash/units
+ * and one minute bucket (sum, min, max and sample count) so that repeated
+ * PutMetricData calls for the same metric result in a single row per flush.
+ *
+ * The number of buckets held is bounded, data points needing new buckets
+ * are refused when the rollup is full so that callers can apply
+ * backpressure.
+ *
+ * Received, merged, dropped and flushed counts and ratios are exported via
+ * JMX.
+ */
+public class MetricDataRollup {
+
+  private final ReadWriteLock drainLock = new ReentrantReadWriteLock( );
+  private volatile ConcurrentMap<PutMetricDataAggregationKey, SimpleMetricEntity> buckets =
+      new ConcurrentHashMap<PutMetricDataAggregationKey, SimpleMetricEntity>( );
+  private final AtomicInteger bucketCount = new AtomicInteger( );
+  private final AtomicLong received = new AtomicLong( );
+  private final AtomicLong merged = new AtomicLong( );
+  private final AtomicLong dropped = new AtomicLong( );
+  private final AtomicLong flushed = new AtomicLong( );
+
+  /**
+   * Add data points to the rollup.
+   *
+   * Either all data points are added or none are, buckets for the data
+   * points are reserved before any data point is merged.
+   *
+   * @param items The data points, timestamp seconds are stripped
+   * @param maxBuckets The maximum number of buckets to hold
+   * @return false if the data points were dropped as the rollup is full
+   */
+  public boolean addAll( final List<SimpleMetricEntity> items, final int maxBuckets ) {
+    received.addAndGet( items.size( ) );
+    final List<PutMetricDataAggregationKey> keys = Lists.newArrayListWithCapacity( items.size( ) );
+    for ( final SimpleMetricEntity item : items ) {
+      item.setTimestamp( MetricManager.stripSeconds( item.getTimestamp( ) ) );
+      keys.add( new PutMetricDataAggregationKey( item ) );
+    }
+    drainLock.readLock( ).lock( );
+    try {
+      // buckets are only removed on drain so existing keys remain present
+      final ConcurrentMap<PutMetricDataAggregationKey, SimpleMetricEntity> currentBuckets = buckets;
+      final Set<PutMetricDataAggregationKey> newKeys = Sets.newHashSet( );
+      for ( final PutMetricDataAggregationKey key : keys ) {
+        if ( !currentBuckets.containsKey( key ) ) newKeys.add( key );
+      }
+      int reserved;
+      do {
+        reserved = bucketCount.get( );
+        if ( reserved + newKeys.size( ) > maxBuckets ) {
+          dropped.addAndGet( items.size( ) );
+          return false;
+        }
+      } while ( !bucketCount.compareAndSet( reserved, reserved + newKeys.size( ) ) );
+
+      int unusedReservations = newKeys.size( );
+      for ( int i = 0; i < items.size( ); i++ ) {
+        final SimpleMetricEntity item = items.get( i );
+        SimpleMetricEntity totalSoFar = currentBuckets.get( keys.get( i ) );
+        if ( totalSoFar == null ) {
+          totalSoFar = currentBuckets.putIfAbsent( keys.get( i ), new SimpleMetricEntity( item ) );
+          if ( totalSoFar == null ) {
+            unusedReservations--;
+            continue;
+          }
+        }
+        synchronized ( totalSoFar ) {
+          totalSoFar.setSampleMax( Math.max( item.getSampleMax( ), totalSoFar.getSampleMax( ) ) );
+          totalSoFar.setSampleMin( Math.min( item.getSampleMin( ), totalSoFar.getSampleMin( ) ) );
+          totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + item.getSampleSize( ) );
+          totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + item.getSampleSum( ) );
+        }
+        merged.incrementAndGet( );
+      }
+      // reservations for buckets created concurrently by other callers
+      bucketCount.addAndGet( -unusedReservations );
+      return true;
+    } finally {
+      drainLock.readLock( ).unlock( );
+    }
+  }
+
+  /**
+   * Remove and return all rolled up data points.
+   */
+  public List<SimpleMetricEntity> drain( ) {
+    final ConcurrentMap<PutMetricDataAggregationKey, SimpleMetricEntity> drained;
+    drainLock.writeLock( ).lock( );
+    try {
+      drained = buckets;
+      buckets = new ConcurrentHashMap<PutMetricDataAggregationKey, SimpleMetricEntity>( );
+      bucketCount.set( 0 );
+    } finally {
+      drainLock.writeLock( ).unlock( );
+    }
+    flushed.addAndGet( drained.size( ) );
+    return Lists.newArrayList( drained.values( ) );
+  }
+
+  public int size( ) {
+    return buckets.size( );
+  }
+
+  public long getReceived( ) {
+    return received.get( );
+  }
+
+  public long getMerged( ) {
+    return merged.get( );
+  }
+
+  public long getDropped( ) {
+    return dropped.get( );
+  }
+
+  public long getFlushed( ) {
+    return flushed.get( );
+  }
+
+  /**
+   * The fraction of received data points that were merged into an existing bucket.
+   */
+  public double getMergeRatio( ) {
+    final long receivedCount = received.get( );
+    return receivedCount == 0 ? 0d : (double) merged.get( ) / (double) receivedCount;
+  }
+
+  /**
+   * The fraction of received data points that were dropped due to the rollup being full.
+   */
+  public double getDropRatio( ) {
+    final long receivedCount = received.get( );
+    return receivedCount == 0 ? 0d : (double) dropped.get( ) / (double) receivedCount;
+  }
+
+  @Override
+  public String toString( ) {
+    return "MetricDataRollup:size=" + size( ) + ",received=" + getReceived( ) + ",merged=" + getMerged( ) +
+        ",dropped=" + getDropped( ) + ",flushed=" + getFlushed( ) + ",mergeRatio=" + getMergeRatio( ) +
+        ",dropRatio=" + getDropRatio( );
+  }
+}
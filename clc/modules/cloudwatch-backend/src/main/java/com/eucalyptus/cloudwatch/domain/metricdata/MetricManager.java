@@ -28,6 +28,11 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.persistence.Column;
 import javax.persistence.EntityTransaction;
@@ -39,13 +44,21 @@ import org.hibernate.Criteria;
 import org.hibernate.criterion.Order;
 import org.hibernate.criterion.Restrictions;
 
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.cloudwatch.backend.CloudWatchBackendService;
+import com.eucalyptus.cloudwatch.common.CloudWatchBackend;
 import com.eucalyptus.cloudwatch.domain.DimensionEntity;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
 import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
 import com.eucalyptus.cloudwatch.hashing.HashUtils;
+import com.eucalyptus.component.Topology;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Exceptions;
+import com.eucalyptus.util.Mbeans;
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Multimap;
@@ -53,6 +66,10 @@ import com.google.common.collect.Sets;
 
 public class MetricManager {
 	public static final Logger LOG = Logger.getLogger(MetricManager.class);
+  private static final MetricShardFlushStatistics shardFlushStatistics = new MetricShardFlushStatistics();
+  private static final AtomicBoolean shardFlushStatisticsRegistered = new AtomicBoolean(false);
+  private static volatile MetricStatisticsCache metricStatisticsCache;
+  private static final AtomicBoolean metricStatisticsCacheRegistered = new AtomicBoolean(false);
   public static void addMetric(String accountId, 
       String metricName, String namespace, Map<String, String> dimensionMap,
       MetricType metricType, Units units, Date timestamp, Double sampleSize,
@@ -124,10 +141,50 @@ public class MetricManager {
   }
 
   private static void addManyMetrics(Multimap<Class, MetricEntity> metricMap) {
-    for (Class c : metricMap.keySet()) {
+    final int parallelism = Math.max(1, CloudWatchBackendService.METRIC_FLUSH_PARALLELISM);
+    if (parallelism == 1 || metricMap.keySet().size() <= 1) {
+      for (Class c : metricMap.keySet()) {
+        addShardMetrics(c, metricMap.get(c));
+      }
+      return;
+    }
+    // each shard (table) is written by its own worker so a slow table does not stall the others,
+    // the pool is sized from configuration only so it is not rebuilt as the number of shards varies
+    final List<Future<Void>> shardFutures = Lists.newArrayList();
+    final ExecutorService shardWorkers = Threads.lookup(CloudWatchBackend.class, MetricManager.class, "shard-flush")
+        .limitTo(parallelism);
+    for (final Class c : metricMap.keySet()) {
+      final Collection<MetricEntity> shardEntities = metricMap.get(c);
+      shardFutures.add(shardWorkers.submit(new Callable<Void>() {
+        @Override
+        public Void call() {
+          addShardMetrics(c, shardEntities);
+          return null;
+        }
+      }));
+    }
+    RuntimeException failure = null;
+    for (Future<Void> shardFuture : shardFutures) {
+      try {
+        shardFuture.get();
+      } catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw Exceptions.toUndeclared(ex);
+      } catch (ExecutionException ex) {
+        LOG.error("Error flushing metric shard: " + ex.getCause(), ex.getCause());
+        if (failure == null) failure = Exceptions.toUndeclared(ex.getCause());
+      }
+    }
+    if (failure != null) throw failure;
+  }
+
+  private static void addShardMetrics(Class c, Collection<MetricEntity> shardEntities) {
+    final long before = System.currentTimeMillis();
+    final int batchSize = Math.max(1, CloudWatchBackendService.METRIC_FLUSH_BATCH_SIZE);
+    for (List<MetricEntity> batch : Iterables.partition(shardEntities, batchSize)) {
       EntityTransaction db = Entities.get(c);
       try {
-        for (MetricEntity me : metricMap.get(c)) {
+        for (MetricEntity me : batch) {
           Entities.persist(me);
         }
         db.commit();
@@ -138,6 +195,46 @@ public class MetricManager {
         if (db.isActive())
           db.rollback();
       }
+      final MetricStatisticsCache cache = metricStatisticsCache;
+      if (cache != null) {
+        cache.add(batch, CloudWatchBackendService.METRIC_STATISTICS_CACHE_MAX_SERIES);
+      }
+    }
+    final long time = System.currentTimeMillis() - before;
+    shardFlushStatistics.record(c, shardEntities.size(), time);
+    if (Bootstrap.isOperational() && shardFlushStatisticsRegistered.compareAndSet(false, true)) {
+      Mbeans.register(shardFlushStatistics);
+    }
+    LOG.debug("Timing:shard=" + c.getSimpleName() + ",entities=" + shardEntities.size() + ",time=" + time);
+  }
+
+  public static MetricShardFlushStatistics getShardFlushStatistics() {
+    return shardFlushStatistics;
+  }
+
+  public static MetricStatisticsCache getMetricStatisticsCache() {
+    return metricStatisticsCache;
+  }
+
+  /**
+   * Create, replace or remove the statistics cache to match the current
+   * configuration and expire old data. A new cache only covers data
+   * flushed after it is created, so the cache is discarded when this host
+   * is not the enabled cloudwatch backend.
+   */
+  private static void refreshMetricStatisticsCache() {
+    final int retentionHours = Math.max(0, CloudWatchBackendService.METRIC_STATISTICS_CACHE_HOURS);
+    final MetricStatisticsCache cache = metricStatisticsCache;
+    if (Bootstrap.isOperational() && metricStatisticsCacheRegistered.compareAndSet(false, true)) {
+      Mbeans.register(new MetricStatisticsCacheStatistics());
+    }
+    if (retentionHours == 0 || !( Bootstrap.isFinished() && Topology.isEnabledLocally( CloudWatchBackend.class ) )) {
+      metricStatisticsCache = null;
+    } else if (cache == null || cache.getRetentionHours() != retentionHours) {
+      metricStatisticsCache = new MetricStatisticsCache(retentionHours);
+    } else {
+      cache.expire();
+      LOG.debug("Timing:" + cache);
     }
   }
 
@@ -170,6 +267,7 @@ public class MetricManager {
   }
 
   public static void deleteAllMetrics() {
+    metricStatisticsCache = null;
     for (Class c : MetricEntityFactory.getAllClassesForEntitiesGet()) {
       EntityTransaction db = Entities.get(c);
       try {
@@ -259,6 +357,14 @@ public class MetricManager {
       throw new IllegalArgumentException("namespace must not be null");
     }
     String hash = hash(dimensions);
+    final MetricStatisticsCache cache = metricStatisticsCache;
+    if (cache != null) {
+      final Collection<MetricStatistics> cachedResults = cache.getMetricStatistics(accountId, metricName, namespace,
+          dimensions, hash, metricType, units, startTime, endTime, period);
+      if (cachedResults != null) {
+        return cachedResults;
+      }
+    }
     Class metricEntityClass = MetricEntityFactory.getClassForEntitiesGet(metricType, hash);
     Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap = new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>(GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE);
     EntityTransaction db = Entities.get(metricEntityClass);
@@ -334,6 +440,7 @@ public class MetricManager {
   }
 
   public static void addMetricBatch(List<SimpleMetricEntity> dataBatch) {
+    refreshMetricStatisticsCache();
     ArrayList<MetricEntity> metricEntities = new ArrayList<MetricEntity>();
     for (SimpleMetricEntity simpleMetricEntity: dataBatch) {
       validateMetricQueueItem(simpleMetricEntity);
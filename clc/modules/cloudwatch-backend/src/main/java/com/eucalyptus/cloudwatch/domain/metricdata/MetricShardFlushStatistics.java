@@ -0,0 +1,112 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+/**
+ * Flush latency statistics for each metric table (shard), exported via JMX.
+ */
+public class MetricShardFlushStatistics {
+
+  private final ConcurrentMap<String, ShardStatistics> statisticsByShard =
+      new ConcurrentHashMap<String, ShardStatistics>( );
+
+  public void record( final Class shard, final int entities, final long timeMillis ) {
+    ShardStatistics statistics = statisticsByShard.get( shard.getSimpleName( ) );
+    if ( statistics == null ) {
+      final ShardStatistics newStatistics = new ShardStatistics( );
+      statistics = statisticsByShard.putIfAbsent( shard.getSimpleName( ), newStatistics );
+      if ( statistics == null ) {
+        statistics = newStatistics;
+      }
+    }
+    statistics.record( entities, timeMillis );
+  }
+
+  public Map<String, ShardStatistics> getStatisticsByShard( ) {
+    return ImmutableMap.copyOf( statisticsByShard );
+  }
+
+  public String[] getShards( ) {
+    final List<String> lines = Lists.newArrayList( );
+    for ( final String shard : Ordering.natural( ).sortedCopy( statisticsByShard.keySet( ) ) ) {
+      lines.add( shard + " " + statisticsByShard.get( shard ) );
+    }
+    return lines.toArray( new String[ lines.size( ) ] );
+  }
+
+  @Override
+  public String toString( ) {
+    return "MetricShardFlushStatistics shards=" + statisticsByShard.size( );
+  }
+
+  public static class ShardStatistics {
+    private final AtomicLong flushes = new AtomicLong( );
+    private final AtomicLong entities = new AtomicLong( );
+    private final AtomicLong totalTimeMillis = new AtomicLong( );
+    private final AtomicLong maxTimeMillis = new AtomicLong( );
+    private volatile long lastTimeMillis;
+
+    void record( final int entityCount, final long timeMillis ) {
+      flushes.incrementAndGet( );
+      entities.addAndGet( entityCount );
+      totalTimeMillis.addAndGet( timeMillis );
+      lastTimeMillis = timeMillis;
+      long max;
+      while ( ( max = maxTimeMillis.get( ) ) < timeMillis && !maxTimeMillis.compareAndSet( max, timeMillis ) );
+    }
+
+    public long getFlushes( ) {
+      return flushes.get( );
+    }
+
+    public long getEntities( ) {
+      return entities.get( );
+    }
+
+    public long getLastTimeMillis( ) {
+      return lastTimeMillis;
+    }
+
+    public long getMaxTimeMillis( ) {
+      return maxTimeMillis.get( );
+    }
+
+    public long getAverageTimeMillis( ) {
+      final long flushCount = flushes.get( );
+      return flushCount == 0 ? 0 : totalTimeMillis.get( ) / flushCount;
+    }
+
+    @Override
+    public String toString( ) {
+      return "flushes=" + getFlushes( ) + ",entities=" + getEntities( ) + ",last=" + getLastTimeMillis( ) +
+          ",avg=" + getAverageTimeMillis( ) + ",max=" + getMaxTimeMillis( );
+    }
+  }
+}
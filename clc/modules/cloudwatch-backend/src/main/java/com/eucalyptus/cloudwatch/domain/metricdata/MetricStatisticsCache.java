@@ -0,0 +1,324 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.eucalyptus.cloudwatch.domain.DimensionEntity;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.MetricType;
+import com.eucalyptus.cloudwatch.domain.metricdata.MetricEntity.Units;
+import com.google.common.base.Objects;
+import com.google.common.collect.Lists;
+
+/**
+ * Read side cache of recent metric data for GetMetricStatistics.
+ *
+ * Data is held per account/namespace/metric name/type/dimension hash as
+ * primitive arrays of (timestamp, units, sum, min, max, sample count) sorted
+ * by timestamp. The cache is populated only as metric data is flushed to the
+ * database so a series can answer queries for times after it started
+ * receiving data (coverage start) and within the retention period.
+ */
+public class MetricStatisticsCache {
+
+  private static final int INITIAL_CAPACITY = 16;
+  private static final Units[] UNITS = Units.values( );
+
+  private final ConcurrentMap<SeriesKey, Series> seriesMap = new ConcurrentHashMap<SeriesKey, Series>( );
+  private final long coverageStart;
+  private final int retentionHours;
+  private final AtomicLong evictions = new AtomicLong( );
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+
+  public MetricStatisticsCache( final int retentionHours ) {
+    this( System.currentTimeMillis( ), retentionHours );
+  }
+
+  MetricStatisticsCache( final long coverageStart, final int retentionHours ) {
+    // data for the current minute may already be in the database
+    this.coverageStart = coverageStart - coverageStart % 60000L + 60000L;
+    this.retentionHours = retentionHours;
+  }
+
+  /**
+   * Add flushed metric entities to the cache.
+   */
+  public void add( final Collection<MetricEntity> entities,
+                   final int maxSeries ) {
+    final long now = System.currentTimeMillis( );
+    final long retainAfter = getRetainAfter( now );
+    for ( final MetricEntity entity : entities ) {
+      final long timestamp = entity.getTimestamp( ).getTime( );
+      if ( timestamp < retainAfter ) continue;
+      final SeriesKey key = new SeriesKey( entity );
+      Series series = seriesMap.get( key );
+      if ( series == null ) {
+        while ( seriesMap.size( ) >= maxSeries && !seriesMap.isEmpty( ) ) {
+          evictOne( );
+        }
+        // once any series was evicted we can not know that a new series has no earlier data
+        final Series newSeries = new Series( evictions.get( ) == 0 ? coverageStart : now - now % 60000L + 60000L );
+        series = seriesMap.putIfAbsent( key, newSeries );
+        if ( series == null ) {
+          series = newSeries;
+        }
+      }
+      series.add( timestamp, entity.getUnits( ), entity.getSampleSum( ), entity.getSampleMin( ),
+          entity.getSampleMax( ), entity.getSampleSize( ), retainAfter );
+    }
+  }
+
+  /**
+   * Remove expired data.
+   */
+  public void expire( ) {
+    final long retainAfter = getRetainAfter( System.currentTimeMillis( ) );
+    for ( final Iterator<Series> seriesIterator = seriesMap.values( ).iterator( ); seriesIterator.hasNext( ); ) {
+      final Series series = seriesIterator.next( );
+      if ( series.expire( retainAfter ) == 0 ) {
+        seriesIterator.remove( );
+      }
+    }
+  }
+
+  /**
+   * Get statistics from the cache.
+   *
+   * @return The statistics or null if the cache does not cover the requested range.
+   */
+  public Collection<MetricStatistics> getMetricStatistics( final String accountId,
+                                                           final String metricName,
+                                                           final String namespace,
+                                                           final Collection<DimensionEntity> dimensions,
+                                                           final String dimensionHash,
+                                                           final MetricType metricType,
+                                                           final Units units,
+                                                           final Date startTime,
+                                                           final Date endTime,
+                                                           final Integer period ) {
+    final long retainAfter = getRetainAfter( System.currentTimeMillis( ) );
+    final Series series = seriesMap.get( new SeriesKey( accountId, namespace, metricName, metricType, dimensionHash ) );
+    if ( series == null || startTime.getTime( ) < Math.max( retainAfter, series.coverageStart ) ) {
+      misses.incrementAndGet( );
+      return null;
+    }
+    hits.incrementAndGet( );
+    final Map<GetMetricStatisticsAggregationKey, MetricStatistics> aggregationMap =
+        new TreeMap<GetMetricStatisticsAggregationKey, MetricStatistics>( GetMetricStatisticsAggregationKey.COMPARATOR_WITH_NULLS.INSTANCE );
+    synchronized ( series ) {
+      for ( int i = series.indexOf( startTime.getTime( ) ); i < series.size && series.timestamps[i] < endTime.getTime( ); i++ ) {
+        final Units pointUnits = UNITS[ series.units[i] ];
+        if ( units != null && units != pointUnits ) continue;
+        final Date periodStart = MetricManager.getPeriodStart( new Date( series.timestamps[i] ), startTime, period );
+        final GetMetricStatisticsAggregationKey key = new GetMetricStatisticsAggregationKey(
+            accountId, namespace, metricName, pointUnits, metricType, periodStart, dimensionHash );
+        final MetricStatistics totalSoFar = aggregationMap.get( key );
+        if ( totalSoFar == null ) {
+          aggregationMap.put( key, new MetricStatistics( accountId, namespace, metricName, pointUnits, metricType,
+              periodStart, series.samples[i], series.maximums[i], series.minimums[i], series.sums[i], dimensions ) );
+        } else {
+          totalSoFar.setSampleMax( Math.max( series.maximums[i], totalSoFar.getSampleMax( ) ) );
+          totalSoFar.setSampleMin( Math.min( series.minimums[i], totalSoFar.getSampleMin( ) ) );
+          totalSoFar.setSampleSize( totalSoFar.getSampleSize( ) + series.samples[i] );
+          totalSoFar.setSampleSum( totalSoFar.getSampleSum( ) + series.sums[i] );
+        }
+      }
+    }
+    return Lists.newArrayList( aggregationMap.values( ) );
+  }
+
+  public int getRetentionHours( ) {
+    return retentionHours;
+  }
+
+  public int getSeriesCount( ) {
+    return seriesMap.size( );
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public long getEvictions( ) {
+    return evictions.get( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "MetricStatisticsCache:series=" + getSeriesCount( ) + ",hits=" + getHits( ) + ",misses=" + getMisses( ) +
+        ",evictions=" + getEvictions( );
+  }
+
+  private long getRetainAfter( final long now ) {
+    return now - retentionHours * 60L * 60L * 1000L;
+  }
+
+  private void evictOne( ) {
+    final Iterator<SeriesKey> keyIterator = seriesMap.keySet( ).iterator( );
+    if ( keyIterator.hasNext( ) ) {
+      keyIterator.next( );
+      keyIterator.remove( );
+      evictions.incrementAndGet( );
+    }
+  }
+
+  private static final class Series {
+    private final long coverageStart;
+    private int size;
+    private long[] timestamps = new long[ INITIAL_CAPACITY ];
+    private byte[] units = new byte[ INITIAL_CAPACITY ];
+    private double[] sums = new double[ INITIAL_CAPACITY ];
+    private double[] minimums = new double[ INITIAL_CAPACITY ];
+    private double[] maximums = new double[ INITIAL_CAPACITY ];
+    private double[] samples = new double[ INITIAL_CAPACITY ];
+
+    private Series( final long coverageStart ) {
+      this.coverageStart = coverageStart;
+    }
+
+    synchronized void add( final long timestamp,
+                           final Units unit,
+                           final double sum,
+                           final double minimum,
+                           final double maximum,
+                           final double sampleCount,
+                           final long retainAfter ) {
+      expire( retainAfter );
+      if ( size == timestamps.length ) {
+        final int capacity = size * 2;
+        timestamps = Arrays.copyOf( timestamps, capacity );
+        units = Arrays.copyOf( units, capacity );
+        sums = Arrays.copyOf( sums, capacity );
+        minimums = Arrays.copyOf( minimums, capacity );
+        maximums = Arrays.copyOf( maximums, capacity );
+        samples = Arrays.copyOf( samples, capacity );
+      }
+      // data usually arrives in time order so this is normally an append
+      int index = size;
+      while ( index > 0 && timestamps[ index - 1 ] > timestamp ) index--;
+      if ( index < size ) {
+        final int moved = size - index;
+        System.arraycopy( timestamps, index, timestamps, index + 1, moved );
+        System.arraycopy( units, index, units, index + 1, moved );
+        System.arraycopy( sums, index, sums, index + 1, moved );
+        System.arraycopy( minimums, index, minimums, index + 1, moved );
+        System.arraycopy( maximums, index, maximums, index + 1, moved );
+        System.arraycopy( samples, index, samples, index + 1, moved );
+      }
+      timestamps[ index ] = timestamp;
+      units[ index ] = (byte) unit.ordinal( );
+      sums[ index ] = sum;
+      minimums[ index ] = minimum;
+      maximums[ index ] = maximum;
+      samples[ index ] = sampleCount;
+      size++;
+    }
+
+    /**
+     * @return The number of remaining data points
+     */
+    synchronized int expire( final long retainAfter ) {
+      final int expired = indexOf( retainAfter );
+      if ( expired > 0 ) {
+        final int remaining = size - expired;
+        System.arraycopy( timestamps, expired, timestamps, 0, remaining );
+        System.arraycopy( units, expired, units, 0, remaining );
+        System.arraycopy( sums, expired, sums, 0, remaining );
+        System.arraycopy( minimums, expired, minimums, 0, remaining );
+        System.arraycopy( maximums, expired, maximums, 0, remaining );
+        System.arraycopy( samples, expired, samples, 0, remaining );
+        size = remaining;
+      }
+      return size;
+    }
+
+    /**
+     * Index of the first data point at or after the given time
+     */
+    int indexOf( final long timestamp ) {
+      int low = 0;
+      int high = size;
+      while ( low < high ) {
+        final int mid = ( low + high ) >>> 1;
+        if ( timestamps[ mid ] < timestamp ) {
+          low = mid + 1;
+        } else {
+          high = mid;
+        }
+      }
+      return low;
+    }
+  }
+
+  private static final class SeriesKey {
+    private final String accountId;
+    private final String namespace;
+    private final String metricName;
+    private final MetricType metricType;
+    private final String dimensionHash;
+
+    private SeriesKey( final MetricEntity entity ) {
+      this( entity.getAccountId( ), entity.getNamespace( ), entity.getMetricName( ), entity.getMetricType( ),
+          entity.getDimensionHash( ) );
+    }
+
+    private SeriesKey( final String accountId,
+                       final String namespace,
+                       final String metricName,
+                       final MetricType metricType,
+                       final String dimensionHash ) {
+      this.accountId = accountId;
+      this.namespace = namespace;
+      this.metricName = metricName;
+      this.metricType = metricType;
+      this.dimensionHash = dimensionHash;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final SeriesKey that = (SeriesKey) o;
+      return Objects.equal( accountId, that.accountId ) &&
+          Objects.equal( namespace, that.namespace ) &&
+          Objects.equal( metricName, that.metricName ) &&
+          metricType == that.metricType &&
+          Objects.equal( dimensionHash, that.dimensionHash );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hashCode( accountId, namespace, metricName, metricType, dimensionHash );
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloudwatch.domain.metricdata;
+
+/**
+ * GetMetricStatistics cache statistics, exported via JMX.
+ *
+ * The cache is replaced when its configuration changes, counts are for the
+ * current cache and are zero while caching is disabled.
+ */
+public class MetricStatisticsCacheStatistics {
+
+  public boolean isEnabled( ) {
+    return MetricManager.getMetricStatisticsCache( ) != null;
+  }
+
+  public int getRetentionHours( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    return cache == null ? 0 : cache.getRetentionHours( );
+  }
+
+  public int getSeriesCount( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    return cache == null ? 0 : cache.getSeriesCount( );
+  }
+
+  public long getHits( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    return cache == null ? 0 : cache.getHits( );
+  }
+
+  public long getMisses( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    return cache == null ? 0 : cache.getMisses( );
+  }
+
+  public long getEvictions( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    return cache == null ? 0 : cache.getEvictions( );
+  }
+
+  /**
+   * The fraction of cacheable requests answered from the cache.
+   */
+  public double getHitRatio( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    final long total = cache == null ? 0 : cache.getHits( ) + cache.getMisses( );
+    return total == 0 ? 0d : (double) cache.getHits( ) / (double) total;
+  }
+
+  @Override
+  public String toString( ) {
+    final MetricStatisticsCache cache = MetricManager.getMetricStatisticsCache( );
+    return cache == null ? "MetricStatisticsCache:disabled" : cache.toString( );
+  }
+}
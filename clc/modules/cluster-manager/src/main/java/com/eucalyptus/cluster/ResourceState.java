@@ -64,13 +64,17 @@ package com.eucalyptus.cluster;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.NavigableSet;
-import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ConcurrentNavigableMap;
 import java.util.concurrent.ConcurrentSkipListMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 import javax.annotation.Nonnull;
 import org.apache.log4j.Logger;
 import com.eucalyptus.cloud.ResourceToken;
@@ -84,18 +88,29 @@ import com.eucalyptus.util.OwnerFullName;
 import com.eucalyptus.vmtypes.VmType;
 import com.eucalyptus.vmtypes.VmTypes;
 import com.google.common.base.Joiner;
-import com.google.common.base.Predicate;
-import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import edu.ucsb.eucalyptus.msgs.ResourceType;
 
+/**
+ * Resource availability and allocation tokens for a cluster.
+ *
+ * <p>Allocations do not lock, availability for each vm type is reserved
+ * using compare-and-set and token states are tracked in a concurrent map.
+ * Resource updates from the cluster are reconciled optimistically and are
+ * retried if allocations or token releases complete while the update is
+ * applied, an update that keeps racing is applied while new allocations and
+ * releases are held back.</p>
+ */
 public class ResourceState {
   private static Logger                                      LOG = Logger.getLogger( ResourceState.class );
-  private ConcurrentNavigableMap<String, VmTypeAvailability> typeMap;
-  private NavigableSet<ResourceToken>                        pendingTokens;
-  private NavigableSet<ResourceToken>                        submittedTokens;
-  private NavigableSet<ResourceToken>                        redeemedTokens;
-  private String                                             clusterName;
+  private static final int                                   MAX_UPDATE_ATTEMPTS = 5;
+  private final ConcurrentNavigableMap<String, VmTypeAvailability> typeMap;
+  private final ConcurrentMap<ResourceToken, TokenState>     tokens;
+  private final AtomicInteger                                allocating = new AtomicInteger( );
+  private final AtomicLong                                   allocations = new AtomicLong( );
+  private final ReentrantLock                                updateLock = new ReentrantLock( );
+  private volatile boolean                                   exclusive;
+  private final String                                       clusterName;
   public static class NoSuchTokenException extends Exception {
     private static final long serialVersionUID = 1L;
 
@@ -105,156 +120,266 @@ public class ResourceState {
 
   }
 
+  enum TokenState {
+    PENDING,
+    SUBMITTED,
+    REDEEMED,
+  }
+
   public ResourceState( String clusterName ) {
+    this( clusterName, VmTypes.list( ) );
+  }
+
+  ResourceState( final String clusterName, final Iterable<VmType> vmTypes ) {
     this.clusterName = clusterName;
     this.typeMap = new ConcurrentSkipListMap<>( );
     
-    for ( VmType v : VmTypes.list( ) )
+    for ( VmType v : vmTypes )
       this.typeMap.putIfAbsent( v.getName( ), new VmTypeAvailability( v, 0, 0 ) );
     
-    this.pendingTokens = new ConcurrentSkipListSet<>( );
-    this.submittedTokens = new ConcurrentSkipListSet<>( );
-    this.redeemedTokens = new ConcurrentSkipListSet<>( );
+    this.tokens = new ConcurrentHashMap<>( );
   }
   
   public boolean hasUnorderedTokens( ) {
-    return Iterables.any( this.pendingTokens, new Predicate<ResourceToken>( ) {
-      
-      @Override
-      public boolean apply( ResourceToken arg0 ) {
-        return arg0.isUnorderedType( );
+    for ( final Map.Entry<ResourceToken, TokenState> entry : this.tokens.entrySet( ) ) {
+      if ( entry.getValue( ) == TokenState.PENDING && entry.getKey( ).isUnorderedType( ) ) {
+        return true;
       }
-    } );
+    }
+    return false;
   }
   
-  public synchronized List<ResourceToken> requestResourceAllocation( Allocation allocInfo, int minAmount, int maxAmount ) throws NotEnoughResourcesException {
-    VmTypeAvailability vmTypeStatus = this.typeMap.get( allocInfo.getVmType( ).getName( ) );
-    Integer available = vmTypeStatus.getAvailable( );
-    NavigableSet<VmTypeAvailability> sorted = this.sorted( );
-    LOG.debug( LogUtil.header( "BEFORE ALLOCATE" ) );
-    LOG.debug( sorted );
-    //:: if not enough, then bail out :://
-    final Integer quantity;
-    if ( vmTypeStatus.getAvailable( ) < minAmount ) {
-      throw new NotEnoughResourcesException( "Not enough resources (" + available + " < " + minAmount + ": vm instances." );
-    } else {
-      quantity = ( maxAmount < available
-                                        ? maxAmount
-                                        : available );
-    }
-    
-    Set<VmTypeAvailability> tailSet = sorted.tailSet( vmTypeStatus );
-    Set<VmTypeAvailability> headSet = sorted.headSet( vmTypeStatus );
-    LOG.debug( LogUtil.header( "DURING ALLOCATE" ) );
-    LOG.debug( LogUtil.subheader( "TAILSET: \n" + tailSet ) );
-    LOG.debug( LogUtil.subheader( "HEADSET: \n" + headSet ) );
-    //:: decrement available resources across the "active" partition :://
-    for ( VmTypeAvailability v : tailSet )
-      v.decrement( quantity );
-    for ( VmTypeAvailability v : headSet )
-      v.setAvailable( vmTypeStatus.getAvailable( ) );
-    LOG.debug( LogUtil.header( "AFTER ALLOCATE" ) );
-    LOG.debug( sorted );
-    List<ResourceToken> tokenList = Lists.newArrayList( );
-    for ( int i = 0; i < quantity; i++ ) {
-      try {
-        ResourceToken token = new ResourceToken( allocInfo, i );
-        LOG.debug( EventType.TOKEN_RESERVED.name( ) + ": " + token.toString( ) );
-        this.pendingTokens.add( token );
-        tokenList.add( token );
-      } catch ( Exception ex ) {
-        LOG.error( ex );
-        Logs.extreme( ).error( ex, ex );
-        for ( ResourceToken token : tokenList ) {
-          this.pendingTokens.remove( token );
+  public List<ResourceToken> requestResourceAllocation( Allocation allocInfo, int minAmount, int maxAmount ) throws NotEnoughResourcesException {
+    this.beginAllocation( );
+    try {
+      final int quantity = this.reserve( allocInfo.getVmType( ), minAmount, maxAmount );
+      List<ResourceToken> tokenList = Lists.newArrayList( );
+      for ( int i = 0; i < quantity; i++ ) {
+        try {
+          ResourceToken token = this.newToken( allocInfo, i );
+          LOG.debug( EventType.TOKEN_RESERVED.name( ) + ": " + token.toString( ) );
+          this.tokens.put( token, TokenState.PENDING );
+          tokenList.add( token );
+        } catch ( Exception ex ) {
+          LOG.error( ex );
+          Logs.extreme( ).error( ex, ex );
+          for ( ResourceToken token : tokenList ) {
+            this.tokens.remove( token, TokenState.PENDING );
+          }
         }
       }
+      return tokenList;
+    } finally {
+      this.allocations.incrementAndGet( );
+      this.allocating.decrementAndGet( );
+    }
+  }
+
+  ResourceToken newToken( final Allocation allocInfo, final int launchIndex ) {
+    return new ResourceToken( allocInfo, launchIndex );
+  }
+
+  /**
+   * Mark an allocation or release as in progress.
+   *
+   * <p>Waits while an update is applied exclusively.</p>
+   */
+  private void beginAllocation( ) {
+    while ( true ) {
+      this.allocating.incrementAndGet( );
+      if ( !this.exclusive ) {
+        return;
+      }
+      this.allocating.decrementAndGet( );
+      this.updateLock.lock( );
+      this.updateLock.unlock( );
+    }
+  }
+
+  /**
+   * Reserve availability for the given vm type.
+   *
+   * <p>Availability of the requested type is reserved with compare-and-set.
+   * Larger types share the capacity used so their availability is reduced
+   * by the same quantity, smaller types are limited to the availability
+   * remaining for the requested type.</p>
+   *
+   * @return The quantity reserved
+   */
+  int reserve( final VmType vmType, final int minAmount, final int maxAmount ) throws NotEnoughResourcesException {
+    final VmTypeAvailability vmTypeStatus = this.typeMap.get( vmType.getName( ) );
+    if ( LOG.isDebugEnabled( ) ) {
+      LOG.debug( LogUtil.header( "BEFORE ALLOCATE" ) );
+      LOG.debug( this.sorted( ) );
+    }
+    //:: if not enough, then bail out :://
+    int available;
+    int quantity;
+    do {
+      available = vmTypeStatus == null ? 0 : vmTypeStatus.getAvailable( );
+      if ( vmTypeStatus == null || available < minAmount ) {
+        throw new NotEnoughResourcesException( "Not enough resources (" + available + " < " + minAmount + ": vm instances." );
+      }
+      quantity = Math.min( maxAmount, available );
+    } while ( !vmTypeStatus.compareAndSetAvailable( available, available - quantity ) );
+
+    //:: adjust available resources across the "active" partition :://
+    final int remaining = available - quantity;
+    for ( final VmTypeAvailability v : this.typeMap.values( ) ) {
+      if ( v == vmTypeStatus ) {
+        continue;
+      } else if ( v.getAvailable( ) > available ) {
+        v.limit( remaining );
+      } else {
+        v.decrement( quantity );
+      }
+    }
+    if ( LOG.isDebugEnabled( ) ) {
+      LOG.debug( LogUtil.header( "AFTER ALLOCATE" ) );
+      LOG.debug( this.sorted( ) );
+    }
+    return quantity;
+  }
+
+  /**
+   * Release availability for the given vm type.
+   */
+  void release( final VmType vmType, final int quantity ) {
+    // It is only safe to adjust availability for the vm type that was
+    // allocated. We do not know if larger types had any availability
+    // or what the availability was for smaller types.
+    //
+    // This is an optimization, other types availability will be updated
+    // on resource refresh.
+    final VmTypeAvailability vmAvailable = this.typeMap.get( vmType.getName( ) );
+    if ( vmAvailable != null ) {
+      vmAvailable.decrement( -quantity );
     }
-    return tokenList;
   }
 
   public int countUncommittedPendingInstances( final OwnerFullName ownerFullName ) {
     int count = 0;
-    for ( final ResourceToken token : this.pendingTokens ) {
-      if ( !token.isCommitted( ) && token.getOwner( ).isOwner( ownerFullName ) ) {
+    for ( final Map.Entry<ResourceToken, TokenState> entry : this.tokens.entrySet( ) ) {
+      final ResourceToken token = entry.getKey( );
+      if ( entry.getValue( ) == TokenState.PENDING && !token.isCommitted( ) && token.getOwner( ).isOwner( ownerFullName ) ) {
         count += token.getAmount( );
       }
     }
     return count;
   }
 
-  public synchronized void releaseToken( ResourceToken token ) {
+  public void releaseToken( ResourceToken token ) {
     LOG.debug( EventType.TOKEN_RELEASED.name( ) + ": " + token.toString( ) );
-    if ( this.pendingTokens.remove( token ) ) {
-      // It is only safe to adjust availability for the vm type that was
-      // allocated. We do not know if larger types had any availability
-      // or what the availability was for smaller types.
-      //
-      // This is an optimization, other types availability will be updated
-      // on resource refresh.
-      final VmTypeAvailability vmAvailable = this.typeMap.get( token.getAllocationInfo( ).getVmType( ).getName( ) );
-      if ( vmAvailable != null ) {
-        vmAvailable.decrement( -1 );
+    this.beginAllocation( );
+    try {
+      if ( this.tokens.remove( token ) == TokenState.PENDING ) {
+        this.release( token.getAllocationInfo( ).getVmType( ), token.getAmount( ) );
       }
+    } finally {
+      this.allocations.incrementAndGet( );
+      this.allocating.decrementAndGet( );
     }
-    this.submittedTokens.remove( token );
-    this.redeemedTokens.remove( token );
   }
   
-  public synchronized void submitToken( ResourceToken token ) throws NoSuchTokenException {
+  public void submitToken( ResourceToken token ) throws NoSuchTokenException {
     LOG.debug( EventType.TOKEN_SUBMITTED.name( ) + ": " + token.toString( ) );
-    if ( this.pendingTokens.remove( token ) ) {
-      this.submittedTokens.add( token );
-    } else {
+    if ( !this.tokens.replace( token, TokenState.PENDING, TokenState.SUBMITTED ) ) {
       throw new NoSuchTokenException( token.toString( ) );
     }
   }
   
-  public synchronized void redeemToken( ResourceToken token ) throws NoSuchTokenException {
+  public void redeemToken( ResourceToken token ) throws NoSuchTokenException {
     LOG.debug( EventType.TOKEN_REDEEMED.name( ) + ": " + token.toString( ) );
-    if ( this.submittedTokens.remove( token ) || this.pendingTokens.remove( token ) ) {
-      this.redeemedTokens.add( token );
-    } else {
+    if ( !this.tokens.replace( token, TokenState.SUBMITTED, TokenState.REDEEMED ) &&
+         !this.tokens.replace( token, TokenState.PENDING, TokenState.REDEEMED ) ) {
       LOG.error(
         "Failed to find token: "
             + token
             + "\n"
-            + Joiner.on( "\n" ).join( "pending", this.pendingTokens, "submitted", this.submittedTokens, "redeemed", this.redeemedTokens ),
+            + Joiner.on( "\n" ).join( "pending", this.tokens( TokenState.PENDING ), "submitted", this.tokens( TokenState.SUBMITTED ), "redeemed", this.tokens( TokenState.REDEEMED ) ),
         new NoSuchTokenException( token.toString( ) ) );
     }
   }
 
-  public synchronized boolean isPending( final ResourceToken token ) {
-    return this.pendingTokens.contains( token );
+  public boolean isPending( final ResourceToken token ) {
+    return this.tokens.get( token ) == TokenState.PENDING;
   }
 
-  public synchronized void update( List<ResourceType> rscUpdate ) {
+  /**
+   * Update availability from a cluster resource report.
+   *
+   * <p>Availability is the reported availability less the instances for
+   * outstanding tokens. The update is repeated if an allocation or token
+   * release was in progress or completed while it was applied, as the tokens
+   * for that allocation may not have been counted, or the released quantity
+   * may have been added to availability that already excluded the token.
+   * After {@link #MAX_UPDATE_ATTEMPTS} the update is applied once more while
+   * new allocations and releases wait and those in progress complete.</p>
+   */
+  public void update( List<ResourceType> rscUpdate ) {
     long expiryAge = System.currentTimeMillis( ) - TimeUnit.MINUTES.toMillis( getExpiryMinutes( 15 ) );
     expirePendingTokens( expiryAge );
 
-    int pending = 0, submitted = 0, redeemed = 0;
-    for ( ResourceToken t : this.pendingTokens )
-      pending += t.getAmount( );
-    for ( ResourceToken t : this.submittedTokens )
-      submitted += t.getAmount( );
-    for ( ResourceToken t : this.redeemedTokens )
-      redeemed += t.getAmount( );
-    final int outstandingCount = pending + submitted;
-    EventRecord.here( ResourceState.class, EventType.CLUSTER_STATE_UPDATE, this.clusterName,
-                      String.format( "outstanding=%d:pending=%d:submitted=%d:redeemed=%d", outstandingCount, pending, submitted, redeemed ) ).info( );
-    this.redeemedTokens.clear( );
-    
+    final List<ResourceToken> redeemedTokens = Lists.newArrayList( );
+    int pending, submitted, redeemed, outstandingCount;
     StringBuilder before = new StringBuilder( );
     StringBuilder after = new StringBuilder( );
-    for ( ResourceType rsc : rscUpdate ) {
-      VmTypeAvailability vmAvailable = this.typeMap.get( rsc.getInstanceType( ).getName( ) );
-      if ( vmAvailable == null ) continue;
-      before.append( String.format( ":%s:%d/%d", vmAvailable.getType( ).getName( ), vmAvailable.getAvailable( ), vmAvailable.getMax( ) ) );
-      vmAvailable.setAvailable( rsc.getAvailableInstances( ) );
-      vmAvailable.decrement( outstandingCount );
-      vmAvailable.setMax( rsc.getMaxInstances( ) );
-      after.append( String.format( ":%s:%d/%d", vmAvailable.getType( ).getName( ), vmAvailable.getAvailable( ), vmAvailable.getMax( ) ) );
+    boolean exclusiveUpdate = false;
+    try {
+      for ( int attempt = 1; ; attempt++ ) {
+        final long allocationCount = this.allocations.get( );
+        pending = 0; submitted = 0; redeemed = 0;
+        redeemedTokens.clear( );
+        for ( final Map.Entry<ResourceToken, TokenState> entry : this.tokens.entrySet( ) ) {
+          switch ( entry.getValue( ) ) {
+            case PENDING:
+              pending += entry.getKey( ).getAmount( );
+              break;
+            case SUBMITTED:
+              submitted += entry.getKey( ).getAmount( );
+              break;
+            case REDEEMED:
+              redeemed += entry.getKey( ).getAmount( );
+              redeemedTokens.add( entry.getKey( ) );
+              break;
+          }
+        }
+        outstandingCount = pending + submitted;
+
+        before.setLength( 0 );
+        after.setLength( 0 );
+        for ( ResourceType rsc : rscUpdate ) {
+          VmTypeAvailability vmAvailable = this.typeMap.get( rsc.getInstanceType( ).getName( ) );
+          if ( vmAvailable == null ) continue;
+          before.append( String.format( ":%s:%d/%d", vmAvailable.getType( ).getName( ), vmAvailable.getAvailable( ), vmAvailable.getMax( ) ) );
+          vmAvailable.setAvailable( Math.max( 0, rsc.getAvailableInstances( ) - outstandingCount ) );
+          vmAvailable.setMax( rsc.getMaxInstances( ) );
+          after.append( String.format( ":%s:%d/%d", vmAvailable.getType( ).getName( ), vmAvailable.getAvailable( ), vmAvailable.getMax( ) ) );
+        }
+
+        if ( exclusiveUpdate || ( this.allocating.get( ) == 0 && this.allocations.get( ) == allocationCount ) ) {
+          break;
+        } else if ( attempt >= MAX_UPDATE_ATTEMPTS ) {
+          LOG.debug( "Resource update for " + this.clusterName + " raced with allocations or releases, applying exclusively" );
+          this.updateLock.lock( );
+          this.exclusive = true;
+          exclusiveUpdate = true;
+          while ( this.allocating.get( ) > 0 ) {
+            Thread.yield( );
+          }
+        }
+      }
+    } finally {
+      if ( exclusiveUpdate ) {
+        this.exclusive = false;
+        this.updateLock.unlock( );
+      }
+    }
+    for ( final ResourceToken token : redeemedTokens ) {
+      this.tokens.remove( token, TokenState.REDEEMED );
     }
+    EventRecord.here( ResourceState.class, EventType.CLUSTER_STATE_UPDATE, this.clusterName,
+                      String.format( "outstanding=%d:pending=%d:submitted=%d:redeemed=%d", outstandingCount, pending, submitted, redeemed ) ).info( );
     EventRecord.here( ResourceState.class, EventType.CLUSTER_STATE_UPDATE, this.clusterName, "ANTE" + before.toString( ) ).info( );
     EventRecord.here( ResourceState.class, EventType.CLUSTER_STATE_UPDATE, this.clusterName, "POST" + after.toString( ) ).info( );
   }
@@ -271,18 +396,29 @@ public class ResourceState {
 
   private void expirePendingTokens( final long expireBefore ) {
     final Date oldestDate = new Date( expireBefore );
-    for ( final ResourceToken token : pendingTokens ) {
-      if ( token.getCreationTime( ).before( oldestDate ) ) {
+    for ( final Map.Entry<ResourceToken, TokenState> entry : this.tokens.entrySet( ) ) {
+      final ResourceToken token = entry.getKey( );
+      if ( entry.getValue( ) == TokenState.PENDING && token.getCreationTime( ).before( oldestDate ) ) {
         LOG.error( "Expiring pending token: " + token );
-        pendingTokens.remove( token );
+        this.tokens.remove( token, TokenState.PENDING );
       }
     }
   }
 
+  private List<ResourceToken> tokens( final TokenState state ) {
+    final List<ResourceToken> tokenList = Lists.newArrayList( );
+    for ( final Map.Entry<ResourceToken, TokenState> entry : this.tokens.entrySet( ) ) {
+      if ( entry.getValue( ) == state ) {
+        tokenList.add( entry.getKey( ) );
+      }
+    }
+    return tokenList;
+  }
+
   private NavigableSet<VmTypeAvailability> sorted( ) {
     NavigableSet<VmTypeAvailability> available = new TreeSet<>( );
-    for ( String typeName : this.typeMap.keySet( ) )
-      available.add( this.typeMap.get( typeName ) );
+    for ( VmTypeAvailability availability : this.typeMap.values( ) )
+      available.add( availability.copy( ) );
     available.add( VmTypeAvailability.ZERO );
     LOG.debug( "Resource information for " + this.clusterName );
     return available;
@@ -295,18 +431,18 @@ public class ResourceState {
   @Override
   public String toString( ) {
     return String.format( "ClusterNodeState pending=%s redeemed=%s submitted=%s",
-                          this.pendingTokens, this.redeemedTokens, this.submittedTokens );
+                          this.tokens( TokenState.PENDING ), this.tokens( TokenState.REDEEMED ), this.tokens( TokenState.SUBMITTED ) );
   }
   
   public static class VmTypeAvailability implements Comparable {
-    private VmType type;
-    private int    max;
-    private int    available;
+    private final VmType        type;
+    private volatile int        max;
+    private final AtomicInteger available;
     
     public VmTypeAvailability( final VmType type, final int max, final int available ) {
       this.type = type;
       this.max = max;
-      this.available = available;
+      this.available = new AtomicInteger( available );
     }
     
     public VmType getType( ) {
@@ -314,10 +450,28 @@ public class ResourceState {
     }
     
     public void decrement( int quantity ) {
-      this.available -= quantity;
-      this.available = ( this.available < 0 )
-                                             ? 0
-                                             : this.available;
+      int current;
+      do {
+        current = this.available.get( );
+      } while ( !this.available.compareAndSet( current, Math.max( 0, current - quantity ) ) );
+    }
+
+    /**
+     * Reduce availability to at most the given value.
+     */
+    void limit( final int limit ) {
+      int current;
+      do {
+        current = this.available.get( );
+      } while ( current > limit && !this.available.compareAndSet( current, Math.max( 0, limit ) ) );
+    }
+
+    boolean compareAndSetAvailable( final int expect, final int update ) {
+      return this.available.compareAndSet( expect, update );
+    }
+
+    VmTypeAvailability copy( ) {
+      return new VmTypeAvailability( this.type, this.max, this.available.get( ) );
     }
     
     public int getMax( ) {
@@ -329,11 +483,11 @@ public class ResourceState {
     }
     
     public int getAvailable( ) {
-      return available;
+      return available.get( );
     }
     
     public void setAvailable( final int available ) {
-      this.available = available;
+      this.available.set( available );
     }
     
     @SuppressWarnings( "RedundantIfStatement" )
@@ -389,6 +543,19 @@ public class ResourceState {
       
       @Override
       public void decrement( final int quantity ) {}
+
+      @Override
+      void limit( final int limit ) {}
+
+      @Override
+      boolean compareAndSetAvailable( final int expect, final int update ) {
+        return false;
+      }
+
+      @Override
+      VmTypeAvailability copy( ) {
+        return this;
+      }
       
       @SuppressWarnings( { "EqualsWhichDoesntCheckParameterClass", "RedundantIfStatement" } )
       @Override
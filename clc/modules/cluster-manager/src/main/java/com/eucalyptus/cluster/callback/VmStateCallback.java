@@ -64,9 +64,12 @@ package com.eucalyptus.cluster.callback;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentMap;
 import javax.annotation.Nullable;
 import javax.persistence.EntityTransaction;
 import org.apache.log4j.Logger;
@@ -79,6 +82,7 @@ import com.eucalyptus.compute.common.network.Networking;
 import com.eucalyptus.compute.common.network.UpdateInstanceResourcesType;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.TransactionException;
+import com.eucalyptus.entities.TransactionResource;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.util.TypeMapper;
 import com.eucalyptus.util.TypeMappers;
@@ -96,6 +100,7 @@ import com.eucalyptus.vmtypes.VmTypes;
 import com.google.common.base.CaseFormat;
 import com.google.common.base.Enums;
 import com.google.common.base.Function;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
@@ -103,10 +108,14 @@ import com.google.common.base.Splitter;
 import com.google.common.base.Supplier;
 import com.google.common.base.Suppliers;
 import com.google.common.collect.Collections2;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import edu.ucsb.eucalyptus.cloud.VmDescribeResponseType;
 import edu.ucsb.eucalyptus.cloud.VmDescribeType;
 import edu.ucsb.eucalyptus.cloud.VmInfo;
+import edu.ucsb.eucalyptus.msgs.AttachedVolume;
 import edu.ucsb.eucalyptus.msgs.VmTypeInfo;
 
 public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescribeType, VmDescribeResponseType> {
@@ -161,6 +170,7 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
     if ( Databases.isVolatile( ) ) {
       return;
     } else {
+      final long start = System.nanoTime( );
       reply.setOriginCluster( this.getSubject( ).getConfiguration( ).getName( ) );
       final Set<String> reportedInstances = Sets.newHashSet( );
       for ( VmInfo vmInfo : reply.getVms( ) ) {
@@ -178,28 +188,134 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
       
       final Set<String> unreportedInstances = Sets.newHashSet( Sets.difference( this.initialInstances.get( ), reportedInstances ) );
       final Set<String> unknownInstances = Sets.newHashSet( Sets.difference( reportedInstances, this.initialInstances.get( ) ) );
+      final int batchSize = Objects.firstNonNull( VmInstances.VM_STATE_BATCH_SIZE, 0 );
+      final List<VmInfo> knownVms = Lists.newArrayList( );
       for ( final VmInfo runVm : reply.getVms( ) ) {
         if ( Databases.isVolatile( ) ) {
           return;
         } else if ( this.initialInstances.get( ).contains( runVm.getInstanceId( ) ) ) {
-          VmStateCallback.handleReportedState( runVm );
+          if ( batchSize > 0 ) {
+            knownVms.add( runVm );
+          } else {
+            VmStateCallback.handleReportedState( runVm );
+          }
         } else if ( unknownInstances.contains( runVm.getInstanceId( ) ) ) {
           VmStateCallback.handleUnknown( runVm );
         }
       }
-      for ( final String vmId : unreportedInstances ) {
+      if ( batchSize > 0 ) {
+        VmStateCallback.handleReportedStates( knownVms, batchSize );
+        VmStateCallback.handleUnreported( unreportedInstances, batchSize );
+      } else for ( final String vmId : unreportedInstances ) {
         if ( Databases.isVolatile( ) ) {
           return;
         } else {
           VmStateCallback.handleUnreported( vmId );
         }
       }
+      VmStateCallbackStatistics.get( ).pollCycle( start, reportedInstances.size( ), unreportedInstances.size( ) );
+    }
+  }
+
+  /**
+   * Reconcile reported instance states in batches.
+   *
+   * <p>Instances for each batch are loaded with a single query and updated in
+   * a single transaction. Instances with an unchanged report are skipped and
+   * instances with state transitions or errors are handled individually.</p>
+   */
+  private static void handleReportedStates( final List<VmInfo> runVms, final int batchSize ) {
+    final VmStateCallbackStatistics statistics = VmStateCallbackStatistics.get( );
+    for ( final List<VmInfo> batch : Iterables.partition( runVms, batchSize ) ) {
+      if ( Databases.isVolatile( ) ) {
+        return;
+      }
+      final Map<String,VmInfo> reported = Maps.newHashMap( );
+      for ( final VmInfo runVm : batch ) {
+        reported.put( runVm.getInstanceId( ), runVm );
+      }
+      List<VmInfo> individual = Lists.newArrayList( );
+      final List<VmInstance> updated = Lists.newArrayList( );
+      try ( final TransactionResource db = Entities.transactionFor( VmInstance.class ) ) {
+        final List<VmInstance> vms = Entities.query(
+            VmInstance.named( null, null ),
+            false,
+            Restrictions.in( "displayName", reported.keySet( ) ),
+            Collections.<String,String>emptyMap( ) );
+        for ( final VmInstance vm : vms ) {
+          final VmInfo runVm = reported.get( vm.getDisplayName( ) );
+          if ( runVm == null ) continue;
+          final VmState runVmState = VmState.Mapper.get( runVm.getStateName( ) );
+          if ( VmStateSet.DONE.apply( vm ) || VmInstances.Timeout.EXPIRED.apply( vm ) || VmState.SHUTTING_DOWN.equals( runVmState ) ) {
+            individual.add( runVm );
+          } else if ( VmStateSet.RUN.apply( vm ) ) {
+            if ( ReportedState.isUnchanged( vm, runVm ) ) {
+              statistics.unchanged( );
+            } else {
+              vm.doUpdate( ).apply( runVm );
+              updated.add( vm );
+            }
+          } else if ( VmStateSet.RUN.contains( runVmState )
+                      && vm.lastUpdateMillis( ) > ( VmInstances.VOLATILE_STATE_TIMEOUT_SEC * 1000l ) ) {
+            vm.doUpdate( ).apply( runVm );
+            updated.add( vm );
+          }
+        }
+        db.commit( );
+        statistics.batch( );
+        statistics.updated( updated.size( ) );
+        for ( final VmInstance vm : updated ) {
+          ReportedState.reported( vm, reported.get( vm.getDisplayName( ) ) );
+        }
+      } catch ( final Exception ex ) {
+        LOG.error( "Error reconciling instance states, reconciling " + batch.size( ) + " instances individually: " + ex );
+        Logs.extreme( ).error( ex, ex );
+        statistics.batchFailed( );
+        individual = batch;
+      }
+      statistics.individual( individual.size( ) );
+      for ( final VmInfo runVm : individual ) {
+        if ( Databases.isVolatile( ) ) {
+          return;
+        }
+        ReportedState.forget( runVm.getInstanceId( ) );
+        VmStateCallback.handleReportedState( runVm );
+      }
+    }
+  }
+
+  /**
+   * Handle unreported instances, loading each batch with a single query.
+   */
+  private static void handleUnreported( final Set<String> vmIds, final int batchSize ) {
+    for ( final List<String> batch : Iterables.partition( vmIds, batchSize ) ) {
+      if ( Databases.isVolatile( ) ) {
+        return;
+      }
+      for ( final String vmId : batch ) {
+        ReportedState.forget( vmId );
+      }
+      for ( final VmInstance vm : VmInstances.list(
+          null,
+          Restrictions.in( "displayName", batch ),
+          Collections.<String,String>emptyMap( ),
+          null ) ) {
+        VmStateCallback.handleUnreported( vm );
+      }
     }
   }
   
   private static void handleUnreported( final String vmId ) {
     try {
-      final VmInstance vm = VmInstances.lookupAny( vmId );
+      VmStateCallback.handleUnreported( VmInstances.lookupAny( vmId ) );
+    } catch ( final Exception ex ) {
+      LOG.error( ex );
+      Logs.extreme( ).error( ex, ex );
+    }
+  }
+
+  private static void handleUnreported( final VmInstance vm ) {
+    try {
       if ( VmState.PENDING.apply( vm ) && vm.lastUpdateMillis( ) < ( VmInstances.VM_INITIAL_REPORT_TIMEOUT * 1000 ) ) {
         //do nothing during first VM_INITIAL_REPORT_TIMEOUT millis of instance life
         return;
@@ -357,6 +473,68 @@ public class VmStateCallback extends StateUpdateMessageCallback<Cluster, VmDescr
     };
   }
   
+  /**
+   * The last report applied for an instance, used to skip unchanged reports.
+   */
+  private static final class ReportedState {
+    private static final ConcurrentMap<String,ReportedState> reportedStates = Maps.newConcurrentMap( );
+
+    private final String report;
+    private final Integer version;
+
+    private ReportedState( final String report, final Integer version ) {
+      this.report = report;
+      this.version = version;
+    }
+
+    /**
+     * An update is not required if the report and instance are unchanged
+     * since the report was last applied and no timestamp update is due.
+     */
+    static boolean isUnchanged( final VmInstance vm, final VmInfo runVm ) {
+      final ReportedState reportedState = reportedStates.get( vm.getDisplayName( ) );
+      return reportedState != null &&
+          reportedState.version != null &&
+          reportedState.version.equals( vm.getVersion( ) ) &&
+          reportedState.report.equals( report( runVm ) ) &&
+          vm.getState( ).equals( VmState.Mapper.get( runVm.getStateName( ) ) ) &&
+          !vm.getRuntimeState( ).isBundling( ) &&
+          !VmInstances.Timeout.UNTOUCHED.apply( vm );
+    }
+
+    static void reported( final VmInstance vm, final VmInfo runVm ) {
+      reportedStates.put( vm.getDisplayName( ), new ReportedState( report( runVm ), vm.getVersion( ) ) );
+    }
+
+    static void forget( final String instanceId ) {
+      reportedStates.remove( instanceId );
+    }
+
+    private static String report( final VmInfo runVm ) {
+      final StringBuilder report = new StringBuilder( 256 )
+          .append( runVm.getStateName( ) ).append( '|' )
+          .append( runVm.getBundleTaskStateName( ) ).append( '|' )
+          .append( runVm.getBundleTaskProgress( ) ).append( '|' )
+          .append( runVm.getGuestStateName( ) ).append( '|' )
+          .append( runVm.getServiceTag( ) ).append( '|' )
+          .append( runVm.getMigrationStateName( ) ).append( '|' )
+          .append( runVm.getMigrationSource( ) ).append( '|' )
+          .append( runVm.getMigrationDestination( ) );
+      if ( runVm.getNetParams( ) != null ) {
+        report.append( '|' ).append( runVm.getNetParams( ).getMacAddress( ) )
+            .append( '|' ).append( runVm.getNetParams( ).getIpAddress( ) )
+            .append( '|' ).append( runVm.getNetParams( ).getIgnoredPublicIp( ) );
+      }
+      for ( final AttachedVolume volume : runVm.getVolumes( ) ) {
+        report.append( '|' ).append( volume.getVolumeId( ) )
+            .append( ':' ).append( volume.getStatus( ) )
+            .append( ':' ).append( volume.getDevice( ) )
+            .append( ':' ).append( volume.getRemoteDevice( ) );
+      }
+      return report.toString( );
+    }
+  }
+
   public static class VmPendingCallback extends StateUpdateMessageCallback<Cluster, VmDescribeType, VmDescribeResponseType> {
     @SuppressWarnings( "unchecked" )
     private final Predicate<VmInstance> filter = Predicates.and( VmStateSet.TORNDOWN.not( ), stateSettleFilter( ), partitionFilter( this ) );
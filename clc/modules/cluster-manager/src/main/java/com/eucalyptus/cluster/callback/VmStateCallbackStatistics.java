@@ -0,0 +1,127 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cluster.callback;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.ws.server.LatencyHistogram;
+
+/**
+ * Instance state poll cycle statistics, exported via JMX.
+ */
+public class VmStateCallbackStatistics {
+
+  private static final VmStateCallbackStatistics instance = new VmStateCallbackStatistics( );
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+
+  private final LatencyHistogram pollCycle = new LatencyHistogram( );
+  private final AtomicLong lastPollCycleMillis = new AtomicLong( );
+  private final AtomicLong lastReported = new AtomicLong( );
+  private final AtomicLong lastUnreported = new AtomicLong( );
+  private final AtomicLong unchanged = new AtomicLong( );
+  private final AtomicLong updated = new AtomicLong( );
+  private final AtomicLong individual = new AtomicLong( );
+  private final AtomicLong batches = new AtomicLong( );
+  private final AtomicLong batchFailures = new AtomicLong( );
+
+  static VmStateCallbackStatistics get( ) {
+    if ( registered.compareAndSet( false, true ) ) {
+      Mbeans.register( instance );
+    }
+    return instance;
+  }
+
+  void pollCycle( final long startNanos, final int reported, final int unreported ) {
+    final long nanos = System.nanoTime( ) - startNanos;
+    pollCycle.recordNanos( nanos );
+    lastPollCycleMillis.set( TimeUnit.NANOSECONDS.toMillis( nanos ) );
+    lastReported.set( reported );
+    lastUnreported.set( unreported );
+  }
+
+  void unchanged( ) {
+    unchanged.incrementAndGet( );
+  }
+
+  void updated( final int count ) {
+    updated.addAndGet( count );
+  }
+
+  /**
+   * Instances reconciled in their own transaction.
+   */
+  void individual( final int count ) {
+    individual.addAndGet( count );
+  }
+
+  void batch( ) {
+    batches.incrementAndGet( );
+  }
+
+  void batchFailed( ) {
+    batchFailures.incrementAndGet( );
+  }
+
+  public String getPollCycle( ) {
+    return pollCycle.snapshot( ).toString( );
+  }
+
+  public long getLastPollCycleMillis( ) {
+    return lastPollCycleMillis.get( );
+  }
+
+  public long getLastReportedCount( ) {
+    return lastReported.get( );
+  }
+
+  public long getLastUnreportedCount( ) {
+    return lastUnreported.get( );
+  }
+
+  public long getUnchangedCount( ) {
+    return unchanged.get( );
+  }
+
+  public long getUpdatedCount( ) {
+    return updated.get( );
+  }
+
+  public long getIndividualCount( ) {
+    return individual.get( );
+  }
+
+  public long getBatchCount( ) {
+    return batches.get( );
+  }
+
+  public long getBatchFailureCount( ) {
+    return batchFailures.get( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "VmStateCallbackStatistics reported=" + getLastReportedCount( ) + " unreported=" + getLastUnreportedCount( ) +
+        " unchanged=" + getUnchangedCount( ) + " updated=" + getUpdatedCount( ) + " individual=" + getIndividualCount( ) +
+        " batches=" + getBatchCount( ) + "/" + getBatchFailureCount( ) +
+        " pollCycle[" + getPollCycle( ) + "]";
+  }
+}
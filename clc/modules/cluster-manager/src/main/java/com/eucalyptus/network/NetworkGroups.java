@@ -160,6 +160,10 @@ public class NetworkGroups {
   public static String        NETWORK_CONFIGURATION = "";
   @ConfigurableField( description = "Minimum interval between broadcasts of network information (seconds)." )
   public static Integer       MIN_BROADCAST_INTERVAL = 5;
+  @ConfigurableField( description = "Maximum interval between broadcasts of unchanged network information to a cluster (seconds)." )
+  public static Integer       MAX_BROADCAST_INTERVAL = 60;
+  @ConfigurableField( description = "Time without further changes before network information is broadcast (milliseconds)." )
+  public static Integer       BROADCAST_COALESCE_WINDOW = 500;
 
 
   public static class NetworkRangeConfiguration {
@@ -0,0 +1,149 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.ws.server.LatencyHistogram;
+
+/**
+ * Timings for network information broadcasts, exported via JMX.
+ */
+public class NetworkInfoBroadcastStatistics {
+
+  private static final NetworkInfoBroadcastStatistics instance = new NetworkInfoBroadcastStatistics( );
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+
+  private final LatencyHistogram build = new LatencyHistogram( );
+  private final LatencyHistogram marshal = new LatencyHistogram( );
+  private final LatencyHistogram write = new LatencyHistogram( );
+  private final LatencyHistogram broadcast = new LatencyHistogram( );
+  private final LatencyHistogram propagation = new LatencyHistogram( );
+  private final AtomicLong requested = new AtomicLong( );
+  private final AtomicLong version = new AtomicLong( );
+  private final AtomicLong documentSize = new AtomicLong( );
+  private final AtomicLong unchanged = new AtomicLong( );
+  private final AtomicLong sent = new AtomicLong( );
+  private final AtomicLong skipped = new AtomicLong( );
+
+  static NetworkInfoBroadcastStatistics get( ) {
+    if ( registered.compareAndSet( false, true ) ) {
+      Mbeans.register( instance );
+    }
+    return instance;
+  }
+
+  void build( final long startNanos ) {
+    build.recordNanos( System.nanoTime( ) - startNanos );
+  }
+
+  void marshal( final long startNanos ) {
+    marshal.recordNanos( System.nanoTime( ) - startNanos );
+  }
+
+  void write( final long startNanos ) {
+    write.recordNanos( System.nanoTime( ) - startNanos );
+  }
+
+  void broadcast( final long startNanos ) {
+    broadcast.recordNanos( System.nanoTime( ) - startNanos );
+  }
+
+  /**
+   * Record the time from a change until a cluster acknowledged it.
+   */
+  void propagation( final long changeTimeMillis ) {
+    propagation.record( TimeUnit.MILLISECONDS.toMicros( System.currentTimeMillis( ) - changeTimeMillis ) );
+  }
+
+  void requested( ) {
+    requested.incrementAndGet( );
+  }
+
+  void version( final long version, final int documentSize ) {
+    this.version.set( version );
+    this.documentSize.set( documentSize );
+  }
+
+  void unchanged( ) {
+    unchanged.incrementAndGet( );
+  }
+
+  void sent( ) {
+    sent.incrementAndGet( );
+  }
+
+  void skipped( ) {
+    skipped.incrementAndGet( );
+  }
+
+  public String getBuild( ) {
+    return build.snapshot( ).toString( );
+  }
+
+  public String getMarshal( ) {
+    return marshal.snapshot( ).toString( );
+  }
+
+  public String getWrite( ) {
+    return write.snapshot( ).toString( );
+  }
+
+  public String getBroadcast( ) {
+    return broadcast.snapshot( ).toString( );
+  }
+
+  public String getPropagation( ) {
+    return propagation.snapshot( ).toString( );
+  }
+
+  public long getRequestCount( ) {
+    return requested.get( );
+  }
+
+  public long getVersion( ) {
+    return version.get( );
+  }
+
+  public long getDocumentSize( ) {
+    return documentSize.get( );
+  }
+
+  public long getUnchangedCount( ) {
+    return unchanged.get( );
+  }
+
+  public long getSentCount( ) {
+    return sent.get( );
+  }
+
+  public long getSkippedCount( ) {
+    return skipped.get( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "NetworkInfoBroadcastStatistics version=" + getVersion( ) + " size=" + getDocumentSize( ) +
+        " build[" + getBuild( ) + "] marshal[" + getMarshal( ) + "] broadcast[" + getBroadcast( ) + "]" +
+        " propagation[" + getPropagation( ) + "]";
+  }
+}
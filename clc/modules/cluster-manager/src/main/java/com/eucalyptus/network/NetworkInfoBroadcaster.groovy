@@ -71,6 +71,7 @@ import com.eucalyptus.network.config.NetworkConfigurations
 import com.eucalyptus.network.config.Subnet
 import com.eucalyptus.system.BaseDirectory
 import com.eucalyptus.system.Threads
+import com.eucalyptus.util.Callback
 import com.eucalyptus.util.Strings as EucaStrings
 import com.eucalyptus.util.TypeMapper
 import com.eucalyptus.util.TypeMappers
@@ -112,7 +113,9 @@ import java.nio.file.StandardCopyOption
 import java.util.concurrent.Callable
 import java.util.concurrent.ConcurrentMap
 import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.atomic.AtomicReference
 
 import static com.eucalyptus.vm.VmInstance.VmStateSet.TORNDOWN
 
@@ -124,8 +127,18 @@ class NetworkInfoBroadcaster {
   private static final Logger logger = Logger.getLogger( NetworkInfoBroadcaster )
 
   private static final AtomicLong lastBroadcastTime = new AtomicLong( 0L );
+  private static final AtomicLong pendingChangeTime = new AtomicLong( 0L );
+  private static final AtomicLong lastChangeTime = new AtomicLong( 0L );
+  private static final AtomicBoolean refreshRequested = new AtomicBoolean( false );
+  private static final AtomicBoolean broadcastScheduled = new AtomicBoolean( false );
+  private static final Set<String> pendingPartitions = Collections.newSetFromMap( Maps.<String,Boolean>newConcurrentMap( ) )
   private static final ConcurrentMap<String,Long> activeBroadcastMap = Maps.<String,Long>newConcurrentMap( ) as ConcurrentMap<String, Long>
-  private static final EntityCache<VmInstance,VmInstanceNetworkView> instanceCache = new EntityCache<>( VmInstance.named(null), TypeMappers.lookup( VmInstance, VmInstanceNetworkView )  );
+  private static final ConcurrentMap<String,BroadcastNetworkInfoAcknowledgement> acknowledgedViewMap =
+      Maps.<String,BroadcastNetworkInfoAcknowledgement>newConcurrentMap( ) as ConcurrentMap<String,BroadcastNetworkInfoAcknowledgement>
+  private static final AtomicReference<NetworkInfoView> currentView = new AtomicReference<>( )
+  private static final Supplier<JAXBContext> jaxbContextSupplier =
+      Suppliers.memoize( { JAXBContext.newInstance( "com.eucalyptus.cluster" ) } as Supplier<JAXBContext> )
+  private static final EntityCache<VmInstance,VmInstanceNetworkView> instanceCache = new EntityCache<>( VmInstance.named(null), TypeMappers.lookup( VmInstance, VmInstanceNetworkView ), true );
   private static final EntityCache<NetworkGroup,NetworkGroupNetworkView> securityGroupCache = new EntityCache<>( NetworkGroup.withNaturalId( null ), TypeMappers.lookup( NetworkGroup, NetworkGroupNetworkView )  );
 
   private static final EntityCache<Vpc,VpcNetworkView> vpcCache = new EntityCache<>( Vpc.exampleWithOwner( null ), TypeMappers.lookup( Vpc, VpcNetworkView )  );
@@ -162,38 +175,103 @@ class NetworkInfoBroadcaster {
     }
   }
 
+  /**
+   * Request a broadcast for a change to network information.
+   *
+   * Requests are coalesced, the broadcast occurs once there have been no
+   * further requests for the coalescing window (or the minimum broadcast
+   * interval has passed since the first request) and there is always a
+   * broadcast after the last request.
+   */
   static void requestNetworkInfoBroadcast( ) {
     final long requestedTime = System.currentTimeMillis( )
-    Callable broadcastRequest = Closure.IDENTITY
-    broadcastRequest = {
-          final long currentTime = System.currentTimeMillis( )
-          final long lastBroadcast = lastBroadcastTime.get( )
-          if ( requestedTime >= lastBroadcast &&
-              lastBroadcast + TimeUnit.SECONDS.toMillis( NetworkGroups.MIN_BROADCAST_INTERVAL ) < currentTime  ) {
-            if ( lastBroadcastTime.compareAndSet( lastBroadcast, currentTime ) ) {
-              try {
-                broadcastNetworkInfo( )
-              } catch( e ) {
-                logger.error( "Error broadcasting network information", e )
-              }
-            } else { // re-evaluate
-              broadcastTask( broadcastRequest )
-            }
-          } else if ( requestedTime >= lastBroadcastTime.get() ) {
-            sleep( 100 ) // pause and re-evaluate to allow for min time between broadcasts
-            broadcastTask( broadcastRequest )
-          }
-        }
-    broadcastTask( broadcastRequest )
+    pendingChangeTime.compareAndSet( 0L, requestedTime )
+    lastChangeTime.set( requestedTime )
+    NetworkInfoBroadcastStatistics.get( ).requested( )
+    scheduleBroadcast( )
+  }
+
+  /**
+   * Request a broadcast that is not due to a change (periodic refresh)
+   */
+  private static void requestNetworkInfoRefresh( ) {
+    refreshRequested.set( true )
+    scheduleBroadcast( )
+  }
+
+  private static void scheduleBroadcast( ) {
+    if ( broadcastScheduled.compareAndSet( false, true ) ) {
+      try {
+        broadcastTask( coalescingBroadcastTask )
+      } catch( e ) {
+        broadcastScheduled.set( false )
+        logger.error( "Error scheduling network information broadcast", e )
+      }
+    }
+  }
+
+  private static boolean isBroadcastPending( ) {
+    pendingChangeTime.get( ) != 0L || refreshRequested.get( )
+  }
+
+  /**
+   * Delay in milliseconds until a pending broadcast is due, zero if due now.
+   */
+  private static long broadcastDelay( final long currentTime ) {
+    final long minimumIntervalMillis = TimeUnit.SECONDS.toMillis( NetworkGroups.MIN_BROADCAST_INTERVAL )
+    final long intervalDue = lastBroadcastTime.get( ) + minimumIntervalMillis
+    final long changeTime = pendingChangeTime.get( )
+    final long changeDue = changeTime == 0L ?
+        currentTime :
+        Math.min( lastChangeTime.get( ) + NetworkGroups.BROADCAST_COALESCE_WINDOW, changeTime + minimumIntervalMillis )
+    Math.max( 0L, Math.max( intervalDue, changeDue ) - currentTime )
   }
 
+  private static final Callable<Void> coalescingBroadcastTask = {
+    // only one instance of this task runs at any time (see broadcastScheduled)
+    boolean scheduled = true
+    try {
+      while ( true ) {
+        long delay
+        while ( ( delay = broadcastDelay( System.currentTimeMillis( ) ) ) > 0L ) {
+          sleep( Math.min( delay, 100L ) )
+        }
+        refreshRequested.set( false )
+        final long changeTime = pendingChangeTime.getAndSet( 0L )
+        lastBroadcastTime.set( System.currentTimeMillis( ) )
+        try {
+          broadcastNetworkInfo( changeTime )
+        } catch( e ) {
+          logger.error( "Error broadcasting network information", e )
+        }
+        scheduled = false
+        broadcastScheduled.set( false )
+        if ( !isBroadcastPending( ) || !broadcastScheduled.compareAndSet( false, true ) ) {
+          break // no changes since broadcast, or another task is scheduled
+        }
+        scheduled = true
+      }
+    } finally {
+      if ( scheduled ) broadcastScheduled.set( false ) // failed, allow later requests to schedule
+    }
+    null
+  } as Callable<Void>
+
   private static void broadcastTask( Callable task ) {
     Threads.enqueue( Eucalyptus, NetworkInfoBroadcaster, 5, task )
   }
 
+  /**
+   * Build and broadcast network information.
+   *
+   * @param changeTime The time of the earliest change included, zero if none
+   */
   @SuppressWarnings("UnnecessaryQualifiedReference")
-  static void broadcastNetworkInfo( ){
+  static void broadcastNetworkInfo( final long changeTime ){
+    final NetworkInfoBroadcastStatistics statistics = NetworkInfoBroadcastStatistics.get( )
+
     // populate with info directly from configuration
+    final long buildStart = System.nanoTime( )
     final Optional<NetworkConfiguration> networkConfiguration = NetworkConfigurations.networkConfiguration
     final List<Cluster> clusters = Clusters.getInstance( ).listValues( )
 
@@ -203,40 +281,107 @@ class NetworkInfoBroadcaster {
         Suppliers.ofInstance( clusters ) as Supplier<List<Cluster>>,
         { Topology.lookup(Eucalyptus).inetAddress.hostAddress } as Supplier<String>,
         NetworkConfigurations.&loadSystemNameservers as Function<List<String>,List<String>> )
-
-    final JAXBContext jc = JAXBContext.newInstance( "com.eucalyptus.cluster" )
-    final StringWriter writer = new StringWriter( 8192 )
-    jc.createMarshaller().marshal( info, writer )
-
-    final String networkInfo = writer.toString( )
+    statistics.build( buildStart )
     if ( logger.isTraceEnabled( ) ) {
-      logger.trace( "Broadcasting network information:\n${networkInfo}" )
+      logger.trace( "Network information cache refresh: ${instanceCache}" )
     }
 
-    final File newView = BaseDirectory.RUN.getChildFile( "global_network_info.xml.temp" )
-    if ( newView.exists( ) && !newView.delete( ) ) logger.warn( "Error deleting stale network view ${newView.getAbsolutePath()}" )
-    GFiles.write( networkInfo, newView, Charsets.UTF_8 )
-    JFiles.move( newView.toPath( ), BaseDirectory.RUN.getChildFile( "global_network_info.xml" ).toPath( ), StandardCopyOption.REPLACE_EXISTING )
+    final NetworkInfoView previousView = currentView.get( )
+    final NetworkInfoDelta delta = NetworkInfoDelta.between( previousView?.info, info )
+    final NetworkInfoView view
+    if ( delta.empty ) {
+      view = previousView
+      statistics.unchanged( )
+    } else {
+      final long marshalStart = System.nanoTime( )
+      final StringWriter writer = new StringWriter( previousView ? previousView.document.length( ) + 8192 : 8192 )
+      jaxbContextSupplier.get( ).createMarshaller( ).marshal( info, writer )
+      final String networkInfo = writer.toString( )
+      statistics.marshal( marshalStart )
+      if ( logger.isTraceEnabled( ) ) {
+        logger.trace( "Broadcasting network information:\n${networkInfo}" )
+      }
+
+      final long writeStart = System.nanoTime( )
+      final File newView = BaseDirectory.RUN.getChildFile( "global_network_info.xml.temp" )
+      if ( newView.exists( ) && !newView.delete( ) ) logger.warn( "Error deleting stale network view ${newView.getAbsolutePath()}" )
+      GFiles.write( networkInfo, newView, Charsets.UTF_8 )
+      JFiles.move( newView.toPath( ), BaseDirectory.RUN.getChildFile( "global_network_info.xml" ).toPath( ), StandardCopyOption.REPLACE_EXISTING )
+      statistics.write( writeStart )
+
+      view = new NetworkInfoView( ( previousView?.version ?: 0L ) + 1L, info, networkInfo, changeTime ?: System.currentTimeMillis( ) )
+      currentView.set( view )
+      statistics.version( view.version, networkInfo.length( ) )
+      logger.debug( "Network information version ${view.version}: ${delta}" )
+    }
 
-    final BroadcastNetworkInfoCallback callback = new BroadcastNetworkInfoCallback( networkInfo )
     clusters.each { Cluster cluster ->
-      final Long broadcastTime = System.currentTimeMillis( )
-      if ( null == activeBroadcastMap.putIfAbsent( cluster.partition, broadcastTime ) ) {
-        try {
-          AsyncRequests.newRequest( callback.newInstance( ) ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
-            @Override
-            void fire() {
-              activeBroadcastMap.remove( cluster.partition, broadcastTime )
+      broadcastNetworkInfo( cluster, view )
+      void
+    }
+  }
+
+  /**
+   * Broadcast to a cluster if it does not have the view.
+   *
+   * Each partition has at most one broadcast in progress, if a partition is
+   * busy then the current view is sent when the active broadcast completes.
+   */
+  private static void broadcastNetworkInfo( final Cluster cluster, final NetworkInfoView view ) {
+    final NetworkInfoBroadcastStatistics statistics = NetworkInfoBroadcastStatistics.get( )
+    final BroadcastNetworkInfoAcknowledgement acknowledgement = acknowledgedViewMap.get( cluster.partition )
+    if ( acknowledgement != null && !acknowledgement.isResendRequired( view.version ) ) {
+      statistics.skipped( )
+      return
+    }
+    final Long broadcastTime = System.currentTimeMillis( )
+    final long broadcastStart = System.nanoTime( )
+    if ( null == activeBroadcastMap.putIfAbsent( cluster.partition, broadcastTime ) ) {
+      pendingPartitions.remove( cluster.partition )
+      try {
+        statistics.sent( )
+        AsyncRequests.newRequest( new BroadcastNetworkInfoCallback( view.document ) ).then( new Callback.Success<BroadcastNetworkInfoResponseType>() {
+          @Override
+          void fire( final BroadcastNetworkInfoResponseType response ) {
+            statistics.broadcast( broadcastStart )
+            final BroadcastNetworkInfoAcknowledgement previous = acknowledgedViewMap.put(
+                cluster.partition,
+                new BroadcastNetworkInfoAcknowledgement( view.version, System.currentTimeMillis( ) ) )
+            if ( previous == null || previous.version != view.version ) {
+              statistics.propagation( view.changeTime )
             }
-          } ).dispatch( cluster.configuration )
-        } catch ( e ) {
-          activeBroadcastMap.remove( cluster.partition, broadcastTime )
+          }
+        } ).then( new UnconditionalCallback<BroadcastNetworkInfoResponseType>() {
+          @Override
+          void fire() {
+            activeBroadcastMap.remove( cluster.partition, broadcastTime )
+            broadcastPending( cluster )
+          }
+        } ).dispatch( cluster.configuration )
+      } catch ( e ) {
+        activeBroadcastMap.remove( cluster.partition, broadcastTime )
+        logger.error( "Error broadcasting network information to cluster ${cluster.partition} (${cluster.name})" as String, e )
+      }
+    } else {
+      pendingPartitions.add( cluster.partition )
+      logger.debug( "Deferring network information broadcast for active partition ${cluster.partition}" )
+    }
+  }
+
+  /**
+   * Send the current view to the cluster if it was deferred while busy
+   */
+  private static void broadcastPending( final Cluster cluster ) {
+    final NetworkInfoView view = currentView.get( )
+    if ( view != null && pendingPartitions.remove( cluster.partition ) ) {
+      broadcastTask( {
+        try {
+          broadcastNetworkInfo( cluster, currentView.get( ) )
+        } catch( e ) {
           logger.error( "Error broadcasting network information to cluster ${cluster.partition} (${cluster.name})" as String, e )
         }
-      } else {
-        logger.warn( "Skipping network information broadcast for active partition ${cluster.partition}" )
-      }
-      void
+        null
+      } as Callable<Void> )
     }
   }
 
@@ -999,6 +1144,43 @@ class NetworkInfoBroadcaster {
     }
   }
 
+  /**
+   * A version of the network information along with its XML document.
+   */
+  @PackageScope
+  static class NetworkInfoView {
+    final long version
+    final NetworkInfo info
+    final String document
+    final long changeTime
+
+    NetworkInfoView( final long version, final NetworkInfo info, final String document, final long changeTime ) {
+      this.version = version
+      this.info = info
+      this.document = document
+      this.changeTime = changeTime
+    }
+  }
+
+  /**
+   * The network information version last acknowledged by a cluster.
+   *
+   * Clusters only accept full documents so an unchanged view is not sent
+   * again unless it is older than the maximum broadcast interval, this
+   * ensures a restarted cluster receives the current view.
+   */
+  @Immutable
+  @PackageScope
+  static class BroadcastNetworkInfoAcknowledgement {
+    long version
+    long timestamp
+
+    boolean isResendRequired( final long currentVersion ) {
+      version != currentVersion ||
+          timestamp + TimeUnit.SECONDS.toMillis( NetworkGroups.MAX_BROADCAST_INTERVAL ) < System.currentTimeMillis( )
+    }
+  }
+
   public static class NetworkInfoBroadcasterEventListener implements EucaEventListener<ClockTick> {
     private final int intervalTicks = 3
     private final int activeBroadcastTimeoutMins = 3
@@ -1023,7 +1205,7 @@ class NetworkInfoBroadcaster {
           Hosts.coordinator &&
           !Bootstrap.isShuttingDown() &&
           !Databases.isVolatile() ) {
-        requestNetworkInfoBroadcast( )
+        requestNetworkInfoRefresh( )
       }
     }
   }
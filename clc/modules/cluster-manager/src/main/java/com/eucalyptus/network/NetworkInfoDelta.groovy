@@ -0,0 +1,143 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network
+
+import com.eucalyptus.cluster.NIDhcpOptionSet
+import com.eucalyptus.cluster.NIInstance
+import com.eucalyptus.cluster.NIInternetGateway
+import com.eucalyptus.cluster.NISecurityGroup
+import com.eucalyptus.cluster.NIVpc
+import com.eucalyptus.cluster.NetworkInfo
+import com.google.common.base.Function
+import com.google.common.collect.ImmutableSet
+import com.google.common.collect.Maps
+import groovy.transform.CompileStatic
+
+import javax.annotation.Nullable
+
+/**
+ * Differences between two versions of network information.
+ *
+ * Instances, security groups and VPC objects are compared by name, any
+ * other change is reported as a configuration change.
+ */
+@CompileStatic
+class NetworkInfoDelta {
+
+  final boolean full
+  final boolean configurationChanged
+  final ElementDelta instances
+  final ElementDelta securityGroups
+  final ElementDelta vpcs
+  final ElementDelta dhcpOptionSets
+  final ElementDelta internetGateways
+
+  private NetworkInfoDelta( final boolean full,
+                            final boolean configurationChanged,
+                            final ElementDelta instances,
+                            final ElementDelta securityGroups,
+                            final ElementDelta vpcs,
+                            final ElementDelta dhcpOptionSets,
+                            final ElementDelta internetGateways ) {
+    this.full = full
+    this.configurationChanged = configurationChanged
+    this.instances = instances
+    this.securityGroups = securityGroups
+    this.vpcs = vpcs
+    this.dhcpOptionSets = dhcpOptionSets
+    this.internetGateways = internetGateways
+  }
+
+  /**
+   * Calculate the delta from the previous to the current network information.
+   *
+   * @param previous The previous information, null if there is none
+   * @param current The current information
+   * @return The delta, which is full if there is no previous information
+   */
+  static NetworkInfoDelta between( @Nullable final NetworkInfo previous,
+                                   final NetworkInfo current ) {
+    final NetworkInfo base = previous ?: new NetworkInfo( )
+    new NetworkInfoDelta(
+        previous == null,
+        previous == null || base.configuration != current.configuration,
+        ElementDelta.between( base.instances, current.instances, { NIInstance item -> item.name } as Function<NIInstance,String> ),
+        ElementDelta.between( base.securityGroups, current.securityGroups, { NISecurityGroup item -> item.name } as Function<NISecurityGroup,String> ),
+        ElementDelta.between( base.vpcs, current.vpcs, { NIVpc item -> item.name } as Function<NIVpc,String> ),
+        ElementDelta.between( base.dhcpOptionSets, current.dhcpOptionSets, { NIDhcpOptionSet item -> item.name } as Function<NIDhcpOptionSet,String> ),
+        ElementDelta.between( base.internetGateways, current.internetGateways, { NIInternetGateway item -> item.name } as Function<NIInternetGateway,String> ) )
+  }
+
+  boolean isEmpty( ) {
+    !full && !configurationChanged &&
+        instances.empty && securityGroups.empty && vpcs.empty && dhcpOptionSets.empty && internetGateways.empty
+  }
+
+  @Override
+  String toString( ) {
+    "${full?'full':'delta'} configuration${configurationChanged?'':' un'}changed " +
+        "instances ${instances} securityGroups ${securityGroups} vpcs ${vpcs} " +
+        "dhcpOptionSets ${dhcpOptionSets} internetGateways ${internetGateways}"
+  }
+
+  @CompileStatic
+  static class ElementDelta {
+    final Set<String> added
+    final Set<String> removed
+    final Set<String> changed
+
+    private ElementDelta( final Set<String> added,
+                          final Set<String> removed,
+                          final Set<String> changed ) {
+      this.added = ImmutableSet.copyOf( added )
+      this.removed = ImmutableSet.copyOf( removed )
+      this.changed = ImmutableSet.copyOf( changed )
+    }
+
+    static <T> ElementDelta between( final List<T> previous,
+                                     final List<T> current,
+                                     final Function<T,String> nameFunction ) {
+      final Map<String,T> previousByName = Maps.newHashMapWithExpectedSize( previous.size( ) )
+      for ( final T item : previous ) {
+        previousByName.put( nameFunction.apply( item ), item )
+      }
+      final Set<String> added = new LinkedHashSet<>( )
+      final Set<String> changed = new LinkedHashSet<>( )
+      for ( final T item : current ) {
+        final String name = nameFunction.apply( item )
+        if ( !previousByName.containsKey( name ) ) {
+          added.add( name )
+        } else if ( previousByName.remove( name ) != item ) {
+          changed.add( name )
+        }
+      }
+      new ElementDelta( added, previousByName.keySet( ), changed )
+    }
+
+    boolean isEmpty( ) {
+      added.empty && removed.empty && changed.empty
+    }
+
+    @Override
+    String toString( ) {
+      "+${added.size()} -${removed.size()} ~${changed.size()}"
+    }
+  }
+}
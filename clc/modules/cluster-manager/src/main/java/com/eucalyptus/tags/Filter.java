@@ -22,6 +22,7 @@ package com.eucalyptus.tags;
 import java.util.Collections;
 import java.util.Map;
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import org.hibernate.criterion.Criterion;
 import org.hibernate.criterion.Junction;
 import org.hibernate.criterion.Restrictions;
@@ -41,15 +42,31 @@ public class Filter {
   @Nonnull private final Criterion criterion;
   @Nonnull private final Predicate<Object> predicate;
   private final boolean filteringOnTags;
-  
+  @Nullable private final String resourceType;
+  private final int pushedDownFilters;
+  private final int residualFilters;
+
   Filter( @Nonnull final Map<String,String> aliases,
           @Nonnull final Criterion criterion,
           @Nonnull final Predicate<Object> predicate,
-          final boolean filteringOnTags ) {
+          final boolean filteringOnTags,
+          @Nullable final String resourceType,
+          final int pushedDownFilters,
+          final int residualFilters ) {
     this.aliases = aliases;
     this.criterion = criterion;
     this.predicate = predicate;
     this.filteringOnTags = filteringOnTags;
+    this.resourceType = resourceType;
+    this.pushedDownFilters = pushedDownFilters;
+    this.residualFilters = residualFilters;
+  }
+
+  Filter( @Nonnull final Map<String,String> aliases,
+          @Nonnull final Criterion criterion,
+          @Nonnull final Predicate<Object> predicate,
+          final boolean filteringOnTags ) {
+    this( aliases, criterion, predicate, filteringOnTags, null, 0, 0 );
   }
 
   Filter( @Nonnull final Predicate<Object> predicate,
@@ -105,6 +122,33 @@ public class Filter {
     return predicate;  
   }
 
+  /**
+   * Record statistics for a query using this filter.
+   *
+   * <p>The returned predicate should be applied to each result fetched by
+   * the query.</p>
+   *
+   * @param predicate The predicate selecting results to return
+   * @return The predicate recording results
+   * @see FilterStatistics
+   */
+  @Nonnull
+  public <T> Predicate<T> withStatistics( @Nonnull final Predicate<? super T> predicate ) {
+    if ( resourceType == null ) {
+      return Predicates.<T>and( predicate );
+    }
+    final FilterStatistics.Metrics metrics = FilterStatistics.get( ).metrics( resourceType );
+    metrics.query( pushedDownFilters, residualFilters );
+    return new Predicate<T>( ) {
+      @Override
+      public boolean apply( final T result ) {
+        final boolean returned = predicate.apply( result );
+        metrics.fetched( returned );
+        return returned;
+      }
+    };
+  }
+
   /**
    * Does the filter use tags?
    *
@@ -114,6 +158,14 @@ public class Filter {
     return filteringOnTags;
   }
 
+  int getPushedDownFilters() {
+    return pushedDownFilters;
+  }
+
+  int getResidualFilters() {
+    return residualFilters;
+  }
+
   /**
    * Create a Filter that will always pass (filters out nothing)
    */
@@ -138,7 +190,10 @@ public class Filter {
       aliases,
       and,
       Predicates.and( this.predicate, filter.predicate ),
-      this.filteringOnTags || filter.filteringOnTags
+      this.filteringOnTags || filter.filteringOnTags,
+      this.resourceType != null ? this.resourceType : filter.resourceType,
+      this.pushedDownFilters + filter.pushedDownFilters,
+      this.residualFilters + filter.residualFilters
     );
   }
 }
@@ -0,0 +1,102 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.tags;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Ordering;
+
+/**
+ * Filtered query statistics for each resource type, exported via JMX.
+ *
+ * <p>Fetched is the number of rows loaded by filtered queries, returned is
+ * the number that passed in memory filtering. Filters are counted as pushed
+ * down when they were applied by the database.</p>
+ */
+public class FilterStatistics {
+
+  private static final FilterStatistics instance = new FilterStatistics( );
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+
+  private final ConcurrentMap<String, Metrics> metrics = Maps.newConcurrentMap( );
+
+  static FilterStatistics get( ) {
+    if ( Bootstrap.isOperational( ) && registered.compareAndSet( false, true ) ) {
+      Mbeans.register( instance );
+    }
+    return instance;
+  }
+
+  Metrics metrics( final String resourceType ) {
+    Metrics typeMetrics = metrics.get( resourceType );
+    if ( typeMetrics == null ) {
+      final Metrics newMetrics = new Metrics( );
+      typeMetrics = metrics.putIfAbsent( resourceType, newMetrics );
+      if ( typeMetrics == null ) {
+        typeMetrics = newMetrics;
+      }
+    }
+    return typeMetrics;
+  }
+
+  public String[] getResourceTypes( ) {
+    final List<String> lines = Lists.newArrayList( );
+    for ( final String resourceType : Ordering.natural( ).sortedCopy( metrics.keySet( ) ) ) {
+      lines.add( resourceType + " " + metrics.get( resourceType ) );
+    }
+    return lines.toArray( new String[ lines.size( ) ] );
+  }
+
+  @Override
+  public String toString( ) {
+    return "FilterStatistics resourceTypes=" + metrics.size( );
+  }
+
+  static final class Metrics {
+    private final AtomicLong queries = new AtomicLong( );
+    private final AtomicLong pushedDown = new AtomicLong( );
+    private final AtomicLong residual = new AtomicLong( );
+    private final AtomicLong fetched = new AtomicLong( );
+    private final AtomicLong returned = new AtomicLong( );
+
+    void query( final int pushedDownFilters, final int residualFilters ) {
+      queries.incrementAndGet( );
+      pushedDown.addAndGet( pushedDownFilters );
+      residual.addAndGet( residualFilters );
+    }
+
+    void fetched( final boolean returned ) {
+      fetched.incrementAndGet( );
+      if ( returned ) this.returned.incrementAndGet( );
+    }
+
+    @Override
+    public String toString( ) {
+      return "queries=" + queries.get( ) + " pushed-down=" + pushedDown.get( ) + " residual=" + residual.get( ) +
+          " fetched=" + fetched.get( ) + " returned=" + returned.get( );
+    }
+  }
+}
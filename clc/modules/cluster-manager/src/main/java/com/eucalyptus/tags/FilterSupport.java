@@ -599,8 +599,17 @@ public abstract class FilterSupport<RT> {
   public Filter generate( final Map<String, Set<String>> filters,
                           final boolean allowInternalFilters,
                           final String accountId ) throws InvalidFilterException {
-    // Construct collection filter
+    // Construct collection filter, database filter and aliases
+    //
+    // A filter is pushed down to the database only when every value can be
+    // translated, otherwise the filter is residual and is only applied in
+    // memory. The collection filter always applies all filters as database
+    // filters may not exactly match the collection filter.
     final List<Predicate<Object>> and = Lists.newArrayList();
+    final Junction conjunction = Restrictions.conjunction();
+    final Map<String,String> aliases = Maps.newHashMap();
+    int pushedDownFilters = 0;
+    int residualFilters = 0;
     for ( final Map.Entry<String,Set<String>> filter : Iterables.filter( filters.entrySet(), Predicates.not( isTagFilter() ) ) ) {
       final List<Predicate<Object>> or = Lists.newArrayList();
       for ( final String value : filter.getValue() ) {
@@ -612,24 +621,14 @@ public abstract class FilterSupport<RT> {
         or.add( typedPredicate( valuePredicate ) );
       }
       and.add( Predicates.or( or ) );
-    }
 
-    // Construct database filter and aliases
-    final Junction conjunction = Restrictions.conjunction();
-    final Map<String,String> aliases = Maps.newHashMap();
-    for ( final Map.Entry<String,Set<String>> filter : Iterables.filter( filters.entrySet(), Predicates.not( isTagFilter() ) ) ) {
-      final Junction disjunction = Restrictions.disjunction();
-      for ( final String value : filter.getValue() ) {
-        final PersistenceFilter persistenceFilter = persistenceFilters.get( filter.getKey() );
-        if ( persistenceFilter != null ) {
-          final Object persistentValue = persistenceFilter.value( value );
-          if ( persistentValue != null ) {
-            for ( final String alias : persistenceFilter.getAliases() ) aliases.put( alias, this.aliases.get( alias ) );
-            disjunction.add( buildRestriction( persistenceFilter.getProperty(), persistentValue ) );
-          } // else, there is no valid DB filter for the given value (e.g. wildcard for integer value)
-        }
+      final Criterion filterCriterion = buildCriterion( persistenceFilters.get( filter.getKey() ), filter.getValue(), aliases );
+      if ( filterCriterion != null ) {
+        conjunction.add( filterCriterion );
+        pushedDownFilters++;
+      } else {
+        residualFilters++;
       }
-      conjunction.add( disjunction );
     }
 
     // Construct database filter and aliases for tags
@@ -652,7 +651,40 @@ public abstract class FilterSupport<RT> {
     }
     if ( tagPresent ) conjunction.add( tagCriterion( accountId, tagJunctions ) );
 
-    return new Filter( aliases, conjunction, Predicates.and( and ), tagPresent );
+    return new Filter(
+        aliases,
+        conjunction,
+        Predicates.and( and ),
+        tagPresent,
+        Filters.DEFAULT_FILTERS.equals( qualifier ) ?
+            resourceClass.getSimpleName() :
+            resourceClass.getSimpleName() + "/" + qualifier,
+        pushedDownFilters + tagJunctions.size(),
+        residualFilters );
+  }
+
+  /**
+   * Build the database filter for all values of a filter.
+   *
+   * @return The criterion or null if any value cannot be filtered in the database
+   */
+  @Nullable
+  private Criterion buildCriterion( @Nullable final PersistenceFilter persistenceFilter,
+                                    final Set<String> values,
+                                    final Map<String,String> aliases ) {
+    if ( persistenceFilter == null || values.isEmpty() ) {
+      return null;
+    }
+    final Junction disjunction = Restrictions.disjunction();
+    for ( final String value : values ) {
+      final Object persistentValue = persistenceFilter.value( value );
+      if ( persistentValue == null ) {
+        return null; // there is no valid DB filter for the given value (e.g. wildcard for integer value)
+      }
+      disjunction.add( buildRestriction( persistenceFilter.getProperty(), persistentValue ) );
+    }
+    for ( final String alias : persistenceFilter.getAliases() ) aliases.put( alias, this.aliases.get( alias ) );
+    return disjunction;
   }
 
   public static FilterSupport forResource( @Nonnull final Class<?> metadataClass,
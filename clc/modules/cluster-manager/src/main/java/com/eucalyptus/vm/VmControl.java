@@ -329,7 +329,7 @@ public class VmControl {
       : ctx.getUserFullName( ).asAccountFullName( );
     try ( final TransactionResource db = Entities.transactionFor( VmInstance.class ) ) {
       final List<VmInstance> instances =
-          VmInstances.list( ownerFullName, criterion, filter.getAliases(), requestedAndAccessible );
+          VmInstances.list( ownerFullName, criterion, filter.getAliases(), filter.<VmInstance>withStatistics( requestedAndAccessible ) );
       final Map<String,List<Tag>> tagsMap = TagSupport.forResourceClass( VmInstance.class )
           .getResourceTagMap( AccountFullName.getInstance( ctx.getAccount() ),
               Iterables.transform( instances, CloudMetadatas.toDisplayName() ) );
@@ -379,7 +379,7 @@ public class VmControl {
         : ctx.getUserFullName( ).asAccountFullName( );
     try {
       final List<VmInstance> instances =
-          VmInstances.list( ownerFullName, criterion, filter.getAliases(), requestedAndAccessible );
+          VmInstances.list( ownerFullName, criterion, filter.getAliases(), filter.<VmInstance>withStatistics( requestedAndAccessible ) );
 
       Iterables.addAll(
           reply.getInstanceStatusSet().getItem(),
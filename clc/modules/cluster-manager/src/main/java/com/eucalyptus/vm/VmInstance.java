@@ -214,6 +214,7 @@ import com.eucalyptus.vm.VmInstance.VmState;
 import com.eucalyptus.vm.VmInstances.Timeout;
 import com.eucalyptus.vm.VmVolumeAttachment.AttachmentState;
 import com.eucalyptus.vm.VmVolumeAttachment.NonTransientVolumeException;
+import com.eucalyptus.vm.dns.InstanceDnsIndex;
 import com.eucalyptus.vmtypes.VmType;
 import com.eucalyptus.vmtypes.VmTypes;
 import com.eucalyptus.ws.StackConfiguration;
@@ -1273,6 +1274,7 @@ public class VmInstance extends UserMetadata<VmState> implements VmInstanceMetad
     this.getNetworkConfig( ).setPublicDnsName( dnsHostnamesEnabled( ) ?
       VmNetworkConfig.generateDnsName( ip, DomainNames.externalSubdomain( ) ) :
       "" );
+    InstanceDnsIndex.changed( this );
   }
   
   public void updatePrivateAddress( final String privateAddr ) {
@@ -1281,6 +1283,7 @@ public class VmInstance extends UserMetadata<VmState> implements VmInstanceMetad
     this.getNetworkConfig( ).setPrivateDnsName( dnsHostnamesEnabled( ) ?
         VmNetworkConfig.generateDnsName( ip, DomainNames.internalSubdomain( ) ) :
         ""  );
+    InstanceDnsIndex.changed( this );
   }
 
   public void updateMacAddress( final String macAddress ) {
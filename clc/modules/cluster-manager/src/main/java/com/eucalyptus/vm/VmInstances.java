@@ -435,6 +435,10 @@ public class VmInstances {
                       initial = "60" )
   public static Long      VOLATILE_STATE_TIMEOUT_SEC    = 60l;
 
+  @ConfigurableField( description = "Number of instances to reconcile per transaction when processing cluster instance state reports, 0 to reconcile each instance separately.",
+                      initial = "500" )
+  public static Integer   VM_STATE_BATCH_SIZE           = 500;
+
   @ConfigurableField( description = "Maximum number of threads the system will use to service blocking state changes.",
                       initial = "16" )
   public static Integer   MAX_STATE_THREADS             = 16;
@@ -1390,6 +1394,67 @@ public class VmInstances {
   }
 
   public static class VmInstanceFilterSupport extends FilterSupport<VmInstance> {
+    /**
+     * Persistent values for filters on derived instance properties.
+     *
+     * <p>Values that could match instances the database value would not
+     * (e.g. wildcards or the default address) are not filtered in the
+     * database.</p>
+     */
+    private enum PersistenceValueFunctions implements Function<String,Object> {
+      INSTANCE_STATE_CODE {
+        @Override
+        public Object apply( final String textValue ) {
+          final Integer code;
+          try {
+            code = Integer.valueOf( textValue );
+          } catch ( NumberFormatException e ) {
+            return null;
+          }
+          final List<VmState> states = Lists.newArrayList( );
+          for ( final VmState state : VmState.values( ) ) {
+            if ( state.getDisplayState( ).getCode( ) == code ) states.add( state );
+          }
+          return states;
+        }
+      },
+      INSTANCE_STATE_NAME {
+        @Override
+        public Object apply( final String textValue ) {
+          if ( !isLiteral( textValue ) ) return null;
+          final List<VmState> states = Lists.newArrayList( );
+          for ( final VmState state : VmState.values( ) ) {
+            if ( state.getDisplayState( ).getName( ).equals( textValue ) ) states.add( state );
+          }
+          return states;
+        }
+      },
+      MONITORING_STATE {
+        @Override
+        public Object apply( final String textValue ) {
+          return "enabled".equals( textValue ) ? Boolean.TRUE : null; // disabled includes unset
+        }
+      },
+      PLATFORM {
+        @Override
+        public Object apply( final String textValue ) {
+          return ImageMetadata.Platform.windows.name( ).equals( textValue ) ? ImageMetadata.Platform.windows : null;
+        }
+      },
+      PRIVATE_IP_ADDRESS {
+        @Override
+        public Object apply( final String textValue ) {
+          return isLiteral( textValue ) && !textValue.isEmpty( ) && !VmNetworkConfig.DEFAULT_IP.equals( textValue ) ?
+              textValue :
+              null;
+        }
+      };
+
+      private static boolean isLiteral( final String textValue ) {
+        return textValue.indexOf( '*' ) < 0 && textValue.indexOf( '?' ) < 0 && textValue.indexOf( '\\' ) < 0;
+      }
+    }
+
     public VmInstanceFilterSupport() {
       super( builderFor( VmInstance.class )
           .withTagFiltering( VmInstanceTag.class, "instance" )
@@ -1485,13 +1550,18 @@ public class VmInstances {
           .withPersistenceFilter( "iam-instance-profile.arn", "bootRecord.iamInstanceProfileArn", Collections.<String>emptySet() )
           .withPersistenceFilter( "image-id", "image.displayName", Sets.newHashSet( "bootRecord.machineImage" ) )
           .withPersistenceFilter( "instance-id", "displayName" )
+          .withPersistenceFilter( "instance-state-code", "state", Collections.<String>emptySet(), PersistenceValueFunctions.INSTANCE_STATE_CODE )
+          .withPersistenceFilter( "instance-state-name", "state", Collections.<String>emptySet(), PersistenceValueFunctions.INSTANCE_STATE_NAME )
           .withPersistenceFilter( "instance-type", "vmType.name", Sets.newHashSet( "bootRecord.vmType" ) )
           .withPersistenceFilter( "instance.group-id", "networkGroups.groupId" )
           .withPersistenceFilter( "instance.group-name", "networkGroups.displayName" )
           .withPersistenceFilter( "kernel-id", "image.kernelId", Sets.newHashSet( "bootRecord.machineImage" ) )
           .withPersistenceFilter( "launch-index", "launchRecord.launchIndex", Collections.<String>emptySet(), PersistenceFilter.Type.Integer )
           .withPersistenceFilter( "launch-time", "launchRecord.launchTime", Collections.<String>emptySet(), PersistenceFilter.Type.Date )
+          .withPersistenceFilter( "monitoring-state", "bootRecord.monitoring", Collections.<String>emptySet(), PersistenceValueFunctions.MONITORING_STATE )
           .withPersistenceFilter( "owner-id", "ownerAccountNumber" )
+          .withPersistenceFilter( "platform", "bootRecord.platform", Collections.<String>emptySet(), PersistenceValueFunctions.PLATFORM )
+          .withPersistenceFilter( "private-ip-address", "networkConfig.privateAddress", Collections.<String>emptySet(), PersistenceValueFunctions.PRIVATE_IP_ADDRESS )
           .withPersistenceFilter( "ramdisk-id", "image.ramdiskId", Sets.newHashSet( "bootRecord.machineImage" ) )
           .withPersistenceFilter( "reservation-id", "vmId.reservationId", Collections.<String>emptySet() )
           .withPersistenceFilter( "subnet-id", "bootRecord.subnetId", Collections.<String>emptySet() )
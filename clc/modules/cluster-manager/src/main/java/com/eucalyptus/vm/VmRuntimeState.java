@@ -118,6 +118,7 @@ import com.eucalyptus.vm.VmBundleTask.BundleState;
 import com.eucalyptus.vm.VmInstance.Reason;
 import com.eucalyptus.vm.VmInstance.VmState;
 import com.eucalyptus.vm.VmInstance.VmStateSet;
+import com.eucalyptus.vm.dns.InstanceDnsIndex;
 import com.eucalyptus.system.Threads.EucaCallable;
 import com.eucalyptus.system.tracking.MessageContexts;
 import com.google.common.base.CaseFormat;
@@ -269,6 +270,7 @@ public class VmRuntimeState {
     final Callable<Boolean> action;
     if ( !oldState.equals( newState ) ) {
       action = handleStateTransition( newState, oldState, olderState );
+      InstanceDnsIndex.changed( this.getVmInstance( ) );
     } else {
       action = null;
     }
@@ -0,0 +1,416 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.vm.dns;
+
+import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Restrictions;
+import org.xbill.DNS.Name;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.Topology;
+import com.eucalyptus.component.id.Eucalyptus;
+import com.eucalyptus.entities.Entities;
+import com.eucalyptus.entities.TransactionResource;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.vm.VmInstance;
+import com.eucalyptus.vm.VmInstance.VmState;
+import com.eucalyptus.vm.VmNetworkConfig;
+import com.google.common.base.Objects;
+import com.google.common.base.Strings;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.net.InetAddresses;
+
+/**
+ * In memory index of the addresses of running and pending instances.
+ *
+ * <p>The index maps public and private addresses to instances and public
+ * addresses to the private address of the instance. Instance DNS names are
+ * derived from the address so names are mapped via the address (see
+ * {@link #publicAddress(Name)}, {@link #privateAddress(Name)} and
+ * {@link #ptrName(InetAddress)}).</p>
+ *
+ * <p>The index is updated when transactions changing an instances state or
+ * addresses commit and is periodically rebuilt from the database to pick up
+ * any changes made outside of a transaction.</p>
+ */
+public class InstanceDnsIndex {
+
+  private static final Logger LOG = Logger.getLogger( InstanceDnsIndex.class );
+  private static final int REPORT_INTERVAL_SECS = 60;
+  private static final InstanceDnsIndex instance = new InstanceDnsIndex( );
+
+  private final Object rebuildLock = new Object( );
+  private final Object updateLock = new Object( );
+  private volatile Index index;
+  private List<Entry> replay; // guarded by updateLock, non-null while rebuilding
+  private final AtomicLong updates = new AtomicLong( );
+  private final AtomicLong rebuilds = new AtomicLong( );
+  private final AtomicLong rebuildFailures = new AtomicLong( );
+  private volatile long lastRebuildMillis;
+  private volatile long lastRebuildTimestamp;
+
+  public static InstanceDnsIndex get( ) {
+    return instance;
+  }
+
+  /**
+   * Update the index for the given instance when the current transaction
+   * commits.
+   *
+   * <p>Changes made outside of a transaction are picked up on rebuild.</p>
+   */
+  public static void changed( final VmInstance vm ) {
+    if ( Entities.hasTransaction( VmInstance.class ) ) {
+      Entities.registerSynchronization( VmInstance.class, new Synchronization( ) {
+        @Override public void beforeCompletion( ) { }
+        @Override public void afterCompletion( final int status ) {
+          if ( Status.STATUS_COMMITTED == status ) try {
+            instance.update( Entry.of( vm ) );
+          } catch ( final Exception ex ) {
+            LOG.error( "Error updating instance DNS index for " + vm.getInstanceId( ) + ": " + ex.getMessage( ) );
+            Logs.extreme( ).error( ex, ex );
+          }
+        }
+      } );
+    }
+  }
+
+  /**
+   * Is the address the public address of a running or pending instance.
+   */
+  public boolean isPublicAddress( final InetAddress address ) {
+    return index( ).byPublicAddress.containsKey( address.getHostAddress( ) );
+  }
+
+  /**
+   * Is the address the private address of a running or pending instance.
+   */
+  public boolean isPrivateAddress( final InetAddress address ) {
+    return index( ).byPrivateAddress.containsKey( address.getHostAddress( ) );
+  }
+
+  /**
+   * Get the private address of the instance using the given public address.
+   *
+   * @return The private address or null if there is no such instance
+   */
+  @Nullable
+  public InetAddress privateAddressForPublic( final InetAddress publicAddress ) {
+    final Entry entry = index( ).byPublicAddress.get( publicAddress.getHostAddress( ) );
+    return entry == null || entry.privateAddress == null ?
+        null :
+        InetAddresses.forString( entry.privateAddress );
+  }
+
+  /**
+   * Get the public address for an instance name in the external instance domain.
+   *
+   * @return The address or null if not in use by an instance
+   */
+  @Nullable
+  public InetAddress publicAddress( final Name name ) {
+    final InetAddress address = addressFor( InstanceDomainNames.EXTERNAL, name );
+    return address != null && isPublicAddress( address ) ? address : null;
+  }
+
+  /**
+   * Get the private address for an instance name in an internal instance domain.
+   *
+   * @return The address or null if not in use by an instance
+   */
+  @Nullable
+  public InetAddress privateAddress( final Name name ) {
+    final InetAddress address = addressFor( null, name );
+    return address != null && isPrivateAddress( address ) ? address : null;
+  }
+
+  /**
+   * Get the instance name for a reverse lookup of the given address.
+   *
+   * <p>Public addresses map to names in the external instance domain,
+   * private addresses to names in the internal instance domain.</p>
+   *
+   * @return The name or null if the address is not in use by an instance
+   */
+  @Nullable
+  public Name ptrName( final InetAddress address ) {
+    if ( isPublicAddress( address ) ) {
+      return InstanceDomainNames.fromInetAddress( InstanceDomainNames.EXTERNAL, address );
+    } else if ( isPrivateAddress( address ) ) {
+      return InstanceDomainNames.fromInetAddress( InstanceDomainNames.INTERNAL, address );
+    }
+    return null;
+  }
+
+  /**
+   * Rebuild the index from the database.
+   *
+   * <p>Updates for transactions that commit while the index is rebuilding
+   * are applied to the rebuilt index.</p>
+   */
+  public void rebuild( ) {
+    synchronized ( rebuildLock ) {
+      final long start = System.currentTimeMillis( );
+      synchronized ( updateLock ) {
+        replay = Lists.newArrayList( );
+      }
+      final Index rebuilt = new Index( );
+      try {
+        try ( final TransactionResource db = Entities.transactionFor( VmInstance.class ) ) {
+          final List<VmInstance> instances = Entities.query(
+              VmInstance.create( ),
+              true,
+              Restrictions.in( "state", new VmState[] { VmState.RUNNING, VmState.PENDING } ),
+              Collections.<String,String>emptyMap( ) );
+          for ( final VmInstance vm : instances ) {
+            rebuilt.put( Entry.of( vm ) );
+          }
+        }
+        synchronized ( updateLock ) {
+          for ( final Entry entry : replay ) {
+            rebuilt.put( entry );
+          }
+          index = rebuilt;
+        }
+        rebuilds.incrementAndGet( );
+        lastRebuildMillis = System.currentTimeMillis( ) - start;
+        lastRebuildTimestamp = System.currentTimeMillis( );
+      } catch ( final Exception ex ) {
+        rebuildFailures.incrementAndGet( );
+        LOG.error( "Error rebuilding instance DNS index: " + ex.getMessage( ) );
+        Logs.extreme( ).error( ex, ex );
+      } finally {
+        synchronized ( updateLock ) {
+          replay = null;
+        }
+      }
+    }
+  }
+
+  public boolean isBuilt( ) {
+    return index != null;
+  }
+
+  public int getInstances( ) {
+    final Index current = index;
+    return current == null ? 0 : current.byInstanceId.size( );
+  }
+
+  public int getPublicAddresses( ) {
+    final Index current = index;
+    return current == null ? 0 : current.byPublicAddress.size( );
+  }
+
+  public int getPrivateAddresses( ) {
+    final Index current = index;
+    return current == null ? 0 : current.byPrivateAddress.size( );
+  }
+
+  public long getUpdates( ) {
+    return updates.get( );
+  }
+
+  public long getRebuilds( ) {
+    return rebuilds.get( );
+  }
+
+  public long getRebuildFailures( ) {
+    return rebuildFailures.get( );
+  }
+
+  public long getLastRebuildMillis( ) {
+    return lastRebuildMillis;
+  }
+
+  public long getLastRebuildTimestamp( ) {
+    return lastRebuildTimestamp;
+  }
+
+  @Override
+  public String toString( ) {
+    return Objects.toStringHelper( "InstanceDnsIndex" )
+        .add( "instances", getInstances( ) )
+        .add( "public", getPublicAddresses( ) )
+        .add( "private", getPrivateAddresses( ) )
+        .add( "updates", getUpdates( ) )
+        .add( "rebuilds", getRebuilds( ) )
+        .add( "rebuild-failures", getRebuildFailures( ) )
+        .add( "last-rebuild-ms", getLastRebuildMillis( ) )
+        .toString( );
+  }
+
+  void update( final Entry entry ) {
+    synchronized ( updateLock ) {
+      final Index current = index;
+      if ( current != null ) {
+        current.put( entry );
+      }
+      if ( replay != null ) {
+        replay.add( entry );
+      }
+    }
+    updates.incrementAndGet( );
+  }
+
+  /**
+   * The index is built on first use so there is no cost when instance DNS is
+   * not in use.
+   */
+  private Index index( ) {
+    Index current = index;
+    if ( current == null ) {
+      synchronized ( rebuildLock ) {
+        if ( index == null ) {
+          rebuild( );
+        }
+      }
+      current = index;
+    }
+    return current == null ? new Index( ) : current;
+  }
+
+  /**
+   * Parse the address from an instance name.
+   *
+   * @param domain The required instance domain, null for any internal domain
+   */
+  @Nullable
+  private static InetAddress addressFor( @Nullable final InstanceDomainNames domain, final Name name ) {
+    try {
+      final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( name );
+      if ( domain == null ?
+          !instanceDomain.equals( InstanceDomainNames.EXTERNAL.get( ) ) :
+          instanceDomain.equals( domain.get( ) ) ) {
+        return InstanceDomainNames.toInetAddress( name.relativize( instanceDomain ) );
+      }
+    } catch ( final Exception ex ) {
+      LOG.trace( ex );
+    }
+    return null;
+  }
+
+  private static final class Index {
+    private final ConcurrentMap<String,Entry> byInstanceId = Maps.newConcurrentMap( );
+    private final ConcurrentMap<String,Entry> byPublicAddress = Maps.newConcurrentMap( );
+    private final ConcurrentMap<String,Entry> byPrivateAddress = Maps.newConcurrentMap( );
+
+    private void put( final Entry entry ) {
+      final Entry previous = entry.active ?
+          byInstanceId.put( entry.instanceId, entry ) :
+          byInstanceId.remove( entry.instanceId );
+      if ( previous != null ) {
+        if ( previous.publicAddress != null ) byPublicAddress.remove( previous.publicAddress, previous );
+        if ( previous.privateAddress != null ) byPrivateAddress.remove( previous.privateAddress, previous );
+      }
+      if ( entry.active ) {
+        if ( entry.publicAddress != null ) byPublicAddress.put( entry.publicAddress, entry );
+        if ( entry.privateAddress != null ) byPrivateAddress.put( entry.privateAddress, entry );
+      }
+    }
+  }
+
+  static final class Entry {
+    private final String instanceId;
+    private final boolean active;
+    @Nullable private final String privateAddress;
+    @Nullable private final String publicAddress;
+
+    Entry( final String instanceId,
+           final boolean active,
+           @Nullable final String privateAddress,
+           @Nullable final String publicAddress ) {
+      this.instanceId = instanceId;
+      this.active = active;
+      this.privateAddress = address( privateAddress );
+      this.publicAddress = Objects.equal( this.privateAddress, address( publicAddress ) ) ?
+          null :
+          address( publicAddress );
+    }
+
+    static Entry of( final VmInstance vm ) {
+      final VmState state = vm.getState( );
+      return new Entry(
+          vm.getInstanceId( ),
+          VmState.RUNNING.equals( state ) || VmState.PENDING.equals( state ),
+          vm.getPrivateAddress( ),
+          vm.getPublicAddress( ) );
+    }
+
+    @Nullable
+    private static String address( @Nullable final String address ) {
+      return VmNetworkConfig.DEFAULT_IP.equals( address ) ? null : Strings.emptyToNull( address );
+    }
+  }
+
+  public static class InstanceDnsIndexEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new InstanceDnsIndexEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( !Bootstrap.isOperational( ) || !instance.isBuilt( ) ) {
+        return;
+      }
+      final int rebuildInterval = SplitHorizonResolver.index_rebuild_interval_seconds;
+      if ( rebuildInterval > 0 &&
+          event.isAsserted( rebuildInterval ) &&
+          Topology.isEnabledLocally( Eucalyptus.class ) ) {
+        Threads.enqueue( Eucalyptus.class, InstanceDnsIndex.class, 1, new Callable<Void>( ) {
+          @Override
+          public Void call( ) {
+            instance.rebuild( );
+            return null;
+          }
+        } );
+      }
+      if ( event.isAsserted( REPORT_INTERVAL_SECS ) ) {
+        try {
+          if ( registered.compareAndSet( false, true ) ) {
+            Mbeans.register( instance );
+          }
+          if ( Logs.isDebug( ) ) {
+            LOG.debug( instance );
+          }
+        } catch ( final Exception ex ) {
+          LOG.error( "Error reporting instance DNS index statistics: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
+    }
+  }
+}
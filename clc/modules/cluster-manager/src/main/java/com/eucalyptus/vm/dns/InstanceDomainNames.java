@@ -205,13 +205,9 @@ public enum InstanceDomainNames implements Function<Name, InetAddress> {
    * This is an existence check and not an attempt to access the state
    */
   public static boolean isInstance( InetAddress ip ) {
-    try {
-      return
-          VmInstances.privateIpInUse( ip.getHostAddress( ) ) ||
-          VmInstances.lookupByPublicIp( ip.getHostAddress( ) ) != null;//this is an existence check and not an attempt to access the state
-    } catch ( NoSuchElementException ex1 ) {
-      return false;
-    }
+    return
+        InstanceDnsIndex.get( ).isPrivateAddress( ip ) ||
+        InstanceDnsIndex.get( ).isPublicAddress( ip );
   }
   
   /**
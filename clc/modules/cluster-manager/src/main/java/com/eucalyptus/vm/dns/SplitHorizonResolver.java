@@ -65,7 +65,6 @@ package com.eucalyptus.vm.dns;
 import static com.eucalyptus.util.dns.DnsResolvers.DnsRequest;
 import java.net.InetAddress;
 import java.net.UnknownHostException;
-import java.util.NoSuchElementException;
 import org.apache.log4j.Logger;
 import org.xbill.DNS.Name;
 import org.xbill.DNS.Record;
@@ -85,11 +84,8 @@ import com.eucalyptus.util.dns.DnsResolvers.DnsResolver;
 import com.eucalyptus.util.dns.DnsResolvers.DnsResponse;
 import com.eucalyptus.util.dns.DnsResolvers.RequestType;
 import com.eucalyptus.util.dns.DomainNameRecords;
-import com.eucalyptus.vm.VmInstance;
-import com.eucalyptus.vm.VmInstances;
 import com.google.common.base.Objects;
 import com.google.common.base.Predicate;
-import com.google.common.net.InetAddresses;
 
 @ConfigurableClass( root = "dns.split_horizon",
                     description = "Options controlling Split-Horizon DNS resolution." )
@@ -98,6 +94,8 @@ public abstract class SplitHorizonResolver implements DnsResolver {
   @ConfigurableField( description = "Enable the split-horizon DNS resolution for internal instance public DNS name queries.  "
                                     + "Note: dns.enable must also be 'true'" )
   public static Boolean       enabled = Boolean.TRUE;
+  @ConfigurableField( description = "Interval in seconds for rebuilding the instance DNS index from the database, 0 to disable." )
+  public static Integer       index_rebuild_interval_seconds = 300;
   
   /**
    * Test whether the address is one which belongs to an instance or is external.
@@ -121,23 +119,20 @@ public abstract class SplitHorizonResolver implements DnsResolver {
         return false;
       } else if ( Addresses.getInstance( ).contains( input.getHostAddress( ) ) ) {
         return true;
+      } else if ( InstanceDnsIndex.get( ).isPublicAddress( input ) ) {
+        return true;
       } else {
-        try {
-          VmInstances.lookupByPublicIp( input.getHostAddress( ) );
-          return true;
-        } catch ( NoSuchElementException ex1 ) {
-          for ( final ServiceConfiguration clusterService : ServiceConfigurations.list( ClusterController.class ) ) {
-            final ClusterConfiguration cluster = ( ClusterConfiguration ) clusterService;
-            try {
-              if ( Subnets.internalPredicate( cluster.getVnetSubnet( ), cluster.getVnetNetmask( ) ).apply( input ) ) {
-                return true;
-              }
-            } catch ( final UnknownHostException ex ) {
-              LOG.trace( ex );
+        for ( final ServiceConfiguration clusterService : ServiceConfigurations.list( ClusterController.class ) ) {
+          final ClusterConfiguration cluster = ( ClusterConfiguration ) clusterService;
+          try {
+            if ( Subnets.internalPredicate( cluster.getVnetSubnet( ), cluster.getVnetNetmask( ) ).apply( input ) ) {
+              return true;
             }
+          } catch ( final UnknownHostException ex ) {
+            LOG.trace( ex );
           }
-          return false;
         }
+        return false;
       }
     }
     
@@ -154,6 +149,8 @@ public abstract class SplitHorizonResolver implements DnsResolver {
    * 3. Verify the existence of an instance for the indicate ip; otherwise fail w/ NXDOMAIN
    * 4. Construct the response record accordingly; otherwise fail w/ NXDOMAIN
    * 
+   * Instance existence is checked using the {@link InstanceDnsIndex}.
+   * 
    * @see DnsResolvers#findRecords(org.xbill.DNS.Message, DnsResolvers.DnsRequest)
    */
   @Override
@@ -161,16 +158,9 @@ public abstract class SplitHorizonResolver implements DnsResolver {
     final Record query = request.getQuery( );
     if ( RequestType.PTR.apply( query ) ) {
       final InetAddress ip = DomainNameRecords.inAddrArpaToInetAddress( query.getName( ) );
-      if ( InstanceDomainNames.isInstance( ip ) ) {
-        final String hostAddress = ip.getHostAddress( );
-        if ( Addresses.getInstance( ).contains( hostAddress ) ) {
-          VmInstances.lookupByPublicIp( hostAddress );//existence check
-          final Name dnsName = InstanceDomainNames.fromInetAddress( InstanceDomainNames.EXTERNAL, ip );
-          return DnsResponse.forName( query.getName( ) ).answer( DomainNameRecords.ptrRecord( dnsName, ip ) );
-        } else if ( VmInstances.privateIpInUse( hostAddress ) ) {
-          final Name dnsName = InstanceDomainNames.fromInetAddress( InstanceDomainNames.INTERNAL, ip );
-          return DnsResponse.forName( query.getName( ) ).answer( DomainNameRecords.ptrRecord( dnsName, ip ) );
-        }
+      final Name dnsName = InstanceDnsIndex.get( ).ptrName( ip );
+      if ( dnsName != null ) {
+        return DnsResponse.forName( query.getName( ) ).answer( DomainNameRecords.ptrRecord( dnsName, ip ) );
       }
     }
     return DnsResponse.forName( query.getName( ) ).nxdomain( );
@@ -184,9 +174,8 @@ public abstract class SplitHorizonResolver implements DnsResolver {
       if ( RequestType.A.apply( query ) ) {
         try {
           final Name name = query.getName( );
-          final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( name );
-          final InetAddress ip = InstanceDomainNames.toInetAddress( name.relativize( instanceDomain ) );
-          if ( VmInstances.privateIpInUse( ip.getHostAddress( ) ) ) {
+          final InetAddress ip = InstanceDnsIndex.get( ).privateAddress( name );
+          if ( ip != null ) {
             final Record aRecord = DomainNameRecords.addressRecord( name, ip );
             return DnsResponse.forName( name ).answer( aRecord );
           }
@@ -229,11 +218,11 @@ public abstract class SplitHorizonResolver implements DnsResolver {
         try {
           final Name name = query.getName( );
           final InetAddress requestIp = InstanceDomainNames.toInetAddress( name.relativize( InstanceDomainNames.EXTERNAL.get( ) ) );
-          //GRZE: here it is not necessary to lookup the instance -- they public address assignment must have the needed information
-          final VmInstance vm = VmInstances.lookupByPublicIp( requestIp.getHostAddress( ) );
-          final InetAddress instanceAddress = InetAddresses.forString( vm.getPrivateAddress( ) );
-          final Record instanceARecord = DomainNameRecords.addressRecord( name, instanceAddress );
-          return DnsResponse.forName( name ).answer( instanceARecord );
+          final InetAddress instanceAddress = InstanceDnsIndex.get( ).privateAddressForPublic( requestIp );
+          if ( instanceAddress != null ) {
+            final Record instanceARecord = DomainNameRecords.addressRecord( name, instanceAddress );
+            return DnsResponse.forName( name ).answer( instanceARecord );
+          }
         } catch ( Exception ex ) {
           LOG.debug( ex );
         }
@@ -261,10 +250,11 @@ public abstract class SplitHorizonResolver implements DnsResolver {
       if ( RequestType.A.apply( query ) ) {
         try {
           final Name name = query.getName( );
-          final InetAddress requestIp = InstanceDomainNames.toInetAddress( name.relativize( InstanceDomainNames.EXTERNAL.get( ) ) );
-          VmInstances.lookupByPublicIp( requestIp.getHostAddress( ) ); // Ensure used by instance
-          final Record instanceARecord = DomainNameRecords.addressRecord( name, requestIp );
-          return DnsResponse.forName( name ).answer( instanceARecord );
+          final InetAddress requestIp = InstanceDnsIndex.get( ).publicAddress( name );
+          if ( requestIp != null ) {
+            final Record instanceARecord = DomainNameRecords.addressRecord( name, requestIp );
+            return DnsResponse.forName( name ).answer( instanceARecord );
+          }
         } catch ( Exception ex ) {
           LOG.debug( ex );
         }
@@ -0,0 +1,124 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cluster;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import com.eucalyptus.cloud.util.NotEnoughResourcesException;
+import com.eucalyptus.vmtypes.VmType;
+import com.eucalyptus.ws.server.LatencyHistogram;
+import com.google.common.collect.Lists;
+import edu.ucsb.eucalyptus.msgs.ResourceType;
+import edu.ucsb.eucalyptus.msgs.VmTypeInfo;
+
+/**
+ * Allocation throughput for cluster resource state.
+ *
+ * <p>Each thread reserves availability for a random vm type and then
+ * releases it, while another thread applies a resource update from the
+ * cluster every 100 milliseconds.</p>
+ *
+ * <p>Run with: java com.eucalyptus.cluster.ResourceStateBenchmark [threads] [seconds] [capacity]</p>
+ */
+public class ResourceStateBenchmark {
+
+  public static void main( final String[] args ) throws Exception {
+    final int threads = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : 16;
+    final int seconds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 10;
+    final int capacity = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 10000;
+
+    final List<VmType> types = Lists.newArrayList(
+        VmType.create( "m1.small", 1, 5, 256 ),
+        VmType.create( "c1.medium", 1, 10, 512 ),
+        VmType.create( "m1.large", 2, 10, 512 ),
+        VmType.create( "m1.xlarge", 2, 10, 1024 ),
+        VmType.create( "c1.xlarge", 2, 10, 2048 ) );
+    final List<ResourceType> report = Lists.newArrayList( );
+    for ( int i = 0; i < types.size( ); i++ ) {
+      final VmType type = types.get( i );
+      final ResourceType resource = new ResourceType( );
+      resource.setInstanceType( new VmTypeInfo( type.getName( ), type.getMemory( ), type.getDisk( ), type.getCpu( ), "sda1" ) );
+      resource.setMaxInstances( capacity >> i );
+      resource.setAvailableInstances( capacity >> i );
+      report.add( resource );
+    }
+    final ResourceState state = new ResourceState( "benchmark", types );
+    state.update( report );
+
+    final AtomicBoolean running = new AtomicBoolean( true );
+    final AtomicLong rejected = new AtomicLong( );
+    final AtomicLong updates = new AtomicLong( );
+    final LatencyHistogram latency = new LatencyHistogram( );
+    final CountDownLatch done = new CountDownLatch( threads + 1 );
+    for ( int t = 0; t < threads; t++ ) {
+      final Thread thread = new Thread( new Runnable( ) {
+        @Override
+        public void run( ) {
+          try {
+            while ( running.get( ) ) {
+              final VmType type = types.get( ThreadLocalRandom.current( ).nextInt( types.size( ) ) );
+              final long start = System.nanoTime( );
+              try {
+                final int quantity = state.reserve( type, 1, 1 );
+                latency.recordNanos( System.nanoTime( ) - start );
+                state.release( type, quantity );
+              } catch ( final NotEnoughResourcesException e ) {
+                rejected.incrementAndGet( );
+              }
+            }
+          } finally {
+            done.countDown( );
+          }
+        }
+      } );
+      thread.setDaemon( true );
+      thread.start( );
+    }
+    final Thread updater = new Thread( new Runnable( ) {
+      @Override
+      public void run( ) {
+        try {
+          while ( running.get( ) ) {
+            state.update( report );
+            updates.incrementAndGet( );
+            TimeUnit.MILLISECONDS.sleep( 100 );
+          }
+        } catch ( final InterruptedException e ) {
+          Thread.currentThread( ).interrupt( );
+        } finally {
+          done.countDown( );
+        }
+      }
+    } );
+    updater.setDaemon( true );
+    updater.start( );
+    TimeUnit.SECONDS.sleep( seconds );
+    running.set( false );
+    done.await( );
+
+    final LatencyHistogram.Snapshot snapshot = latency.snapshot( );
+    System.out.println( String.format( "threads=%d allocations/s=%,d rejected=%d updates=%d latency[%s]",
+        threads, snapshot.getCount( ) / seconds, rejected.get( ), updates.get( ), snapshot ) );
+  }
+}
@@ -0,0 +1,131 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cluster
+
+import java.lang.reflect.Field
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+import com.eucalyptus.cloud.ResourceToken
+import com.eucalyptus.cloud.run.Allocations.Allocation
+import com.eucalyptus.cloud.util.NotEnoughResourcesException
+import com.eucalyptus.vmtypes.VmType
+import edu.ucsb.eucalyptus.msgs.ResourceType
+import edu.ucsb.eucalyptus.msgs.VmTypeInfo
+import org.junit.Test
+import sun.misc.Unsafe
+
+import static org.junit.Assert.*
+
+class ResourceStateTest {
+
+  private static final Unsafe unsafe = Unsafe.class.getDeclaredField( 'theUnsafe' ).with{ Field field ->
+    field.setAccessible( true )
+    field.get( null ) as Unsafe
+  }
+
+  @Test
+  void testAvailabilityAfterConcurrentUpdates( ) {
+    final int capacity = 1000
+    final VmType type = VmType.create( 'm1.small', 1, 5, 256 )
+    final ResourceType resource = new ResourceType( )
+    resource.setInstanceType( new VmTypeInfo( type.getName( ), type.getMemory( ), type.getDisk( ), type.getCpu( ), 'sda1' ) )
+    resource.setMaxInstances( capacity )
+    resource.setAvailableInstances( capacity )
+    final List<ResourceType> report = [ resource ]
+
+    final AtomicInteger instanceCount = new AtomicInteger( )
+    final ResourceState state = new ResourceState( 'test', [ type ] ) {
+      @Override
+      ResourceToken newToken( final Allocation allocInfo, final int launchIndex ) {
+        token( allocInfo, String.format( 'i-%08x', instanceCount.incrementAndGet( ) ), launchIndex )
+      }
+    }
+    state.update( report )
+    assertEquals( 'Initial availability', capacity, state.getAvailability( type.getName( ) ).getAvailable( ) )
+
+    final Allocation allocation = allocation( type )
+    final AtomicBoolean running = new AtomicBoolean( true )
+    final List<Throwable> failures = Collections.synchronizedList( [ ] )
+    final int threads = 8
+    final CountDownLatch done = new CountDownLatch( threads + 1 )
+    final List<Thread> workers = ( 1..threads ).collect{
+      new Thread( {
+        try {
+          while ( running.get( ) ) {
+            try {
+              state.requestResourceAllocation( allocation, 1, 4 ).each{ ResourceToken token ->
+                state.releaseToken( token )
+              }
+            } catch ( NotEnoughResourcesException e ) {
+              // availability under reported capacity while racing, retry
+            }
+          }
+        } catch ( Throwable t ) {
+          failures.add( t )
+        } finally {
+          done.countDown( )
+        }
+      } as Runnable )
+    }
+    workers << new Thread( {
+      try {
+        while ( running.get( ) ) {
+          state.update( report )
+        }
+      } catch ( Throwable t ) {
+        failures.add( t )
+      } finally {
+        done.countDown( )
+      }
+    } as Runnable )
+    workers*.setDaemon( true )
+    workers*.start( )
+    TimeUnit.SECONDS.sleep( 2 )
+    running.set( false )
+    assertTrue( 'Threads completed', done.await( 30, TimeUnit.SECONDS ) )
+
+    assertEquals( 'Failures', [ ], failures )
+    assertEquals( 'Tokens', 'ClusterNodeState pending=[] redeemed=[] submitted=[]', state.toString( ) )
+    assertEquals( 'Availability once quiet', capacity, state.getAvailability( type.getName( ) ).getAvailable( ) )
+  }
+
+  private static Allocation allocation( final VmType type ) {
+    final Allocation allocation = unsafe.allocateInstance( Allocation ) as Allocation
+    set( Allocation, allocation, 'vmType', type )
+    allocation
+  }
+
+  private static ResourceToken token( final Allocation allocation, final String instanceId, final int launchIndex ) {
+    final ResourceToken token = unsafe.allocateInstance( ResourceToken ) as ResourceToken
+    set( ResourceToken, token, 'allocation', allocation )
+    set( ResourceToken, token, 'instanceId', instanceId )
+    set( ResourceToken, token, 'launchIndex', launchIndex )
+    set( ResourceToken, token, 'creationTime', new Date( ) )
+    token
+  }
+
+  private static void set( final Class<?> type, final Object target, final String name, final Object value ) {
+    final Field field = type.getDeclaredField( name )
+    field.setAccessible( true )
+    field.set( target, value )
+  }
+}
@@ -0,0 +1,86 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.network
+
+import com.eucalyptus.cluster.NIInstance
+import com.eucalyptus.cluster.NIProperty
+import com.eucalyptus.cluster.NISecurityGroup
+import com.eucalyptus.cluster.NetworkInfo
+import org.junit.Test
+
+import static org.junit.Assert.*
+
+/**
+ *
+ */
+class NetworkInfoDeltaTest {
+
+  @Test
+  void testInitialDeltaIsFull( ) {
+    NetworkInfoDelta delta = NetworkInfoDelta.between( null, info( ) )
+    assertTrue( 'full', delta.full )
+    assertFalse( 'empty', delta.empty )
+    assertEquals( 'added instances', [ 'i-00000001', 'i-00000002' ] as Set, delta.instances.added )
+  }
+
+  @Test
+  void testUnchanged( ) {
+    NetworkInfoDelta delta = NetworkInfoDelta.between( info( ), info( ) )
+    assertTrue( 'empty', delta.empty )
+  }
+
+  @Test
+  void testChanges( ) {
+    NetworkInfo current = info( )
+    current.instances.remove( 0 )
+    current.instances.get( 0 ).publicIp = '2.0.0.2'
+    current.instances.add( new NIInstance( name: 'i-00000003', privateIp: '10.0.0.3' ) )
+    current.securityGroups.get( 0 ).rules.add( '-P tcp -p 80-80 -s 0.0.0.0/0' )
+    NetworkInfoDelta delta = NetworkInfoDelta.between( info( ), current )
+    assertFalse( 'full', delta.full )
+    assertFalse( 'configuration changed', delta.configurationChanged )
+    assertEquals( 'added instances', [ 'i-00000003' ] as Set, delta.instances.added )
+    assertEquals( 'removed instances', [ 'i-00000001' ] as Set, delta.instances.removed )
+    assertEquals( 'changed instances', [ 'i-00000002' ] as Set, delta.instances.changed )
+    assertEquals( 'changed groups', [ 'sg-00000001' ] as Set, delta.securityGroups.changed )
+    assertTrue( 'vpcs unchanged', delta.vpcs.empty )
+  }
+
+  @Test
+  void testConfigurationChange( ) {
+    NetworkInfo current = info( )
+    current.configuration.properties.add( new NIProperty( name: 'instanceDNSServers', values: [ '1.2.3.4' ] ) )
+    NetworkInfoDelta delta = NetworkInfoDelta.between( info( ), current )
+    assertTrue( 'configuration changed', delta.configurationChanged )
+    assertFalse( 'empty', delta.empty )
+  }
+
+  private static NetworkInfo info( ) {
+    new NetworkInfo(
+        instances: [
+            new NIInstance( name: 'i-00000001', privateIp: '10.0.0.1', securityGroups: [ 'sg-00000001' ] ),
+            new NIInstance( name: 'i-00000002', privateIp: '10.0.0.2', securityGroups: [ 'sg-00000001' ] ),
+        ],
+        securityGroups: [
+            new NISecurityGroup( name: 'sg-00000001', ownerId: '000000000000', rules: [ '-P icmp -t -1:-1 -s 0.0.0.0/0' ] ),
+        ]
+    )
+  }
+}
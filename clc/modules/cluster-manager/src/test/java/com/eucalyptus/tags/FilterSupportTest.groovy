@@ -36,7 +36,9 @@ import javax.persistence.ManyToOne
 import javax.persistence.ElementCollection
 import javax.persistence.Embedded
 import com.eucalyptus.crypto.util.Timestamps
+import com.google.common.base.Function
 import com.google.common.base.Functions
+import com.eucalyptus.tags.FilterSupport.PersistenceFilter
 import com.google.common.collect.BiMap
 import com.google.common.collect.HashBiMap
 
@@ -76,6 +78,46 @@ class FilterSupportTest {
     assertEquals( "complex escape", "text\\%foo\\\\\\_bar\\_\\%baz\\\\", FilterSupport.escapeLikeWildcards( "text%foo\\_bar_%baz\\" ) )
   }
 
+  @Test
+  void testResidualFilters() {
+    Filter filter = new TestResourceFilterSupport( ).generate( [
+        'name': [ 'a*', 'b' ] as Set,
+        'count': [ '1', '*' ] as Set,
+        'state': [ 'running' ] as Set,
+    ], false, "000000000" )
+    assertEquals( "Pushed down filters", 1, filter.getPushedDownFilters( ) )
+    assertEquals( "Residual filters", 2, filter.getResidualFilters( ) )
+
+    TestResource resource = new TestResource( name: 'c', count: 2, state: 'running' )
+    assertFalse( "Predicate match", filter.asPredicate( ).apply( resource ) )
+
+    Filter translatedFilter = new TestResourceFilterSupport( ).generate( [
+        'name': [ 'a*' ] as Set,
+        'count': [ '1', '2' ] as Set,
+    ], false, "000000000" )
+    assertEquals( "Pushed down filters", 2, translatedFilter.getPushedDownFilters( ) )
+    assertEquals( "Residual filters", 0, translatedFilter.getResidualFilters( ) )
+    assertFalse( "Predicate match for pushed down filter", translatedFilter.asPredicate( ).apply( new TestResource( name: 'c', count: 1 ) ) )
+    assertTrue( "Predicate match", translatedFilter.asPredicate( ).apply( new TestResource( name: 'abc', count: 2 ) ) )
+  }
+
+  static class TestResource {
+    String name
+    Integer count
+    String state
+  }
+
+  static class TestResourceFilterSupport extends FilterSupport<TestResource> {
+    TestResourceFilterSupport( ) {
+      super( builderFor( TestResource )
+          .withStringProperty( 'name', { TestResource resource -> resource.name } as Function<TestResource,String> )
+          .withIntegerProperty( 'count', { TestResource resource -> resource.count } as Function<TestResource,Integer> )
+          .withStringProperty( 'state', { TestResource resource -> resource.state } as Function<TestResource,String> )
+          .withPersistenceFilter( 'name' )
+          .withPersistenceFilter( 'count', 'count', PersistenceFilter.Type.Integer ) )
+    }
+  }
+
   private String wildcard( String awsFormat, boolean wildcards ) {
     StringBuilder result = new StringBuilder()
     assertEquals( "Wildcards detected",
@@ -19,7 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.vm
 
+import static org.junit.Assert.*
 import org.junit.Test
+import com.eucalyptus.tags.Filter
 import com.eucalyptus.tags.FilterSupportTest
 import com.eucalyptus.images.ImageInfo
 import com.eucalyptus.images.KernelImageInfo
@@ -52,6 +54,28 @@ class VmInstanceFilterSupportTest extends FilterSupportTest.InstanceTestSupport<
     //TODO:STEVE: add remaining filters when mock library available
   }
 
+  @Test
+  void testPersistenceFilters() {
+    Filter filter = new VmInstances.VmInstanceFilterSupport( ).generate( [
+        'instance-state-name': [ 'running', 'terminated' ] as Set,
+        'instance-state-code': [ '16' ] as Set,
+        'monitoring-state': [ 'enabled' ] as Set,
+        'platform': [ 'windows' ] as Set,
+        'private-ip-address': [ '10.1.1.1' ] as Set,
+    ], false, "000000000" )
+    assertEquals( "Pushed down filters", 5, filter.getPushedDownFilters( ) )
+    assertEquals( "Residual filters", 0, filter.getResidualFilters( ) )
+
+    Filter residualFilter = new VmInstances.VmInstanceFilterSupport( ).generate( [
+        'instance-state-name': [ 'run*' ] as Set,
+        'monitoring-state': [ 'disabled' ] as Set,
+        'platform': [ '' ] as Set,
+        'private-ip-address': [ '0.0.0.0' ] as Set,
+    ], false, "000000000" )
+    assertEquals( "Pushed down filters", 0, residualFilter.getPushedDownFilters( ) )
+    assertEquals( "Residual filters", 4, residualFilter.getResidualFilters( ) )
+  }
+
   private void assertMatch( final boolean expectedMatch, final String filterKey, final String filterValue, final VmInstance target) {
     super.assertMatch( new VmInstances.VmInstanceFilterSupport(), expectedMatch, filterKey, filterValue, target )
   }
@@ -99,12 +99,9 @@ import java.io.IOException;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.util.Iterator;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 import org.xbill.DNS.CNAMERecord;
-import org.xbill.DNS.Credibility;
 import org.xbill.DNS.DClass;
 import org.xbill.DNS.DNAMERecord;
 import org.xbill.DNS.ExtendedFlags;
@@ -125,23 +122,33 @@ import org.xbill.DNS.TSIGRecord;
 import org.xbill.DNS.Type;
 
 import com.eucalyptus.dns.Zone;
-import com.eucalyptus.dns.Cache;
 import com.eucalyptus.util.Pair;
 import com.eucalyptus.util.dns.DnsResolvers;
 import com.google.common.base.Function;
 import com.google.common.base.Optional;
 
-public class ConnectionHandler extends Thread {
+public class ConnectionHandler {
 
 	static final int FLAG_DNSSECOK = 1;
 	static final int FLAG_SIGONLY = 2;
 
-	Map caches = new ConcurrentHashMap();
 	//Map TSIGs;
 
 	byte []
 	      generateReply(Message query, byte [] in, int length, Socket s)
 	throws IOException
+	{
+		return generateReply(query, in, length, s != null);
+	}
+
+	/**
+	 * Generate the reply for a query.
+	 *
+	 * @param stream True if the reply is sent over a stream (TCP) and is not limited to the datagram size
+	 */
+	byte []
+	      generateReply(Message query, byte [] in, int length, boolean stream)
+	throws IOException
 	{
 		Header header;
 		boolean badversion;
@@ -173,7 +180,7 @@ public class ConnectionHandler extends Thread {
 		if (queryOPT != null && queryOPT.getVersion() > 0)
 			badversion = true;
 
-		if (s != null)
+		if (stream)
 			maxLength = 65535;
 		else if (queryOPT != null)
 			maxLength = Math.max(queryOPT.getPayloadSize(), 512);
@@ -233,18 +240,8 @@ public class ConnectionHandler extends Thread {
 		Zone zone = findBestZone(name);
 		if (zone != null)
 			return zone.findExactMatch(name, type);
-		else {
-			RRset [] rrsets;
-			Cache cache = getCache(dclass);
-			if (glue)
-				rrsets = cache.findAnyRecords(name, type);
-			else
-				rrsets = cache.findRecords(name, type);
-			if (rrsets == null)
-				return null;
-			else
-				return rrsets[0]; /* not quite right */
-		}
+		else
+			return null; // recursive answers are not cached for glue
 	}
 
 	private void
@@ -312,8 +309,7 @@ public class ConnectionHandler extends Thread {
 			sr = zone.findRecords(name, type, getLocalInetAddress( ));
 		}
 		else {
-			Cache cache = getCache(dclass);
-			sr = cache.lookupRecords(name, type, Credibility.NORMAL);
+			sr = SetResponse.ofType(SetResponse.UNKNOWN);
 		}
 
 		if (sr.isUnknown()) {
@@ -378,8 +374,6 @@ public class ConnectionHandler extends Thread {
 				if (iterations == 0)
 					response.getHeader().setFlag(Flags.AA);
 			}
-			else
-				addCacheNS(response, getCache(dclass), name);
 		}
 		return rcode;
 	}
@@ -396,19 +390,6 @@ public class ConnectionHandler extends Thread {
 		addRRset(nsRecords.getName(), response, nsRecords, Section.AUTHORITY, flags);
 	}
 
-	private final void
-	addCacheNS(Message response, Cache cache, Name name) {
-		SetResponse sr = cache.lookupRecords(name, Type.NS, Credibility.HINT);
-		if (!sr.isDelegation())
-			return;
-		RRset nsRecords = sr.getNS();
-		Iterator it = nsRecords.rrs();
-		while (it.hasNext()) {
-			Record r = (Record) it.next();
-			response.addRecord(r, Section.AUTHORITY);
-		}
-	}
-
 
 	byte []
 	      doAXFR(Name name, Message query, TSIG tsig, TSIGRecord qtsig, Socket s) {
@@ -505,15 +486,6 @@ public class ConnectionHandler extends Thread {
 		return buildErrorMessage(header, Rcode.FORMERR, null);
 	}
 
-	public Cache
-	getCache(int dclass) {
-		Cache c = (Cache) caches.get(new Integer(dclass));
-		if (c == null) {
-			c = new Cache(dclass);
-			caches.put(new Integer(dclass), c);
-		}
-		return c;
-	}
 	
 private static final ThreadLocal<Pair<InetAddress,InetAddress>> localAndRemoteInetAddresses = new ThreadLocal<>();
 	private static InetAddress getInetAddress( final Function<Pair<InetAddress,InetAddress>,InetAddress> extractor ) {
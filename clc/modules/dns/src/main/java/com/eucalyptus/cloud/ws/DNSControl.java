@@ -62,14 +62,12 @@
 
 package com.eucalyptus.cloud.ws;
 
-import java.io.IOException;
 import java.net.InetAddress;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
@@ -98,7 +96,6 @@ import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
 import com.eucalyptus.event.Listeners;
 import com.eucalyptus.objectstorage.exceptions.s3.AccessDeniedException;
-import com.eucalyptus.system.Capabilities;
 import com.eucalyptus.util.Cidr;
 import com.eucalyptus.util.DNSProperties;
 import com.eucalyptus.util.EucalyptusCloudException;
@@ -148,11 +145,7 @@ public class DNSControl {
 	private static final AtomicReference<Collection<Cidr>> addressMatchers =
 			new AtomicReference<Collection<Cidr>>( Collections.<Cidr>emptySet( ) );
 
-	private static final AtomicReference<Collection<UDPListener>> udpListenerRef =
-			new AtomicReference<Collection<UDPListener>>( Collections.<UDPListener>emptySet( ) );
-
-	private static final AtomicReference<Collection<TCPListener>> tcpListenerRef =
-			new AtomicReference<Collection<TCPListener>>( Collections.<TCPListener>emptySet( ) );
+	private static final AtomicReference<DnsServer> serverRef = new AtomicReference<>( );
 
 	private static final Lock listenerLock = new ReentrantLock( );
 
@@ -246,65 +239,26 @@ public class DNSControl {
 		}
 	}
 
-	private static void initializeUDP( ) {
-		initializeListeners( udpListenerRef, "UDP", new ListenerBuilder<UDPListener>() {
-			@Override
-			public UDPListener build( final InetAddress address, final int port ) throws IOException {
-				return new UDPListener( address, port );
-			}
-		});
-	}
-
-	private static void initializeTCP( ) {
-		initializeListeners( tcpListenerRef, "TCP", new ListenerBuilder<TCPListener>() {
-			@Override
-			public TCPListener build( final InetAddress address, final int port ) throws IOException {
-				return new TCPListener( address, port );
-			}
-		});
-	}
-
-	private static <T extends Thread> void initializeListeners(
-			final AtomicReference<Collection<T>> listenerRef,
-			final String description,
-			final ListenerBuilder<T> builder
-	) {
+	private static void initializeServer( ) {
 		try ( final LockResource lock = LockResource.lock( listenerLock ) ) {
-			if ( listenerRef.get( ).isEmpty( ) ) {
+			if ( serverRef.get( ) == null ) {
 				final int listenPort = DNSProperties.PORT;
 				final Set<InetAddress> listenAddresses = Sets.newLinkedHashSet( );
 				listenAddresses.add( Internets.localHostInetAddress( ) );
 				Iterables.addAll(
 						listenAddresses,
 						Iterables.filter( Internets.getAllInetAddresses( ), Predicates.or( addressMatchers.get( ) ) ) );
-				LOG.info( "Starting DNS " + description + " listeners on " + listenAddresses + ":" + listenPort );
-
-				// Configured listeners
-				final List<T> listeners = Lists.newArrayList( );
-				for ( final InetAddress listenAddress : listenAddresses ) {
-					try {
-						final T listener = Capabilities.runWithCapabilities( new Callable<T>() {
-							@Override
-							public T call() throws Exception {
-								final T listener = builder.build( listenAddress, listenPort );
-								listener.start( );
-								return listener;
-							}
-						} );
-						listeners.add( listener );
-					} catch( final Exception ex ) {
-						LOG.error( "Error starting DNS "+description+" listener on "+listenAddress+":"+listenPort, ex );
-					}
+				LOG.info( "Starting DNS listeners on " + listenAddresses + ":" + listenPort );
+				final DnsServer server = DnsServer.start( listenAddresses, listenPort );
+				if ( server.isListening( ) ) {
+					serverRef.set( server );
+				} else { // retry on next initialization
+					server.close( );
 				}
-				listenerRef.set( ImmutableList.copyOf( listeners ) );
 			}
 		}
 	}
 
-	private interface ListenerBuilder<T> {
-		T build( InetAddress address, int port ) throws IOException;
-	}
-
 	public static class DnsPopulateTimer implements EventListener<ClockTick> {
 	  public static void register( ) {
 	      Listeners.register( ClockTick.class, new DnsPopulateTimer() );
@@ -381,8 +335,7 @@ public class DNSControl {
 
 	public static void initialize() throws Exception {
 		try {
-			initializeUDP();
-			initializeTCP();
+			initializeServer();
 			populateRecords();
 		} catch(Exception ex) {
 			LOG.error("DNS could not be initialized. Is some other service running on port 53?");
@@ -392,8 +345,7 @@ public class DNSControl {
 
 	public static void stop() throws Exception {
 		try ( final LockResource lock = LockResource.lock( listenerLock ) ) {
-			IO.close( udpListenerRef.getAndSet( Collections.<UDPListener>emptySet( ) ) );
-			IO.close( tcpListenerRef.getAndSet( Collections.<TCPListener>emptySet( ) ) );
+			IO.close( serverRef.getAndSet( null ) );
 		}
 	}
 
@@ -0,0 +1,132 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.concurrent.Executor;
+import org.apache.log4j.Logger;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.SimpleChannelUpstreamHandler;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Rcode;
+import com.eucalyptus.records.Logs;
+
+/**
+ * Base handler for DNS queries received by the server.
+ *
+ * <p>Queries are read on the I/O threads and answered on a worker pool, as
+ * resolvers may block (e.g. for recursive lookups).</p>
+ */
+abstract class DnsQueryHandler extends SimpleChannelUpstreamHandler {
+
+  private static final Logger LOG = Logger.getLogger( DnsQueryHandler.class );
+
+  private final ConnectionHandler connectionHandler = new ConnectionHandler( );
+  private final boolean stream;
+
+  DnsQueryHandler( final boolean stream ) {
+    this.stream = stream;
+  }
+
+  /**
+   * The executor to use for answering queries.
+   */
+  abstract Executor executor( );
+
+  /**
+   * Answer the query in the given buffer.
+   *
+   * @param channel The channel for the response
+   * @param buffer The query
+   * @param remoteAddress The remote address for the response, null to use the channel address
+   */
+  void handle( final Channel channel,
+               final ChannelBuffer buffer,
+               final SocketAddress remoteAddress ) {
+    final long startNanos = System.nanoTime( );
+    final byte[] in = toArray( buffer );
+    final InetAddress localInetAddress = inetAddress( channel.getLocalAddress( ) );
+    final InetAddress remoteInetAddress =
+        inetAddress( remoteAddress == null ? channel.getRemoteAddress( ) : remoteAddress );
+    executor( ).execute( new Runnable( ) {
+      @Override
+      public void run( ) {
+        final byte[] response = reply( in, localInetAddress, remoteInetAddress, startNanos );
+        if ( response != null && channel.isOpen( ) ) {
+          channel.write( ChannelBuffers.wrappedBuffer( response ), remoteAddress );
+        }
+      }
+    } );
+  }
+
+  private byte[] reply( final byte[] in,
+                        final InetAddress localAddress,
+                        final InetAddress remoteAddress,
+                        final long startNanos ) {
+    final Message query;
+    try {
+      query = new Message( in );
+    } catch ( final IOException e ) {
+      LOG.trace( e );
+      DnsServerStatistics.get( ).error( );
+      return connectionHandler.formerrMessage( in );
+    }
+    ConnectionHandler.setLocalAndRemoteInetAddresses( localAddress, remoteAddress );
+    try {
+      return connectionHandler.generateReply( query, in, in.length, stream );
+    } catch ( final Exception e ) {
+      LOG.debug( "Error processing DNS query: " + e.getMessage( ) );
+      Logs.extreme( ).error( e, e );
+      DnsServerStatistics.get( ).error( );
+      return connectionHandler.errorMessage( query, Rcode.SERVFAIL );
+    } finally {
+      ConnectionHandler.clearInetAddresses( );
+      DnsServerStatistics.get( ).query( stream, query.getQuestion( ), startNanos );
+    }
+  }
+
+  /**
+   * Use the buffers backing array when possible, this is the case for both
+   * received datagrams and decoded TCP frames.
+   */
+  private static byte[] toArray( final ChannelBuffer buffer ) {
+    final int length = buffer.readableBytes( );
+    if ( buffer.hasArray( ) &&
+        buffer.arrayOffset( ) == 0 &&
+        buffer.readerIndex( ) == 0 &&
+        buffer.array( ).length == length ) {
+      return buffer.array( );
+    }
+    final byte[] in = new byte[ length ];
+    buffer.readBytes( in );
+    return in;
+  }
+
+  private static InetAddress inetAddress( final SocketAddress socketAddress ) {
+    return socketAddress instanceof InetSocketAddress ?
+        ( (InetSocketAddress) socketAddress ).getAddress( ) :
+        null;
+  }
+}
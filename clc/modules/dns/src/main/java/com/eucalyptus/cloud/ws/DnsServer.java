@@ -0,0 +1,152 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import java.io.Closeable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import org.apache.log4j.Logger;
+import org.jboss.netty.bootstrap.ConnectionlessBootstrap;
+import org.jboss.netty.bootstrap.ServerBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.FixedReceiveBufferSizePredictorFactory;
+import org.jboss.netty.channel.group.ChannelGroup;
+import org.jboss.netty.channel.group.DefaultChannelGroup;
+import org.jboss.netty.channel.socket.nio.NioDatagramChannelFactory;
+import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.handler.codec.frame.LengthFieldBasedFrameDecoder;
+import org.jboss.netty.handler.codec.frame.LengthFieldPrepender;
+import org.jboss.netty.handler.timeout.ReadTimeoutHandler;
+import org.jboss.netty.util.HashedWheelTimer;
+import com.eucalyptus.component.id.Dns;
+import com.eucalyptus.system.Capabilities;
+import com.eucalyptus.system.Threads;
+
+/**
+ * Netty based DNS server listening for UDP and TCP queries.
+ *
+ * <p>Each listen address has a UDP channel and a TCP server channel, UDP
+ * channels are spread over the receive threads and TCP connections over the
+ * I/O threads. Queries are answered by the handlers on their worker pools.</p>
+ */
+public class DnsServer implements Closeable {
+
+  private static final Logger LOG = Logger.getLogger( DnsServer.class );
+
+  /**
+   * Maximum UDP payload we accept, large enough for EDNS0 queries.
+   */
+  private static final int MAX_UDP_PAYLOAD = 4096;
+  private static final int MAX_TCP_MESSAGE = 0xFFFF;
+
+  private final ChannelGroup channels = new DefaultChannelGroup( DnsServer.class.getSimpleName( ) );
+  private final NioDatagramChannelFactory udpChannelFactory;
+  private final NioServerSocketChannelFactory tcpChannelFactory;
+  private final HashedWheelTimer timer;
+  private final ConnectionlessBootstrap udpBootstrap;
+  private final ServerBootstrap tcpBootstrap;
+
+  private DnsServer( ) {
+    final UDPHandler udpHandler = new UDPHandler( );
+    final TCPHandler tcpHandler = new TCPHandler( );
+    timer = new HashedWheelTimer( Threads.lookup( Dns.class, DnsServer.class, "timer" ) );
+    udpChannelFactory = new NioDatagramChannelFactory(
+        Executors.newCachedThreadPool( Threads.lookup( Dns.class, DnsServer.class, "udp" ) ),
+        UDPHandler.num_receive_threads );
+    tcpChannelFactory = new NioServerSocketChannelFactory(
+        Executors.newCachedThreadPool( Threads.lookup( Dns.class, DnsServer.class, "tcp-boss" ) ),
+        Executors.newCachedThreadPool( Threads.lookup( Dns.class, DnsServer.class, "tcp" ) ),
+        TCPHandler.num_io_threads );
+
+    udpBootstrap = new ConnectionlessBootstrap( udpChannelFactory );
+    udpBootstrap.setPipeline( Channels.pipeline( udpHandler ) );
+    udpBootstrap.setOption( "receiveBufferSizePredictorFactory",
+        new FixedReceiveBufferSizePredictorFactory( MAX_UDP_PAYLOAD ) );
+
+    tcpBootstrap = new ServerBootstrap( tcpChannelFactory );
+    tcpBootstrap.setPipelineFactory( new ChannelPipelineFactory( ) {
+      @Override
+      public ChannelPipeline getPipeline( ) {
+        final ChannelPipeline pipeline = Channels.pipeline( );
+        pipeline.addLast( "timeout", new ReadTimeoutHandler( timer, TCPHandler.timeout_seconds ) );
+        pipeline.addLast( "frame-decoder", new LengthFieldBasedFrameDecoder( MAX_TCP_MESSAGE + 2, 0, 2, 0, 2 ) );
+        pipeline.addLast( "frame-encoder", new LengthFieldPrepender( 2 ) );
+        pipeline.addLast( "handler", tcpHandler );
+        return pipeline;
+      }
+    } );
+    tcpBootstrap.setOption( "reuseAddress", true );
+    tcpBootstrap.setOption( "child.tcpNoDelay", true );
+    tcpBootstrap.setOption( "child.keepAlive", true );
+  }
+
+  /**
+   * Start a server listening on the given addresses.
+   *
+   * <p>Failure to bind an address is logged and does not prevent listening
+   * on other addresses.</p>
+   */
+  public static DnsServer start( final Iterable<InetAddress> addresses, final int port ) {
+    final DnsServer server = new DnsServer( );
+    for ( final InetAddress address : addresses ) {
+      server.bind( "UDP", new Callable<Channel>( ) {
+        @Override
+        public Channel call( ) {
+          return server.udpBootstrap.bind( new InetSocketAddress( address, port ) );
+        }
+      }, address, port );
+      server.bind( "TCP", new Callable<Channel>( ) {
+        @Override
+        public Channel call( ) {
+          return server.tcpBootstrap.bind( new InetSocketAddress( address, port ) );
+        }
+      }, address, port );
+    }
+    return server;
+  }
+
+  private void bind( final String description,
+                     final Callable<Channel> binder,
+                     final InetAddress address,
+                     final int port ) {
+    try {
+      channels.add( Capabilities.runWithCapabilities( binder ) );
+    } catch ( final Exception ex ) {
+      LOG.error( "Error starting DNS " + description + " listener on " + address + ":" + port, ex );
+    }
+  }
+
+  public boolean isListening( ) {
+    return !channels.isEmpty( );
+  }
+
+  @Override
+  public void close( ) {
+    channels.close( ).awaitUninterruptibly( );
+    udpChannelFactory.releaseExternalResources( );
+    tcpChannelFactory.releaseExternalResources( );
+    timer.stop( );
+  }
+}
@@ -0,0 +1,202 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.util.dns.DomainNames;
+import com.eucalyptus.ws.server.LatencyHistogram;
+import com.google.common.collect.ImmutableSortedMap;
+import com.google.common.collect.Maps;
+
+/**
+ * Query rates and latencies for the DNS server, exported via JMX.
+ *
+ * <p>Queries are counted per zone, where the zone is the internal or
+ * external system subdomain, the reverse lookup zone or "other" for
+ * names we are not authoritative for. Rates are calculated over the
+ * reporting interval.</p>
+ */
+public class DnsServerStatistics {
+
+  private static final Logger LOG = Logger.getLogger( DnsServerStatistics.class );
+
+  private static final DnsServerStatistics instance = new DnsServerStatistics( );
+
+  private static final Name REVERSE_ZONE = Name.fromConstantString( "in-addr.arpa." );
+  private static final String OTHER_ZONE = "other";
+  private static final int REPORT_INTERVAL_SECS = 60;
+
+  private final ConcurrentMap<String,ZoneStatistics> zones = Maps.newConcurrentMap( );
+  private final AtomicLong udpQueries = new AtomicLong( );
+  private final AtomicLong tcpQueries = new AtomicLong( );
+  private final AtomicLong tcpConnections = new AtomicLong( );
+  private final AtomicLong errors = new AtomicLong( );
+
+  static DnsServerStatistics get( ) {
+    return instance;
+  }
+
+  /**
+   * Record a processed query.
+   *
+   * @param stream True if the query was received over TCP
+   * @param question The question, null if the query did not have one
+   * @param startNanos The time the query was received
+   */
+  void query( final boolean stream, @Nullable final Record question, final long startNanos ) {
+    ( stream ? tcpQueries : udpQueries ).incrementAndGet( );
+    zone( question == null ? OTHER_ZONE : zoneOf( question.getName( ) ) ).latency.recordNanos( System.nanoTime( ) - startNanos );
+  }
+
+  void connection( ) {
+    tcpConnections.incrementAndGet( );
+  }
+
+  void error( ) {
+    errors.incrementAndGet( );
+  }
+
+  private ZoneStatistics zone( final String zone ) {
+    ZoneStatistics statistics = zones.get( zone );
+    if ( statistics == null ) {
+      final ZoneStatistics newStatistics = new ZoneStatistics( );
+      statistics = zones.putIfAbsent( zone, newStatistics );
+      if ( statistics == null ) {
+        statistics = newStatistics;
+      }
+    }
+    return statistics;
+  }
+
+  private static String zoneOf( final Name name ) {
+    if ( DomainNames.isInternalSubdomain( name ) ) {
+      return DomainNames.internalSubdomain( ).toString( );
+    } else if ( DomainNames.isExternalSubdomain( name ) ) {
+      return DomainNames.externalSubdomain( ).toString( );
+    } else if ( name.subdomain( REVERSE_ZONE ) ) {
+      return REVERSE_ZONE.toString( );
+    } else {
+      return OTHER_ZONE;
+    }
+  }
+
+  /**
+   * Update the per zone rates for the interval since the last update.
+   */
+  private void updateRates( ) {
+    final long now = System.currentTimeMillis( );
+    for ( final ZoneStatistics statistics : zones.values( ) ) {
+      statistics.update( now );
+    }
+  }
+
+  public long getUdpQueryCount( ) {
+    return udpQueries.get( );
+  }
+
+  public long getTcpQueryCount( ) {
+    return tcpQueries.get( );
+  }
+
+  public long getTcpConnectionCount( ) {
+    return tcpConnections.get( );
+  }
+
+  public long getErrorCount( ) {
+    return errors.get( );
+  }
+
+  public String getZones( ) {
+    final StringBuilder builder = new StringBuilder( );
+    for ( final Map.Entry<String,ZoneStatistics> entry : ImmutableSortedMap.copyOf( zones ).entrySet( ) ) {
+      if ( builder.length( ) > 0 ) builder.append( ' ' );
+      builder.append( entry.getKey( ) ).append( entry.getValue( ) );
+    }
+    return builder.toString( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "DnsServerStatistics udp=" + getUdpQueryCount( ) + " tcp=" + getTcpQueryCount( ) +
+        " connections=" + getTcpConnectionCount( ) + " errors=" + getErrorCount( ) + " zones " + getZones( );
+  }
+
+  private static final class ZoneStatistics {
+    private final LatencyHistogram latency = new LatencyHistogram( );
+    private volatile LatencyHistogram.Snapshot interval = LatencyHistogram.Snapshot.empty( );
+    private volatile double qps;
+    private LatencyHistogram.Snapshot previous = LatencyHistogram.Snapshot.empty( );
+    private long previousTimestamp = System.currentTimeMillis( );
+
+    private synchronized void update( final long now ) {
+      final LatencyHistogram.Snapshot current = latency.snapshot( );
+      final LatencyHistogram.Snapshot since = current.since( previous );
+      final long elapsed = now - previousTimestamp;
+      qps = elapsed > 0 ? since.getCount( ) * 1000d / elapsed : 0d;
+      interval = since;
+      previous = current;
+      previousTimestamp = now;
+    }
+
+    @Override
+    public String toString( ) {
+      return String.format( "[qps=%.1f %s]", qps, interval );
+    }
+  }
+
+  public static class DnsServerStatisticsEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new DnsServerStatisticsEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && event.isAsserted( REPORT_INTERVAL_SECS ) ) {
+        try {
+          if ( registered.compareAndSet( false, true ) ) {
+            Mbeans.register( instance );
+          }
+          instance.updateRates( );
+          if ( Logs.isDebug( ) ) {
+            LOG.debug( instance );
+          }
+        } catch ( final Exception ex ) {
+          LOG.error( "Error reporting DNS server statistics: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
+    }
+  }
+}
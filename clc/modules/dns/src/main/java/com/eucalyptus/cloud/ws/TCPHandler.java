@@ -66,74 +66,63 @@ import com.eucalyptus.component.id.Dns;
 import com.eucalyptus.configurable.ConfigurableClass;
 import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.system.Threads;
-import com.eucalyptus.util.DNSProperties;
-import com.google.common.util.concurrent.SimpleTimeLimiter;
-import com.google.common.util.concurrent.TimeLimiter;
-import com.google.common.util.concurrent.UncheckedTimeoutException;
 import org.apache.log4j.Logger;
-import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.handler.timeout.ReadTimeoutException;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.net.Socket;
-import java.util.concurrent.Callable;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.Executor;
 
+/**
+ * Handler for length prefixed DNS queries over TCP.
+ *
+ * Connections are kept open for further queries until idle for the timeout.
+ */
 @ConfigurableClass( root = "dns.tcp",
         description = "Handles dns TCP requests." )
-public class TCPHandler extends ConnectionHandler {
+@ChannelHandler.Sharable
+public class TCPHandler extends DnsQueryHandler {
   @ConfigurableField( description = "Parameter controlling tcp handler timeout in seconds." )
   public static Integer timeout_seconds = 30;
+  @ConfigurableField( description = "Parameter controlling the number of TCP worker threads." )
+  public static Integer num_worker_threads = 32;
+  @ConfigurableField( description = "Parameter controlling the number of TCP I/O threads (change requires restart)." )
+  public static Integer num_io_threads = Math.max( 1, Runtime.getRuntime( ).availableProcessors( ) / 2 );
   private static Logger LOG = Logger.getLogger( TCPHandler.class );
 
-  private final Socket socket;
+  TCPHandler( ) {
+    super( true );
+  }
+
+  @Override
+  Executor executor( ) {
+    return Threads.lookup( Dns.class, TCPHandler.class ).limitTo( num_worker_threads );
+  }
 
-  public TCPHandler( final Socket s ) {
-    this.socket = s;
+  @Override
+  public void channelConnected( final ChannelHandlerContext ctx, final ChannelStateEvent e ) throws Exception {
+    DnsServerStatistics.get( ).connection( );
+    super.channelConnected( ctx, e );
   }
 
-  public void run() {
-    try ( final Socket socket = this.socket ) {
-      socket.setSoTimeout( timeout_seconds * 1000 );
-      final TimeLimiter limiter = new SimpleTimeLimiter( Threads.lookup( Dns.class, TCPHandler.class ) );
-      final byte[] inBytes = limiter.callWithTimeout( new Callable<byte[]>( ) {
-        @Override
-        public byte[] call() throws Exception {
-          final DataInputStream inStream = new DataInputStream(socket.getInputStream());
-          final int inputLength = inStream.readUnsignedShort();
-          byte[] inBytes = new byte[inputLength];
-          inStream.readFully(inBytes);
-          return inBytes;
-        }
-      }, timeout_seconds, TimeUnit.SECONDS, false );
+  @Override
+  public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) {
+    if ( e.getMessage( ) instanceof ChannelBuffer ) {
+      handle( e.getChannel( ), (ChannelBuffer) e.getMessage( ), null );
+    }
+  }
 
-      byte [] response = null;
-      try {
-        final Message query = new Message(inBytes);
-        ConnectionHandler.setLocalAndRemoteInetAddresses( socket.getLocalAddress( ), socket.getInetAddress( ) );
-        try {
-          response = generateReply(query, inBytes, inBytes.length, socket);
-        } catch ( RuntimeException ex ) {
-          response = errorMessage(query, Rcode.SERVFAIL);
-          throw ex;
-        } finally {
-          ConnectionHandler.clearInetAddresses( );
-        }
-        if (response == null)
-          return;
-      } catch ( IOException exception ) {
-        LOG.error(exception);
-      }
-      final DataOutputStream outStream = new DataOutputStream(socket.getOutputStream());
-      outStream.writeShort(response.length);
-      outStream.write(response);
-      outStream.flush();
-    } catch ( UncheckedTimeoutException e ) {
-      LOG.debug( "Timeout reading request." );
-    } catch(Exception ex) {
-      LOG.error(ex);
+  @Override
+  public void exceptionCaught( final ChannelHandlerContext ctx, final ExceptionEvent e ) {
+    if ( e.getCause( ) instanceof ReadTimeoutException ) {
+      LOG.trace( "Closing idle connection from " + e.getChannel( ).getRemoteAddress( ) );
+    } else {
+      LOG.debug( "Closing connection due to error: " + e.getCause( ) );
     }
+    e.getChannel( ).close( );
   }
 }
@@ -93,110 +93,49 @@
 
 package com.eucalyptus.cloud.ws;
 
-import java.io.IOException;
-import java.io.InterruptedIOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
-import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
 
-import com.eucalyptus.configurable.ConfigurableClass;
-import com.eucalyptus.configurable.ConfigurableField;
 import org.apache.log4j.Logger;
-import org.xbill.DNS.Message;
-import org.xbill.DNS.Rcode;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.channel.ChannelHandler;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
 
-import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.component.id.Dns;
+import com.eucalyptus.configurable.ConfigurableClass;
+import com.eucalyptus.configurable.ConfigurableField;
 import com.eucalyptus.system.Threads;
 
 @ConfigurableClass( root = "dns.udp",
 		description = "Handles udp listeners." )
-
-public class UDPHandler extends Thread {
+@ChannelHandler.Sharable
+public class UDPHandler extends DnsQueryHandler {
 	@ConfigurableField( description = "Parameter controlling the number of UDP worker threads." )
 	public static Integer num_worker_threads = 128;
+	@ConfigurableField( description = "Parameter controlling the number of UDP receive threads (change requires restart)." )
+	public static Integer num_receive_threads = Math.max( 1, Runtime.getRuntime( ).availableProcessors( ) / 2 );
 	private static Logger LOG = Logger.getLogger( UDPHandler.class );
 
-	DatagramSocket socket;
-	UDPHandler(DatagramSocket s) {
-		this.socket = s;
+	UDPHandler( ) {
+		super( false );
 	}
 
-	public void run() {
-		final short udpLength = 512;
-		while (Bootstrap.isOperational( )) {
-			if ( socket.isClosed( ) ) {
-				LOG.info( "Exiting due to closed socket" );
-				return;
-			}
-			try {
-			  byte [] in = new byte[udpLength];
-			  DatagramPacket indp = new DatagramPacket(in, in.length);
-				indp.setLength(in.length);
-				try {
-					socket.receive(indp);
-				}catch (InterruptedIOException e) {
-					continue;
-				}
-				try{
-				  Threads.enqueue(Dns.class, UDPHandler.class, num_worker_threads, new UDPWorker(this.socket, indp, in));
-				}catch(Exception ex){
-				  LOG.error("failed to run dns UDP worker");
-				}
-			} catch (IOException e) {
-			    LOG.trace(e);
-			}
-		}
+	@Override
+	Executor executor( ) {
+		return Threads.lookup( Dns.class, UDPHandler.class ).limitTo( num_worker_threads );
 	}
 
-	private static class UDPWorker extends ConnectionHandler implements Callable<Boolean>{
-	  private DatagramSocket socket = null;
-	  private DatagramPacket packet = null;
-	  private byte[] data = null;
-	  private UDPWorker(final DatagramSocket socket, final DatagramPacket dpin, byte[] data){
-	    this.socket = socket;
-	    this.packet = dpin;
-	    this.data = data;
-	  }
+	@Override
+	public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) {
+		if ( e.getMessage( ) instanceof ChannelBuffer ) {
+			handle( e.getChannel( ), (ChannelBuffer) e.getMessage( ), e.getRemoteAddress( ) );
+		}
+	}
 
-	  @Override
-	  public Boolean call() throws Exception {
-	    final byte[] in = this.data;
-	    Message query;
-	    byte [] response = null;
-	    try {
-	      query = new Message(in);
-	      ConnectionHandler.setLocalAndRemoteInetAddresses( this.socket.getLocalAddress( ), this.packet.getAddress( ) );
-	      try {
-	        response = generateReply( query, in,
-	            this.packet.getLength( ),
-	            null );
-	      } catch ( RuntimeException ex ) {
-	        response = errorMessage(query, Rcode.SERVFAIL);
-	        throw ex;
-	      } finally {
-	        ConnectionHandler.clearInetAddresses( );
-	      }
-	      if (response == null)
-	        return false;
-	    } catch (Exception e) {
-	      if ( response != null ) {
-	        response = formerrMessage(in);
-	      } else {
-	        LOG.trace(e);
-	        return false;
-	      }
-	    }
-	    try{
-	      final DatagramPacket outdp = new DatagramPacket(response,
-	          response.length,
-	          this.packet.getAddress(),
-	          this.packet.getPort());
-	      this.socket.send(outdp);
-	    }catch(Exception e){
-	      LOG.trace(e);
-	    }
-	    return true;
-	  }
+	@Override
+	public void exceptionCaught( final ChannelHandlerContext ctx, final ExceptionEvent e ) {
+		// the channel is shared by all clients so it is never closed on error
+		LOG.trace( e.getCause( ), e.getCause( ) );
 	}
 }
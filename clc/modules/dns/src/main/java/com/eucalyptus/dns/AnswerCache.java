@@ -0,0 +1,430 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.dns;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
+import org.apache.log4j.Logger;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.dns.DnsResolvers.DnsResponse;
+import com.eucalyptus.util.dns.DnsResolvers.ResponseSection;
+import com.google.common.base.Objects;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+
+/**
+ * Concurrent cache of DNS answers by name and type.
+ *
+ * <p>Entries expire with the smallest TTL of the answer records, capped at
+ * the maximum TTL. Name errors and empty answers are cached for the
+ * negative TTL. Cached records are returned with their remaining TTL.</p>
+ *
+ * <p>Concurrent misses for the same name and type wait for a single load,
+ * loads are not performed while holding any lock so a slow load does not
+ * delay lookups for other names. Names with at least the prefetch hit count
+ * are reloaded in the background shortly before they expire. Expired
+ * entries are removed when looked up or purged.</p>
+ *
+ * <p>Capacity is the estimated memory used by the cached records.</p>
+ */
+public class AnswerCache {
+
+  private static final Logger LOG = Logger.getLogger( AnswerCache.class );
+
+  private static final int ENTRY_OVERHEAD_BYTES = 128;
+  private static final int RECORD_OVERHEAD_BYTES = 64;
+  private static final long MIN_PREFETCH_WINDOW_MILLIS = TimeUnit.SECONDS.toMillis( 1 );
+
+  private final Cache<Key,Entry> cache;
+  private final ConcurrentMap<Key,FutureTask<Entry>> loading = Maps.newConcurrentMap( );
+  private final long capacityBytes;
+  private final CachePolicy policy;
+  private final Executor prefetchExecutor;
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong negativeHits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+  private final AtomicLong evictions = new AtomicLong( );
+  private final AtomicLong expirations = new AtomicLong( );
+  private final AtomicLong prefetches = new AtomicLong( );
+
+  public interface CachePolicy {
+    /**
+     * The maximum time to cache an answer.
+     */
+    long getMaxTtlSeconds( );
+
+    /**
+     * The time to cache a name error or empty answer.
+     */
+    long getNegativeTtlSeconds( );
+
+    /**
+     * The hits after which an answer is prefetched, zero to disable.
+     */
+    int getPrefetchHits( );
+  }
+
+  public interface AnswerLoader {
+    /**
+     * Load the answer for the name and type.
+     *
+     * @return The response or null if the lookup failed and should not be cached
+     */
+    @Nullable
+    DnsResponse load( Name name, int type );
+  }
+
+  /**
+   * @param capacityBytes The maximum estimated size of cached records
+   * @param policy The policy for expiry and prefetching
+   * @param prefetchExecutor The executor for background prefetches
+   */
+  public AnswerCache( final long capacityBytes,
+                      final CachePolicy policy,
+                      final Executor prefetchExecutor ) {
+    this.capacityBytes = capacityBytes;
+    this.policy = policy;
+    this.prefetchExecutor = prefetchExecutor;
+    this.cache = CacheBuilder.newBuilder( )
+        .maximumWeight( capacityBytes )
+        .weigher( new Weigher<Key,Entry>( ) {
+          @Override
+          public int weigh( final Key key, final Entry entry ) {
+            return entry.weight;
+          }
+        } )
+        .removalListener( new RemovalListener<Key,Entry>( ) {
+          @Override
+          public void onRemoval( final RemovalNotification<Key,Entry> notification ) {
+            if ( notification.getCause( ) == RemovalCause.SIZE ) {
+              evictions.incrementAndGet( );
+            }
+          }
+        } )
+        .build( );
+  }
+
+  /**
+   * Lookup the answer for the name and type, loading it if not cached.
+   *
+   * @return The answer or null if the loader failed
+   */
+  @Nullable
+  public DnsResponse lookup( final Name name, final int type, final AnswerLoader loader ) {
+    final Key key = new Key( name, type );
+    final long now = System.currentTimeMillis( );
+    Entry entry = cache.getIfPresent( key );
+    if ( entry == null || entry.isExpired( now ) ) {
+      entry = loadOnce( key, loader, now );
+      return entry == null ? null : entry.response( name, now );
+    }
+    ( entry.negative ? negativeHits : hits ).incrementAndGet( );
+    prefetchIfPopular( key, entry, loader, now );
+    return entry.response( name, now );
+  }
+
+  public void clear( ) {
+    cache.invalidateAll( );
+  }
+
+  /**
+   * Remove expired entries.
+   */
+  public void purgeExpired( ) {
+    final long now = System.currentTimeMillis( );
+    for ( final Iterator<Entry> iterator = cache.asMap( ).values( ).iterator( ); iterator.hasNext( ); ) {
+      if ( iterator.next( ).isExpired( now ) ) {
+        iterator.remove( );
+        expirations.incrementAndGet( );
+      }
+    }
+  }
+
+  /**
+   * Load an entry unless another caller is already loading it, in which
+   * case wait for that load.
+   */
+  @Nullable
+  private Entry loadOnce( final Key key, final AnswerLoader loader, final long now ) {
+    final FutureTask<Entry> task = new FutureTask<>( new Callable<Entry>( ) {
+      @Override
+      public Entry call( ) {
+        final Entry entry = cache.getIfPresent( key );
+        if ( entry != null && !entry.isExpired( now ) ) {
+          return entry; // loaded since the miss
+        } else if ( entry != null ) {
+          expirations.incrementAndGet( );
+        }
+        misses.incrementAndGet( );
+        return load( key, loader );
+      }
+    } );
+    final FutureTask<Entry> existing = loading.putIfAbsent( key, task );
+    if ( existing == null ) {
+      try {
+        task.run( );
+      } finally {
+        loading.remove( key, task );
+      }
+    }
+    try {
+      return ( existing == null ? task : existing ).get( );
+    } catch ( final InterruptedException e ) {
+      Thread.currentThread( ).interrupt( );
+      return null;
+    } catch ( final ExecutionException e ) {
+      throw Throwables.propagate( e.getCause( ) );
+    }
+  }
+
+  @Nullable
+  private Entry load( final Key key, final AnswerLoader loader ) {
+    final DnsResponse response = loader.load( key.name, key.type );
+    if ( response == null ) {
+      return null;
+    }
+    final Entry entry = new Entry( response, policy.getMaxTtlSeconds( ), policy.getNegativeTtlSeconds( ) );
+    cache.put( key, entry );
+    return entry;
+  }
+
+  private void prefetchIfPopular( final Key key, final Entry entry, final AnswerLoader loader, final long now ) {
+    final int prefetchHits = policy.getPrefetchHits( );
+    if ( prefetchHits > 0 &&
+        entry.hits.incrementAndGet( ) >= prefetchHits &&
+        entry.isPrefetchDue( now ) &&
+        entry.prefetching.compareAndSet( false, true ) ) {
+      prefetches.incrementAndGet( );
+      try {
+        prefetchExecutor.execute( new Runnable( ) {
+          @Override
+          public void run( ) {
+            try {
+              if ( load( key, loader ) == null ) {
+                entry.prefetching.set( false );
+              }
+            } catch ( final RuntimeException e ) {
+              entry.prefetching.set( false );
+              LOG.debug( "Error prefetching " + key + ": " + e.getMessage( ) );
+              Logs.extreme( ).error( e, e );
+            }
+          }
+        } );
+      } catch ( final RuntimeException e ) {
+        entry.prefetching.set( false );
+        LOG.debug( "Unable to prefetch " + key + ": " + e.getMessage( ) );
+      }
+    }
+  }
+
+  public long getCapacityBytes( ) {
+    return capacityBytes;
+  }
+
+  public long getSizeBytes( ) {
+    long size = 0;
+    for ( final Entry entry : cache.asMap( ).values( ) ) {
+      size += entry.weight;
+    }
+    return size;
+  }
+
+  public long getSize( ) {
+    return cache.size( );
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  public long getNegativeHits( ) {
+    return negativeHits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public long getEvictions( ) {
+    return evictions.get( );
+  }
+
+  public long getExpirations( ) {
+    return expirations.get( );
+  }
+
+  public long getPrefetches( ) {
+    return prefetches.get( );
+  }
+
+  public double getHitRatio( ) {
+    final long hitCount = hits.get( ) + negativeHits.get( );
+    final long total = hitCount + misses.get( );
+    return total == 0 ? 0d : (double) hitCount / total;
+  }
+
+  @Override
+  public String toString( ) {
+    return String.format(
+        "AnswerCache hits=%d negativeHits=%d misses=%d ratio=%.3f size=%d bytes=%d/%d evictions=%d expirations=%d prefetches=%d",
+        getHits( ), getNegativeHits( ), getMisses( ), getHitRatio( ), getSize( ), getSizeBytes( ), getCapacityBytes( ),
+        getEvictions( ), getExpirations( ), getPrefetches( ) );
+  }
+
+  private static final class Key {
+    private final Name name;
+    private final int type;
+
+    private Key( final Name name, final int type ) {
+      this.name = name;
+      this.type = type;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final Key key = (Key) o;
+      return type == key.type && name.equals( key.name );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hashCode( name, type );
+    }
+
+    @Override
+    public String toString( ) {
+      return name + "/" + Type.string( type );
+    }
+  }
+
+  private static final class Entry {
+    private final List<Record> answer;
+    private final List<Record> authority;
+    private final List<Record> additional;
+    private final boolean nxdomain;
+    private final boolean negative;
+    private final long created;
+    private final long expires;
+    private final int weight;
+    private final AtomicInteger hits = new AtomicInteger( );
+    private final AtomicBoolean prefetching = new AtomicBoolean( false );
+
+    private Entry( final DnsResponse response,
+                   final long maxTtlSeconds,
+                   final long negativeTtlSeconds ) {
+      this.answer = records( response, ResponseSection.ANSWER );
+      this.authority = records( response, ResponseSection.AUTHORITY );
+      this.additional = records( response, ResponseSection.ADDITIONAL );
+      this.nxdomain = response.isNxdomain( );
+      this.negative = nxdomain || answer.isEmpty( );
+      long ttl = negative ? negativeTtlSeconds : maxTtlSeconds;
+      if ( !negative ) for ( final Record record : answer ) {
+        ttl = Math.min( ttl, record.getTTL( ) );
+      }
+      this.created = System.currentTimeMillis( );
+      this.expires = created + TimeUnit.SECONDS.toMillis( ttl );
+      this.weight = ENTRY_OVERHEAD_BYTES + weigh( answer ) + weigh( authority ) + weigh( additional );
+    }
+
+    boolean isExpired( final long now ) {
+      return now >= expires;
+    }
+
+    /**
+     * Prefetch in the last tenth of the TTL.
+     */
+    boolean isPrefetchDue( final long now ) {
+      return !negative && ( expires - now ) <= Math.max( MIN_PREFETCH_WINDOW_MILLIS, ( expires - created ) / 10 );
+    }
+
+    DnsResponse response( final Name name, final long now ) {
+      final long elapsedSeconds = elapsedSeconds( now );
+      final DnsResponse.Builder builder = DnsResponse.forName( name )
+          .recursive( )
+          .withAuthority( age( authority, elapsedSeconds ) )
+          .withAdditional( age( additional, elapsedSeconds ) );
+      return nxdomain ?
+          builder.nxdomain( ) :
+          builder.answer( age( answer, elapsedSeconds ) );
+    }
+
+    private long elapsedSeconds( final long now ) {
+      return TimeUnit.MILLISECONDS.toSeconds( Math.max( 0, now - created ) );
+    }
+
+    private static List<Record> records( final DnsResponse response, final ResponseSection section ) {
+      final Record[] records = response.section( section );
+      return records == null ? ImmutableList.<Record>of( ) : ImmutableList.copyOf( records );
+    }
+
+    private static List<Record> age( final List<Record> records, final long elapsedSeconds ) {
+      if ( elapsedSeconds == 0 || records.isEmpty( ) ) {
+        return records;
+      }
+      final ImmutableList.Builder<Record> aged = ImmutableList.builder( );
+      for ( final Record record : records ) {
+        aged.add( age( record, elapsedSeconds ) );
+      }
+      return aged.build( );
+    }
+
+    private static Record age( final Record record, final long elapsedSeconds ) {
+      if ( elapsedSeconds == 0 ) {
+        return record;
+      }
+      return Record.newRecord(
+          record.getName( ),
+          record.getType( ),
+          record.getDClass( ),
+          Math.max( 0, record.getTTL( ) - elapsedSeconds ),
+          record.rdataToWireCanonical( ) );
+    }
+
+    private static int weigh( final List<Record> records ) {
+      int weight = 0;
+      for ( final Record record : records ) {
+        weight += RECORD_OVERHEAD_BYTES + record.getName( ).length( ) + record.rdataToWireCanonical( ).length;
+      }
+      return weight;
+    }
+  }
+}
@@ -69,6 +69,8 @@ import java.util.Arrays;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 import org.xbill.DNS.Cache;
@@ -82,17 +84,28 @@ import org.xbill.DNS.SetResponse;
 import org.xbill.DNS.Type;
 
 import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.component.id.Dns;
 import com.eucalyptus.configurable.ConfigurableClass;
 import com.eucalyptus.configurable.ConfigurableField;
+import com.eucalyptus.dns.AnswerCache;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.util.Subnets;
 import com.eucalyptus.util.dns.DnsResolvers.DnsResolver;
 import com.eucalyptus.util.dns.DnsResolvers.DnsResponse;
 import com.eucalyptus.util.dns.DnsResolvers.RequestType;
+import com.eucalyptus.util.dns.DnsResolvers.ResponseSection;
 import com.eucalyptus.util.dns.DomainNameRecords;
 import com.eucalyptus.util.dns.DomainNames;
 import com.eucalyptus.vm.VmInstance;
 import com.eucalyptus.vm.VmInstances;
 import com.eucalyptus.vm.dns.InstanceDomainNames;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Sets;
@@ -119,7 +132,45 @@ public class RecursiveDnsResolver implements DnsResolver {
   private static Logger LOG = Logger.getLogger( RecursiveDnsResolver.class );
   @ConfigurableField( description = "Enable the recursive DNS resolver.  Note: dns.enable must also be 'true'" )
   public static Boolean enabled = Boolean.TRUE;
-  
+  @ConfigurableField( description = "Maximum memory for cached recursive DNS answers in megabytes (change requires restart)." )
+  public static Integer cache_size_mb = 16;
+  @ConfigurableField( description = "Maximum time to cache a recursive DNS answer in seconds." )
+  public static Integer cache_max_ttl_seconds = 3600;
+  @ConfigurableField( description = "Time to cache a recursive DNS name error or empty answer in seconds." )
+  public static Integer cache_negative_ttl_seconds = 60;
+  @ConfigurableField( description = "Hits after which a cached recursive DNS answer is refreshed before it expires, 0 to disable." )
+  public static Integer cache_prefetch_hits = 3;
+  @ConfigurableField( description = "Parameter controlling the number of threads for refreshing cached recursive DNS answers." )
+  public static Integer cache_prefetch_threads = 4;
+
+  private static final Supplier<AnswerCache> answerCache = Suppliers.memoize( new Supplier<AnswerCache>( ) {
+    @Override
+    public AnswerCache get( ) {
+      return new AnswerCache(
+          cache_size_mb * 1024L * 1024L,
+          new AnswerCache.CachePolicy( ) {
+            @Override public long getMaxTtlSeconds( ) { return cache_max_ttl_seconds; }
+            @Override public long getNegativeTtlSeconds( ) { return cache_negative_ttl_seconds; }
+            @Override public int getPrefetchHits( ) { return cache_prefetch_hits; }
+          },
+          new Executor( ) {
+            @Override
+            public void execute( final Runnable command ) {
+              Threads.lookup( Dns.class, RecursiveDnsResolver.class ).limitTo( cache_prefetch_threads ).execute( command );
+            }
+          } );
+    }
+  } );
+
+  /**
+   * The cache for recursively resolved answers.
+   *
+   * <p>The cache must only be used for clients permitted to recurse.</p>
+   */
+  private static AnswerCache answerCache( ) {
+    return answerCache.get( );
+  }
+
   private static List<Name> subdomainsForName( Name name ) {
     final List<Name> names = Lists.newArrayList( name );
     final String sub = parentDomainForName( name );
@@ -152,11 +203,31 @@ public class RecursiveDnsResolver implements DnsResolver {
   public DnsResponse lookupRecords( final DnsRequest request ) {
     final Record query = request.getQuery( );
     final Name name = query.getName( );
-    final int type = query.getType( );
+    final DnsResponse response = answerCache( ).lookup( name, query.getType( ), new AnswerCache.AnswerLoader( ) {
+      @Override
+      public DnsResponse load( final Name name, final int type ) {
+        return resolve( name, type );
+      }
+    } );
+    if ( response == null ) {
+      return DnsResponse.forName( name ).recursive( ).answer( Lists.<Record>newArrayList( ) );
+    }
+    return withInstancePrivateAddresses( name, response );
+  }
+
+  /**
+   * Resolve the name and type.
+   *
+   * @return The response or null if the lookup failed
+   */
+  private static DnsResponse resolve( final Name name, final int type ) {
     final Cache cache = new Cache( );
     Lookup aLookup = new Lookup( name, type );
     aLookup.setCache( cache );
     Record[] found = aLookup.run( );
+    if ( aLookup.getResult( ) == Lookup.TRY_AGAIN || aLookup.getResult( ) == Lookup.UNRECOVERABLE ) {
+      return null;
+    }
     List<Record> queriedrrs = Arrays.asList( found != null
       ? found : new Record[] {} );
     List<Name> cnames = ( List<Name> ) ( aLookup.getAliases( ).length > 0
@@ -165,12 +236,9 @@ public class RecursiveDnsResolver implements DnsResolver {
     final Set<Record> authority = Sets.newLinkedHashSet( );
     final Set<Record> additional = Sets.newLinkedHashSet( );
     
-    boolean iamAuthority = false;
     for ( Record aRec : queriedrrs ) {
       List<Record> nsRecs = lookupNSRecords( aRec.getName( ), cache );
       for ( Record nsRec : nsRecs ) {
-        if(nsRec.getName().equals(DomainNames.externalSubdomain()))
-          iamAuthority = true;
         authority.add( nsRec );        
         Lookup nsLookup = new Lookup( ( ( NSRecord ) nsRec ).getTarget( ), type );
         nsLookup.setCache( cache );
@@ -204,22 +272,7 @@ public class RecursiveDnsResolver implements DnsResolver {
           Iterator rrs = result.rrs( false );
           if ( rrs != null ) {
             for ( Object record : ImmutableSet.copyOf( rrs ) ) {
-              if(iamAuthority && DomainNames.isExternalSubdomain(((Record)record).getName())){
-                final Name resolvedName = ((Record)record).getName();
-                final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( resolvedName );
-                final InetAddress publicIp = InstanceDomainNames.toInetAddress( resolvedName.relativize( instanceDomain ) );
-                try{
-                  final VmInstance vm = VmInstances.lookupByPublicIp( publicIp.getHostAddress( ) );
-                  final InetAddress instanceAddress = InetAddresses.forString( vm.getPrivateAddress( ) );
-                  final Record privateARecord = DomainNameRecords.addressRecord( resolvedName, instanceAddress );
-                  answer.add(privateARecord);
-                }catch(final Exception ex) {
-                  answer.add((Record) record);
-                  continue;
-                }
-              }else{
-                answer.add( ( Record ) record );
-              }
+              answer.add( ( Record ) record );
             }
           }
         }
@@ -235,20 +288,61 @@ public class RecursiveDnsResolver implements DnsResolver {
       }
     }
    
-    DnsResponse response = DnsResponse.forName( query.getName( ) )
+    DnsResponse response = DnsResponse.forName( name )
         .recursive( )
         .withAuthority( Lists.newArrayList( authority ) )
         .withAdditional( Lists.newArrayList( additional ) )
         .answer( Lists.newArrayList( answer ) );
     
     if(aLookup.getResult() == Lookup.HOST_NOT_FOUND && queriedrrs.size()==0){
-        response = DnsResponse.forName( query.getName( ) )
+        response = DnsResponse.forName( name )
           .recursive( )
           .withAuthority( Lists.newArrayList( authority ) )
           .nxdomain();
     }
     return response;
   }
+
+  /**
+   * Answer with the private address for instances in the external subdomain
+   * when we are the authority.
+   *
+   * <p>This is not cached as it depends on the current instances.</p>
+   */
+  private static DnsResponse withInstancePrivateAddresses( final Name name, final DnsResponse response ) {
+    final Record[] authority = response.section( ResponseSection.AUTHORITY );
+    final Record[] answer = response.section( ResponseSection.ANSWER );
+    boolean iamAuthority = false;
+    if ( authority != null ) for ( final Record nsRec : authority ) {
+      if ( nsRec.getName( ).equals( DomainNames.externalSubdomain( ) ) )
+        iamAuthority = true;
+    }
+    if ( !iamAuthority || response.isNxdomain( ) || answer == null ) {
+      return response;
+    }
+    final List<Record> privateAnswer = Lists.newArrayList( );
+    for ( final Record record : answer ) {
+      if ( DomainNames.isExternalSubdomain( record.getName( ) ) && record.getType( ) == Type.A ) {
+        final Name resolvedName = record.getName( );
+        try {
+          final Name instanceDomain = InstanceDomainNames.lookupInstanceDomain( resolvedName );
+          final InetAddress publicIp = InstanceDomainNames.toInetAddress( resolvedName.relativize( instanceDomain ) );
+          final VmInstance vm = VmInstances.lookupByPublicIp( publicIp.getHostAddress( ) );
+          final InetAddress instanceAddress = InetAddresses.forString( vm.getPrivateAddress( ) );
+          privateAnswer.add( DomainNameRecords.addressRecord( resolvedName, instanceAddress ) );
+        } catch ( final Exception ex ) {
+          privateAnswer.add( record );
+        }
+      } else {
+        privateAnswer.add( record );
+      }
+    }
+    return DnsResponse.forName( name )
+        .recursive( )
+        .withAuthority( authority )
+        .withAdditional( response.section( ResponseSection.ADDITIONAL ) )
+        .answer( privateAnswer );
+  }
   
   /**
    * This resolver works when it is:
@@ -279,4 +373,30 @@ public class RecursiveDnsResolver implements DnsResolver {
   public String toString( ) {
     return this.getClass( ).getSimpleName( );
   }
+
+  public static class RecursiveDnsResolverEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new RecursiveDnsResolverEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && event.isAsserted( 60 ) ) {
+        answerCache( ).purgeExpired( );
+      }
+      if ( Bootstrap.isOperational( ) && event.isAsserted( 300 ) ) {
+        try {
+          if ( registered.compareAndSet( false, true ) ) {
+            Mbeans.register( answerCache( ) );
+          }
+          LOG.debug( answerCache( ) );
+        } catch ( final Exception ex ) {
+          LOG.error( "Error reporting DNS answer cache statistics: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
+    }
+  }
 }
@@ -0,0 +1,172 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.cloud.ws;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Message;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+import com.eucalyptus.ws.server.LatencyHistogram;
+
+/**
+ * Load generator for the DNS server.
+ *
+ * <p>Each thread sends a query and waits for the response before sending
+ * the next. The "tcp" mode reuses one connection per thread, "tcp-new"
+ * opens a connection for each query.</p>
+ *
+ * <p>Run with: java com.eucalyptus.cloud.ws.DnsServerBenchmark [udp|tcp|tcp-new] [host] [port] [threads] [seconds] [name]</p>
+ */
+public class DnsServerBenchmark {
+
+  public static void main( final String[] args ) throws Exception {
+    final String mode = args.length > 0 ? args[ 0 ] : "udp";
+    final InetAddress host = InetAddress.getByName( args.length > 1 ? args[ 1 ] : "127.0.0.1" );
+    final int port = args.length > 2 ? Integer.parseInt( args[ 2 ] ) : 53;
+    final int threads = args.length > 3 ? Integer.parseInt( args[ 3 ] ) : 16;
+    final int seconds = args.length > 4 ? Integer.parseInt( args[ 4 ] ) : 10;
+    final Name name = Name.fromString( args.length > 5 ? args[ 5 ] : "euca-127-0-0-1.eucalyptus.localhost." );
+    final byte[] query = Message.newQuery( Record.newRecord( name, Type.A, DClass.IN ) ).toWire( );
+    final InetSocketAddress address = new InetSocketAddress( host, port );
+
+    final AtomicBoolean running = new AtomicBoolean( true );
+    final AtomicLong errors = new AtomicLong( );
+    final LatencyHistogram latency = new LatencyHistogram( );
+    final CountDownLatch done = new CountDownLatch( threads );
+    for ( int t = 0; t < threads; t++ ) {
+      final Thread thread = new Thread( new Runnable( ) {
+        @Override
+        public void run( ) {
+          try {
+            final QueryClient client = "udp".equals( mode ) ?
+                new UdpQueryClient( address ) :
+                new TcpQueryClient( address, "tcp".equals( mode ) );
+            while ( running.get( ) ) {
+              final long start = System.nanoTime( );
+              try {
+                client.query( query );
+                latency.recordNanos( System.nanoTime( ) - start );
+              } catch ( final IOException e ) {
+                errors.incrementAndGet( );
+              }
+            }
+            client.close( );
+          } catch ( final IOException e ) {
+            errors.incrementAndGet( );
+          } finally {
+            done.countDown( );
+          }
+        }
+      } );
+      thread.setDaemon( true );
+      thread.start( );
+    }
+    TimeUnit.SECONDS.sleep( seconds );
+    running.set( false );
+    done.await( );
+
+    final LatencyHistogram.Snapshot snapshot = latency.snapshot( );
+    System.out.println( String.format( "%-8s threads=%d qps=%,d errors=%d latency[%s]",
+        mode, threads, snapshot.getCount( ) / seconds, errors.get( ), snapshot ) );
+  }
+
+  interface QueryClient {
+    void query( byte[] query ) throws IOException;
+    void close( ) throws IOException;
+  }
+
+  private static final class UdpQueryClient implements QueryClient {
+    private final DatagramSocket socket;
+    private final byte[] in = new byte[ 4096 ];
+
+    UdpQueryClient( final InetSocketAddress address ) throws IOException {
+      socket = new DatagramSocket( );
+      socket.setSoTimeout( 1000 );
+      socket.connect( address );
+    }
+
+    @Override
+    public void query( final byte[] query ) throws IOException {
+      socket.send( new DatagramPacket( query, query.length ) );
+      socket.receive( new DatagramPacket( in, in.length ) );
+    }
+
+    @Override
+    public void close( ) {
+      socket.close( );
+    }
+  }
+
+  private static final class TcpQueryClient implements QueryClient {
+    private final InetSocketAddress address;
+    private final boolean reuse;
+    private Socket socket;
+
+    TcpQueryClient( final InetSocketAddress address, final boolean reuse ) {
+      this.address = address;
+      this.reuse = reuse;
+    }
+
+    @Override
+    public void query( final byte[] query ) throws IOException {
+      if ( socket == null ) {
+        socket = new Socket( );
+        socket.setSoTimeout( 1000 );
+        socket.setTcpNoDelay( true );
+        socket.connect( address, 1000 );
+      }
+      try {
+        final DataOutputStream out = new DataOutputStream( socket.getOutputStream( ) );
+        out.writeShort( query.length );
+        out.write( query );
+        out.flush( );
+        final DataInputStream in = new DataInputStream( socket.getInputStream( ) );
+        in.readFully( new byte[ in.readUnsignedShort( ) ] );
+      } catch ( final IOException e ) {
+        close( );
+        throw e;
+      }
+      if ( !reuse ) {
+        close( );
+      }
+    }
+
+    @Override
+    public void close( ) throws IOException {
+      if ( socket != null ) {
+        socket.close( );
+        socket = null;
+      }
+    }
+  }
+}
@@ -0,0 +1,212 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.dns;
+
+import static org.junit.Assert.*;
+import java.net.InetAddress;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.xbill.DNS.ARecord;
+import org.xbill.DNS.DClass;
+import org.xbill.DNS.Name;
+import org.xbill.DNS.Record;
+import org.xbill.DNS.Type;
+import com.eucalyptus.util.dns.DnsResolvers.DnsResponse;
+import com.eucalyptus.util.dns.DnsResolvers.ResponseSection;
+import com.google.common.util.concurrent.MoreExecutors;
+
+/**
+ *
+ */
+public class AnswerCacheTest {
+
+  private static final Name NAME = Name.fromConstantString( "www.example.com." );
+
+  @Test
+  public void testHitAndMiss( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountingLoader loader = new CountingLoader( answer( 300 ) );
+    assertNotNull( "miss", cache.lookup( NAME, Type.A, loader ) );
+    final DnsResponse response = cache.lookup( NAME, Type.A, loader );
+    assertNotNull( "hit", response );
+    assertEquals( "loads", 1, loader.loads.get( ) );
+    assertEquals( "hits", 1, cache.getHits( ) );
+    assertEquals( "misses", 1, cache.getMisses( ) );
+    assertEquals( "answer", 1, response.section( ResponseSection.ANSWER ).length );
+    assertTrue( "recursive", response.isRecursive( ) );
+  }
+
+  @Test
+  public void testNameIsCaseInsensitive( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountingLoader loader = new CountingLoader( answer( 300 ) );
+    cache.lookup( NAME, Type.A, loader );
+    cache.lookup( Name.fromConstantString( "WWW.Example.COM." ), Type.A, loader );
+    assertEquals( "loads", 1, loader.loads.get( ) );
+  }
+
+  @Test
+  public void testTypeIsPartOfKey( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountingLoader loader = new CountingLoader( answer( 300 ) );
+    cache.lookup( NAME, Type.A, loader );
+    cache.lookup( NAME, Type.MX, loader );
+    assertEquals( "loads", 2, loader.loads.get( ) );
+  }
+
+  @Test
+  public void testExpiry( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountingLoader loader = new CountingLoader( answer( 1 ) );
+    cache.lookup( NAME, Type.A, loader );
+    Thread.sleep( 1100 );
+    cache.lookup( NAME, Type.A, loader );
+    assertEquals( "loads", 2, loader.loads.get( ) );
+    assertEquals( "expirations", 1, cache.getExpirations( ) );
+  }
+
+  @Test
+  public void testPurgeExpired( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    cache.lookup( NAME, Type.A, new CountingLoader( answer( 1 ) ) );
+    cache.lookup( NAME, Type.MX, new CountingLoader( answer( 300 ) ) );
+    Thread.sleep( 1100 );
+    cache.purgeExpired( );
+    assertEquals( "size", 1, cache.getSize( ) );
+    assertEquals( "expirations", 1, cache.getExpirations( ) );
+  }
+
+  @Test
+  public void testLoadDoesNotBlockOtherNames( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountDownLatch loading = new CountDownLatch( 1 );
+    final CountDownLatch release = new CountDownLatch( 1 );
+    final Thread slowLookup = new Thread( ) {
+      @Override
+      public void run( ) {
+        cache.lookup( NAME, Type.A, new AnswerCache.AnswerLoader( ) {
+          @Override
+          public DnsResponse load( final Name name, final int type ) {
+            loading.countDown( );
+            try {
+              release.await( );
+              return answer( 300 );
+            } catch ( Exception e ) {
+              return null;
+            }
+          }
+        } );
+      }
+    };
+    slowLookup.start( );
+    assertTrue( "loading", loading.await( 5, TimeUnit.SECONDS ) );
+    for ( int i = 0; i < 300; i++ ) {
+      final Name name = Name.fromConstantString( "host" + i + ".example.com." );
+      assertNotNull( "lookup " + name, cache.lookup( name, Type.A, new CountingLoader( answer( name, 300 ) ) ) );
+    }
+    release.countDown( );
+    slowLookup.join( 5000 );
+    assertEquals( "misses", 301, cache.getMisses( ) );
+  }
+
+  @Test
+  public void testNegativeCaching( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountingLoader loader = new CountingLoader( DnsResponse.forName( NAME ).recursive( ).nxdomain( ) );
+    cache.lookup( NAME, Type.A, loader );
+    final DnsResponse response = cache.lookup( NAME, Type.A, loader );
+    assertTrue( "nxdomain", response.isNxdomain( ) );
+    assertEquals( "loads", 1, loader.loads.get( ) );
+    assertEquals( "negative hits", 1, cache.getNegativeHits( ) );
+  }
+
+  @Test
+  public void testFailureNotCached( ) throws Exception {
+    final AnswerCache cache = cache( 0 );
+    final CountingLoader loader = new CountingLoader( null );
+    assertNull( "failed", cache.lookup( NAME, Type.A, loader ) );
+    assertNull( "failed", cache.lookup( NAME, Type.A, loader ) );
+    assertEquals( "loads", 2, loader.loads.get( ) );
+  }
+
+  @Test
+  public void testPrefetch( ) throws Exception {
+    final AnswerCache cache = cache( 2 );
+    final CountingLoader loader = new CountingLoader( answer( 5 ) );
+    cache.lookup( NAME, Type.A, loader );
+    cache.lookup( NAME, Type.A, loader );
+    assertEquals( "loads before popular", 1, loader.loads.get( ) );
+    Thread.sleep( 4100 );
+    cache.lookup( NAME, Type.A, loader );
+    assertEquals( "loads after prefetch", 2, loader.loads.get( ) );
+    assertEquals( "prefetches", 1, cache.getPrefetches( ) );
+    cache.lookup( NAME, Type.A, loader );
+    assertEquals( "loads after prefetched", 2, loader.loads.get( ) );
+  }
+
+  @Test
+  public void testCapacity( ) throws Exception {
+    final AnswerCache cache = new AnswerCache( 4096, policy( 0 ), MoreExecutors.sameThreadExecutor( ) );
+    for ( int i = 0; i < 100; i++ ) {
+      final Name name = Name.fromConstantString( "host" + i + ".example.com." );
+      cache.lookup( name, Type.A, new CountingLoader( answer( name, 300 ) ) );
+    }
+    assertTrue( "evictions", cache.getEvictions( ) > 0 );
+    assertTrue( "size", cache.getSizeBytes( ) <= 4096 );
+  }
+
+  private static AnswerCache cache( final int prefetchHits ) {
+    return new AnswerCache( 1024 * 1024, policy( prefetchHits ), MoreExecutors.sameThreadExecutor( ) );
+  }
+
+  private static AnswerCache.CachePolicy policy( final int prefetchHits ) {
+    return new AnswerCache.CachePolicy( ) {
+      @Override public long getMaxTtlSeconds( ) { return 3600; }
+      @Override public long getNegativeTtlSeconds( ) { return 60; }
+      @Override public int getPrefetchHits( ) { return prefetchHits; }
+    };
+  }
+
+  private static DnsResponse answer( final long ttl ) throws Exception {
+    return answer( NAME, ttl );
+  }
+
+  private static DnsResponse answer( final Name name, final long ttl ) throws Exception {
+    final Record record = new ARecord( name, DClass.IN, ttl, InetAddress.getByName( "192.0.2.1" ) );
+    return DnsResponse.forName( name ).recursive( ).answer( record );
+  }
+
+  private static final class CountingLoader implements AnswerCache.AnswerLoader {
+    private final AtomicInteger loads = new AtomicInteger( );
+    private final DnsResponse response;
+
+    private CountingLoader( final DnsResponse response ) {
+      this.response = response;
+    }
+
+    @Override
+    public DnsResponse load( final Name name, final int type ) {
+      loads.incrementAndGet( );
+      return response;
+    }
+  }
+}
@@ -77,7 +77,7 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
     signatureCredential.verify( date, null, null, V4_TERMINATOR ); //TODO Do we want to validate region and service name?
     final User user = accessKey.getUser( );
     final String secretKey = accessKey.getSecretKey( );
-    final byte[] signatureKey = getSignatureKey( secretKey, signatureCredential );
+    final byte[] signatureKey = getSignatureKey( accessKey.getAccessKey( ), secretKey, signatureCredential );
     final String canonicalString = this.makeSubjectString( credentials, signatureCredential, authorizationParameters, date, false );
     final byte[] computedSig = this.getHmacSHA256( signatureKey, canonicalString );
     final byte[] providedSig = Hex.decode( sig );
@@ -175,6 +175,23 @@ public class Hmacv4LoginModule extends HmacLoginModuleSupport {
     }
   }
 
+  private byte[] getSignatureKey( final String accessKeyId,
+                                  final String key,
+                                  final SignatureCredential credential ) throws Exception {
+    return Hmacv4SigningKeyCache.getInstance( ).getSigningKey(
+        accessKeyId,
+        key,
+        credential.getDate( ),
+        credential.getRegion( ),
+        credential.getServiceName( ),
+        new Hmacv4SigningKeyCache.SigningKeyDeriver( ) {
+          @Override
+          public byte[] derive( ) throws Exception {
+            return getSignatureKey( key, credential );
+          }
+        } );
+  }
+
   private byte[] getSignatureKey( final String key,
                                   final SignatureCredential credential ) throws Exception {
     return getHmacSHA256(
@@ -0,0 +1,143 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.auth.login;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Cache for derived version 4 signing keys.
+ *
+ * <p>A signing key depends only on the secret key and the credential scope
+ * (date, region and service) so it can be reused for all requests with the
+ * same access key on a given day.</p>
+ */
+public class Hmacv4SigningKeyCache {
+
+  private static final Logger LOG = Logger.getLogger( Hmacv4SigningKeyCache.class );
+
+  private static final Hmacv4SigningKeyCache instance = new Hmacv4SigningKeyCache( );
+
+  private final Cache<String,SigningKey> cache = CacheBuilder.newBuilder( )
+      .maximumSize( 20000 )
+      .expireAfterAccess( 1, TimeUnit.HOURS )
+      .build( );
+  private final AtomicLong hits = new AtomicLong( );
+  private final AtomicLong misses = new AtomicLong( );
+
+  interface SigningKeyDeriver {
+    byte[] derive( ) throws Exception;
+  }
+
+  static Hmacv4SigningKeyCache getInstance( ) {
+    return instance;
+  }
+
+  /**
+   * Get the signing key for the given access key and scope.
+   *
+   * <p>The secret key is compared on lookup so a changed secret is never
+   * matched with a previously derived key.</p>
+   */
+  byte[] getSigningKey( final String accessKeyId,
+                        final String secretKey,
+                        final String date,
+                        final String region,
+                        final String service,
+                        final SigningKeyDeriver deriver ) throws Exception {
+    final String cacheKey = accessKeyId + "/" + date + "/" + region + "/" + service;
+    final SigningKey cached = cache.getIfPresent( cacheKey );
+    if ( cached != null && cached.secretKey.equals( secretKey ) ) {
+      hits.incrementAndGet( );
+      return cached.key.clone( );
+    }
+    misses.incrementAndGet( );
+    final byte[] key = deriver.derive( );
+    cache.put( cacheKey, new SigningKey( secretKey, key.clone( ) ) );
+    return key;
+  }
+
+  public long getHits( ) {
+    return hits.get( );
+  }
+
+  public long getMisses( ) {
+    return misses.get( );
+  }
+
+  public long getSize( ) {
+    return cache.size( );
+  }
+
+  public double getHitRatio( ) {
+    final long hitCount = hits.get( );
+    final long total = hitCount + misses.get( );
+    return total == 0 ? 0d : (double) hitCount / total;
+  }
+
+  @Override
+  public String toString( ) {
+    return String.format( "Hmacv4SigningKeyCache hits=%d misses=%d ratio=%.3f size=%d",
+        getHits( ), getMisses( ), getHitRatio( ), getSize( ) );
+  }
+
+  private static final class SigningKey {
+    private final String secretKey;
+    private final byte[] key;
+
+    private SigningKey( final String secretKey, final byte[] key ) {
+      this.secretKey = secretKey;
+      this.key = key;
+    }
+  }
+
+  public static class Hmacv4SigningKeyCacheEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new Hmacv4SigningKeyCacheEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && event.isAsserted( 300 ) ) {
+        try {
+          if ( registered.compareAndSet( false, true ) ) {
+            Mbeans.register( instance );
+          }
+          LOG.debug( instance );
+        } catch ( final Exception ex ) {
+          LOG.error( "Error reporting signing key cache statistics: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
+    }
+  }
+}
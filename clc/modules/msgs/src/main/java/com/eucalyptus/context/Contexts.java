@@ -78,6 +78,7 @@ import com.eucalyptus.records.EventType;
 import com.eucalyptus.records.Logs;
 import com.eucalyptus.util.Consumer;
 import com.eucalyptus.util.Consumers;
+import com.eucalyptus.ws.server.MessageStatistics;
 import com.eucalyptus.ws.util.ReplyQueue;
 
 import edu.ucsb.eucalyptus.msgs.BaseMessage;
@@ -307,6 +308,7 @@ public class Contexts {
       Context ctx = lookup( corrId );
       EventRecord.here( ServiceContext.class, EventType.MSG_REPLY, responseMessage.getCorrelationId( ), responseMessage.getClass( ).getSimpleName( ),
                         String.format( "%.3f ms", ( System.nanoTime( ) - ctx.getCreationTime( ) ) / 1000000.0 ) ).trace( );
+      MessageStatistics.request( responseMessage.getClass( ), ctx.getCreationTime( ) );
       Channel channel = ctx.getChannel( );
       Channels.write( channel, message );
       clear( ctx );
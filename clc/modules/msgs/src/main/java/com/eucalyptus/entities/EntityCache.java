@@ -19,29 +19,62 @@
  ************************************************************************/
 package com.eucalyptus.entities;
 
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.hibernate.Criteria;
 import org.hibernate.criterion.Example;
 import org.hibernate.criterion.Projections;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.util.Pair;
 import com.google.common.base.Function;
+import com.google.common.base.Predicates;
 import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
+import com.google.common.collect.Sets;
 
 /**
+ * Cache of immutable views for entities matching an example.
  *
+ * <p>By default each refresh loads the id/version of every matching entity
+ * and reloads entities whose version has changed. In incremental mode only
+ * entities updated since the last update timestamp high-water mark are
+ * loaded, a full refresh is performed periodically or when the number of
+ * matching entities indicates a deletion.</p>
+ *
+ * <p>Cached values are kept sorted so {@link #get()} only re-sorts when the
+ * cache contents change.</p>
  */
 public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>> implements Supplier<Iterable<TE>> {
 
   private static final int batchSize = 500;
+  private static final long fullRefreshIntervalMillis = TimeUnit.MINUTES.toMillis( 5 );
+  private static final long highWaterOverlapMillis = TimeUnit.SECONDS.toMillis( 60 );
+
   private final E example;
   private final Function<? super E,TE> transformFunction;
-  private final ConcurrentMap<Pair<String,Integer>,TE> cache = Maps.newConcurrentMap( );
+  private final boolean incremental;
+  private final Map<String,Pair<Integer,TE>> cache = Maps.newHashMap( );
+  private final Object refreshLock = new Object( );
+  private volatile List<TE> sorted = ImmutableList.of( );
+  private Date highWaterMark;
+  private long lastFullRefresh;
+
+  private final AtomicLong refreshCount = new AtomicLong( );
+  private final AtomicLong fullRefreshCount = new AtomicLong( );
+  private final AtomicLong loadedEntityCount = new AtomicLong( );
+  private final AtomicLong lastRefreshMillis = new AtomicLong( );
+  private final AtomicLong totalRefreshMillis = new AtomicLong( );
 
   /**
    * Create an entity cache for the given example.
@@ -51,17 +84,35 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
    */
   public EntityCache( final E example,
                       final Function<? super E,TE> transformFunction ) {
+    this( example, transformFunction, false );
+  }
+
+  /**
+   * Create an entity cache for the given example.
+   *
+   * @param example The example object
+   * @param transformFunction Function to transform to immutable cache format
+   * @param incremental True to refresh using the last update timestamp high-water mark
+   */
+  public EntityCache( final E example,
+                      final Function<? super E,TE> transformFunction,
+                      final boolean incremental ) {
     this.example = example;
     this.transformFunction = transformFunction;
+    this.incremental = incremental;
+  }
+
+  private Criteria exampleCriteria( ) {
+    return Entities.createCriteria( example.getClass( ) )
+        .add( Example.create( example ) )
+        .setReadOnly( true )
+        .setCacheable( false );
   }
 
   @SuppressWarnings( "unchecked" )
   private List<Pair<String,Integer>> loadVersionMap( ) {
     try ( final TransactionResource db = Entities.transactionFor( example ) ){
-      List<Object[]> idVersionList = (List<Object[]>) Entities.createCriteria( example.getClass( ) )
-          .add( Example.create( example ) )
-          .setReadOnly( true )
-          .setCacheable( false )
+      List<Object[]> idVersionList = (List<Object[]>) exampleCriteria( )
           .setFetchSize( 1000 )
           .setProjection( Projections.projectionList().add( Projections.id( ) ).add( Projections.property( "version" ) ) )
           .list( );
@@ -69,31 +120,196 @@ public class EntityCache<E extends AbstractPersistent, TE extends Comparable<TE>
     }
   }
 
+  private Date loadHighWaterMark( ) {
+    try ( final TransactionResource db = Entities.transactionFor( example ) ){
+      return (Date) exampleCriteria( )
+          .setProjection( Projections.max( "lastUpdateTimestamp" ) )
+          .uniqueResult( );
+    }
+  }
+
+  private long loadCount( ) {
+    try ( final TransactionResource db = Entities.transactionFor( example ) ){
+      return ( (Number) exampleCriteria( )
+          .setProjection( Projections.rowCount( ) )
+          .uniqueResult( ) ).longValue( );
+    }
+  }
+
+  /**
+   * Reload entities that are not cached at the current version.
+   */
   @SuppressWarnings( { "unchecked", "ConstantConditions" } )
-  private void refresh( ) {
+  private boolean refresh( final Set<TE> removed, final List<TE> added ) {
+    highWaterMark = incremental ? loadHighWaterMark( ) : null;
+    lastFullRefresh = System.currentTimeMillis( );
+    fullRefreshCount.incrementAndGet( );
     final List<Pair<String,Integer>> currentKeys = loadVersionMap( );
-    cache.keySet( ).retainAll( currentKeys );
-    currentKeys.removeAll( cache.keySet( ) );
-    for ( List<Pair<String,Integer>> keyBatch : Iterables.partition( currentKeys, batchSize ) ) {
+    final Map<String,Integer> currentVersions = Maps.newHashMapWithExpectedSize( currentKeys.size( ) );
+    for ( final Pair<String,Integer> key : currentKeys ) {
+      currentVersions.put( key.getLeft( ), key.getRight( ) );
+    }
+    for ( final Iterator<Map.Entry<String,Pair<Integer,TE>>> entryIterator = cache.entrySet( ).iterator( ); entryIterator.hasNext( ); ) {
+      final Map.Entry<String,Pair<Integer,TE>> entry = entryIterator.next( );
+      if ( !entry.getValue( ).getLeft( ).equals( currentVersions.get( entry.getKey( ) ) ) ) {
+        removed.add( entry.getValue( ).getRight( ) );
+        entryIterator.remove( );
+      }
+    }
+    currentVersions.keySet( ).removeAll( cache.keySet( ) );
+    for ( List<String> idBatch : Iterables.partition( currentVersions.keySet( ), batchSize ) ) {
       try ( final TransactionResource db = Entities.transactionFor( example ) ) {
-        List<E> entities = (List<E>) Entities.createCriteria( example.getClass( ) )
-            .add( Example.create( example ) )
-            .setReadOnly( true )
-            .setCacheable( false )
+        List<E> entities = (List<E>) exampleCriteria( )
             .setFetchSize( batchSize )
-            .add( Restrictions.in( "id", Lists.newArrayList( Iterables.transform( keyBatch, Pair.<String,Integer>left( ) ) ) ) )
+            .add( Restrictions.in( "id", Lists.newArrayList( idBatch ) ) )
             .list( );
         for ( final E entity : entities ) {
-          cache.put( Pair.pair( getId( entity ), entity.getVersion( ) ), transformFunction.apply( entity ) );
+          cache( entity, removed, added );
         }
       }
     }
+    return !removed.isEmpty( ) || !added.isEmpty( );
+  }
+
+  /**
+   * Reload entities updated since the high-water mark.
+   *
+   * <p>Updates are matched with some overlap to allow for transactions that
+   * commit after later updates.</p>
+   */
+  @SuppressWarnings( { "unchecked", "ConstantConditions" } )
+  private boolean refreshIncremental( final Set<TE> removed, final List<TE> added ) {
+    if ( highWaterMark == null || ( System.currentTimeMillis( ) - lastFullRefresh ) > fullRefreshIntervalMillis ) {
+      return refresh( removed, added );
+    }
+    final Date since = new Date( highWaterMark.getTime( ) - highWaterOverlapMillis );
+    final Set<String> updatedIds = Sets.newHashSet( );
+    try ( final TransactionResource db = Entities.transactionFor( example ) ) {
+      final List<E> entities = (List<E>) exampleCriteria( )
+          .setFetchSize( batchSize )
+          .add( Restrictions.gt( "lastUpdateTimestamp", since ) )
+          .list( );
+      for ( final E entity : entities ) {
+        updatedIds.add( getId( entity ) );
+        if ( entity.getLastUpdateTimestamp( ) != null && entity.getLastUpdateTimestamp( ).getTime( ) > highWaterMark.getTime( ) ) {
+          highWaterMark = new Date( entity.getLastUpdateTimestamp( ).getTime( ) );
+        }
+        final Pair<Integer,TE> cached = cache.get( getId( entity ) );
+        if ( cached == null || !cached.getLeft( ).equals( entity.getVersion( ) ) ) {
+          cache( entity, removed, added );
+        }
+      }
+      // entities updated so they no longer match the example
+      final List<Object> allUpdatedIds = (List<Object>) Entities.createCriteria( example.getClass( ) )
+          .setReadOnly( true )
+          .setCacheable( false )
+          .add( Restrictions.gt( "lastUpdateTimestamp", since ) )
+          .setProjection( Projections.id( ) )
+          .list( );
+      for ( final Object id : allUpdatedIds ) {
+        final String idString = String.valueOf( id );
+        if ( !updatedIds.contains( idString ) ) {
+          final Pair<Integer,TE> cached = cache.remove( idString );
+          if ( cached != null ) {
+            removed.add( cached.getRight( ) );
+          }
+        }
+      }
+    }
+    if ( loadCount( ) != cache.size( ) ) { // deleted entities
+      return refresh( removed, added );
+    }
+    return !removed.isEmpty( ) || !added.isEmpty( );
+  }
+
+  private void cache( final E entity, final Set<TE> removed, final List<TE> added ) {
+    final TE value = transformFunction.apply( entity );
+    final Pair<Integer,TE> previous = cache.put( getId( entity ), Pair.pair( entity.getVersion( ), value ) );
+    if ( previous != null ) {
+      removed.add( previous.getRight( ) );
+    }
+    added.add( value );
+    loadedEntityCount.incrementAndGet( );
+  }
+
+  /**
+   * Merge changes into the sorted view of the cache.
+   *
+   * <p>A value may be both added and removed when an entity is reloaded more
+   * than once in a refresh (e.g. an incremental refresh followed by a full
+   * refresh).</p>
+   */
+  private void updateSorted( final Set<TE> removed, final List<TE> added ) {
+    final List<TE> addedSorted = Ordering.natural( ).sortedCopy( Iterables.filter( added, Predicates.not( Predicates.in( removed ) ) ) );
+    final ImmutableList.Builder<TE> builder = ImmutableList.builder( );
+    final Iterator<TE> addedIterator = addedSorted.iterator( );
+    TE nextAdded = addedIterator.hasNext( ) ? addedIterator.next( ) : null;
+    for ( final TE value : sorted ) {
+      if ( removed.contains( value ) ) continue;
+      while ( nextAdded != null && nextAdded.compareTo( value ) < 0 ) {
+        builder.add( nextAdded );
+        nextAdded = addedIterator.hasNext( ) ? addedIterator.next( ) : null;
+      }
+      builder.add( value );
+    }
+    while ( nextAdded != null ) {
+      builder.add( nextAdded );
+      nextAdded = addedIterator.hasNext( ) ? addedIterator.next( ) : null;
+    }
+    sorted = builder.build( );
   }
 
   @Override
   public Iterable<TE> get( ) {
-    refresh( );
-    return Ordering.natural( ).sortedCopy( cache.values( ) );
+    synchronized ( refreshLock ) {
+      final long start = System.currentTimeMillis( );
+      final Set<TE> removed = Collections.newSetFromMap( Maps.<TE,Boolean>newIdentityHashMap( ) );
+      final List<TE> added = Lists.newArrayList( );
+      final boolean changed = incremental ?
+          refreshIncremental( removed, added ) :
+          refresh( removed, added );
+      if ( changed ) {
+        updateSorted( removed, added );
+      }
+      final long time = System.currentTimeMillis( ) - start;
+      refreshCount.incrementAndGet( );
+      lastRefreshMillis.set( time );
+      totalRefreshMillis.addAndGet( time );
+      return sorted;
+    }
+  }
+
+  public long getRefreshCount( ) {
+    return refreshCount.get( );
+  }
+
+  public long getFullRefreshCount( ) {
+    return fullRefreshCount.get( );
+  }
+
+  /**
+   * Number of entities loaded and transformed across all refreshes.
+   */
+  public long getLoadedEntityCount( ) {
+    return loadedEntityCount.get( );
+  }
+
+  public long getLastRefreshMillis( ) {
+    return lastRefreshMillis.get( );
+  }
+
+  public long getTotalRefreshMillis( ) {
+    return totalRefreshMillis.get( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "EntityCache " + example.getClass( ).getSimpleName( ) +
+        " refreshes=" + getRefreshCount( ) +
+        " full=" + getFullRefreshCount( ) +
+        " loaded=" + getLoadedEntityCount( ) +
+        " last=" + getLastRefreshMillis( ) + "ms" +
+        " total=" + getTotalRefreshMillis( ) + "ms";
   }
 
   private String getId( final E entity ) {
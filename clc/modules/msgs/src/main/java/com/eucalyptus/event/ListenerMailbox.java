@@ -0,0 +1,166 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.event;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.log4j.Logger;
+import com.eucalyptus.empyrean.Empyrean;
+import com.eucalyptus.event.Event.Periodic;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.system.Ats;
+import com.eucalyptus.system.Threads;
+import com.eucalyptus.util.Exceptions;
+import com.google.common.collect.Maps;
+
+/**
+ * Mailbox delivering events to a single listener.
+ *
+ * <p>Events other than {@link Periodic} events are delivered by a task per
+ * event on the listener thread pool, so they may be delivered concurrently
+ * and are never dropped.</p>
+ *
+ * <p>{@link Periodic} events are queued in a bounded mailbox and delivered
+ * one at a time in the order they were fired. At most one task per mailbox
+ * runs on the listener thread pool, and it delivers a limited number of
+ * events before yielding the thread. Periodic events are coalesced, if a
+ * newer event of the same type is queued an older one is not delivered.
+ * Periodic events are dropped when the mailbox is full.</p>
+ */
+class ListenerMailbox implements Runnable {
+  private static final Logger LOG = Logger.getLogger( ListenerMailbox.class );
+  private static final int CAPACITY = Integer.getInteger( "com.eucalyptus.event.listenerMailboxCapacity", 1000 );
+  private static final int BATCH_SIZE = 32;
+
+  private final EventListener listener;
+  private final ListenerStatistics.Metrics metrics;
+  private final Queue<Mail> periodicQueue = new ConcurrentLinkedQueue<>( );
+  private final AtomicInteger size = new AtomicInteger( );
+  private final ConcurrentMap<Class<?>, AtomicInteger> periodicQueued = Maps.newConcurrentMap( );
+  private final AtomicBoolean scheduled = new AtomicBoolean( false );
+
+  ListenerMailbox( final EventListener listener ) {
+    this.listener = listener;
+    this.metrics = ListenerStatistics.get( ).metrics( listener.getClass( ) );
+  }
+
+  void offer( final Event event ) {
+    if ( !Ats.inClassHierarchy( event ).has( Periodic.class ) ) {
+      final Mail mail = new Mail( event );
+      executor( ).submit( new Runnable( ) {
+        @Override
+        public void run( ) {
+          deliver( mail );
+        }
+      } );
+      return;
+    }
+    if ( size.incrementAndGet( ) > CAPACITY ) {
+      size.decrementAndGet( );
+      final long dropped = metrics.dropped( );
+      if ( dropped == 1 || dropped % 1000 == 0 ) {
+        LOG.warn( "Dropped event " + event.getClass( ).getSimpleName( ) + " for listener " +
+            listener.getClass( ).getName( ) + ", mailbox full (" + dropped + " dropped)" );
+      }
+      return;
+    }
+    periodicCount( event.getClass( ) ).incrementAndGet( );
+    periodicQueue.offer( new Mail( event ) );
+    schedule( );
+  }
+
+  @Override
+  public void run( ) {
+    try {
+      for ( int i = 0; i < BATCH_SIZE; i++ ) {
+        final Mail mail = periodicQueue.poll( );
+        if ( mail == null ) break;
+        size.decrementAndGet( );
+        if ( periodicCount( mail.event.getClass( ) ).decrementAndGet( ) > 0 ) {
+          metrics.coalesced( );
+          continue;
+        }
+        deliver( mail );
+      }
+    } finally {
+      scheduled.set( false );
+      if ( !periodicQueue.isEmpty( ) ) {
+        schedule( );
+      }
+    }
+  }
+
+  @SuppressWarnings( "unchecked" )
+  private void deliver( final Mail mail ) {
+    metrics.lag( mail.queuedNanos );
+    final long start = System.nanoTime( );
+    try {
+      listener.fireEvent( mail.event );
+    } catch ( Exception ex ) {
+      EventFailedException eventEx = new EventFailedException( "Failed to fire event: listener=" + listener.getClass( ).getCanonicalName( ) + " event="
+                                                               + mail.event.toString( ) + " because of: "
+                                                               + ex.getMessage( ), Exceptions.filterStackTrace( ex ) );
+      Logs.extreme( ).error( eventEx, eventEx );
+      LOG.error( eventEx );
+    } finally {
+      metrics.execution( start );
+    }
+  }
+
+  private static Threads.ThreadPool executor( ) {
+    return Threads.lookup( Empyrean.class, ListenerRegistry.class, "listenerTasks" );
+  }
+
+  private void schedule( ) {
+    if ( scheduled.compareAndSet( false, true ) ) {
+      try {
+        executor( ).submit( this );
+      } catch ( RejectedExecutionException ex ) {
+        scheduled.set( false );
+        LOG.error( "Unable to schedule event delivery for listener " + listener.getClass( ).getName( ) + ": " + ex.getMessage( ) );
+      }
+    }
+  }
+
+  private AtomicInteger periodicCount( final Class<?> eventType ) {
+    AtomicInteger count = periodicQueued.get( eventType );
+    if ( count == null ) {
+      final AtomicInteger newCount = new AtomicInteger( );
+      count = periodicQueued.putIfAbsent( eventType, newCount );
+      if ( count == null ) {
+        count = newCount;
+      }
+    }
+    return count;
+  }
+
+  private static final class Mail {
+    private final Event event;
+    private final long queuedNanos = System.nanoTime( );
+
+    private Mail( final Event event ) {
+      this.event = event;
+    }
+  }
+}
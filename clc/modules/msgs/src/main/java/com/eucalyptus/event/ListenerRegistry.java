@@ -65,15 +65,11 @@ package com.eucalyptus.event;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
-import com.eucalyptus.event.Event.Periodic;
-import com.eucalyptus.system.Ats;
-import com.google.common.base.Function;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
@@ -87,10 +83,9 @@ import com.eucalyptus.records.Logs;
 import com.eucalyptus.system.Threads;
 import com.eucalyptus.util.Classes;
 import com.eucalyptus.util.Exceptions;
-import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
-import com.google.common.collect.Multimap;
 
 public class ListenerRegistry {
   private static Logger                                           LOG       = Logger.getLogger( ListenerRegistry.class );
@@ -235,12 +230,12 @@ public class ListenerRegistry {
   }
   
   public static class ReentrantListenerRegistry<T> {
-    private Multimap<T, EventListener> listenerMap;
-    private Lock modificationLock;
+    private final ConcurrentMap<T, ImmutableList<EventListener>> listenerMap;
+    private final Lock modificationLock;
 
     public ReentrantListenerRegistry() {
       super();
-      this.listenerMap = ArrayListMultimap.create();
+      this.listenerMap = Maps.newConcurrentMap( );
       this.modificationLock = new ReentrantLock();
     }
 
@@ -254,8 +249,9 @@ public class ListenerRegistry {
       }
       this.modificationLock.lock();
       try {
-        if ( !this.listenerMap.containsEntry( type, listener ) ) {
-          this.listenerMap.put( type, listener );
+        final List<EventListener> listeners = this.listeners( type );
+        if ( !listeners.contains( listener ) ) {
+          this.listenerMap.put( type, ImmutableList.<EventListener>builder( ).addAll( listeners ).add( listener ).build( ) );
         }
       } finally {
         this.modificationLock.unlock();
@@ -272,7 +268,14 @@ public class ListenerRegistry {
       }
       this.modificationLock.lock();
       try {
-        this.listenerMap.remove( type, listener );
+        final List<EventListener> listeners = Lists.newArrayList( this.listeners( type ) );
+        if ( listeners.remove( listener ) ) {
+          if ( listeners.isEmpty( ) ) {
+            this.listenerMap.remove( type );
+          } else {
+            this.listenerMap.put( type, ImmutableList.copyOf( listeners ) );
+          }
+        }
       } finally {
         this.modificationLock.unlock();
       }
@@ -282,29 +285,30 @@ public class ListenerRegistry {
 
       this.modificationLock.lock();
       try {
-        for ( EventListener e : this.listenerMap.get( type ) ) {
+        for ( EventListener e : this.listeners( type ) ) {
           EventRecord.caller( ReentrantListenerRegistry.class, EventType.LISTENER_DESTROY_ALL, type.getClass().getSimpleName(),
                               e.getClass().getCanonicalName() ).trace();
         }
-        this.listenerMap.removeAll( type );
+        this.listenerMap.remove( type );
       } finally {
         this.modificationLock.unlock();
       }
     }
 
+    /**
+     * Listeners are replaced on modification, the returned list is never modified.
+     */
+    private List<EventListener> listeners( final T type ) {
+      final List<EventListener> listeners = this.listenerMap.get( type );
+      return listeners == null ? ImmutableList.<EventListener>of( ) : listeners;
+    }
+
     public void fireThrowableEvent(T type, Event e) throws EventFailedException {
-    	 List<EventListener> listeners;
-         this.modificationLock.lock( );
-         try {
-           listeners = Lists.newArrayList( this.listenerMap.get( type ) );
-         } finally {
-           this.modificationLock.unlock( );
-         }
+      final List<EventListener> listeners = this.listeners( type );
       /**
        * Inline the madness that is going on here. Async execution is mutually exclusive with
        * direct result propagation to the caller.
        */
-      List<Throwable> errors = Lists.newArrayList( );
       for ( EventListener ce : listeners ) {
         EventRecord.here( ReentrantListenerRegistry.class, EventType.LISTENER_EVENT_FIRED, ce.getClass().getSimpleName(), e.toString() ).trace();
         try {
@@ -323,60 +327,21 @@ public class ListenerRegistry {
      * the order of 10ms at the worst case. To ensure that compliant tasks are not disrupted by less
      * discriminating commoner tasks, everyone must execute asynchronously while enforcing a single
      * thread of execution for any particular event listener.
+     *
+     * Events are queued to each listeners mailbox, see {@link ListenerMailbox}.
      */
     public void fireEvent( T type, Event e ) {
-      List<EventListener> listeners;
-      this.modificationLock.lock( );
-      try {
-        listeners = Lists.newArrayList( this.listenerMap.get( type ) );
-      } finally {
-        this.modificationLock.unlock( );
-      }
-      for ( EventListener ce : listeners ) {
-        Threads.lookup( Empyrean.class, ListenerRegistry.class, "listenerTasks" )
-               .submit( listenerTasks.getUnchecked( ce ).apply( e ) );
+      for ( EventListener ce : this.listeners( type ) ) {
+        mailboxes.getUnchecked( ce ).offer( e );
       }
     }
 
-
-    /**
-     * A wrapper for event listeners which produces callables that can only be executed one at a
-     * time, otherwise returning immediately (by way of the atomic boolean).
-     */
-    private static final LoadingCache<EventListener, Function<Event, Callable<Object>>> listenerTasks = CacheBuilder.newBuilder().build( getListenerWrapper() );
-    private static final CacheLoader<EventListener, Function<Event, Callable<Object>>> getListenerWrapper() {
-      return new CacheLoader<EventListener, Function<Event, Callable<Object>>>() {
-        @Override
-        public Function<Event, Callable<Object>> load( final EventListener key ) throws Exception {
-          return new Function<Event, Callable<Object>>() {
-            final AtomicBoolean busy = new AtomicBoolean( false );
-
-            @Override
-            public Callable<Object> apply( final Event input ) {
-              return new Callable<Object>() {
-                @Override
-                public Object call() throws Exception {
-                  if ( !Ats.inClassHierarchy(input).has( Periodic.class ) || busy.compareAndSet( false, true ) ) {
-                    try {
-                      key.fireEvent( input );
-                    } catch ( Exception ex ) {
-                      EventFailedException eventEx = new EventFailedException( "Failed to fire event: listener=" + key.getClass( ).getCanonicalName( ) + " event="
-                                                                               + ex.toString( ) + " because of: "
-                                                                               + ex.getMessage( ), Exceptions.filterStackTrace( ex ) );
-                      Logs.extreme( ).error( eventEx, eventEx );
-                      LOG.error( eventEx );
-
-                    } finally {
-                      busy.set( false );
-                    }
-                  }
-                  return input;
-                }
-              };
-            }
-          };
-        }
-      };
-    }
+    private static final LoadingCache<EventListener, ListenerMailbox> mailboxes = CacheBuilder.newBuilder().build(
+        new CacheLoader<EventListener, ListenerMailbox>() {
+          @Override
+          public ListenerMailbox load( final EventListener key ) {
+            return new ListenerMailbox( key );
+          }
+        } );
   }
 }
@@ -0,0 +1,141 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.event;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.ws.server.LatencyHistogram;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Event dispatch statistics for each listener type, exported via JMX.
+ *
+ * <p>Dispatch lag is the time an event waited in the listeners mailbox,
+ * listeners are listed with the highest total execution time first.</p>
+ */
+public class ListenerStatistics {
+
+  private static final ListenerStatistics instance = new ListenerStatistics( );
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+
+  private final ConcurrentMap<Class<?>, Metrics> metrics = Maps.newConcurrentMap( );
+
+  static ListenerStatistics get( ) {
+    if ( Bootstrap.isOperational( ) && registered.compareAndSet( false, true ) ) {
+      Mbeans.register( instance );
+    }
+    return instance;
+  }
+
+  Metrics metrics( final Class<?> listenerType ) {
+    Metrics listenerMetrics = metrics.get( listenerType );
+    if ( listenerMetrics == null ) {
+      final Metrics newMetrics = new Metrics( listenerType );
+      listenerMetrics = metrics.putIfAbsent( listenerType, newMetrics );
+      if ( listenerMetrics == null ) {
+        listenerMetrics = newMetrics;
+      }
+    }
+    return listenerMetrics;
+  }
+
+  public String[] getListeners( ) {
+    final List<Map.Entry<Metrics, LatencyHistogram.Snapshot>> snapshots = Lists.newArrayList( );
+    for ( final Metrics listenerMetrics : metrics.values( ) ) {
+      snapshots.add( Maps.immutableEntry( listenerMetrics, listenerMetrics.execution.snapshot( ) ) );
+    }
+    Collections.sort( snapshots, new Comparator<Map.Entry<Metrics, LatencyHistogram.Snapshot>>( ) {
+      @Override
+      public int compare( final Map.Entry<Metrics, LatencyHistogram.Snapshot> o1,
+                          final Map.Entry<Metrics, LatencyHistogram.Snapshot> o2 ) {
+        return Long.compare( o2.getValue( ).getTotal( ), o1.getValue( ).getTotal( ) );
+      }
+    } );
+    final String[] lines = new String[ snapshots.size( ) ];
+    for ( int i = 0; i < lines.length; i++ ) {
+      final Metrics listenerMetrics = snapshots.get( i ).getKey( );
+      lines[ i ] = listenerMetrics.type.getName( ) +
+          " coalesced=" + listenerMetrics.coalesced.get( ) + " dropped=" + listenerMetrics.dropped.get( ) +
+          " lag[" + listenerMetrics.lag.snapshot( ) + "] execution[" + snapshots.get( i ).getValue( ) + "]";
+    }
+    return lines;
+  }
+
+  public long getCoalescedCount( ) {
+    long count = 0;
+    for ( final Metrics listenerMetrics : metrics.values( ) ) {
+      count += listenerMetrics.coalesced.get( );
+    }
+    return count;
+  }
+
+  public long getDroppedCount( ) {
+    long count = 0;
+    for ( final Metrics listenerMetrics : metrics.values( ) ) {
+      count += listenerMetrics.dropped.get( );
+    }
+    return count;
+  }
+
+  @Override
+  public String toString( ) {
+    return "ListenerStatistics listeners=" + metrics.size( ) +
+        " coalesced=" + getCoalescedCount( ) + " dropped=" + getDroppedCount( );
+  }
+
+  static final class Metrics {
+    private final Class<?> type;
+    private final LatencyHistogram lag = new LatencyHistogram( );
+    private final LatencyHistogram execution = new LatencyHistogram( );
+    private final AtomicLong coalesced = new AtomicLong( );
+    private final AtomicLong dropped = new AtomicLong( );
+
+    private Metrics( final Class<?> type ) {
+      this.type = type;
+    }
+
+    void lag( final long queuedNanos ) {
+      lag.recordNanos( System.nanoTime( ) - queuedNanos );
+    }
+
+    void execution( final long startNanos ) {
+      execution.recordNanos( System.nanoTime( ) - startNanos );
+    }
+
+    void coalesced( ) {
+      coalesced.incrementAndGet( );
+    }
+
+    /**
+     * @return The number of events dropped for the listener type
+     */
+    long dropped( ) {
+      return dropped.incrementAndGet( );
+    }
+  }
+}
@@ -0,0 +1,159 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.system;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.log4j.Logger;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
+import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.ws.server.LatencyHistogram;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Ordering;
+
+/**
+ * Thread pool and queue worker statistics, exported via JMX.
+ *
+ * <p>Wait time is the time from submission until a task starts running,
+ * run time is the time the task ran for.</p>
+ */
+public class ThreadPoolStatistics {
+  private static final Logger LOG = Logger.getLogger( ThreadPoolStatistics.class );
+
+  private static final ThreadPoolStatistics instance = new ThreadPoolStatistics( );
+
+  public String[] getPools( ) {
+    final List<String> lines = Lists.newArrayList( );
+    for ( final Threads.ThreadPool pool : Threads.pools( ) ) {
+      lines.add( pool.describe( ) );
+    }
+    return Ordering.natural( ).sortedCopy( lines ).toArray( new String[ lines.size( ) ] );
+  }
+
+  public String[] getQueues( ) {
+    final List<String> lines = Lists.newArrayList( );
+    for ( final Threads.Queue<?> queue : Threads.queues( ) ) {
+      lines.add( queue.describe( ) );
+    }
+    return Ordering.natural( ).sortedCopy( lines ).toArray( new String[ lines.size( ) ] );
+  }
+
+  @Override
+  public String toString( ) {
+    return "ThreadPoolStatistics pools=" + Threads.pools( ).size( ) + " queues=" + Threads.queues( ).size( );
+  }
+
+  static final class Metrics {
+    private final LatencyHistogram wait = new LatencyHistogram( );
+    private final LatencyHistogram run = new LatencyHistogram( );
+    private final AtomicLong completed = new AtomicLong( );
+    private final AtomicLong rejected = new AtomicLong( );
+
+    Runnable timed( final Runnable task ) {
+      final long queuedNanos = System.nanoTime( );
+      return new Runnable( ) {
+        @Override
+        public void run( ) {
+          final long start = started( queuedNanos );
+          try {
+            task.run( );
+          } finally {
+            finished( start );
+          }
+        }
+
+        @Override
+        public String toString( ) {
+          return task.toString( );
+        }
+      };
+    }
+
+    <T> Callable<T> timed( final Callable<T> task ) {
+      final long queuedNanos = System.nanoTime( );
+      return new Callable<T>( ) {
+        @Override
+        public T call( ) throws Exception {
+          final long start = started( queuedNanos );
+          try {
+            return task.call( );
+          } finally {
+            finished( start );
+          }
+        }
+
+        @Override
+        public String toString( ) {
+          return task.toString( );
+        }
+      };
+    }
+
+    /**
+     * @return The start time to pass to {@link #finished}
+     */
+    long started( final long queuedNanos ) {
+      final long start = System.nanoTime( );
+      wait.recordNanos( start - queuedNanos );
+      return start;
+    }
+
+    void finished( final long startNanos ) {
+      run.recordNanos( System.nanoTime( ) - startNanos );
+      completed.incrementAndGet( );
+    }
+
+    void rejected( ) {
+      rejected.incrementAndGet( );
+    }
+
+    @Override
+    public String toString( ) {
+      return "completed=" + completed.get( ) + " rejected=" + rejected.get( ) +
+          " wait[" + wait.snapshot( ) + "] run[" + run.snapshot( ) + "]";
+    }
+  }
+
+  public static class ThreadPoolStatisticsEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new ThreadPoolStatisticsEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( Bootstrap.isOperational( ) && registered.compareAndSet( false, true ) ) {
+        try {
+          Mbeans.register( instance );
+        } catch ( final Exception ex ) {
+          LOG.error( "Error registering thread pool statistics: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
+    }
+  }
+}
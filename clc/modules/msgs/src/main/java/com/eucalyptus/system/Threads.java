@@ -91,12 +91,13 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.LinkedTransferQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
@@ -137,6 +138,8 @@ public class Threads {
   private static Logger                                  LOG               = Logger.getLogger( Threads.class );
   private final static String                            PREFIX            = "Eucalyptus.";
   private final static Integer                           NUM_QUEUE_WORKERS = 32;                                          //TODO:GRZE: discover on per-service basis.;
+  private final static Integer                           QUEUE_CAPACITY    = Integer.getInteger( "com.eucalyptus.system.threads.queueCapacity", Integer.MAX_VALUE );
+  private final static RejectionPolicy                   REJECTION_POLICY  = RejectionPolicy.fromString( System.getProperty( "com.eucalyptus.system.threads.rejectionPolicy" ) );
   private final static AtomicInteger                     threadIndex       = new AtomicInteger( 0 );
   private final static ConcurrentMap<String, ThreadPool> execServices      = new ConcurrentHashMap<String, ThreadPool>( );
   private final static Map<Long, String> correlationIdMap = new ConcurrentHashMap<Long, String>();
@@ -204,6 +207,14 @@ public class Threads {
     return execServices.get( groupName );
   }
   
+  static Collection<ThreadPool> pools( ) {
+    return execServices.values( );
+  }
+
+  static Collection<Queue<?>> queues( ) {
+    return workers.values( );
+  }
+
   private static final ThreadPool SYSTEM = lookup( "SYSTEM" );
   
   public static Thread newThread( final Runnable r, final String name ) {
@@ -223,11 +234,63 @@ public class Threads {
     public String getCorrelationId();
   }
   
+  /**
+   * Handling for tasks submitted to a thread pool whose queue is full.
+   *
+   * <p>Queues are unbounded unless a capacity is set with the system property
+   * com.eucalyptus.system.threads.queueCapacity. With a bounded queue
+   * CALLER_RUNS runs the task on the submitting thread, which may be an I/O
+   * thread or hold locks, and ABORT fails the submission with a
+   * RejectedExecutionException.</p>
+   *
+   * <p>Policies that discard tasks are not offered as a discarded task's
+   * Future would never complete.</p>
+   */
+  enum RejectionPolicy {
+    CALLER_RUNS( new ThreadPoolExecutor.CallerRunsPolicy( ) ),
+    ABORT( new ThreadPoolExecutor.AbortPolicy( ) );
+
+    private final RejectedExecutionHandler handler;
+
+    private RejectionPolicy( final RejectedExecutionHandler handler ) {
+      this.handler = handler;
+    }
+
+    RejectedExecutionHandler handler( final ThreadPoolStatistics.Metrics metrics ) {
+      return new RejectedExecutionHandler( ) {
+        @Override
+        public void rejectedExecution( final Runnable r, final ThreadPoolExecutor executor ) {
+          metrics.rejected( );
+          handler.rejectedExecution( r, executor );
+        }
+      };
+    }
+
+    static RejectionPolicy fromString( final String value ) {
+      if ( value != null ) {
+        try {
+          return RejectionPolicy.valueOf( value.trim( ).toUpperCase( ).replace( '-', '_' ) );
+        } catch ( final IllegalArgumentException e ) {
+          LOG.error( "Invalid thread pool rejection policy " + value + ", using " + CALLER_RUNS );
+        }
+      }
+      return CALLER_RUNS;
+    }
+  }
+
+  /**
+   * Named thread pool.
+   *
+   * <p>Fixed size pools (see {@link #limitTo}) have an unbounded queue unless
+   * a queue capacity is configured, tasks submitted when the queue is full
+   * are handled according to the configured rejection policy.</p>
+   */
   public static class ThreadPool implements ThreadFactory, ExecutorService {
     private final ThreadGroup                    group;
     private final String                         name;
-    private ExecutorService                      pool;
+    private volatile ExecutorService             pool;
     private Integer                              numThreads = -1;
+    private final ThreadPoolStatistics.Metrics   metrics    = new ThreadPoolStatistics.Metrics( );
     private final StackTraceElement[]            creationPoint;
     private final LinkedBlockingQueue<Future<?>> taskQueue  = new LinkedBlockingQueue<Future<?>>( );
     
@@ -262,17 +325,20 @@ public class Threads {
             return this;
           } else {
             this.numThreads = numThreads;
-            final ExecutorService oldExec = this.pool;
-            this.pool = null;
-            if ( oldExec != null ) {
-              oldExec.shutdown( );
-            }
-            this.pool = this.makePool( );
+            this.replacePool( );
           }
         }
       }
       return this;
     }
+
+    private void replacePool( ) {
+      final ExecutorService oldExec = this.pool;
+      this.pool = this.makePool( );
+      if ( oldExec != null ) {
+        oldExec.shutdown( );
+      }
+    }
     
     public ThreadGroup getGroup( ) {
       return this.group;
@@ -296,14 +362,24 @@ public class Threads {
     }
     
     public ExecutorService makePool( ) {
-      ExecutorService newPool = ( this.numThreads == -1 )
-        ? Executors.newCachedThreadPool( this )
-        : Executors.newFixedThreadPool( this.numThreads, this );
-      if ( newPool instanceof ThreadPoolExecutor ) {
-        ( ( ThreadPoolExecutor ) newPool ).setRejectedExecutionHandler( new ThreadPoolExecutor.CallerRunsPolicy( ) );
-      }
+      final ThreadPoolExecutor newPool = ( this.numThreads == -1 )
+        ? new ThreadPoolExecutor( 0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<Runnable>( ), this )
+        : new ThreadPoolExecutor( this.numThreads, this.numThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>( QUEUE_CAPACITY ), this );
+      newPool.setRejectedExecutionHandler( REJECTION_POLICY.handler( this.metrics ) );
       return newPool;
     }
+
+    String describe( ) {
+      final ExecutorService currentPool = this.pool;
+      final StringBuilder builder = new StringBuilder( this.name );
+      if ( currentPool instanceof ThreadPoolExecutor ) {
+        final ThreadPoolExecutor executor = ( ThreadPoolExecutor ) currentPool;
+        builder.append( " threads=" ).append( executor.getPoolSize( ) )
+               .append( " active=" ).append( executor.getActiveCount( ) )
+               .append( " queued=" ).append( executor.getQueue( ).size( ) );
+      }
+      return builder.append( " " ).append( this.metrics ).toString( );
+    }
     
     private static final Runnable[] EMPTY = new Runnable[] {};
     
@@ -342,7 +418,7 @@ public class Threads {
     
     @Override
     public void execute( final Runnable command ) {
-      this.pool.execute( command );
+      this.pool.execute( this.metrics.timed( command ) );
     }
     
     @Override
@@ -374,17 +450,17 @@ public class Threads {
     
     @Override
     public <T> Future<T> submit( final Callable<T> task ) {
-      return this.pool.submit( task );
+      return this.pool.submit( this.metrics.timed( task ) );
     }
     
     @Override
     public <T> Future<T> submit( final Runnable task, final T result ) {
-      return this.pool.submit( task, result );
+      return this.pool.submit( this.metrics.timed( task ), result );
     }
     
     @Override
     public Future<?> submit( final Runnable task ) {
-      return this.pool.submit( task );
+      return this.pool.submit( this.metrics.timed( task ) );
     }
     
     @Override
@@ -636,6 +712,8 @@ public class Threads {
     private final String                       creationStack;
     private final Class<? extends ComponentId> componentId;
     private final String                       name;
+    private final AtomicInteger                active   = new AtomicInteger( );
+    private final ThreadPoolStatistics.Metrics metrics  = new ThreadPoolStatistics.Metrics( );
     private FutureTask<?>                      currentTask;
     
     Queue( final Class<? extends ComponentId> componentId, final T owner, final int numWorkers ) {
@@ -731,7 +809,10 @@ public class Threads {
     }
     
     private <C> Future<C> submit( final String correlationId, final Callable<C> call ) {
-      FutureTask<C> f = new EucaFutureTask<C>( correlationId, call ) {
+      final String taskCorrelationId = ( correlationId == null && call instanceof EucaCallable )
+        ? ( ( EucaCallable ) call ).getCorrelationId( )
+        : correlationId;
+      FutureTask<C> f = new EucaFutureTask<C>( taskCorrelationId, this.metrics.timed( call ) ) {
         @Override
         public String toString( ) {
           return Thread.currentThread( ).getName( ) + ":" + super.toString( ) + " " + call.toString( );
@@ -748,11 +829,14 @@ public class Threads {
           final FutureTask<?> futureTask = this.msgQueue.take( );
           if ( futureTask != null ) {
             Logs.extreme( ).debug( EventType.QUEUE + " " + ( this.currentTask = futureTask ) + " " + Thread.currentThread( ).getName( ) );
+            this.active.incrementAndGet( );
             try {
               futureTask.run( );
             } catch ( final Exception ex ) {
               Exceptions.maybeInterrupted( ex );
               Logs.extreme( ).error( ex, ex );
+            } finally {
+              this.active.decrementAndGet( );
             }
           }
         } catch ( final InterruptedException e ) {
@@ -769,6 +853,11 @@ public class Threads {
                  + Thread.currentThread( ).getName( ) );
     }
     
+    String describe( ) {
+      return this.key( ) + " workers=" + this.numWorkers + " active=" + this.active.get( ) +
+          " queued=" + this.msgQueue.size( ) + " " + this.metrics;
+    }
+
     private Object getOwner( ) {
       return this.owner;
     }
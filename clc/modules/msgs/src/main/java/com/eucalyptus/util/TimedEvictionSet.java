@@ -62,152 +62,141 @@
 
 package com.eucalyptus.util;
 
+import java.util.AbstractSet;
 import java.util.Collection;
-import java.util.Comparator;
 import java.util.Iterator;
-import java.util.NavigableSet;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.log4j.Logger;
 import com.eucalyptus.ws.StackConfiguration;
+import com.google.common.collect.Maps;
 
-public class TimedEvictionSet<E extends Comparable> implements Set<E> {
+/**
+ * Set of elements that are evicted after a fixed period.
+ *
+ * <p>Elements are tracked in a concurrent map with their insertion time and
+ * in a ring of time buckets. Eviction drains the bucket(s) that have fallen
+ * out of the eviction period so insert, contains and eviction are constant
+ * time and there is no global lock.</p>
+ */
+public class TimedEvictionSet<E extends Comparable> extends AbstractSet<E> {
   private static Logger LOG = Logger.getLogger( TimedEvictionSet.class );
-  private NavigableSet<E> entries = new ConcurrentSkipListSet<E>();
-  private NavigableSet<TimestampedElement> timestamps = new ConcurrentSkipListSet<TimestampedElement>();
-  private Long evictionNanos = 15*1000*60*1000*1000l;
-  private AtomicBoolean busy = new AtomicBoolean( false );
-  
-  class TimestampedElement implements Comparable<TimestampedElement> {
-    private E element;
-    private Long timeNanos;
-    
-    public TimestampedElement( E element ) {
-      super( );
-      this.element = element;
-      this.timeNanos = System.nanoTime( );
-    }
-    
-    protected TimestampedElement( E element, Long nanos) {
-    	super();
-    	this.element = element;
-    	this.timeNanos = nanos;
-    }
-    
-    @Override
-    public int hashCode( ) {
-      final int prime = 31;
-      int result = 1;
-      result = prime * result + ( ( this.element == null ) ? 0 : this.element.hashCode( ) );
-      result = prime * result + ( ( this.timeNanos == null ) ? 0 : this.timeNanos.hashCode( ) );
-      return result;
-    }
-    
-    @Override
-    public boolean equals( Object obj ) {
-      if ( this == obj ) return true;
-      if ( obj == null ) return false;
-      if ( getClass( ) != obj.getClass( ) ) return false;
-      TimestampedElement other = ( TimestampedElement ) obj;
-      if ( this.element == null ) {
-        if ( other.element != null ) return false;
-      } else if ( !this.element.equals( other.element ) ) return false;
-      if ( this.timeNanos == null ) {
-        if ( other.timeNanos != null ) return false;
-      } else if ( !this.timeNanos.equals( other.timeNanos ) ) return false;
-      return true;
-    }
-    
-    @Override
-    public int compareTo( TimestampedElement that ) {
-      if( !this.equals( that ) && this.timeNanos.compareTo( that.timeNanos ) == 0 ) {
-        return this.element.compareTo( that.element );
-      } else {
-        return this.timeNanos.compareTo( that.timeNanos );
-      }
-    }
-   
-    public boolean isExpired( ) {
-      return System.nanoTime( ) > ( this.timeNanos + TimedEvictionSet.this.evictionNanos);
-    }
-    public E get( ) {
-      return this.element;
-    }
-    public Long getTimestamp( ) {
-      return this.timeNanos;
+  private static final int BUCKET_COUNT = 64;
+  private final ConcurrentMap<E,Long> entries = Maps.newConcurrentMap( );
+  private final Queue<E>[] buckets;
+  private final long evictionNanos;
+  private final long bucketNanos;
+  private final long evictionTicks;
+  private final long startNanos = System.nanoTime( );
+  private final AtomicLong evictedThroughTick;
+
+  @SuppressWarnings( "unchecked" )
+  public TimedEvictionSet( Long evictionMillis ) {
+    super( );
+    this.evictionNanos = TimeUnit.MILLISECONDS.toNanos( evictionMillis );
+    this.evictionTicks = BUCKET_COUNT - 2;
+    this.bucketNanos = Math.max( 1L, ( this.evictionNanos + this.evictionTicks - 1 ) / this.evictionTicks );
+    this.buckets = new Queue[ BUCKET_COUNT ];
+    for ( int i = 0; i < BUCKET_COUNT; i++ ) {
+      this.buckets[ i ] = new ConcurrentLinkedQueue<E>( );
     }
+    this.evictedThroughTick = new AtomicLong( -this.evictionTicks - 1 );
   }
-  private boolean timestamp( E e ) {
-    this.scavenge( );
-  
-    if( this.entries.add( e ) ) {
-      TimestampedElement elem = new TimestampedElement( e );
-      this.timestamps.add( elem );
-      return true;
-    } else {
 
-	LOG.debug("Use of the same signature is detected: " + e );
-	
-	// Allow message with the same signature within the REPLAY_SKEW_WINDOW_SEC
-	// time interval
-    	Long now = System.nanoTime( );
-	Long adjust = TimeUnit.NANOSECONDS.convert(StackConfiguration.REPLAY_SKEW_WINDOW_SEC, TimeUnit.SECONDS);
+  private long tick( final long nanos ) {
+    return ( nanos - this.startNanos ) / this.bucketNanos;
+  }
 
-	// special case
-	if( adjust <= 0 ) {
-	    // no replay is allowed at all
-	    return false;
-	} 
+  private Queue<E> bucket( final long tick ) {
+    return this.buckets[ (int) ( tick % BUCKET_COUNT ) ];
+  }
 
-    	Long timeNanosAdj = now - adjust;
-    	TimestampedElement fakeElem = new TimestampedElement( e, timeNanosAdj );
-    	NavigableSet<TimestampedElement> elems = this.timestamps.tailSet(fakeElem, true);
-    	for(Iterator<TimestampedElement> iter = elems.iterator(); iter.hasNext();) {
-    		TimestampedElement elem = iter.next();
-    		E sig = elem.get();
-		// the signature was used within the allowed window, don't trigger replay
-    		if(e.equals(sig)) {
-    			LOG.debug("Found elem with signature " + sig + " within allowed " + StackConfiguration.REPLAY_SKEW_WINDOW_SEC
-    					+ " sec window ");
-    			return true;
-    		}
-    	}
-    	// a replay attack
-    	return false;
-    }
+  private boolean isExpired( final long timeNanos, final long now ) {
+    return now > ( timeNanos + this.evictionNanos );
   }
-  
-  public TimedEvictionSet( Long evictionMillis ) {
-    super( );
-    this.evictionNanos = evictionMillis * 1000 * 1000;
+
+  private boolean timestamp( final E e ) {
+    final long now = System.nanoTime( );
+    this.scavenge( now );
+    while ( true ) {
+      final Long previous = this.entries.putIfAbsent( e, now );
+      if ( previous == null ) {
+        bucket( tick( now ) ).offer( e );
+        return true;
+      } else if ( isExpired( previous, now ) ) {
+        if ( this.entries.replace( e, previous, now ) ) {
+          bucket( tick( now ) ).offer( e );
+          return true;
+        }
+      } else {
+        LOG.debug( "Use of the same signature is detected: " + e );
+
+        // Allow message with the same signature within the REPLAY_SKEW_WINDOW_SEC
+        // time interval
+        final long adjust = TimeUnit.NANOSECONDS.convert( StackConfiguration.REPLAY_SKEW_WINDOW_SEC, TimeUnit.SECONDS );
+
+        // special case
+        if ( adjust <= 0 ) {
+          // no replay is allowed at all
+          return false;
+        }
+
+        // the signature was used within the allowed window, don't trigger replay
+        if ( previous >= ( now - adjust ) ) {
+          LOG.debug( "Found elem with signature " + e + " within allowed " + StackConfiguration.REPLAY_SKEW_WINDOW_SEC
+              + " sec window " );
+          return true;
+        }
+
+        // a replay attack
+        return false;
+      }
+    }
   }
-  
-  private void scavenge() {
-    if( this.busy.compareAndSet( false, true ) ) {
-      try {
-        TimestampedElement elem = null;        
-        while( !this.timestamps.isEmpty( ) && this.timestamps.first( ).isExpired( ) && ( elem = this.timestamps.pollFirst( ) )!= null ) {
-          this.entries.remove( elem.get( ) );
+
+  /**
+   * Drain buckets that are entirely outside of the eviction period.
+   *
+   * <p>Only the thread that claims a tick drains its bucket. Elements that
+   * are not yet expired are moved to the current bucket, unless they were
+   * re-added and so are also queued in another bucket.</p>
+   */
+  private void scavenge( final long now ) {
+    final long currentTick = tick( now );
+    final long expiredTick = currentTick - this.evictionTicks - 1;
+    long evictedThrough;
+    while ( ( evictedThrough = this.evictedThroughTick.get( ) ) < expiredTick ) {
+      final long drainTick = Math.max( evictedThrough + 1, expiredTick - BUCKET_COUNT + 1 );
+      if ( this.evictedThroughTick.compareAndSet( evictedThrough, drainTick ) && drainTick >= 0 ) {
+        final Queue<E> bucket = bucket( drainTick );
+        for ( int i = bucket.size( ); i > 0; i-- ) {
+          final E element = bucket.poll( );
+          if ( element == null ) break;
+          final Long timeNanos = this.entries.get( element );
+          if ( timeNanos != null ) {
+            if ( isExpired( timeNanos, now ) ) {
+              this.entries.remove( element, timeNanos );
+            } else if ( bucket( tick( timeNanos ) ) == bucket ) {
+              bucket( currentTick ).offer( element );
+            }
+          }
         }
-      } finally {
-        this.busy.lazySet( false );
       }
     }
   }
-  
-  
+
   public Long getEvictionNanos() {
-	  return evictionNanos;
+    return evictionNanos;
   }
-  
+
   public boolean add( E e ) {
     Long skew = TimeUnit.NANOSECONDS.convert(StackConfiguration.REPLAY_SKEW_WINDOW_SEC, TimeUnit.SECONDS);
     // replay detection is disabled
     if(skew >= this.evictionNanos)
-	return true;
+      return true;
     return timestamp( e );
   }
 
@@ -217,30 +206,17 @@ public class TimedEvictionSet<E extends Comparable> implements Set<E> {
   }
 
   public void clear( ) {
-    this.timestamps.clear( );
     this.entries.clear( );
-    this.busy.set( false );
-  }
-
-  public Comparator<? super E> comparator( ) {
-    return this.entries.comparator( );
+    for ( final Queue<E> bucket : this.buckets ) {
+      bucket.clear( );
+    }
   }
 
   public boolean contains( Object o ) {
-    this.scavenge( );
-    return this.entries.contains( o );
-  }
-
-  public boolean containsAll( Collection<?> c ) {
-    return this.entries.containsAll( c );
-  }
-
-  public E first( ) {
-    return this.entries.first( );
-  }
-
-  public SortedSet<E> headSet( E toElement ) {
-    return this.entries.headSet( toElement );
+    final long now = System.nanoTime( );
+    this.scavenge( now );
+    final Long timeNanos = this.entries.get( o );
+    return timeNanos != null && !isExpired( timeNanos, now );
   }
 
   public boolean isEmpty( ) {
@@ -248,11 +224,7 @@ public class TimedEvictionSet<E extends Comparable> implements Set<E> {
   }
 
   public Iterator<E> iterator( ) {
-    return this.entries.iterator( );
-  }
-
-  public E last( ) {
-    return this.entries.last( );
+    return this.entries.keySet( ).iterator( );
   }
 
   @Deprecated
@@ -271,23 +243,8 @@ public class TimedEvictionSet<E extends Comparable> implements Set<E> {
   }
 
   public int size( ) {
+    this.scavenge( System.nanoTime( ) );
     return this.entries.size( );
   }
 
-  public SortedSet<E> subSet( E fromElement, E toElement ) {
-    return this.entries.subSet( fromElement, toElement );
-  }
-
-  public SortedSet<E> tailSet( E fromElement ) {
-    return this.entries.tailSet( fromElement );
-  }
-
-  public Object[] toArray( ) {
-    return this.entries.toArray( );
-  }
-
-  public <T> T[] toArray( T[] a ) {
-    return this.entries.toArray( a );
-  }
-
 }
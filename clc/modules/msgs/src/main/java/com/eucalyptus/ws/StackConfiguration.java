@@ -154,6 +154,10 @@ public class StackConfiguration extends AbstractPersistent {
 
   @ConfigurableField( description = "Record and report service times." )
   public static Boolean       STATISTICS                        = Boolean.FALSE;
+
+  @ConfigurableField( description = "Interval (in seconds) between snapshots of recorded service times.",
+                      changeListener = WebServices.CheckNonNegativeIntegerPropertyChangeListener.class )
+  public static Integer       STATISTICS_SNAPSHOT_INTERVAL_SECS = 60;
   
   @ConfigurableField( description = "Execute service specific pipeline handlers from a separate thread pool (with respect to I/O)." )
   public static Boolean       ASYNC_PIPELINE                    = Boolean.FALSE;
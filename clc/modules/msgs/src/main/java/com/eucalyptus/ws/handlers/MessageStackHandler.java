@@ -62,8 +62,6 @@
 
 package com.eucalyptus.ws.handlers;
 
-import java.util.concurrent.Callable;
-
 import com.eucalyptus.ws.server.MessageStatistics;
 import org.jboss.netty.channel.ChannelDownstreamHandler;
 import org.jboss.netty.channel.ChannelEvent;
@@ -81,9 +79,9 @@ public abstract class MessageStackHandler implements ChannelDownstreamHandler, C
       if ( channelEvent instanceof MessageEvent ) {
         final MessageEvent msgEvent = ( MessageEvent ) channelEvent;
         if ( msgEvent.getMessage( ) != null ) {
-          Callable<Long> stat = MessageStatistics.startDownstream(ctx.getChannel(), this);
+          final long stat = MessageStatistics.start( );
           this.outgoingMessage( ctx, msgEvent );
-          stat.call( );
+          MessageStatistics.downstream( this, stat );
         }
       }
       ctx.sendDownstream( channelEvent );
@@ -111,9 +109,9 @@ public abstract class MessageStackHandler implements ChannelDownstreamHandler, C
   public void handleUpstream( final ChannelHandlerContext ctx, final ChannelEvent channelEvent ) throws Exception {
     if ( channelEvent instanceof MessageEvent ) {
       final MessageEvent msgEvent = ( MessageEvent ) channelEvent;
-      Callable<Long> stat = MessageStatistics.startUpstream(ctx.getChannel(), this);
+      final long stat = MessageStatistics.start( );
       this.incomingMessage( ctx, msgEvent );
-      stat.call( );
+      MessageStatistics.upstream( this, stat );
       ctx.sendUpstream( channelEvent );
     } else {
       ctx.sendUpstream( channelEvent );
@@ -0,0 +1,177 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed size log-linear latency histogram.
+ *
+ * <p>Values are recorded in microseconds into buckets whose width doubles
+ * with each power of two (8 linear sub-buckets per power, so roughly 12%
+ * relative precision) up to ~71 minutes. Recording performs no allocation;
+ * counts are striped by thread so concurrent I/O threads do not contend on
+ * the same counters.</p>
+ */
+public class LatencyHistogram {
+  private static final int  SUB_BUCKET_BITS  = 3;
+  private static final int  SUB_BUCKET_HALF  = 1 << SUB_BUCKET_BITS;
+  private static final int  SUB_BUCKET_COUNT = SUB_BUCKET_HALF << 1;
+  private static final long MAX_VALUE        = ( 1L << 32 ) - 1;
+  private static final int  BUCKETS          = index( MAX_VALUE ) + 1;
+  private static final int  SUM_SLOT_STRIDE  = 8; // keep per stripe sums on separate cache lines
+  private static final int  STRIPES          = stripes( );
+  private static final int  STRIPE_MASK      = STRIPES - 1;
+
+  private final AtomicLongArray counts = new AtomicLongArray( STRIPES * BUCKETS );
+  private final AtomicLongArray sums   = new AtomicLongArray( STRIPES * SUM_SLOT_STRIDE );
+
+  public void recordNanos( final long nanos ) {
+    record( nanos / 1000L );
+  }
+
+  public void record( final long micros ) {
+    final long value = Math.min( Math.max( micros, 0L ), MAX_VALUE );
+    final int stripe = (int) Thread.currentThread( ).getId( ) & STRIPE_MASK;
+    counts.incrementAndGet( stripe * BUCKETS + index( value ) );
+    sums.addAndGet( stripe * SUM_SLOT_STRIDE, value );
+  }
+
+  public Snapshot snapshot( ) {
+    final long[] bucketCounts = new long[ BUCKETS ];
+    long count = 0;
+    long sum = 0;
+    for ( int stripe = 0; stripe < STRIPES; stripe++ ) {
+      for ( int bucket = 0; bucket < BUCKETS; bucket++ ) {
+        final long bucketCount = counts.get( stripe * BUCKETS + bucket );
+        bucketCounts[ bucket ] += bucketCount;
+        count += bucketCount;
+      }
+      sum += sums.get( stripe * SUM_SLOT_STRIDE );
+    }
+    return new Snapshot( bucketCounts, count, sum );
+  }
+
+  static int index( final long value ) {
+    if ( value < SUB_BUCKET_COUNT ) {
+      return (int) value;
+    } else {
+      final int shift = ( 63 - Long.numberOfLeadingZeros( value ) ) - SUB_BUCKET_BITS;
+      return SUB_BUCKET_COUNT + ( shift - 1 ) * SUB_BUCKET_HALF + (int) ( ( value >>> shift ) - SUB_BUCKET_HALF );
+    }
+  }
+
+  /**
+   * Highest value that would be recorded in the given bucket.
+   */
+  static long highestValue( final int index ) {
+    if ( index < SUB_BUCKET_COUNT ) {
+      return index;
+    } else {
+      final int shift = ( ( index - SUB_BUCKET_COUNT ) / SUB_BUCKET_HALF ) + 1;
+      final long subBucket = ( ( index - SUB_BUCKET_COUNT ) % SUB_BUCKET_HALF ) + SUB_BUCKET_HALF;
+      return ( ( subBucket + 1 ) << shift ) - 1;
+    }
+  }
+
+  private static int stripes( ) {
+    return Math.min( Integer.highestOneBit( Math.max( Runtime.getRuntime( ).availableProcessors( ), 1 ) ), 4 );
+  }
+
+  /**
+   * Point in time copy of a histogram, values are in microseconds.
+   */
+  public static class Snapshot {
+    private static final Snapshot EMPTY = new Snapshot( new long[ BUCKETS ], 0, 0 );
+
+    private final long[] counts;
+    private final long   count;
+    private final long   sum;
+
+    private Snapshot( final long[] counts, final long count, final long sum ) {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+    }
+
+    public static Snapshot empty( ) {
+      return EMPTY;
+    }
+
+    /**
+     * Values recorded since the given (earlier) snapshot of the same histogram.
+     */
+    public Snapshot since( final Snapshot previous ) {
+      final long[] delta = new long[ BUCKETS ];
+      for ( int i = 0; i < BUCKETS; i++ ) {
+        delta[ i ] = Math.max( 0L, counts[ i ] - previous.counts[ i ] );
+      }
+      return new Snapshot( delta, Math.max( 0L, count - previous.count ), Math.max( 0L, sum - previous.sum ) );
+    }
+
+    public long getCount( ) {
+      return count;
+    }
+
+    public long getTotal( ) {
+      return sum;
+    }
+
+    public double getMean( ) {
+      return count == 0 ? 0d : (double) sum / count;
+    }
+
+    public long getMax( ) {
+      for ( int i = BUCKETS - 1; i >= 0; i-- ) {
+        if ( counts[ i ] > 0 ) {
+          return highestValue( i );
+        }
+      }
+      return 0;
+    }
+
+    /**
+     * @param percentile The percentile in the range 0 - 100
+     * @return The highest value equivalent to the percentile
+     */
+    public long getPercentile( final double percentile ) {
+      final long target = Math.max( 1L, (long) Math.ceil( ( Math.min( percentile, 100d ) / 100d ) * count ) );
+      long seen = 0;
+      for ( int i = 0; i < BUCKETS; i++ ) {
+        seen += counts[ i ];
+        if ( seen >= target ) {
+          return highestValue( i );
+        }
+      }
+      return 0;
+    }
+
+    @Override
+    public String toString( ) {
+      return String.format( "count=%d mean=%.3fms p50=%.3fms p90=%.3fms p99=%.3fms max=%.3fms",
+          count,
+          getMean( ) / 1000d,
+          getPercentile( 50 ) / 1000d,
+          getPercentile( 90 ) / 1000d,
+          getPercentile( 99 ) / 1000d,
+          getMax( ) / 1000d );
+    }
+  }
+}
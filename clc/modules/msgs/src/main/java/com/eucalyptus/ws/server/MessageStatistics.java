@@ -62,118 +62,191 @@
 
 package com.eucalyptus.ws.server;
 
-import java.util.Collection;
 import java.util.Map;
-import java.util.concurrent.Callable;
-
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.log4j.Logger;
-import org.jboss.netty.channel.Channel;
-import org.jboss.netty.channel.ChannelFuture;
-import org.jboss.netty.channel.ChannelFutureListener;
 import org.jboss.netty.channel.ChannelHandler;
-import com.eucalyptus.context.Contexts;
+import com.eucalyptus.bootstrap.Bootstrap;
+import com.eucalyptus.event.EventListener;
+import com.eucalyptus.event.Hertz;
+import com.eucalyptus.event.Listeners;
 import com.eucalyptus.records.Logs;
+import com.eucalyptus.util.Mbeans;
 import com.eucalyptus.ws.StackConfiguration;
-import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Maps;
-import com.google.common.util.concurrent.Callables;
 
+/**
+ * Service time statistics for the web services pipeline.
+ *
+ * <p>Latencies are recorded per handler (upstream and downstream) and per
+ * message type into {@link LatencyHistogram}s. Recording does not allocate
+ * so statistics can be left enabled under load, snapshots for the most
+ * recent interval are exported over JMX.</p>
+ */
 public class MessageStatistics {
-  private static Logger                            LOG               = Logger.getLogger( MessageStatistics.class );
-  private static final Map<Integer, RequestRecord> requestStatistics = Maps.newConcurrentMap( );
-  
-  private static class HandlerRecord implements Callable<Long> {
-    private final String handlerClassName;
-    private final Long   startTime = System.currentTimeMillis( );
-    private Long         endTime;
-    
-    private HandlerRecord( Class<? extends ChannelHandler> class1 ) {
-      this.handlerClassName = class1.toString( );
-    }
-    
-    @Override
-    public String toString( ) {
-      StringBuilder builder = new StringBuilder( );
-      Long time = ( ( this.endTime == null ? System.currentTimeMillis( ) : this.endTime ) - this.startTime );
-      builder.append( " " );
-      builder.append( this.handlerClassName ).append( ": " ).append( time ).append( " msec" );
-      return builder.toString( );
+  private static Logger                                         LOG        = Logger.getLogger( MessageStatistics.class );
+  private static final ConcurrentMap<Class<?>, LatencyHistogram> upstream   = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<Class<?>, LatencyHistogram> downstream = Maps.newConcurrentMap( );
+  private static final ConcurrentMap<Class<?>, LatencyHistogram> requests   = Maps.newConcurrentMap( );
+  private static final LatencyStatistics                        statistics = new LatencyStatistics( );
+
+  /**
+   * Start timing a handler stage.
+   *
+   * @return The start time to pass to {@link #upstream} or {@link #downstream}, zero if statistics are disabled
+   */
+  public static long start( ) {
+    return StackConfiguration.STATISTICS ? System.nanoTime( ) : 0L;
+  }
+
+  public static <T extends ChannelHandler> void upstream( final T handler, final long start ) {
+    if ( start != 0L ) {
+      histogram( upstream, handler.getClass( ) ).recordNanos( System.nanoTime( ) - start );
     }
-    
-    @Override
-    public Long call( ) throws Exception {
-      Logs.extreme( ).debug( "HandlerRecord:" + this.handlerClassName
-        + " "
-        + ( ( this.endTime == null ? this.endTime = System.currentTimeMillis( ) : this.endTime ) - this.startTime )
-        + "msec" );
-      return this.endTime;
-    }
-    
   }
-  
-  private static class RequestRecord {
-    private final Map<Class, HandlerRecord> handlerUpstreamStats   = Maps.newHashMap( );
-    private final Map<Class, HandlerRecord> handlerDownstreamStats = Maps.newHashMap( );
-    String                                  type;
-    private final long                      creationTime           = System.currentTimeMillis( );
-    
-    public Collection<HandlerRecord> values( ) {
-      return this.handlerUpstreamStats.values( );
-    }
-    
-    @Override
-    public String toString( ) {
-      StringBuilder builder = new StringBuilder( );
-      String typeName = ( this.type == null ? "unknown" : this.type );
-      builder.append( typeName ).append( " " ).append( Joiner.on( "\n" + typeName ).join( this.handlerUpstreamStats.values( ) ) );
-      builder.append( typeName ).append( " " ).append( Joiner.on( "\n" + typeName ).join( this.handlerDownstreamStats.values( ) ) );
-      builder.append( typeName ).append( " " ).append( System.currentTimeMillis( ) - this.creationTime ).append( " msec" );
-      return builder.toString( );
-    }
-    
+
+  public static <T extends ChannelHandler> void downstream( final T handler, final long start ) {
+    if ( start != 0L ) {
+      histogram( downstream, handler.getClass( ) ).recordNanos( System.nanoTime( ) - start );
+    }
   }
-  
-  public static final void startRequest( final Channel channel ) {
+
+  /**
+   * Record the service time for a message.
+   *
+   * @param type The message type
+   * @param creationTime The request creation time (System.nanoTime)
+   */
+  public static void request( final Class<?> type, final long creationTime ) {
     if ( StackConfiguration.STATISTICS ) {
-      final RequestRecord record = new RequestRecord( );
-      requestStatistics.put( channel.getId( ), record );
-      channel.getCloseFuture( ).addListener( new ChannelFutureListener( ) {
-        
-        @Override
-        public void operationComplete( ChannelFuture future ) throws Exception {
-          LOG.info( requestStatistics.remove( channel.getId( ) ) );
-        }
-      } );
+      histogram( requests, type ).recordNanos( System.nanoTime( ) - creationTime );
     }
   }
-  
-  public static final <T extends ChannelHandler> Callable<Long> startUpstream( Channel channel, T handler ) {
-    Integer correlationId = channel.getId( );
-    if ( StackConfiguration.STATISTICS && requestStatistics.containsKey( correlationId ) ) {
-      RequestRecord record = requestStatistics.get( correlationId );
-      if ( record.type == null ) {
-        try {
-          record.type = Contexts.lookup( channel ).getRequest( ).getClass( ).getSimpleName( );
-        } catch ( Exception ex ) {}
+
+  public static LatencyStatistics getStatistics( ) {
+    return statistics;
+  }
+
+  private static LatencyHistogram histogram( final ConcurrentMap<Class<?>, LatencyHistogram> histograms,
+                                             final Class<?> type ) {
+    LatencyHistogram histogram = histograms.get( type );
+    if ( histogram == null ) {
+      final LatencyHistogram newHistogram = new LatencyHistogram( );
+      histogram = histograms.putIfAbsent( type, newHistogram );
+      if ( histogram == null ) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  /**
+   * Interval snapshots of recorded latencies, exported as an MBean.
+   */
+  public static class LatencyStatistics {
+    private volatile Interval upstreamInterval   = Interval.EMPTY;
+    private volatile Interval downstreamInterval = Interval.EMPTY;
+    private volatile Interval requestInterval    = Interval.EMPTY;
+    private volatile long     snapshotTimestamp  = 0L;
+
+    private LatencyStatistics( ) {
+    }
+
+    public String[] getUpstreamHandlers( ) {
+      return upstreamInterval.describe( );
+    }
+
+    public String[] getDownstreamHandlers( ) {
+      return downstreamInterval.describe( );
+    }
+
+    public String[] getRequests( ) {
+      return requestInterval.describe( );
+    }
+
+    public long getSnapshotTimestamp( ) {
+      return snapshotTimestamp;
+    }
+
+    void snapshot( ) {
+      upstreamInterval = upstreamInterval.next( upstream );
+      downstreamInterval = downstreamInterval.next( downstream );
+      requestInterval = requestInterval.next( requests );
+      snapshotTimestamp = System.currentTimeMillis( );
+      if ( Logs.isExtrrreeeme( ) ) {
+        for ( final String line : getUpstreamHandlers( ) ) Logs.extreme( ).debug( "Upstream " + line );
+        for ( final String line : getDownstreamHandlers( ) ) Logs.extreme( ).debug( "Downstream " + line );
+        for ( final String line : getRequests( ) ) Logs.extreme( ).debug( "Request " + line );
+      }
+    }
+
+    @Override
+    public String toString( ) {
+      return "Web services pipeline latency statistics";
+    }
+  }
+
+  private static final class Interval {
+    private static final Interval EMPTY = new Interval(
+        ImmutableMap.<Class<?>, LatencyHistogram.Snapshot>of( ),
+        ImmutableMap.<Class<?>, LatencyHistogram.Snapshot>of( ) );
+
+    private final Map<Class<?>, LatencyHistogram.Snapshot> cumulative;
+    private final Map<Class<?>, LatencyHistogram.Snapshot> interval;
+
+    private Interval( final Map<Class<?>, LatencyHistogram.Snapshot> cumulative,
+                      final Map<Class<?>, LatencyHistogram.Snapshot> interval ) {
+      this.cumulative = cumulative;
+      this.interval = interval;
+    }
+
+    Interval next( final Map<Class<?>, LatencyHistogram> histograms ) {
+      final ImmutableMap.Builder<Class<?>, LatencyHistogram.Snapshot> cumulativeBuilder = ImmutableMap.builder( );
+      final ImmutableMap.Builder<Class<?>, LatencyHistogram.Snapshot> intervalBuilder = ImmutableMap.builder( );
+      for ( final Map.Entry<Class<?>, LatencyHistogram> entry : histograms.entrySet( ) ) {
+        final LatencyHistogram.Snapshot current = entry.getValue( ).snapshot( );
+        final LatencyHistogram.Snapshot previous = cumulative.get( entry.getKey( ) );
+        cumulativeBuilder.put( entry.getKey( ), current );
+        intervalBuilder.put( entry.getKey( ),
+            current.since( previous == null ? LatencyHistogram.Snapshot.empty( ) : previous ) );
       }
-      HandlerRecord handlerRecord = new HandlerRecord( handler.getClass( ) );
-      record.handlerUpstreamStats.put( handler.getClass( ), handlerRecord );
-      return handlerRecord;
-    } else {
-      return Callables.returning( 0L );
+      return new Interval( cumulativeBuilder.build( ), intervalBuilder.build( ) );
+    }
+
+    String[] describe( ) {
+      final String[] lines = new String[ interval.size( ) ];
+      int index = 0;
+      for ( final Map.Entry<Class<?>, LatencyHistogram.Snapshot> entry : interval.entrySet( ) ) {
+        lines[ index++ ] = entry.getKey( ).getSimpleName( ) + " " + entry.getValue( )
+            + " total=" + cumulative.get( entry.getKey( ) ).getCount( );
+      }
+      return lines;
     }
   }
-  
-  public static final <T extends ChannelHandler> Callable<Long> startDownstream( Channel channel, T handler ) {
-    Integer correlationId = channel.getId( );
-    if ( StackConfiguration.STATISTICS && requestStatistics.containsKey( correlationId ) ) {
-      RequestRecord record = requestStatistics.get( correlationId );
-      HandlerRecord handlerRecord = new HandlerRecord( handler.getClass( ) );
-      record.handlerDownstreamStats.put( handler.getClass( ), handlerRecord );
-      return handlerRecord;
-    } else {
-      return Callables.returning( 0L );
+
+  public static class MessageStatisticsEventListener implements EventListener<Hertz> {
+    private final AtomicBoolean registered = new AtomicBoolean( false );
+
+    public static void register( ) {
+      Listeners.register( Hertz.class, new MessageStatisticsEventListener( ) );
+    }
+
+    @Override
+    public void fireEvent( final Hertz event ) {
+      if ( StackConfiguration.STATISTICS && Bootstrap.isOperational( ) &&
+          event.isAsserted( Math.max( 1, StackConfiguration.STATISTICS_SNAPSHOT_INTERVAL_SECS ) ) ) {
+        try {
+          if ( registered.compareAndSet( false, true ) ) {
+            Mbeans.register( statistics );
+          }
+          statistics.snapshot( );
+        } catch ( final Exception ex ) {
+          LOG.error( "Error taking message statistics snapshot: " + ex.getMessage( ) );
+          Logs.extreme( ).error( ex, ex );
+        }
+      }
     }
   }
-  
 }
@@ -64,7 +64,6 @@ package com.eucalyptus.ws.server;
 
 import java.util.Collections;
 import java.util.Map;
-import java.util.concurrent.Callable;
 import java.util.concurrent.atomic.AtomicReference;
 import javax.security.auth.login.LoginException;
 import org.apache.log4j.Logger;
@@ -109,7 +108,7 @@ public class NioServerHandler extends SimpleChannelUpstreamHandler {//TODO:GRZE:
   
   @Override
   public void messageReceived( final ChannelHandlerContext ctx, final MessageEvent e ) throws Exception {
-    Callable<Long> stat = MessageStatistics.startUpstream(ctx.getChannel(), this);
+    final long stat = MessageStatistics.start( );
     try {
       if ( this.pipeline.get( ) == null ) {
         lookupPipeline( ctx, e );
@@ -128,12 +127,12 @@ public class NioServerHandler extends SimpleChannelUpstreamHandler {//TODO:GRZE:
           return;
         }
       }
-      stat.call( );
+      MessageStatistics.upstream( this, stat );
       ctx.sendUpstream( e );
     } catch ( Exception ex ) {
       LOG.trace( ex );
       Logs.extreme( ).error( ex, ex );
-      stat.call( );
+      MessageStatistics.upstream( this, stat );
       this.sendError( ctx, e, HttpResponseStatus.NOT_FOUND, ex );
     }
   }
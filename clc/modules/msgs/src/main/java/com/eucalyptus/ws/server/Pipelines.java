@@ -66,8 +66,15 @@ import static com.eucalyptus.auth.principal.TemporaryAccessKey.TemporaryKeyType;
 import java.lang.reflect.Modifier;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
 import org.apache.commons.codec.DecoderException;
 import org.apache.commons.codec.net.URLCodec;
 import org.apache.log4j.Logger;
@@ -102,7 +109,11 @@ import com.eucalyptus.ws.handlers.HmacHandler;
 import com.eucalyptus.ws.protocol.BaseQueryBinding;
 import com.eucalyptus.ws.protocol.OperationParameter;
 import com.eucalyptus.ws.protocol.SoapHandler;
+import com.google.common.base.Objects;
 import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 import edu.ucsb.eucalyptus.cloud.entities.SystemConfiguration;
@@ -112,14 +123,16 @@ public class Pipelines {
   private static final Set<FilteredPipeline>                                     internalPipelines = Sets.newHashSet( );
   private static final Set<FilteredPipeline>                                     pipelines         = Sets.newHashSet( );
   private static final Map<Class<? extends ComponentId>, ChannelPipelineFactory> clientPipelines   = Maps.newHashMap( );
-  private static final Supplier<String> subDomain = new Supplier<String>() {
+  private static final ConcurrentMap<String, AtomicLong>                         pipelineHits      = new ConcurrentHashMap<String, AtomicLong>( );
+  private static final AtomicReference<PipelineIndex>                            pipelineIndex     = new AtomicReference<PipelineIndex>( );
+  private static final Supplier<String> subDomain = Suppliers.memoizeWithExpiration( new Supplier<String>() {
 
     @Override
     public String get( ) {
       return SystemConfiguration.getSystemConfiguration( ).getDnsDomain( );//GRZE:TODO: this is not happy ==> {@link DomainNames}
     }
     
-  };
+  }, 15, TimeUnit.SECONDS );
   
   public static ChannelPipelineFactory lookup( Class<? extends ComponentId> compId ) {
     return clientPipelines.get( compId );
@@ -148,45 +161,202 @@ public class Pipelines {
   }
   
   private static FilteredPipeline findAccepting( final HttpRequest request ) {
-    final FilteredPipeline candidate = null;
-    for ( final FilteredPipeline f : pipelines ) {
-      if ( f.checkAccepts( request ) ) {
-        return f;
-      }
+    final PipelineIndex index = index( );
+    final FilteredPipeline candidate = index.findAccepting( request );
+    if ( candidate != null ) {
+      index.recordHit( candidate );
     }
-    if ( request.getHeader(HttpHeaders.Names.HOST).contains( "amazonaws.com" ) 
-        || request.getHeader(HttpHeaders.Names.HOST).contains( subDomain.get( ) ) ) {
-      String hostHeader = request.getHeader(HttpHeaders.Names.HOST);
-      LOG.debug( "Trying to intercept request for " + hostHeader );
-      for ( final FilteredPipeline f : pipelines ) {
+    return candidate;
+  }
+
+  private static PipelineIndex index( ) {
+    final String currentSubDomain = subDomain.get( );
+    final PipelineIndex index = pipelineIndex.get( );
+    if ( index != null && !index.isExpired( currentSubDomain ) ) {
+      return index;
+    }
+    final PipelineIndex newIndex = new PipelineIndex( pipelines, internalPipelines, currentSubDomain );
+    pipelineIndex.compareAndSet( index, newIndex );
+    return newIndex;
+  }
+
+  /**
+   * Invalidate the dispatch index, it will be rebuilt for the next request.
+   */
+  static void reindex( ) {
+    pipelineIndex.set( null );
+  }
+
+  /**
+   * Get the number of requests dispatched to each pipeline.
+   */
+  public static Map<String, Long> getPipelineHitCounts( ) {
+    final Map<String, Long> hitCounts = Maps.newTreeMap( );
+    for ( final Map.Entry<String, AtomicLong> entry : pipelineHits.entrySet( ) ) {
+      hitCounts.put( entry.getKey( ), entry.getValue( ).get( ) );
+    }
+    return hitCounts;
+  }
+
+  /**
+   * Immutable snapshot of the registered pipelines for request dispatch.
+   *
+   * Pipelines are checked in the same order as the registered pipelines, so
+   * a request accepted by more than one pipeline is always dispatched to the
+   * same one. Public service pipelines are indexed by component and AWS service
+   * name for host header based dispatch, with the SOAP handling of each
+   * pipeline determined when the index is built rather than per request.
+   */
+  private static final class PipelineIndex {
+    private static final String AWS_DOMAIN_SUFFIX = ".amazonaws.com";
+
+    private final String subDomain;
+    private final FilteredPipeline[] pipelines;
+    private final FilteredPipeline[] internalPipelines;
+    private final HostPipeline[] hostPipelines;
+    private final ImmutableListMultimap<String, HostPipeline> soapPipelinesByServiceName;
+    private final ImmutableListMultimap<String, HostPipeline> pipelinesByServiceName;
+    private final ImmutableListMultimap<String, HostPipeline> soapPipelinesByComponentName;
+    private final ImmutableListMultimap<String, HostPipeline> pipelinesByComponentName;
+
+    private PipelineIndex( final Set<FilteredPipeline> pipelines,
+                           final Set<FilteredPipeline> internalPipelines,
+                           final String subDomain ) {
+      this.subDomain = subDomain;
+      this.pipelines = pipelines.toArray( new FilteredPipeline[ pipelines.size( ) ] );
+      this.internalPipelines = internalPipelines.toArray( new FilteredPipeline[ internalPipelines.size( ) ] );
+      final List<HostPipeline> hostPipelines = Lists.newArrayList( );
+      final ImmutableListMultimap.Builder<String, HostPipeline> soapByServiceName = ImmutableListMultimap.builder( );
+      final ImmutableListMultimap.Builder<String, HostPipeline> byServiceName = ImmutableListMultimap.builder( );
+      final ImmutableListMultimap.Builder<String, HostPipeline> soapByComponentName = ImmutableListMultimap.builder( );
+      final ImmutableListMultimap.Builder<String, HostPipeline> byComponentName = ImmutableListMultimap.builder( );
+      for ( final FilteredPipeline f : this.pipelines ) {
         if ( Ats.from( f ).has( ComponentPart.class ) ) {
-          Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
-          ComponentId compId = ComponentIds.lookup( compIdClass );
+          final Class<? extends ComponentId> compIdClass = Ats.from( f ).get( ComponentPart.class ).value( );
           if ( Ats.from( compIdClass ).has( PublicService.class ) ) {
-            if ( request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) == null ) {
-              continue;//Skip pipeline which doesn't handle SOAP for this SOAP request
-            } else if ( !request.getHeaderNames().contains( "SOAPAction" ) && f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) != null ) {
-              continue;//Skip pipeline which handles SOAP for this non-SOAP request
-            }
-            LOG.debug( "Maybe intercepting: " + hostHeader + " using " + f.getClass( ) );
-            if ( Ats.from( compIdClass ).has( AwsServiceName.class ) 
-                && request.getHeader(HttpHeaders.Names.HOST).matches( "[\\w\\.-_]*" + compId.getAwsServiceName( ) + "\\.\\w+\\.amazonaws.com" ) ) {
-              return f;//Return pipeline which can handle the request for ${service}.${region}.amazonaws.com
-            } else if ( request.getHeader(HttpHeaders.Names.HOST).matches( "[\\w\\.-_]*" + compId.name( ) + "\\." + subDomain.get( ) ) ) {
-              return f;//Return pipeline which can handle the request for ${service}.${system.dns.dnsdomain}
+            final ComponentId compId = ComponentIds.lookup( compIdClass );
+            final boolean soap = f.addHandlers( Channels.pipeline( ) ).get( SoapHandler.class ) != null;
+            final String awsServiceName = Ats.from( compIdClass ).has( AwsServiceName.class ) ?
+                compId.getAwsServiceName( ) :
+                null;
+            final HostPipeline hostPipeline = new HostPipeline( f, soap, awsServiceName, compId.name( ), subDomain );
+            hostPipelines.add( hostPipeline );
+            if ( awsServiceName != null ) {
+              ( soap ? soapByServiceName : byServiceName ).put( awsServiceName, hostPipeline );
             }
+            ( soap ? soapByComponentName : byComponentName ).put( compId.name( ), hostPipeline );
           }
         }
       }
+      this.hostPipelines = hostPipelines.toArray( new HostPipeline[ hostPipelines.size( ) ] );
+      this.soapPipelinesByServiceName = soapByServiceName.build( );
+      this.pipelinesByServiceName = byServiceName.build( );
+      this.soapPipelinesByComponentName = soapByComponentName.build( );
+      this.pipelinesByComponentName = byComponentName.build( );
     }
-    if ( candidate == null ) {
+
+    boolean isExpired( final String currentSubDomain ) {
+      return !Objects.equal( subDomain, currentSubDomain );
+    }
+
+    void recordHit( final FilteredPipeline pipeline ) {
+      hitCounter( pipeline ).incrementAndGet( );
+    }
+
+    FilteredPipeline findAccepting( final HttpRequest request ) {
+      for ( final FilteredPipeline f : pipelines ) {
+        if ( f.checkAccepts( request ) ) {
+          return f;
+        }
+      }
+      final String hostHeader = request.getHeader( HttpHeaders.Names.HOST );
+      if ( hostHeader != null && ( hostHeader.contains( "amazonaws.com" ) || hostHeader.contains( subDomain ) ) ) {
+        LOG.debug( "Trying to intercept request for " + hostHeader );
+        final FilteredPipeline candidate = findByHost( hostHeader, request.getHeaderNames( ).contains( "SOAPAction" ) );
+        if ( candidate != null ) {
+          return candidate;
+        }
+      }
       for ( final FilteredPipeline f : internalPipelines ) {
         if ( f.checkAccepts( request ) ) {
           return f;
         }
       }
+      return null;
+    }
+
+    private FilteredPipeline findByHost( final String hostHeader, final boolean soap ) {
+      // indexed lookup for the usual ${service}.${region}.amazonaws.com and ${service}.${system.dns.dnsdomain} hosts
+      if ( hostHeader.endsWith( AWS_DOMAIN_SUFFIX ) ) {
+        final String serviceName = label( hostHeader.substring( 0, hostHeader.length( ) - AWS_DOMAIN_SUFFIX.length( ) ), 1 );
+        for ( final HostPipeline hostPipeline : ( soap ? soapPipelinesByServiceName : pipelinesByServiceName ).get( serviceName ) ) {
+          if ( hostPipeline.matches( hostHeader ) ) return hostPipeline.pipeline;
+        }
+      }
+      if ( hostHeader.endsWith( "." + subDomain ) ) {
+        final String componentName = label( hostHeader.substring( 0, hostHeader.length( ) - subDomain.length( ) - 1 ), 0 );
+        for ( final HostPipeline hostPipeline : ( soap ? soapPipelinesByComponentName : pipelinesByComponentName ).get( componentName ) ) {
+          if ( hostPipeline.matches( hostHeader ) ) return hostPipeline.pipeline;
+        }
+      }
+      // fall back to matching all public service pipelines
+      for ( final HostPipeline hostPipeline : hostPipelines ) {
+        if ( hostPipeline.soap == soap && hostPipeline.matches( hostHeader ) ) {
+          LOG.debug( "Maybe intercepting: " + hostHeader + " using " + hostPipeline.pipeline.getClass( ) );
+          return hostPipeline.pipeline;
+        }
+      }
+      return null;
+    }
+
+    /**
+     * Get a label from the end of a host name, 0 is the last label
+     */
+    private static String label( final String host, final int fromEnd ) {
+      int end = host.length( );
+      for ( int i = 0; i < fromEnd && end >= 0; i++ ) {
+        end = host.lastIndexOf( '.', end - 1 );
+      }
+      return end < 0 ? "" : host.substring( host.lastIndexOf( '.', end - 1 ) + 1, end );
+    }
+
+    private static AtomicLong hitCounter( final FilteredPipeline pipeline ) {
+      AtomicLong counter = pipelineHits.get( pipeline.getName( ) );
+      if ( counter == null ) {
+        final AtomicLong newCounter = new AtomicLong( );
+        counter = pipelineHits.putIfAbsent( pipeline.getName( ), newCounter );
+        if ( counter == null ) {
+          counter = newCounter;
+        }
+      }
+      return counter;
+    }
+  }
+
+  private static final class HostPipeline {
+    private final FilteredPipeline pipeline;
+    private final boolean soap;
+    private final Pattern awsServiceHostPattern;
+    private final Pattern componentHostPattern;
+
+    private HostPipeline( final FilteredPipeline pipeline,
+                          final boolean soap,
+                          final String awsServiceName,
+                          final String componentName,
+                          final String subDomain ) {
+      this.pipeline = pipeline;
+      this.soap = soap;
+      this.awsServiceHostPattern = awsServiceName == null ?
+          null :
+          Pattern.compile( "[\\w\\.-_]*" + awsServiceName + "\\.\\w+\\.amazonaws.com" );
+      this.componentHostPattern = Pattern.compile( "[\\w\\.-_]*" + componentName + "\\." + subDomain );
+    }
+
+    private boolean matches( final String hostHeader ) {
+      //Return pipeline which can handle the request for ${service}.${region}.amazonaws.com or ${service}.${system.dns.dnsdomain}
+      return ( awsServiceHostPattern != null && awsServiceHostPattern.matcher( hostHeader ).matches( ) ) ||
+          componentHostPattern.matcher( hostHeader ).matches( );
     }
-    return candidate;
   }
   
   @Provides( Empyrean.class )
@@ -199,6 +369,7 @@ public class Pipelines {
         Pipelines.internalPipelines.add( new InternalQueryPipeline( comp ) );
         Pipelines.internalPipelines.add( new InternalSoapPipeline( comp ) );
       }
+      Pipelines.reindex( );
       return true;
     }
     
@@ -216,6 +387,7 @@ public class Pipelines {
           final Class<? extends FilteredPipeline> pipelineClass = candidate;
           final FilteredPipeline pipeline = Classes.newInstance( pipelineClass );
           Pipelines.pipelines.add( pipeline );
+          Pipelines.reindex( );
           return true;
         } catch ( final Exception ex ) {
           LOG.trace( ex, ex );
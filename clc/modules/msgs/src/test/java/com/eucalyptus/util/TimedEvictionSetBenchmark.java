@@ -0,0 +1,151 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util;
+
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput comparison of TimedEvictionSet with the previous sorted set
+ * based implementation for signature replay checks.
+ *
+ * <p>Run with: java com.eucalyptus.util.TimedEvictionSetBenchmark [threads] [seconds]</p>
+ */
+public class TimedEvictionSetBenchmark {
+
+  private static final long EVICTION_MILLIS = TimeUnit.SECONDS.toMillis( 2 );
+
+  public static void main( final String[] args ) throws Exception {
+    final int threads = args.length > 0 ? Integer.parseInt( args[ 0 ] ) : Runtime.getRuntime( ).availableProcessors( );
+    final int seconds = args.length > 1 ? Integer.parseInt( args[ 1 ] ) : 10;
+    final String[] signatures = new String[ 1 << 16 ];
+    for ( int i = 0; i < signatures.length; i++ ) {
+      signatures[ i ] = UUID.randomUUID( ).toString( );
+    }
+    for ( int iteration = 0; iteration < 2; iteration++ ) { // first iteration is warm up
+      report( "sorted", threads, seconds, run( new SortedSetReplayCheck( EVICTION_MILLIS ), signatures, threads, seconds ) );
+      report( "bucketed", threads, seconds, run( new BucketedReplayCheck( EVICTION_MILLIS ), signatures, threads, seconds ) );
+    }
+  }
+
+  private static void report( final String name, final int threads, final int seconds, final long operations ) {
+    System.out.println( String.format( "%-10s threads=%d ops/s=%,d", name, threads, operations / seconds ) );
+  }
+
+  private static long run( final ReplayCheck check,
+                           final String[] signatures,
+                           final int threads,
+                           final int seconds ) throws InterruptedException {
+    final AtomicBoolean running = new AtomicBoolean( true );
+    final AtomicLong operations = new AtomicLong( );
+    final CountDownLatch done = new CountDownLatch( threads );
+    for ( int t = 0; t < threads; t++ ) {
+      final int offset = t;
+      final Thread thread = new Thread( new Runnable( ) {
+        @Override
+        public void run( ) {
+          long count = 0;
+          int index = offset;
+          while ( running.get( ) ) {
+            // mostly unique signatures with occasional repeats
+            final String signature = ( index & 7 ) == 0 ?
+                signatures[ index & ( signatures.length - 1 ) ] :
+                signatures[ index & ( signatures.length - 1 ) ] + count;
+            check.check( signature );
+            index += 7;
+            count++;
+          }
+          operations.addAndGet( count );
+          done.countDown( );
+        }
+      } );
+      thread.setDaemon( true );
+      thread.start( );
+    }
+    TimeUnit.SECONDS.sleep( seconds );
+    running.set( false );
+    done.await( );
+    return operations.get( );
+  }
+
+  interface ReplayCheck {
+    boolean check( String signature );
+  }
+
+  private static final class BucketedReplayCheck implements ReplayCheck {
+    private final Set<String> set;
+
+    BucketedReplayCheck( final long evictionMillis ) {
+      set = new TimedEvictionSet<>( evictionMillis );
+    }
+
+    @Override
+    public boolean check( final String signature ) {
+      return set.add( signature );
+    }
+  }
+
+  /**
+   * The sorted set approach used by the previous TimedEvictionSet.
+   */
+  private static final class SortedSetReplayCheck implements ReplayCheck {
+    private final NavigableSet<String> entries = new ConcurrentSkipListSet<>( );
+    private final NavigableSet<Pair<Long,String>> timestamps = new ConcurrentSkipListSet<>( new java.util.Comparator<Pair<Long,String>>( ) {
+      @Override
+      public int compare( final Pair<Long, String> o1, final Pair<Long, String> o2 ) {
+        final int result = o1.getLeft( ).compareTo( o2.getLeft( ) );
+        return result != 0 ? result : o1.getRight( ).compareTo( o2.getRight( ) );
+      }
+    } );
+    private final AtomicBoolean busy = new AtomicBoolean( false );
+    private final long evictionNanos;
+
+    SortedSetReplayCheck( final long evictionMillis ) {
+      evictionNanos = TimeUnit.MILLISECONDS.toNanos( evictionMillis );
+    }
+
+    @Override
+    public boolean check( final String signature ) {
+      if ( busy.compareAndSet( false, true ) ) {
+        try {
+          Pair<Long,String> elem;
+          while ( !timestamps.isEmpty( ) &&
+              System.nanoTime( ) > timestamps.first( ).getLeft( ) + evictionNanos &&
+              ( elem = timestamps.pollFirst( ) ) != null ) {
+            entries.remove( elem.getRight( ) );
+          }
+        } finally {
+          busy.lazySet( false );
+        }
+      }
+      if ( entries.add( signature ) ) {
+        timestamps.add( Pair.pair( System.nanoTime( ), signature ) );
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,48 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.util
+
+import static org.junit.Assert.*
+import com.eucalyptus.ws.StackConfiguration
+import org.junit.Test
+
+/**
+ *
+ */
+class TimedEvictionSetTest {
+
+  @Test
+  void testReplayAndEviction() {
+    Integer skew = StackConfiguration.REPLAY_SKEW_WINDOW_SEC
+    StackConfiguration.REPLAY_SKEW_WINDOW_SEC = 0
+    try {
+      TimedEvictionSet<String> set = new TimedEvictionSet<String>( 200L )
+      assertTrue( "first add", set.add( "a" ) )
+      assertFalse( "replay add", set.add( "a" ) )
+      assertTrue( "contains", set.contains( "a" ) )
+      Thread.sleep( 300 )
+      assertFalse( "contains after eviction", set.contains( "a" ) )
+      assertTrue( "add after eviction", set.add( "a" ) )
+      assertFalse( "replay add after eviction", set.add( "a" ) )
+    } finally {
+      StackConfiguration.REPLAY_SKEW_WINDOW_SEC = skew
+    }
+  }
+}
@@ -0,0 +1,67 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.ws.server
+
+import static org.junit.Assert.*
+import org.junit.Test
+
+/**
+ *
+ */
+class LatencyHistogramTest {
+
+  @Test
+  void testBucketBounds() {
+    long previous = -1
+    for ( long value = 0; value < 1000000; value++ ) {
+      int index = LatencyHistogram.index( value )
+      assertTrue( "value ${value} above bucket bound", value <= LatencyHistogram.highestValue( index ) )
+      assertTrue( "bucket index decreased for ${value}", index >= previous )
+      previous = index
+    }
+  }
+
+  @Test
+  void testPercentiles() {
+    LatencyHistogram histogram = new LatencyHistogram( )
+    ( 1..100 ).each { histogram.record( it * 1000L ) }
+    LatencyHistogram.Snapshot snapshot = histogram.snapshot( )
+    assertEquals( "count", 100L, snapshot.count )
+    assertEquals( "mean", 50500d, snapshot.mean, 0.1d )
+    assertWithinPrecision( "p50", 50000L, snapshot.getPercentile( 50 ) )
+    assertWithinPrecision( "p99", 99000L, snapshot.getPercentile( 99 ) )
+    assertWithinPrecision( "max", 100000L, snapshot.max )
+  }
+
+  @Test
+  void testInterval() {
+    LatencyHistogram histogram = new LatencyHistogram( )
+    ( 1..10 ).each { histogram.record( 10L ) }
+    LatencyHistogram.Snapshot first = histogram.snapshot( )
+    ( 1..5 ).each { histogram.record( 5000L ) }
+    LatencyHistogram.Snapshot interval = histogram.snapshot( ).since( first )
+    assertEquals( "interval count", 5L, interval.count )
+    assertWithinPrecision( "interval p50", 5000L, interval.getPercentile( 50 ) )
+  }
+
+  private static void assertWithinPrecision( String text, long expected, long actual ) {
+    assertTrue( "${text} expected ~${expected} but was ${actual}", actual >= expected && actual <= expected * 1.125 )
+  }
+}
@@ -87,7 +87,6 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.concurrent.Callable;
 
 import static com.eucalyptus.objectstorage.pipeline.handlers.S3Authentication.*;
 
@@ -176,9 +175,9 @@ public class ObjectStorageAuthenticationHandler extends MessageStackHandler {
 		if (channelEvent instanceof MessageEvent) {
 			try {
 				final MessageEvent msgEvent = (MessageEvent) channelEvent;
-				Callable<Long> stat = MessageStatistics.startUpstream(ctx.getChannel(), this);
+				final long stat = MessageStatistics.start( );
 				this.incomingMessage(ctx, msgEvent);
-				stat.call();
+				MessageStatistics.upstream( this, stat );
 				ctx.sendUpstream(channelEvent);
 			} catch (Throwable e) {
 				Channels.fireExceptionCaught(ctx, e);
@@ -93,7 +93,6 @@ import java.io.InputStream;
 import java.io.PushbackInputStream;
 import java.util.Date;
 import java.util.Map;
-import java.util.concurrent.Callable;
 
 @ChannelPipelineCoverage("one")
 public class ObjectStorageGETOutboundHandler extends ObjectStorageBasicOutboundHandler {
@@ -108,9 +107,9 @@ public class ObjectStorageGETOutboundHandler extends ObjectStorageBasicOutboundH
             if (channelEvent instanceof MessageEvent) {
                 final MessageEvent msgEvent = (MessageEvent) channelEvent;
                 if (msgEvent.getMessage() != null) {
-                    Callable<Long> stat = MessageStatistics.startDownstream(ctx.getChannel(), this);
+                    final long stat = MessageStatistics.start( );
                     boolean isDone = this.handleMessage(ctx, msgEvent);
-                    stat.call();
+                    MessageStatistics.downstream( this, stat );
 
                     if (isDone) {
                         return;
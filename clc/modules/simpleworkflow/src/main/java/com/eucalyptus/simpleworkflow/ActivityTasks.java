@@ -19,7 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
 import com.eucalyptus.util.OwnerFullName;
@@ -35,7 +37,12 @@ public interface ActivityTasks {
                              Predicate<? super ActivityTask> filter,
                              Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listTimedOut( Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
+  <T> List<T> listTimedOut( @Nullable String runId,
+                            long time,
+                            Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
+
+  <T> List<T> listTimeouts( @Nullable Date updatedSince,
+                            Function<? super ActivityTask,T> transform ) throws SwfMetadataException;
 
   <T> T updateByExample( ActivityTask example,
                          OwnerFullName ownerFullName,
@@ -20,6 +20,7 @@
 package com.eucalyptus.simpleworkflow;
 
 import java.util.concurrent.ExecutionException;
+import javax.annotation.Nullable;
 import org.apache.log4j.Logger;
 import com.eucalyptus.auth.principal.AccountFullName;
 import com.eucalyptus.component.Topology;
@@ -47,28 +48,40 @@ public class NotifyClient {
     private final String domain;
     private final String type;
     private final String name;
+    private final String taskId;
 
     public NotifyTaskList( final AccountFullName accountFullName,
                            final String domain,
                            final String type,
                            final String name ) {
-      this( accountFullName.getAccountNumber( ), domain, type, name );
+      this( accountFullName.getAccountNumber( ), domain, type, name, null );
     }
 
+    /**
+     * @param taskId The identifier of the task that is ready, a decision task is identified by the workflow
+     *               run identifier and an activity task by the run identifier and scheduled event identifier.
+     */
     public NotifyTaskList( final String accountNumber,
                            final String domain,
                            final String type,
-                           final String name ) {
+                           final String name,
+                           @Nullable final String taskId ) {
       this.accountNumber = accountNumber;
       this.domain = domain;
       this.type = type;
       this.name = name;
+      this.taskId = taskId;
     }
 
     public String getChannelName( ) {
       return Joiner.on( ':' ).join( accountNumber, type, domain, name );
     }
 
+    @Nullable
+    public String getTaskId( ) {
+      return taskId;
+    }
+
     @SuppressWarnings( "RedundantIfStatement" )
     @Override
     public boolean equals( final Object o ) {
@@ -81,6 +94,7 @@ public class NotifyClient {
       if ( !domain.equals( taskList.domain ) ) return false;
       if ( !name.equals( taskList.name ) ) return false;
       if ( !type.equals( taskList.type ) ) return false;
+      if ( taskId != null ? !taskId.equals( taskList.taskId ) : taskList.taskId != null ) return false;
 
       return true;
     }
@@ -91,10 +105,54 @@ public class NotifyClient {
       result = 31 * result + domain.hashCode();
       result = 31 * result + type.hashCode();
       result = 31 * result + name.hashCode();
+      result = 31 * result + ( taskId != null ? taskId.hashCode() : 0 );
       return result;
     }
   }
 
+  /**
+   * Result of polling a task list.
+   */
+  public static final class TaskListNotification {
+    private static final TaskListNotification NOT_NOTIFIED = new TaskListNotification( false, null );
+
+    private final boolean notified;
+    private final String taskId;
+
+    private TaskListNotification( final boolean notified, @Nullable final String taskId ) {
+      this.notified = notified;
+      this.taskId = taskId;
+    }
+
+    public boolean isNotified( ) {
+      return notified;
+    }
+
+    /**
+     * The identifier of the ready task, null if any pending task should be taken.
+     */
+    @Nullable
+    public String getTaskId( ) {
+      return taskId;
+    }
+  }
+
+  public static String activityTaskId( final String runId, final Long scheduledEventId ) {
+    return runId + ":" + scheduledEventId;
+  }
+
+  public static String decisionTaskId( final String runId ) {
+    return runId;
+  }
+
+  public static void notifyTaskList( final String accountNumber,
+                                     final String domain,
+                                     final String type,
+                                     final String taskList,
+                                     final String taskId ) {
+    notifyTaskList( new NotifyTaskList( accountNumber, domain, type, taskList, taskId ) );
+  }
+
   public static void notifyTaskList( final AccountFullName accountFullName,
                                      final String domain,
                                      final String type,
@@ -105,6 +163,7 @@ public class NotifyClient {
   public static void notifyTaskList( final NotifyTaskList taskList ) {
     final NotifyType notify = new NotifyType( );
     notify.setChannel( taskList.getChannelName( ) );
+    notify.setDetails( taskList.getTaskId( ) );
     try {
       final ListenableFuture<NotifyResponseType> dispatchFuture =
           AsyncRequests.dispatch( Topology.lookup( PolledNotifications.class ), notify );
@@ -130,13 +189,13 @@ public class NotifyClient {
                                    final String domain,
                                    final String type,
                                    final String taskList,
-                                   final Consumer<Boolean> resultConsumer ) throws Exception {
+                                   final Consumer<TaskListNotification> resultConsumer ) throws Exception {
     pollTaskList( new NotifyTaskList( accountFullName, domain, type, taskList ), resultConsumer );
   }
 
   public static void pollTaskList( final NotifyTaskList taskList,
-                                   final Consumer<Boolean> resultConsumer ) throws Exception {
-    final Consumer<Boolean> consumer = Consumers.once( resultConsumer );
+                                   final Consumer<TaskListNotification> resultConsumer ) throws Exception {
+    final Consumer<TaskListNotification> consumer = Consumers.once( resultConsumer );
     final PollForNotificationType poll = new PollForNotificationType( );
     poll.setChannel( taskList.getChannelName( ) );
     final ListenableFuture<PollForNotificationResponseType> dispatchFuture =
@@ -146,13 +205,15 @@ public class NotifyClient {
       public void run( ) {
         try {
           final PollForNotificationResponseType response = dispatchFuture.get( );
-          consumer.accept( Objects.firstNonNull( response.getNotified(), false ) );
+          consumer.accept( Objects.firstNonNull( response.getNotified(), false ) ?
+              new TaskListNotification( true, response.getDetails( ) ) :
+              TaskListNotification.NOT_NOTIFIED );
         } catch ( final InterruptedException e ) {
           logger.info( "Interrupted while polling for task " + poll.getChannel( ), e );
         } catch ( final Exception e ) {
           logger.error( "Error polling for task " + poll.getChannel( ), e );
         } finally {
-          consumer.accept( false );
+          consumer.accept( TaskListNotification.NOT_NOTIFIED );
         }
       }
     } );
@@ -32,7 +32,6 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Callable;
 import javax.annotation.Nullable;
 import javax.inject.Inject;
 import org.apache.log4j.Logger;
@@ -50,6 +49,8 @@ import com.eucalyptus.entities.AbstractPersistent;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.entities.PersistenceExceptions;
+import com.eucalyptus.simpleworkflow.NotifyClient.NotifyTaskList;
+import com.eucalyptus.simpleworkflow.NotifyClient.TaskListNotification;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadatas;
 import com.eucalyptus.simpleworkflow.common.model.*;
 import com.eucalyptus.simpleworkflow.tokens.TaskToken;
@@ -831,7 +832,7 @@ public class SimpleWorkflowService {
       }
     }, WorkflowExecution.class, request.getWorkflowId( ) );
 
-    notifyTaskList( accountFullName, workflowExecution.getDomainName( ), "decision", workflowExecution.getTaskList( ) );
+    notifyDecisionTaskList( accountFullName, workflowExecution.getDomainName( ), workflowExecution.getTaskList( ), workflowExecution.getDisplayName( ) );
 
     final Run run = new Run( );
     run.setRunId( workflowExecution.getDisplayName() );
@@ -849,16 +850,48 @@ public class SimpleWorkflowService {
 
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
-    final Callable<com.eucalyptus.simpleworkflow.common.model.ActivityTask> taskCallable =
-        new Callable<com.eucalyptus.simpleworkflow.common.model.ActivityTask>() {
+    final TaskTaker<com.eucalyptus.simpleworkflow.common.model.ActivityTask> taskTaker =
+        new TaskTaker<com.eucalyptus.simpleworkflow.common.model.ActivityTask>() {
           @Override
-          public com.eucalyptus.simpleworkflow.common.model.ActivityTask call( ) throws Exception {
+          public com.eucalyptus.simpleworkflow.common.model.ActivityTask take( @Nullable final String taskId ) throws Exception {
             com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = null;
-            final List<ActivityTask> pending = activityTasks.listByExample(
-                ActivityTask.examplePending( accountFullName, domain, taskList ),
-                accessible,
+            if ( taskId != null ) {
+              activityTask = takeFirst( readyTask( taskId ) );
+            }
+            if ( activityTask == null ) {
+              final List<ActivityTask> pending = activityTasks.listByExample(
+                  ActivityTask.examplePending( accountFullName, domain, taskList ),
+                  accessible,
+                  Functions.<ActivityTask>identity( ) );
+              Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
+              activityTask = takeFirst( pending );
+            }
+            return activityTask;
+          }
+
+          private List<ActivityTask> readyTask( final String taskId ) throws SwfMetadataException {
+            final int separatorIndex = taskId.lastIndexOf( ':' );
+            final Long scheduledEventId;
+            try {
+              scheduledEventId = Long.valueOf( taskId.substring( separatorIndex + 1 ) );
+            } catch ( final NumberFormatException e ) {
+              return Collections.emptyList( );
+            }
+            return activityTasks.listByExample(
+                ActivityTask.exampleWithUniqueName( accountFullName, taskId.substring( 0, separatorIndex ), scheduledEventId ),
+                Predicates.<ActivityTask>and( accessible, new Predicate<ActivityTask>( ) {
+                  @Override
+                  public boolean apply( final ActivityTask activityTask ) {
+                    return activityTask.getState( ) == ActivityTask.State.Pending &&
+                        domain.equals( activityTask.getDomain( ) ) &&
+                        taskList.equals( activityTask.getTaskList( ) );
+                  }
+                } ),
                 Functions.<ActivityTask>identity( ) );
-            Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
+          }
+
+          private com.eucalyptus.simpleworkflow.common.model.ActivityTask takeFirst( final List<ActivityTask> pending ) throws Exception {
+            com.eucalyptus.simpleworkflow.common.model.ActivityTask activityTask = null;
             for ( final ActivityTask pendingTask : pending ) {
               if ( activityTask != null ) break;
               boolean retry = true;
@@ -929,7 +962,7 @@ public class SimpleWorkflowService {
         };
 
     try {
-      handleTaskPolling( accountFullName, domain, "activity", taskList, request.getCorrelationId( ), new com.eucalyptus.simpleworkflow.common.model.ActivityTask( ), taskCallable );
+      handleTaskPolling( accountFullName, domain, "activity", taskList, request.getCorrelationId( ), new com.eucalyptus.simpleworkflow.common.model.ActivityTask( ), taskTaker );
     } catch ( Exception e ) {
       throw handleException( e );
     }
@@ -1031,7 +1064,7 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft(), "decision", domainTaskListPair.getRight() );
+        notifyDecisionTaskList( accountFullName, domainTaskListPair.getLeft(), domainTaskListPair.getRight(), token.getRunId() );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -1109,7 +1142,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus() == Pending ) {
-        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
+        notifyDecisionTaskList( accountFullName, workflowExecution.getDomainName(), workflowExecution.getTaskList(), workflowExecution.getDisplayName() );
       }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1183,7 +1216,7 @@ public class SimpleWorkflowService {
       }
 
       if ( workflowExecution.getDecisionStatus( ) == Pending ) {
-        notifyTaskList( accountFullName, workflowExecution.getDomainName(), "decision", workflowExecution.getTaskList() );
+        notifyDecisionTaskList( accountFullName, workflowExecution.getDomainName(), workflowExecution.getTaskList(), workflowExecution.getDisplayName() );
       }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1201,14 +1234,39 @@ public class SimpleWorkflowService {
 
     final String domain = request.getDomain( );
     final String taskList = request.getTaskList( ).getName( );
-    final Callable<DecisionTask> taskCallable = new Callable<DecisionTask>() {
+    final TaskTaker<DecisionTask> taskTaker = new TaskTaker<DecisionTask>() {
       @Override
-      public DecisionTask call() throws Exception {
-        final List<WorkflowExecution> pending = workflowExecutions.listByExample(
-            WorkflowExecution.exampleWithPendingDecision( accountFullName, domain, taskList ),
-            accessible,
+      public DecisionTask take( @Nullable final String taskId ) throws Exception {
+        DecisionTask decisionTask = null;
+        if ( taskId != null ) {
+          decisionTask = takeFirst( readyTask( taskId ) );
+        }
+        if ( decisionTask == null ) {
+          final List<WorkflowExecution> pending = workflowExecutions.listByExample(
+              WorkflowExecution.exampleWithPendingDecision( accountFullName, domain, taskList ),
+              accessible,
+              Functions.<WorkflowExecution>identity( ) );
+          Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
+          decisionTask = takeFirst( pending );
+        }
+        return decisionTask;
+      }
+
+      private List<WorkflowExecution> readyTask( final String taskId ) throws SwfMetadataException {
+        return workflowExecutions.listByExample(
+            WorkflowExecution.exampleWithUniqueName( accountFullName, domain, taskId ),
+            Predicates.<WorkflowExecution>and( accessible, new Predicate<WorkflowExecution>( ) {
+              @Override
+              public boolean apply( final WorkflowExecution workflowExecution ) {
+                return workflowExecution.getDecisionStatus( ) == Pending &&
+                    workflowExecution.getState( ) == WorkflowExecution.ExecutionStatus.Open &&
+                    taskList.equals( workflowExecution.getTaskList( ) );
+              }
+            } ),
             Functions.<WorkflowExecution>identity( ) );
-        Collections.sort( pending, Ordering.natural( ).onResultOf( AbstractPersistentSupport.creation( ) ) );
+      }
+
+      private DecisionTask takeFirst( final List<WorkflowExecution> pending ) throws Exception {
         DecisionTask decisionTask = null;
         for ( final WorkflowExecution execution : pending ) {
           if ( decisionTask != null ) break;
@@ -1289,7 +1347,7 @@ public class SimpleWorkflowService {
     };
 
     try {
-      handleTaskPolling( accountFullName, domain, "decision", taskList, request.getCorrelationId(), new DecisionTask(), taskCallable );
+      handleTaskPolling( accountFullName, domain, "decision", taskList, request.getCorrelationId(), new DecisionTask(), taskTaker );
     } catch ( Exception e ) {
       throw handleException( e );
     }
@@ -1314,7 +1372,7 @@ public class SimpleWorkflowService {
           Predicates.alwaysTrue( ),
           Functions.<Domain>identity( ) );
 
-      final Set<Pair<String,String>> notificationTypeListPairs = Sets.newHashSet( );
+      final Set<NotifyTaskList> notifyTaskLists = Sets.newHashSet( );
       try ( final WorkflowLock lock = WorkflowLock.lock( accountFullName, domain, token.getRunId() ) ) {
         workflowExecutions.withRetries( ).updateByExample(
           WorkflowExecution.exampleWithUniqueName( accountFullName, domain.getDisplayName( ), token.getRunId( ) ),
@@ -1326,7 +1384,7 @@ public class SimpleWorkflowService {
             public WorkflowExecution apply( final WorkflowExecution workflowExecution ) {
               if ( accessible.apply( workflowExecution ) ) {
                 // clear pending notifications in case of retries
-                notificationTypeListPairs.clear( );
+                notifyTaskLists.clear( );
 
                 // verify token is valid
                 final List<WorkflowHistoryEvent> events = workflowExecution.getWorkflowHistory();
@@ -1346,7 +1404,7 @@ public class SimpleWorkflowService {
                 } else {
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
-                  notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  notifyTaskLists.add( decisionTaskList( accountFullName, workflowExecution ) );
                 }
 
                 // setup activity count supplier
@@ -1617,7 +1675,12 @@ public class SimpleWorkflowService {
                         ) );
                         activityTaskScheduledCount++;
 
-                        notificationTypeListPairs.add( Pair.pair( "activity", list ) );
+                        notifyTaskLists.add( new NotifyTaskList(
+                            accountFullName.getAccountNumber( ),
+                            domain.getDisplayName( ),
+                            "activity",
+                            list,
+                            NotifyClient.activityTaskId( workflowExecution.getDisplayName( ), scheduledId ) ) );
                       } catch ( final ScheduleActivityTaskException e ) {
                         workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
                             workflowExecution,
@@ -1729,7 +1792,7 @@ public class SimpleWorkflowService {
                   ) );
                   workflowExecution.setDecisionStatus( Pending );
                   workflowExecution.setDecisionTimestamp( new Date( ) );
-                  notificationTypeListPairs.add( Pair.pair( "decision", workflowExecution.getTaskList( ) ) );
+                  notifyTaskLists.add( decisionTaskList( accountFullName, workflowExecution ) );
                 } else {
                   workflowExecution.updateTimeStamps( );
                 }
@@ -1740,12 +1803,8 @@ public class SimpleWorkflowService {
           }
 
           //TODO:STEVE: update API to allow batch notification
-          for ( final Pair<String,String> notificationTypeListPair : notificationTypeListPairs ) {
-            notifyTaskList(
-                accountFullName,
-                domain.getDisplayName( ),
-                notificationTypeListPair.getLeft( ),
-                notificationTypeListPair.getRight( ) );
+          for ( final NotifyTaskList notifyTaskList : notifyTaskLists ) {
+            NotifyClient.notifyTaskList( notifyTaskList );
           }
     } catch( Exception e ) {
       throw handleException( e );
@@ -1813,7 +1872,7 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft( ), "decision", domainTaskListPair.getRight( ) );
+        notifyDecisionTaskList( accountFullName, domainTaskListPair.getLeft( ), domainTaskListPair.getRight( ), domainUuidRunIdPair.getRight( ) );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -1886,7 +1945,7 @@ public class SimpleWorkflowService {
       }
 
       if ( domainTaskListPair != null ) {
-        notifyTaskList( accountFullName, domainTaskListPair.getLeft( ), "decision", domainTaskListPair.getRight( ) );
+        notifyDecisionTaskList( accountFullName, domainTaskListPair.getLeft( ), domainTaskListPair.getRight( ), domainUuidRunIdPair.getRight( ) );
       }
     } catch ( SwfMetadataNotFoundException e ) {
       throw new SimpleWorkflowClientException(
@@ -2177,11 +2236,21 @@ public class SimpleWorkflowService {
     return Objects.firstNonNull( value, defaultValue );
   }
 
-  private static void notifyTaskList( final AccountFullName accountFullName,
-                                      final String domain,
-                                      final String type,
-                                      final String taskList ) {
-    NotifyClient.notifyTaskList( accountFullName, domain, type, taskList );
+  private static void notifyDecisionTaskList( final AccountFullName accountFullName,
+                                              final String domain,
+                                              final String taskList,
+                                              final String runId ) {
+    NotifyClient.notifyTaskList( accountFullName.getAccountNumber( ), domain, "decision", taskList, NotifyClient.decisionTaskId( runId ) );
+  }
+
+  private static NotifyTaskList decisionTaskList( final AccountFullName accountFullName,
+                                                  final WorkflowExecution workflowExecution ) {
+    return new NotifyTaskList(
+        accountFullName.getAccountNumber( ),
+        workflowExecution.getDomainName( ),
+        "decision",
+        workflowExecution.getTaskList( ),
+        NotifyClient.decisionTaskId( workflowExecution.getDisplayName( ) ) );
   }
 
   private static void handleTaskPolling( final AccountFullName accountFullName,
@@ -2190,15 +2259,15 @@ public class SimpleWorkflowService {
                                          final String taskList,
                                          final String correlationId,
                                          final SimpleWorkflowMessage emptyResponse,
-                                         final Callable<? extends SimpleWorkflowMessage> responseCallable ) {
+                                         final TaskTaker<? extends SimpleWorkflowMessage> taskTaker ) {
     final String list = Joiner.on('/').join( type, domain, taskList );
     try {
-      NotifyClient.pollTaskList( accountFullName, domain, type, taskList, Contexts.consumerWithCurrentContext( new Consumer<Boolean>() {
+      NotifyClient.pollTaskList( accountFullName, domain, type, taskList, Contexts.consumerWithCurrentContext( new Consumer<TaskListNotification>() {
         @Override
-        public void accept( final Boolean notified ) {
+        public void accept( final TaskListNotification notification ) {
           try {
-            if ( notified ) {
-              final SimpleWorkflowMessage taskResponse = responseCallable.call();
+            if ( notification.isNotified( ) ) {
+              final SimpleWorkflowMessage taskResponse = taskTaker.take( notification.getTaskId( ) );
               if ( taskResponse != null ) {
                 taskResponse.setCorrelationId( correlationId );
                 Contexts.response( taskResponse );
@@ -2221,6 +2290,14 @@ public class SimpleWorkflowService {
     }
   }
 
+  /**
+   * Takes a pending task, preferring the ready task if one is identified.
+   */
+  private interface TaskTaker<T extends SimpleWorkflowMessage> {
+    @Nullable
+    T take( @Nullable String taskId ) throws Exception;
+  }
+
   private static final class ScheduleActivityTaskException extends Exception {
     private static final long serialVersionUID = 1L;
 
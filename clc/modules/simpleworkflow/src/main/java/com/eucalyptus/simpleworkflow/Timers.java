@@ -19,7 +19,9 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow;
 
+import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import com.eucalyptus.entities.AbstractPersistentSupport;
 import com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata;
 import com.eucalyptus.util.OwnerFullName;
@@ -35,7 +37,12 @@ public interface Timers {
                              Predicate<? super Timer> filter,
                              Function<? super Timer,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listFired( Function<? super Timer,T> transform ) throws SwfMetadataException;
+  <T> List<T> listFired( @Nullable String runId,
+                         long time,
+                         Function<? super Timer,T> transform ) throws SwfMetadataException;
+
+  <T> List<T> listTimeouts( @Nullable Date updatedSince,
+                            Function<? super Timer,T> transform ) throws SwfMetadataException;
 
   <T> T updateByExample( Timer example,
                          OwnerFullName ownerFullName,
@@ -58,7 +58,11 @@ public interface WorkflowExecutions {
                              Map<String,String> aliases,
                              Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
-  <T> List<T> listTimedOut( long timestamp,
+  <T> List<T> listTimedOut( @Nullable String runId,
+                            long timestamp,
+                            Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
+
+  <T> List<T> listTimeouts( @Nullable Date updatedSince,
                             Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException;
 
   <T> List<T> listRetentionExpired( long timestamp,
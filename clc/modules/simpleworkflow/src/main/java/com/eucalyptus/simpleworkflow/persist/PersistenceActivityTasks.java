@@ -23,6 +23,7 @@ import static com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata.Activi
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.simpleworkflow.ActivityTask;
@@ -42,11 +43,25 @@ public class PersistenceActivityTasks extends SwfPersistenceSupport<ActivityTask
     super( "activity-task" );
   }
 
-  public <T> List<T> listTimedOut( final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
+  public <T> List<T> listTimedOut( @Nullable final String runId,
+                                   final long time,
+                                   final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
+    return listByExample(
+        ActivityTask.exampleWithWorkflowExecution( null, null, runId ),
+        Predicates.alwaysTrue(),
+        Restrictions.lt( "timeoutTimestamp", new Date( time ) ),
+        Collections.<String,String>emptyMap( ),
+        transform );
+  }
+
+  public <T> List<T> listTimeouts( @Nullable final Date updatedSince,
+                                   final Function<? super ActivityTask,T> transform ) throws SwfMetadataException {
     return listByExample(
         ActivityTask.exampleWithOwner( null ),
         Predicates.alwaysTrue(),
-        Restrictions.lt( "timeoutTimestamp", new Date( ) ),
+        updatedSince == null ?
+            Restrictions.isNotNull( "timeoutTimestamp" ) :
+            Restrictions.gt( "lastUpdateTimestamp", updatedSince ),
         Collections.<String,String>emptyMap( ),
         transform );
   }
@@ -22,6 +22,7 @@ package com.eucalyptus.simpleworkflow.persist;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.simpleworkflow.SwfMetadataException;
@@ -42,11 +43,25 @@ public class PersistenceTimers extends SwfPersistenceSupport<SimpleWorkflowMetad
     super( "timer" );
   }
 
-  public <T> List<T> listFired( final Function<? super Timer,T> transform ) throws SwfMetadataException {
+  public <T> List<T> listFired( @Nullable final String runId,
+                                final long time,
+                                final Function<? super Timer,T> transform ) throws SwfMetadataException {
+    return listByExample(
+        Timer.exampleWithWorkflowExecution( null, null, runId ),
+        Predicates.alwaysTrue(),
+        Restrictions.lt( "timeoutTimestamp", new Date( time ) ),
+        Collections.<String,String>emptyMap(),
+        transform );
+  }
+
+  public <T> List<T> listTimeouts( @Nullable final Date updatedSince,
+                                   final Function<? super Timer,T> transform ) throws SwfMetadataException {
     return listByExample(
         Timer.exampleWithOwner( null ),
         Predicates.alwaysTrue(),
-        Restrictions.lt( "timeoutTimestamp", new Date() ),
+        updatedSince == null ?
+            Restrictions.isNotNull( "timeoutTimestamp" ) :
+            Restrictions.gt( "lastUpdateTimestamp", updatedSince ),
         Collections.<String,String>emptyMap(),
         transform );
   }
@@ -25,6 +25,7 @@ import static com.eucalyptus.simpleworkflow.common.SimpleWorkflowMetadata.Workfl
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import javax.annotation.Nullable;
 import org.hibernate.criterion.Restrictions;
 import com.eucalyptus.component.annotation.ComponentNamed;
 import com.eucalyptus.simpleworkflow.SimpleWorkflowConfiguration;
@@ -45,10 +46,11 @@ public class PersistenceWorkflowExecutions extends SwfPersistenceSupport<Workflo
     super( "workflow-execution" );
   }
 
-  public <T> List<T> listTimedOut( final long time,
+  public <T> List<T> listTimedOut( @Nullable final String runId,
+                                   final long time,
                                    final Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException {
     return listByExample(
-        WorkflowExecution.exampleForOpenWorkflow(),
+        WorkflowExecution.exampleForOpenWorkflow( null, null, null, runId ),
         Predicates.alwaysTrue( ),
         Restrictions.disjunction( )
             .add( Restrictions.lt( "timeoutTimestamp", new Date( time ) ) )
@@ -57,6 +59,25 @@ public class PersistenceWorkflowExecutions extends SwfPersistenceSupport<Workflo
         transform );
   }
 
+  /**
+   * List open workflow executions updated since the given date, or all open
+   * workflow executions if no date is given.
+   */
+  public <T> List<T> listTimeouts( @Nullable final Date updatedSince,
+                                   final Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException {
+    return updatedSince == null ?
+        listByExample(
+            WorkflowExecution.exampleForOpenWorkflow( ),
+            Predicates.alwaysTrue( ),
+            transform ) :
+        listByExample(
+            WorkflowExecution.exampleForOpenWorkflow( ),
+            Predicates.alwaysTrue( ),
+            Restrictions.gt( "lastUpdateTimestamp", updatedSince ),
+            Collections.<String,String>emptyMap( ),
+            transform );
+  }
+
   public <T> List<T> listRetentionExpired( final long time,
                                            final Function<? super WorkflowExecution,T> transform ) throws SwfMetadataException {
     return listByExample(
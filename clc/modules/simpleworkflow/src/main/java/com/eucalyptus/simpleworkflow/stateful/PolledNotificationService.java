@@ -19,14 +19,19 @@
  ************************************************************************/
 package com.eucalyptus.simpleworkflow.stateful;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import javax.annotation.Nullable;
 import org.apache.log4j.Logger;
 import org.jboss.netty.channel.local.LocalChannel;
 import com.eucalyptus.bootstrap.Bootstrap;
@@ -42,12 +47,18 @@ import com.eucalyptus.util.EucalyptusCloudException;
 import com.eucalyptus.util.async.CheckedListenableFuture;
 import com.eucalyptus.util.async.Futures;
 import com.google.common.base.Objects;
-import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
 import com.google.common.collect.Lists;
 
 /**
+ * Matches task list pollers with ready tasks.
  *
+ * Notifications carry the identifier of the task that is ready. Tasks are
+ * handed to a waiting poller or held in a per channel ready queue until a
+ * poller arrives. The database is checked for pending tasks only when the
+ * ready queue may be incomplete, i.e. for a channel not yet seen by this
+ * service (after failover), after a notification without a task identifier,
+ * or periodically in case a notification was lost.
  */
 @ComponentNamed
 public class PolledNotificationService {
@@ -55,8 +66,6 @@ public class PolledNotificationService {
   private static final Logger logger = Logger.getLogger( PolledNotificationService.class );
 
   private static final ConcurrentMap<String,Pollers> pollersByChannel = new ConcurrentHashMap<>( );
-  private static final ConcurrentMap<String,PendingNotification> pendingNotificationsByChannel =
-      new ConcurrentHashMap<>( );
   private static final PolledNotificationChecker checker = new PolledNotificationChecker(){
     @Override
     public boolean apply( final String channel ) {
@@ -68,9 +77,7 @@ public class PolledNotificationService {
     final NotifyResponseType response = notify.getReply( );
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
-      if ( !notifyPollers( notify.getChannel( ), notify.getDetails( ) ) ) {
-        pendingNotificationsByChannel.put( notify.getChannel( ), new PendingNotification( notify.getChannel( ), notify.getDetails() ) );
-      }
+      getPollers( notify.getChannel( ) ).ready( notify.getDetails( ) );
     }
     return response;
   }
@@ -78,11 +85,13 @@ public class PolledNotificationService {
   public PollForNotificationResponseType pollForNotification( final PollForNotificationType poll ) throws EucalyptusCloudException {
     final Context context = Contexts.lookup( );
     if ( context.hasAdministrativePrivileges( ) ) {
-      final Future<PollForNotificationResponseType> response =
-          addPoller( poll.getChannel( ), new Poller( poll.getChannel( ), poll.getCorrelationId( ) ) );
-      checkNotify( poll.getChannel( ) );
+      final Poller poller = new Poller( poll.getChannel( ), poll.getCorrelationId( ) );
+      final Pollers pollers = getPollers( poll.getChannel( ) );
+      if ( !pollers.take( poller ) ) {
+        checkPending( pollers );
+      }
       try {
-        return response.get( );
+        return poller.getFuture( ).get( );
       } catch ( final Exception e ) {
         return poll.getReply( );
       }
@@ -91,22 +100,35 @@ public class PolledNotificationService {
     }
   }
 
-  private static void checkNotify( final String channel ) {
-    final PendingNotification pendingNotification = pendingNotificationsByChannel.remove( channel );
-    if ( pendingNotification != null && !pendingNotification.isExpired( System.currentTimeMillis( ) ) ) {
-      notifyPollers( channel, pendingNotification.getDetails( ) );
-    } else if ( checker.apply( channel ) ) {
-      notifyPollers( channel, null );
+  static int readyTaskCount( ) {
+    int count = 0;
+    for ( final Pollers pollers : pollersByChannel.values( ) ) {
+      count += pollers.readyTaskCount( );
     }
+    return count;
   }
 
-  private static boolean notifyPollers( final String channel, final String details ) {
-    return getPollers( channel ).notifyPollers( details );
+  static int waitingPollerCount( ) {
+    int count = 0;
+    for ( final Pollers pollers : pollersByChannel.values( ) ) {
+      count += pollers.waitingPollerCount( );
+    }
+    return count;
   }
 
-  private static Future<PollForNotificationResponseType> addPoller( final String channel, final Poller poller ) {
-    getPollers( channel ).addPoller( poller );
-    return poller.getFuture();
+  /**
+   * Check the database for pending tasks if the ready queue may be incomplete.
+   */
+  private static void checkPending( final Pollers pollers ) {
+    if ( pollers.beginCheck( System.currentTimeMillis( ) ) ) {
+      boolean found = false;
+      try {
+        found = checker.apply( pollers.getChannel( ) );
+      } finally {
+        pollers.endCheck( found );
+      }
+      TaskDispatchStatistics.get( ).recoveryCheck( found );
+    }
   }
 
   private static Pollers getPollers( final String channel ) {
@@ -123,15 +145,19 @@ public class PolledNotificationService {
     return pollers;
   }
 
+  /**
+   * Release pollers and discard ready tasks, another service will recover them from the database.
+   */
   static void evacuate( ) {
     timeoutPollers( Long.MAX_VALUE );
+    pollersByChannel.clear( );
   }
 
   private static void periodicWork( ) {
     final long time = System.currentTimeMillis();
     timeoutPollers( time );
+    timeoutReadyTasks( time );
     timeoutPollerMetadata( time );
-    timeoutPendingNotifications( time );
   }
 
   private static void timeoutPollers( final long time ) {
@@ -140,27 +166,32 @@ public class PolledNotificationService {
     }
   }
 
-  private static void timeoutPollerMetadata( final long time ) {
+  private static void timeoutReadyTasks( final long time ) {
     for ( final Pollers pollers : pollersByChannel.values( ) ) {
-      if ( pollers.isEmpty( ) && pollers.isExpired( time ) ) {
-        pollersByChannel.remove( pollers.getChannel( ), pollers );
-      }
+      pollers.expireReadyTasks( time );
     }
   }
 
-  private static void timeoutPendingNotifications( final long time ) {
-    for ( final PendingNotification pendingNotification : pendingNotificationsByChannel.values( ) ) {
-      if ( pendingNotification.isExpired( time ) ) {
-        pendingNotificationsByChannel.remove( pendingNotification.getChannel( ), pendingNotification );
+  private static void timeoutPollerMetadata( final long time ) {
+    for ( final Pollers pollers : pollersByChannel.values( ) ) {
+      if ( pollers.isEmpty( ) && pollers.isExpired( time ) ) {
+        pollersByChannel.remove( pollers.getChannel( ), pollers );
       }
     }
   }
 
   private static final class Pollers {
     private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 2 );
+    private static final long READY_EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 5 );
+    private static final long CHECK_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
+    private static final int MAX_READY_TASKS = 10000;
 
     private final AtomicLong timestamp = new AtomicLong( System.currentTimeMillis( ) );
-    private final BlockingQueue<Poller> pollersQueue = new LinkedBlockingDeque<>();
+    private final Deque<Poller> pollersQueue = new ArrayDeque<>( );
+    private final Map<String,Long> readyTasks = new LinkedHashMap<>( ); // task identifier -> ready timestamp
+    private final AtomicBoolean checking = new AtomicBoolean( false );
+    private volatile boolean checkRequired = true; // channel not seen before, may have pending tasks
+    private volatile long lastChecked = 0;
     private final String channel;
 
     private Pollers( final String channel ) {
@@ -171,71 +202,155 @@ public class PolledNotificationService {
       return channel;
     }
 
-    public void addPoller( final Poller poller ) {
+    /**
+     * Hand a ready task to a waiting poller or queue it.
+     *
+     * @param taskId The task identifier, null if the task is not known in which case all waiting pollers are notified.
+     */
+    public void ready( @Nullable final String taskId ) {
+      touch( );
+      final List<Poller> pollers = Lists.newArrayList( );
+      synchronized ( this ) {
+        if ( taskId == null ) {
+          pollers.addAll( pollersQueue );
+          pollersQueue.clear( );
+          if ( pollers.isEmpty( ) ) {
+            checkRequired = true;
+          }
+        } else if ( !pollersQueue.isEmpty( ) ) {
+          pollers.add( pollersQueue.poll( ) );
+          TaskDispatchStatistics.get( ).dispatchedToWaiting( );
+        } else if ( readyTasks.containsKey( taskId ) ) {
+          // already queued
+        } else if ( readyTasks.size( ) < MAX_READY_TASKS ) {
+          readyTasks.put( taskId, System.currentTimeMillis( ) );
+          TaskDispatchStatistics.get( ).queued( );
+        } else {
+          checkRequired = true;
+          TaskDispatchStatistics.get( ).overflowed( );
+        }
+      }
+      notifyPollers( pollers, true, taskId );
+    }
+
+    /**
+     * Take a ready task for the poller or queue the poller until a task is ready.
+     *
+     * @return True if the poller was notified
+     */
+    public boolean take( final Poller poller ) {
       touch( );
-      pollersQueue.add( poller );
+      Map.Entry<String,Long> ready = null;
+      synchronized ( this ) {
+        final Iterator<Map.Entry<String,Long>> readyIterator = readyTasks.entrySet( ).iterator( );
+        if ( readyIterator.hasNext( ) ) {
+          ready = readyIterator.next( );
+          readyIterator.remove( );
+        } else {
+          pollersQueue.add( poller );
+        }
+      }
+      if ( ready != null ) {
+        TaskDispatchStatistics.get( ).dispatchedFromQueue( ready.getValue( ) );
+        notifyPollers( Lists.newArrayList( poller ), true, ready.getKey( ) );
+      }
+      return ready != null;
     }
 
-    public boolean notifyPollers( final String details ) {
-      return notifyPollers( queuedPollers( ), new Predicate<PollForNotificationResponseType>() {
-        @Override
-        public boolean apply( final PollForNotificationResponseType response ) {
-          response.setNotified( true );
-          response.setDetails( details );
-          return true;
+    /**
+     * Start a database check if one is required and none is in progress.
+     */
+    public boolean beginCheck( final long time ) {
+      if ( ( checkRequired || ( lastChecked + CHECK_INTERVAL_MILLIS ) < time ) && checking.compareAndSet( false, true ) ) {
+        checkRequired = false;
+        lastChecked = time;
+        return true;
+      }
+      return false;
+    }
+
+    /**
+     * Complete a database check, notifying a waiting poller if tasks were found. Checks continue on
+     * subsequent polls until no pending tasks are found.
+     */
+    public void endCheck( final boolean found ) {
+      checking.set( false );
+      if ( found ) {
+        checkRequired = true;
+        final List<Poller> pollers = Lists.newArrayList( );
+        synchronized ( this ) {
+          if ( !pollersQueue.isEmpty( ) ) {
+            pollers.add( pollersQueue.poll( ) );
+          }
         }
-      } );
+        notifyPollers( pollers, true, null );
+      }
     }
 
-    public void notifyExpiredPollers( long time ) {
-      notifyPollers( expiredPollers( time ), new Predicate<PollForNotificationResponseType>() {
-        @Override
-        public boolean apply( final PollForNotificationResponseType response ) {
-          response.setNotified( false );
-          return true;
+    public void notifyExpiredPollers( final long time ) {
+      final List<Poller> pollers = Lists.newArrayList( );
+      synchronized ( this ) {
+        for ( final Iterator<Poller> pollerIterator = pollersQueue.iterator( ); pollerIterator.hasNext( ); ) {
+          final Poller poller = pollerIterator.next( );
+          if ( poller.isExpired( time ) ) {
+            pollerIterator.remove( );
+            pollers.add( poller );
+          }
+        }
+      }
+      notifyPollers( pollers, false, null );
+    }
+
+    /**
+     * Discard tasks that were not taken, they may have been taken or timed out via the database
+     * so are recovered by checking the database.
+     */
+    public void expireReadyTasks( final long time ) {
+      int expired = 0;
+      synchronized ( this ) {
+        for ( final Iterator<Long> readyIterator = readyTasks.values( ).iterator( ); readyIterator.hasNext( ); ) {
+          if ( ( readyIterator.next( ) + READY_EXPIRY_MILLIS ) < time ) {
+            readyIterator.remove( );
+            expired++;
+          } else {
+            break;
+          }
         }
-      } );
+      }
+      if ( expired > 0 ) {
+        checkRequired = true;
+        TaskDispatchStatistics.get( ).expired( expired );
+      }
+    }
+
+    public synchronized int readyTaskCount( ) {
+      return readyTasks.size( );
+    }
+
+    public synchronized int waitingPollerCount( ) {
+      return pollersQueue.size( );
     }
 
-    public boolean isEmpty( ) {
-      return pollersQueue.isEmpty( );
+    public synchronized boolean isEmpty( ) {
+      return pollersQueue.isEmpty( ) && readyTasks.isEmpty( );
     }
 
     public boolean isExpired( final long time ) {
       return ( timestamp.get( ) + EXPIRY_MILLIS ) < time;
     }
 
-    private boolean notifyPollers( final Iterable<Poller> pollers,
-                                   final Predicate<PollForNotificationResponseType> responsePredicate ) {
-      touch( );
-      boolean notified = false;
+    private void notifyPollers( final Iterable<Poller> pollers,
+                                final boolean notified,
+                                @Nullable final String details ) {
       for ( final Poller poller : pollers ) try {
         final PollForNotificationResponseType response = new PollForNotificationResponseType( );
         response.setCorrelationId( poller.getCorrelationId( ) );
-        if ( responsePredicate.apply( response ) ) {
-          poller.response( response );
-          notified = true;
-        }
+        response.setNotified( notified );
+        response.setDetails( details );
+        poller.response( response );
       } catch ( final Exception e ){
         logger.error( "Error notifying poller " + poller, e );
       }
-      return notified;
-    }
-
-    private Iterable<Poller> queuedPollers( ) {
-      final List<Poller> pollers = Lists.newArrayList( );
-      pollersQueue.drainTo( pollers );
-      return pollers;
-    }
-
-    private Iterable<Poller> expiredPollers( final long time ) {
-      final List<Poller> pollers = Lists.newArrayList();
-      for ( final Poller poller : pollersQueue ) {
-        if ( poller.isExpired( time ) && pollersQueue.remove( poller ) ) {
-          pollers.add( poller );
-        }
-      }
-      return pollers;
     }
 
     private void touch( ) {
@@ -245,50 +360,13 @@ public class PolledNotificationService {
     public String toString( ) {
       return Objects.toStringHelper( this )
           .add( "channel", getChannel( ) )
-          .add( "pollers", pollersQueue )
+          .add( "pollers", waitingPollerCount( ) )
+          .add( "ready", readyTaskCount( ) )
           .add( "timestamp", timestamp.get() )
           .toString();
     }
   }
 
-  private static final class PendingNotification {
-    private static final long EXPIRY_MILLIS = TimeUnit.MINUTES.toMillis( 1 );
-    private final long timestamp;
-    private final String channel;
-    private final String details;
-
-    private PendingNotification( final String channel,
-                                 final String details ) {
-      this.timestamp = System.currentTimeMillis( );
-      this.channel = channel;
-      this.details = details;
-    }
-
-    public long getTimestamp() {
-      return timestamp;
-    }
-
-    public String getChannel() {
-      return channel;
-    }
-
-    public String getDetails() {
-      return details;
-    }
-
-    public boolean isExpired( final long time ) {
-      return ( timestamp + EXPIRY_MILLIS ) < time;
-    }
-
-    public String toString( ) {
-      return Objects.toStringHelper( this )
-          .add( "channel", getChannel() )
-          .add( "details", getDetails() )
-          .add( "timestamp", getTimestamp() )
-          .toString( );
-    }
-  }
-
   private static final class Poller {
     private static final long EXPIRY_MILLIS = TimeUnit.SECONDS.toMillis( 30 );
 
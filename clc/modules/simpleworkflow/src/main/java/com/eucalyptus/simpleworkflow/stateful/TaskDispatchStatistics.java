@@ -0,0 +1,132 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import com.eucalyptus.util.Mbeans;
+import com.eucalyptus.ws.server.LatencyHistogram;
+
+/**
+ * Task list dispatch statistics for the polled notification service, exported via JMX.
+ */
+public class TaskDispatchStatistics {
+
+  private static final TaskDispatchStatistics instance = new TaskDispatchStatistics( );
+  private static final AtomicBoolean registered = new AtomicBoolean( false );
+
+  private final LatencyHistogram dispatchLatency = new LatencyHistogram( );
+  private final AtomicLong queued = new AtomicLong( );
+  private final AtomicLong dispatchedToWaiting = new AtomicLong( );
+  private final AtomicLong dispatchedFromQueue = new AtomicLong( );
+  private final AtomicLong expired = new AtomicLong( );
+  private final AtomicLong overflowed = new AtomicLong( );
+  private final AtomicLong recoveryChecks = new AtomicLong( );
+  private final AtomicLong recoveryDispatches = new AtomicLong( );
+
+  static TaskDispatchStatistics get( ) {
+    if ( registered.compareAndSet( false, true ) ) {
+      Mbeans.register( instance );
+    }
+    return instance;
+  }
+
+  void queued( ) {
+    queued.incrementAndGet( );
+  }
+
+  /**
+   * A task was handed to a poller that was already waiting.
+   */
+  void dispatchedToWaiting( ) {
+    dispatchedToWaiting.incrementAndGet( );
+    dispatchLatency.record( 0 );
+  }
+
+  /**
+   * A task was taken from the ready queue by a poller.
+   */
+  void dispatchedFromQueue( final long readyTimeMillis ) {
+    dispatchedFromQueue.incrementAndGet( );
+    dispatchLatency.record( TimeUnit.MILLISECONDS.toMicros( Math.max( 0, System.currentTimeMillis( ) - readyTimeMillis ) ) );
+  }
+
+  void expired( final int count ) {
+    expired.addAndGet( count );
+  }
+
+  void overflowed( ) {
+    overflowed.incrementAndGet( );
+  }
+
+  void recoveryCheck( final boolean found ) {
+    recoveryChecks.incrementAndGet( );
+    if ( found ) recoveryDispatches.incrementAndGet( );
+  }
+
+  public String getDispatchLatency( ) {
+    return dispatchLatency.snapshot( ).toString( );
+  }
+
+  public int getReadyTasks( ) {
+    return PolledNotificationService.readyTaskCount( );
+  }
+
+  public int getWaitingPollers( ) {
+    return PolledNotificationService.waitingPollerCount( );
+  }
+
+  public long getQueuedCount( ) {
+    return queued.get( );
+  }
+
+  public long getDispatchedToWaitingCount( ) {
+    return dispatchedToWaiting.get( );
+  }
+
+  public long getDispatchedFromQueueCount( ) {
+    return dispatchedFromQueue.get( );
+  }
+
+  public long getExpiredCount( ) {
+    return expired.get( );
+  }
+
+  public long getOverflowedCount( ) {
+    return overflowed.get( );
+  }
+
+  public long getRecoveryCheckCount( ) {
+    return recoveryChecks.get( );
+  }
+
+  public long getRecoveryDispatchCount( ) {
+    return recoveryDispatches.get( );
+  }
+
+  @Override
+  public String toString( ) {
+    return "TaskDispatchStatistics ready=" + getReadyTasks( ) + " waiting=" + getWaitingPollers( ) +
+        " queued=" + getQueuedCount( ) + " dispatched=" + getDispatchedToWaitingCount( ) + "/" + getDispatchedFromQueueCount( ) +
+        " recovery=" + getRecoveryDispatchCount( ) + "/" + getRecoveryCheckCount( ) +
+        " latency[" + getDispatchLatency( ) + "]";
+  }
+}
@@ -26,10 +26,15 @@ import static com.eucalyptus.simpleworkflow.WorkflowExecution.DecisionStatus.Pen
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import javax.annotation.Nullable;
 import org.apache.log4j.Logger;
 import com.eucalyptus.bootstrap.Bootstrap;
 import com.eucalyptus.component.Topology;
+import com.eucalyptus.entities.AbstractPersistent;
 import com.eucalyptus.entities.Entities;
 import com.eucalyptus.event.ClockTick;
 import com.eucalyptus.event.EventListener;
@@ -71,6 +76,7 @@ import com.google.common.base.Functions;
 import com.google.common.base.Optional;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 /**
@@ -80,6 +86,10 @@ public class TimeoutManager {
 
   private static final Logger logger = Logger.getLogger( TimeoutManager.class );
 
+  private static final long wheelTickMillis = 1000L;
+  private static final long fullRefreshIntervalMillis = TimeUnit.MINUTES.toMillis( 15 );
+  private static final long highWaterOverlapMillis = TimeUnit.SECONDS.toMillis( 60 );
+
   private final WorkflowExecutions workflowExecutions = new PersistenceWorkflowExecutions( );
   private final WorkflowTypes workflowTypes = new PersistenceWorkflowTypes( );
   private final ActivityTasks activityTasks = new PersistenceActivityTasks( );
@@ -87,60 +97,165 @@ public class TimeoutManager {
   private final Domains domains = new PersistenceDomains( );
   private final Timers timers = new PersistenceTimers( );
 
+  private final Object timeoutLock = new Object( );
+  private final TimerWheel<TimeoutKey> timeouts = new TimerWheel<>( wheelTickMillis, System.currentTimeMillis( ) );
+  private Date highWaterMark;
+  private long lastFullRefresh;
+
+  /**
+   * Fire timers and process activity task, decision task and workflow timeouts.
+   *
+   * <p>The next timeout for each timer, activity task and open workflow
+   * execution is held in a timer wheel. The wheel is loaded from the database
+   * and then kept current using the last update timestamp high-water mark,
+   * since timeouts can be updated on any host. Only workflow runs with a
+   * timeout that is due are loaded and each run is processed under a single
+   * lock.</p>
+   *
+   * <p>Timeouts for runs that could not be processed are retried on the next
+   * tick. Timeouts that were not due in the database are dropped, the entity
+   * was deleted or updated and any later deadline is scheduled when the update
+   * is loaded.</p>
+   */
   public void doTimeouts( ) {
-    timeoutActivityTasks( );
-    timeoutDecisionTasksAndWorkflows( );
+    synchronized ( timeoutLock ) {
+      final long now = System.currentTimeMillis( );
+      try {
+        loadTimeouts( now );
+      } catch ( final SwfMetadataException e ) {
+        logger.error( "Error loading timeouts", e );
+        highWaterMark = null;
+      }
+      final Map<WorkflowRun,List<TimeoutKey>> runs = Maps.newLinkedHashMap( );
+      for ( final TimeoutKey key : timeouts.advance( now ) ) {
+        List<TimeoutKey> runKeys = runs.get( key.getRun( ) );
+        if ( runKeys == null ) {
+          runKeys = Lists.newArrayList( );
+          runs.put( key.getRun( ), runKeys );
+        }
+        runKeys.add( key );
+      }
+      final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+      for ( final Map.Entry<WorkflowRun,List<TimeoutKey>> runEntry : runs.entrySet( ) ) {
+        final WorkflowRun run = runEntry.getKey( );
+        boolean success = false;
+        try ( final WorkflowLock lock = WorkflowLock.lock( run.getAccountNumber( ), run.getDomainUuid( ), run.getRunId( ) ) ) {
+          success = timeoutActivityTasks( run, now, taskLists );
+          success &= timeoutDecisionTasksAndWorkflows( run, now, taskLists );
+          success &= fireTimers( run, now, taskLists );
+        } catch ( final RuntimeException e ) {
+          logger.error( "Error processing timeouts for " + run.getRunId( ), e );
+        }
+        if ( !success ) {
+          for ( final TimeoutKey key : runEntry.getValue( ) ) {
+            timeouts.schedule( key, now + wheelTickMillis );
+          }
+        }
+      }
+      if ( !runs.isEmpty( ) && logger.isDebugEnabled( ) ) {
+        logger.debug( "Processed timeouts for " + runs.size( ) + " workflow run(s), " + timeouts.size( ) + " timeout(s) pending" );
+      }
+      notifyLists( taskLists );
+    }
+  }
+
+  /**
+   * Discard loaded timeouts, they are reloaded on the next call to doTimeouts.
+   */
+  public void reset( ) {
+    synchronized ( timeoutLock ) {
+      if ( highWaterMark != null ) {
+        timeouts.clear( );
+        highWaterMark = null;
+      }
+    }
+  }
+
+  /**
+   * Load all timeouts or those updated since the high-water mark.
+   *
+   * <p>Updates are matched with some overlap to allow for transactions that
+   * commit after later updates. Stale timeouts for entities that were deleted
+   * or updated are harmless as the database is checked when processing.</p>
+   */
+  private void loadTimeouts( final long now ) throws SwfMetadataException {
+    final boolean full = highWaterMark == null || ( now - lastFullRefresh ) > fullRefreshIntervalMillis;
+    final Date since = full ? null : new Date( highWaterMark.getTime( ) - highWaterOverlapMillis );
+    final List<Timeout> loaded = Lists.newArrayList( );
+    loaded.addAll( timers.listTimeouts( since, TimeoutTransform.TIMER ) );
+    loaded.addAll( activityTasks.listTimeouts( since, TimeoutTransform.ACTIVITY_TASK ) );
+    loaded.addAll( workflowExecutions.listTimeouts( since, TimeoutTransform.WORKFLOW_EXECUTION ) );
+    if ( full ) {
+      timeouts.clear( );
+      highWaterMark = new Date( now );
+      lastFullRefresh = now;
+    }
+    for ( final Timeout timeout : loaded ) {
+      if ( timeout.getTimeout( ) != null ) {
+        timeouts.schedule( timeout.getKey( ), timeout.getTimeout( ) );
+      } else {
+        timeouts.cancel( timeout.getKey( ) );
+      }
+      if ( timeout.getLastUpdate( ) != null && timeout.getLastUpdate( ).getTime( ) > highWaterMark.getTime( ) ) {
+        highWaterMark = new Date( timeout.getLastUpdate( ).getTime( ) );
+      }
+    }
+    if ( full ) {
+      logger.debug( "Loaded " + timeouts.size( ) + " timeout(s)" );
+    }
   }
 
-  public void doTimers( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+  /**
+   * @return False if processing failed
+   */
+  private boolean fireTimers( final WorkflowRun run,
+                              final long now,
+                              final Set<NotifyTaskList> taskLists ) {
+    boolean success = true;
     try {
-      for ( final Timer timer : timers.listFired( Functions.<Timer>identity( ) ) ) try {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            timer.getOwnerAccountNumber( ),
-            timer.getDomainUuid( ),
-            timer.getWorkflowRunId( ) ) ) {
-          timers.withRetries( ).updateByExample(
-              timer,
-              timer.getOwner( ),
-              timer.getDisplayName( ),
-              new Function<Timer, Void>( ) {
-            @Override
-            public Void apply( final Timer timer ) {
-              final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
+      for ( final Timer timer : timers.listFired( run.getRunId( ), now, Functions.<Timer>identity( ) ) ) try {
+        timers.withRetries( ).updateByExample(
+            timer,
+            timer.getOwner( ),
+            timer.getDisplayName( ),
+            new Function<Timer, Void>( ) {
+          @Override
+          public Void apply( final Timer timer ) {
+            final WorkflowExecution workflowExecution = timer.getWorkflowExecution( );
+            workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
+                workflowExecution,
+                new TimerFiredEventAttributes( )
+                    .withStartedEventId( timer.getStartedEventId( ) )
+                    .withTimerId( timer.getDisplayName( ) )
+            ) );
+            if ( workflowExecution.getDecisionStatus() != Pending ) {
               workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
                   workflowExecution,
-                  new TimerFiredEventAttributes( )
-                      .withStartedEventId( timer.getStartedEventId( ) )
-                      .withTimerId( timer.getDisplayName( ) )
+                  new DecisionTaskScheduledEventAttributes( )
+                      .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
+                      .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
               ) );
-              if ( workflowExecution.getDecisionStatus() != Pending ) {
-                workflowExecution.addHistoryEvent( WorkflowHistoryEvent.create(
-                    workflowExecution,
-                    new DecisionTaskScheduledEventAttributes( )
-                        .withTaskList( new TaskList( ).withName( workflowExecution.getTaskList( ) ) )
-                        .withStartToCloseTimeout( String.valueOf( workflowExecution.getTaskStartToCloseTimeout( ) ) )
-                ) );
-                if ( workflowExecution.getDecisionStatus() == Idle ) {
-                  workflowExecution.setDecisionStatus( Pending );
-                  workflowExecution.setDecisionTimestamp( new Date( ) );
-                  addToNotifyLists( taskLists, workflowExecution );
-                }
+              if ( workflowExecution.getDecisionStatus() == Idle ) {
+                workflowExecution.setDecisionStatus( Pending );
+                workflowExecution.setDecisionTimestamp( new Date( ) );
+                addToNotifyLists( taskLists, workflowExecution );
               }
-              Entities.delete( timer );
-              return null;
             }
-          } );
-        }
+            Entities.delete( timer );
+            return null;
+          }
+        } );
       } catch ( SwfMetadataException e ) {
         if ( !handleException( e ) ) {
+          success = false;
           logger.error( "Error processing fired timer: " +  timer.getWorkflowRunId() + "/" + timer.getStartedEventId( ), e );
         }
       }
     } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing fired timers", e );
+      success = false;
+      logger.error( "Error processing fired timers for " + run.getRunId( ), e );
     }
-    notifyLists( taskLists );
+    return success;
   }
 
   public void doExpunge( ) {
@@ -188,12 +303,16 @@ public class TimeoutManager {
     }
   }
 
-  private void timeoutActivityTasks( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+  /**
+   * @return False if processing failed
+   */
+  private boolean timeoutActivityTasks( final WorkflowRun run,
+                                        final long now,
+                                        final Set<NotifyTaskList> taskLists ) {
+    boolean success = true;
     try {
-      for ( final ActivityTask task : activityTasks.listTimedOut( Functions.<ActivityTask>identity( ) ) ) {
-        try ( final WorkflowLock lock =
-                  WorkflowLock.lock( task.getOwnerAccountNumber( ), task.getDomainUuid( ), task.getWorkflowRunId( ) ) ) {
+      for ( final ActivityTask task : activityTasks.listTimedOut( run.getRunId( ), now, Functions.<ActivityTask>identity( ) ) ) {
+        try {
           activityTasks.withRetries( ).updateByExample(
               task,
               task.getOwner( ),
@@ -232,26 +351,29 @@ public class TimeoutManager {
           } );
         } catch ( SwfMetadataException e ) {
           if ( !handleException( e ) ) {
+            success = false;
             logger.error( "Error processing activity task timeout: " + task.getWorkflowRunId() + "/" + task.getScheduledEventId(), e );
           }
         }
       }
     } catch ( SwfMetadataException e ) {
-      logger.error( "Error processing activity task timeouts", e );
+      success = false;
+      logger.error( "Error processing activity task timeouts for " + run.getRunId( ), e );
     }
-    notifyLists( taskLists );
+    return success;
   }
 
-  private void timeoutDecisionTasksAndWorkflows( ) {
-    final Set<NotifyTaskList> taskLists = Sets.newHashSet( );
+  /**
+   * @return False if processing failed
+   */
+  private boolean timeoutDecisionTasksAndWorkflows( final WorkflowRun run,
+                                                    final long now,
+                                                    final Set<NotifyTaskList> taskLists ) {
+    boolean success = true;
     try {
-      final long now = System.currentTimeMillis();
       for ( final WorkflowExecution workflowExecution :
-          workflowExecutions.listTimedOut( now, Functions.<WorkflowExecution>identity( ) ) ) {
-        try ( final WorkflowLock lock = WorkflowLock.lock(
-            workflowExecution.getOwnerAccountNumber( ),
-            workflowExecution.getDomainUuid( ),
-            workflowExecution.getDisplayName( ) ) ) {
+          workflowExecutions.listTimedOut( run.getRunId( ), now, Functions.<WorkflowExecution>identity( ) ) ) {
+        try {
           workflowExecutions.withRetries( ).updateByExample(
               workflowExecution,
               workflowExecution.getOwner( ),
@@ -302,14 +424,16 @@ public class TimeoutManager {
           } );
         } catch ( final SwfMetadataException e ) {
           if ( !handleException( e ) ) {
+            success = false;
             logger.error( "Error processing workflow execution/decision task timeout: " + workflowExecution.getDisplayName(), e );
           }
         }
       }
     } catch ( final SwfMetadataException e ) {
-      logger.error( "Error processing workflow execution/decision task timeouts", e );
+      success = false;
+      logger.error( "Error processing workflow execution/decision task timeouts for " + run.getRunId( ), e );
     }
-    notifyLists( taskLists );
+    return success;
   }
 
   private boolean handleException( final Throwable e ) {
@@ -333,7 +457,8 @@ public class TimeoutManager {
         workflowExecution.getOwnerAccountNumber( ),
         workflowExecution.getDomainName( ),
         "decision",
-        workflowExecution.getTaskList( ) ) );
+        workflowExecution.getTaskList( ),
+        NotifyClient.decisionTaskId( workflowExecution.getDisplayName( ) ) ) );
   }
 
   private void notifyLists( final Set<NotifyTaskList> taskLists ) {
@@ -342,6 +467,158 @@ public class TimeoutManager {
     }
   }
 
+  private static final class WorkflowRun {
+    private final String accountNumber;
+    private final String domainUuid;
+    private final String runId;
+
+    private WorkflowRun( final String accountNumber, final String domainUuid, final String runId ) {
+      this.accountNumber = accountNumber;
+      this.domainUuid = domainUuid;
+      this.runId = runId;
+    }
+
+    public String getAccountNumber( ) {
+      return accountNumber;
+    }
+
+    public String getDomainUuid( ) {
+      return domainUuid;
+    }
+
+    public String getRunId( ) {
+      return runId;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final WorkflowRun that = (WorkflowRun) o;
+      return accountNumber.equals( that.accountNumber ) &&
+          domainUuid.equals( that.domainUuid ) &&
+          runId.equals( that.runId );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( accountNumber, domainUuid, runId );
+    }
+  }
+
+  /**
+   * Key for the timeout of a timer, activity task or workflow execution.
+   */
+  private static final class TimeoutKey {
+    private final TimeoutTransform type;
+    private final String id;
+    private final WorkflowRun run;
+
+    private TimeoutKey( final TimeoutTransform type, final String id, final WorkflowRun run ) {
+      this.type = type;
+      this.id = id;
+      this.run = run;
+    }
+
+    public WorkflowRun getRun( ) {
+      return run;
+    }
+
+    @Override
+    public boolean equals( final Object o ) {
+      if ( this == o ) return true;
+      if ( o == null || getClass( ) != o.getClass( ) ) return false;
+      final TimeoutKey that = (TimeoutKey) o;
+      return type == that.type && id.equals( that.id );
+    }
+
+    @Override
+    public int hashCode( ) {
+      return Objects.hash( type, id );
+    }
+  }
+
+  private static final class Timeout {
+    private final TimeoutKey key;
+    private final Long timeout;
+    private final Date lastUpdate;
+
+    private Timeout( final TimeoutKey key, final Long timeout, final Date lastUpdate ) {
+      this.key = key;
+      this.timeout = timeout;
+      this.lastUpdate = lastUpdate;
+    }
+
+    public TimeoutKey getKey( ) {
+      return key;
+    }
+
+    @Nullable
+    public Long getTimeout( ) {
+      return timeout;
+    }
+
+    @Nullable
+    public Date getLastUpdate( ) {
+      return lastUpdate;
+    }
+  }
+
+  private enum TimeoutTransform implements Function<Object,Timeout> {
+    TIMER {
+      @Override
+      public Timeout apply( final Object object ) {
+        final Timer timer = (Timer) object;
+        return timeout(
+            this,
+            timer,
+            new WorkflowRun( timer.getOwnerAccountNumber( ), timer.getDomainUuid( ), timer.getWorkflowRunId( ) ),
+            timer.getTimeoutTimestamp( ) == null ? null : timer.getTimeoutTimestamp( ).getTime( ) );
+      }
+    },
+    ACTIVITY_TASK {
+      @Override
+      public Timeout apply( final Object object ) {
+        final ActivityTask task = (ActivityTask) object;
+        return timeout(
+            this,
+            task,
+            new WorkflowRun( task.getOwnerAccountNumber( ), task.getDomainUuid( ), task.getWorkflowRunId( ) ),
+            task.getTimeoutTimestamp( ) == null ? null : task.getTimeoutTimestamp( ).getTime( ) );
+      }
+    },
+    WORKFLOW_EXECUTION {
+      @Override
+      public Timeout apply( final Object object ) {
+        final WorkflowExecution workflowExecution = (WorkflowExecution) object;
+        Long timeout = workflowExecution.getTimeoutTimestamp( ) == null ?
+            null :
+            workflowExecution.getTimeoutTimestamp( ).getTime( );
+        final long maximumDurationMillis = getWorkflowExecutionDurationMillis( );
+        if ( maximumDurationMillis > 0 && workflowExecution.getCreationTimestamp( ) != null ) {
+          final long maximumTimeout = workflowExecution.getCreationTimestamp( ).getTime( ) + maximumDurationMillis;
+          timeout = timeout == null ? maximumTimeout : Math.min( timeout, maximumTimeout );
+        }
+        return timeout(
+            this,
+            workflowExecution,
+            new WorkflowRun(
+                workflowExecution.getOwnerAccountNumber( ),
+                workflowExecution.getDomainUuid( ),
+                workflowExecution.getDisplayName( ) ),
+            timeout );
+      }
+    },
+    ;
+
+    private static Timeout timeout( final TimeoutTransform type,
+                                    final AbstractPersistent entity,
+                                    final WorkflowRun run,
+                                    final Long timeout ) {
+      return new Timeout( new TimeoutKey( type, entity.getNaturalId( ), run ), timeout, entity.getLastUpdateTimestamp( ) );
+    }
+  }
+
   public static class TimeoutManagerEventListener implements EventListener<ClockTick> {
     private final TimeoutManager timeoutManager = new TimeoutManager();
 
@@ -355,8 +632,9 @@ public class TimeoutManager {
           Topology.isEnabledLocally( PolledNotifications.class ) &&
           Topology.isEnabled( SimpleWorkflow.class ) ) {
         timeoutManager.doTimeouts( );
-        timeoutManager.doTimers( );
         timeoutManager.doExpunge( );
+      } else {
+        timeoutManager.reset( );
       }
     }
   }
@@ -0,0 +1,201 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Hierarchical timer wheel holding the next deadline for each key.
+ *
+ * <p>Each level has 64 slots, a slot on level n covers 64^n ticks. Entries
+ * are cascaded to lower levels as the wheel advances so scheduling and
+ * expiry are constant time regardless of the number of entries. Deadlines
+ * beyond the top level are held in an overflow list that is re-examined each
+ * time the top level advances a slot.</p>
+ *
+ * <p>A key has at most one deadline, scheduling a key replaces any current
+ * deadline for the key. Callers are expected to reschedule a key with its
+ * next deadline after it expires.</p>
+ *
+ * <p>This class is not thread safe.</p>
+ */
+class TimerWheel<K> {
+
+  private static final int SLOT_BITS = 6;
+  private static final int SLOTS = 1 << SLOT_BITS;
+  private static final int SLOT_MASK = SLOTS - 1;
+  private static final int LEVELS = 4;
+
+  private final long tickMillis;
+  private final List<List<List<Entry<K>>>> levels = Lists.newArrayListWithCapacity( LEVELS );
+  private final List<Entry<K>> overflow = Lists.newArrayList( );
+  private final List<Entry<K>> due = Lists.newArrayList( );
+  private final Map<K,Entry<K>> entries = Maps.newHashMap( );
+  private long currentTick;
+
+  /**
+   * Create a timer wheel.
+   *
+   * @param tickMillis The resolution of the wheel
+   * @param startMillis The current time
+   */
+  TimerWheel( final long tickMillis, final long startMillis ) {
+    this.tickMillis = tickMillis;
+    this.currentTick = startMillis / tickMillis;
+    for ( int level = 0; level < LEVELS; level++ ) {
+      final List<List<Entry<K>>> slots = Lists.newArrayListWithCapacity( SLOTS );
+      for ( int slot = 0; slot < SLOTS; slot++ ) {
+        slots.add( Lists.<Entry<K>>newArrayList( ) );
+      }
+      levels.add( slots );
+    }
+  }
+
+  /**
+   * Schedule the key for expiry after the given time.
+   *
+   * @param key The key to schedule
+   * @param timeMillis The deadline for the key
+   * @return True if the deadline for the key was updated
+   */
+  boolean schedule( final K key, final long timeMillis ) {
+    final long tick = timeMillis / tickMillis + 1; // first tick after the deadline
+    final Entry<K> existing = entries.get( key );
+    if ( existing != null && existing.tick == tick ) {
+      return false;
+    }
+    final Entry<K> entry = new Entry<>( key, tick );
+    entries.put( key, entry );
+    place( entry );
+    return true;
+  }
+
+  /**
+   * Remove any deadline for the key.
+   */
+  void cancel( final K key ) {
+    entries.remove( key );
+  }
+
+  /**
+   * Advance the wheel to the given time.
+   *
+   * @param nowMillis The current time
+   * @return The keys whose deadlines have passed
+   */
+  List<K> advance( final long nowMillis ) {
+    final long targetTick = nowMillis / tickMillis;
+    final List<K> expired = Lists.newArrayList( );
+    drain( due, expired );
+    while ( currentTick < targetTick ) {
+      currentTick++;
+      for ( int level = LEVELS - 1; level > 0; level-- ) {
+        if ( ( currentTick & ( ( 1L << ( SLOT_BITS * level ) ) - 1 ) ) == 0 ) {
+          if ( level == LEVELS - 1 ) {
+            cascade( overflow );
+          }
+          cascade( slot( level, currentTick ) );
+        }
+      }
+      drain( slot( 0, currentTick ), expired );
+      drain( due, expired );
+    }
+    return expired;
+  }
+
+  int size( ) {
+    return entries.size( );
+  }
+
+  void clear( ) {
+    for ( final List<List<Entry<K>>> slots : levels ) {
+      for ( final List<Entry<K>> slot : slots ) {
+        slot.clear( );
+      }
+    }
+    overflow.clear( );
+    due.clear( );
+    entries.clear( );
+  }
+
+  private List<Entry<K>> slot( final int level, final long tick ) {
+    return levels.get( level ).get( (int) ( ( tick >>> ( SLOT_BITS * level ) ) & SLOT_MASK ) );
+  }
+
+  private void place( final Entry<K> entry ) {
+    final long delta = entry.tick - currentTick;
+    if ( delta <= 0 ) {
+      due.add( entry );
+      return;
+    }
+    for ( int level = 0; level < LEVELS; level++ ) {
+      if ( delta < ( 1L << ( SLOT_BITS * ( level + 1 ) ) ) ) {
+        slot( level, entry.tick ).add( entry );
+        return;
+      }
+    }
+    overflow.add( entry );
+  }
+
+  private void cascade( final List<Entry<K>> slot ) {
+    if ( !slot.isEmpty( ) ) {
+      final List<Entry<K>> cascading = Lists.newArrayList( slot );
+      slot.clear( );
+      for ( final Entry<K> entry : cascading ) {
+        if ( isCurrent( entry ) ) {
+          place( entry );
+        }
+      }
+    }
+  }
+
+  private void drain( final List<Entry<K>> slot, final Collection<K> expired ) {
+    if ( !slot.isEmpty( ) ) {
+      for ( final Entry<K> entry : slot ) {
+        if ( isCurrent( entry ) ) {
+          entries.remove( entry.key );
+          expired.add( entry.key );
+        }
+      }
+      slot.clear( );
+    }
+  }
+
+  /**
+   * Entries are left in place when a key is rescheduled or cancelled.
+   */
+  private boolean isCurrent( final Entry<K> entry ) {
+    return entries.get( entry.key ) == entry;
+  }
+
+  private static final class Entry<K> {
+    private final K key;
+    private final long tick;
+
+    private Entry( final K key, final long tick ) {
+      this.key = key;
+      this.tick = tick;
+    }
+  }
+}
@@ -0,0 +1,88 @@
+/*************************************************************************
+ * Copyright 2009-2014 Eucalyptus Systems, Inc.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; version 3 of the License.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see http://www.gnu.org/licenses/.
+ *
+ * Please contact Eucalyptus Systems, Inc., 6755 Hollister Ave., Goleta
+ * CA 93117, USA or visit http://www.eucalyptus.com/licenses/ if you need
+ * additional information or have any questions.
+ ************************************************************************/
+package com.eucalyptus.simpleworkflow.stateful
+
+import groovy.transform.CompileStatic
+import static org.junit.Assert.*
+import org.junit.Test
+
+/**
+ *
+ */
+@CompileStatic
+class TimerWheelTest {
+
+  @Test
+  void testExpiryAcrossLevels( ) {
+    TimerWheel<String> wheel = new TimerWheel<String>( 1000L, 0L )
+    List<Long> deadlines = [ 0L, 1000L, 63_000L, 64_000L, 65_500L, 4_095_000L, 4_200_000L, 300_000_000L, 20_000_000_000L ]
+    deadlines.each{ Long deadline -> wheel.schedule( String.valueOf( deadline ), deadline ) }
+    assertEquals( 'Size', deadlines.size( ), wheel.size( ) )
+
+    long now = 0L
+    for ( Long deadline : deadlines ) {
+      // advance in steps up to the deadline
+      while ( true ) {
+        long next = now + ( deadline > 100_000_000L ? 3_600_000L : 7_000L )
+        if ( next > deadline ) break
+        now = next
+        assertEquals( "Expired before ${deadline} at ${now}".toString( ), [ ], wheel.advance( now ) )
+      }
+      now = ( ( deadline / 1000L ) as long ) * 1000L + 1000L
+      assertEquals( "Expired ${deadline} at ${now}".toString( ), [ String.valueOf( deadline ) ], wheel.advance( now ) )
+    }
+    assertEquals( 'Size', 0, wheel.size( ) )
+  }
+
+  @Test
+  void testOverdueExpiresOnNextAdvance( ) {
+    TimerWheel<String> wheel = new TimerWheel<String>( 1000L, 10_000L )
+    wheel.schedule( 'a', 5_000L )
+    assertEquals( 'Expired', [ 'a' ], wheel.advance( 10_000L ) )
+  }
+
+  @Test
+  void testRescheduleReplacesDeadline( ) {
+    TimerWheel<String> wheel = new TimerWheel<String>( 1000L, 0L )
+    assertTrue( 'Scheduled', wheel.schedule( 'a', 100_000L ) )
+    assertFalse( 'Same deadline', wheel.schedule( 'a', 100_000L ) )
+    assertTrue( 'Later deadline', wheel.schedule( 'a', 200_000L ) )
+    assertEquals( 'Expired at replaced deadline', [ ], wheel.advance( 101_000L ) )
+    assertEquals( 'Expired', [ 'a' ], wheel.advance( 201_000L ) )
+    assertTrue( 'Scheduled', wheel.schedule( 'a', 300_000L ) )
+    assertTrue( 'Earlier deadline', wheel.schedule( 'a', 210_000L ) )
+    assertEquals( 'Expired', [ 'a' ], wheel.advance( 211_000L ) )
+    assertEquals( 'Expired again', [ ], wheel.advance( 400_000L ) )
+    assertEquals( 'Size', 0, wheel.size( ) )
+  }
+
+  @Test
+  void testCancelAndClear( ) {
+    TimerWheel<String> wheel = new TimerWheel<String>( 1000L, 0L )
+    wheel.schedule( 'a', 10_000L )
+    wheel.schedule( 'b', 10_000L )
+    wheel.cancel( 'a' )
+    assertEquals( 'Expired', [ 'b' ], wheel.advance( 11_000L ) )
+    wheel.schedule( 'c', 20_000L )
+    wheel.clear( )
+    assertEquals( 'Size', 0, wheel.size( ) )
+    assertEquals( 'Expired', [ ], wheel.advance( 21_000L ) )
+  }
+}
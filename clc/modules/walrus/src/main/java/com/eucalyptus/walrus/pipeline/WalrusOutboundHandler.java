@@ -102,7 +102,6 @@ import org.jboss.netty.handler.stream.ChunkedInput;
 
 import java.util.Date;
 import java.util.List;
-import java.util.concurrent.Callable;
 
 public class WalrusOutboundHandler extends MessageStackHandler {
     private static Logger LOG = Logger.getLogger( WalrusOutboundHandler.class );
@@ -117,9 +116,9 @@ public class WalrusOutboundHandler extends MessageStackHandler {
                         MappingHttpResponse httpResponse = ( MappingHttpResponse ) event.getMessage( );
                         BaseMessage msg = (BaseMessage) httpResponse.getMessage( );
                         if (msg instanceof  WalrusDataGetResponseType) {
-                            Callable<Long> stat = MessageStatistics.startDownstream(ctx.getChannel(), this);
+                            final long stat = MessageStatistics.start( );
                             boolean isDone = this.handleMessage(ctx, event);
-                            stat.call();
+                            MessageStatistics.downstream( this, stat );
 
                             if (isDone) {
                                 return;
@@ -128,9 +127,9 @@ public class WalrusOutboundHandler extends MessageStackHandler {
                         }
                     }
                     //handle other types
-                    Callable<Long> stat = MessageStatistics.startDownstream(ctx.getChannel(), this);
+                    final long stat = MessageStatistics.start( );
                     this.outgoingMessage(ctx, event);
-                    stat.call();
+                    MessageStatistics.downstream( this, stat );
                 }
             }
             ctx.sendDownstream(channelEvent);